@@ -48,6 +48,9 @@ public class ProtobufValueReader extends AbstractBinaryValueReader {
     CodedInputStream cis;
     Long value;
 
+    /** Whether or not lists and maps are read until the end of the stream, instead of being length delimited. */
+    boolean topLevel;
+
     /**
      * Constructor
      * @param cis the coded input stream
@@ -126,8 +129,7 @@ public class ProtobufValueReader extends AbstractBinaryValueReader {
     @Override
     public <T> List<T> readList(ValueSerializer<T> parser) throws IOException {
         checkFromInputStream();
-        byte[] b = cis.readByteArray();
-        CodedInputStream lis = CodedInputStream.newInstance(b);
+        CodedInputStream lis = topLevel ? cis : CodedInputStream.newInstance(cis.readByteArray());
         ArrayList<T> list = new ArrayList<>();
         ProtobufValueReader r = new ProtobufValueReader(lis);
         while (!lis.isAtEnd()) {
@@ -143,8 +145,7 @@ public class ProtobufValueReader extends AbstractBinaryValueReader {
     @Override
     public <K, V> Map<K, V> readMap(ValueSerializer<K> keyParser, ValueSerializer<V> valueParser) throws IOException {
         checkFromInputStream();
-        byte[] b = cis.readByteArray();
-        CodedInputStream mis = CodedInputStream.newInstance(b);
+        CodedInputStream mis = topLevel ? cis : CodedInputStream.newInstance(cis.readByteArray());
         Map<K, V> map = new HashMap<>();
         ProtobufValueReader r = new ProtobufValueReader(mis);
         while (!mis.isAtEnd()) {
@@ -157,4 +158,17 @@ public class ProtobufValueReader extends AbstractBinaryValueReader {
         return map;
     }
 
+    /**
+     * Reads a single value written by a {@link ProtobufValueWriter} from a byte array. The value writer does not length
+     * delimit lists and maps, so at the top level they are read until the end of the array.
+     *
+     * @param value the value byte array
+     * @param serializer the value serializer
+     * @return the value
+     */
+    public static <T> T read(byte[] value, ValueSerializer<T> serializer) throws IOException {
+        ProtobufValueReader reader = new ProtobufValueReader(CodedInputStream.newInstance(value));
+        reader.topLevel = true;
+        return serializer.read(reader);
+    }
 }
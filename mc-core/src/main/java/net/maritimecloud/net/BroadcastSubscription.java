@@ -14,6 +14,8 @@
  */
 package net.maritimecloud.net;
 
+import java.util.concurrent.TimeUnit;
+
 import net.maritimecloud.util.Binary;
 
 /**
@@ -54,6 +56,38 @@ public interface BroadcastSubscription {
      * @return the number of messages received
      */
     long getNumberOfReceivedMessages();
+
+    /**
+     * Returns the number of messages that were dropped, because the consumer could not keep up.
+     *
+     * @return the number of messages that were dropped
+     */
+    long getNumberOfDroppedMessages();
+
+    /**
+     * Returns the number of messages that have been received, but are still waiting to be delivered to the consumer.
+     *
+     * @return the number of messages waiting to be delivered
+     */
+    int getNumberOfPendingMessages();
+
+    /**
+     * Returns the time from the latest message was received until it was delivered to the consumer.
+     *
+     * @param unit
+     *            the unit of the returned time
+     * @return the delivery lag of the latest message, or 0 if no messages have been delivered
+     */
+    long getDeliveryLag(TimeUnit unit);
+
+    /**
+     * Returns the longest time from a message was received until it was delivered to the consumer.
+     *
+     * @param unit
+     *            the unit of the returned time
+     * @return the longest delivery lag of any message, or 0 if no messages have been delivered
+     */
+    long getMaxDeliveryLag(TimeUnit unit);
 }
 
 // I have dropped this so far. Problem is in the future we might have a default area registered for a client at the
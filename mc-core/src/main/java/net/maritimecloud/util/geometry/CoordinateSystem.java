@@ -58,7 +58,8 @@ enum CoordinateSystem {
                             Math.sin(bearingDegrees) * Math.sin(distanceMeters / earthRadius)
                                     * Math.cos(startLatDegrees),
                             Math.cos(distanceMeters / earthRadius) - Math.sin(startLatDegrees) * Math.sin(endLat));
-            return Position.create(Math.toDegrees(endLat), Math.toDegrees(endLon));
+            // normalize the longitude to -180..180, in case we crossed the antimeridian
+            return Position.create(Math.toDegrees(endLat), (Math.toDegrees(endLon) + 540) % 360 - 180);
         }
     },
 
@@ -234,6 +234,20 @@ public class Position implements Message, Serializable {
         return this;
     }
 
+    /**
+     * Returns the position reached by travelling the specified distance along a great circle from this position,
+     * starting on the specified bearing.
+     *
+     * @param distance
+     *            the distance to travel in meters
+     * @param bearing
+     *            the initial bearing in degrees
+     * @return the position reached
+     */
+    public Position pointOnBearing(double distance, double bearing) {
+        return CoordinateSystem.CARTESIAN.pointOnBearing(this, distance, bearing);
+    }
+
     /**
      * Calculates the rhumb line bearing to the specified position
      *
@@ -14,15 +14,19 @@
  */
 package net.maritimecloud.internal.message.binary.protobuf;
 
+import net.maritimecloud.message.ValueSerializer;
 import net.maritimecloud.util.Timestamp;
 import net.maritimecloud.util.geometry.Position;
 import net.maritimecloud.util.geometry.PositionTime;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -55,6 +59,30 @@ public class TestProtobufSerialization extends AbstractProtobufTest {
                 (System.currentTimeMillis() - t0) + " ms");
     }
 
+    /**
+     * Test that top level values written by the Protobuf value writer can be read back,
+     * including lists which are not length delimited at the top level
+     */
+    @Test
+    public void testValueSerialization() throws IOException {
+        Assert.assertEquals("Hello mum!", writeAndRead("Hello mum!", ValueSerializer.TEXT));
+        Assert.assertEquals(Integer.valueOf(-42), writeAndRead(-42, ValueSerializer.INT));
+
+        List<String> list = Arrays.asList("a", "b", "c");
+        Assert.assertEquals(list, writeAndRead(list, ValueSerializer.TEXT.listOf()));
+
+        Msg1 m = randomMsg(true);
+        Assert.assertEquals(m, writeAndRead(m, Msg1.SERIALIZER));
+    }
+
+    private static <T> T writeAndRead(T value, ValueSerializer<T> serializer) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ProtobufValueWriter w = new ProtobufValueWriter(baos);
+        serializer.write(value, w);
+        w.flush();
+        return ProtobufValueReader.read(baos.toByteArray(), serializer);
+    }
+
     /**
      * Generate a test message with random field values
      * @param nested whether to add nested messages in list and map fields
@@ -79,4 +79,16 @@ public class PositionTest {
         assertEquals("010 56.843E", Position.create(0.0, 10.94738243).getLongitudeAsString());
     }
 
+    @Test
+    public void testPointOnBearing() {
+        Position p = Position.create(10, 20);
+        Position east = p.pointOnBearing(10000, 90);
+        assertEquals(10000, p.geodesicDistanceTo(east), 50);
+        assertEquals(90, p.rhumbLineBearingTo(east), 0.1);
+        assertEquals(p, p.pointOnBearing(0, 45));
+
+        // Crossing the antimeridian
+        Position west = Position.create(0, 179.99).pointOnBearing(10000, 90);
+        assertEquals(-179.92, west.getLongitude(), 0.01);
+    }
 }
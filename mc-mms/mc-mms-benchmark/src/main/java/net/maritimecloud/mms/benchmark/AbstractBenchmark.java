@@ -0,0 +1,194 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.benchmark;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.maritimecloud.core.id.MaritimeId;
+import net.maritimecloud.internal.util.LatencyHistogram;
+import net.maritimecloud.mms.server.MmsServer;
+import net.maritimecloud.mms.server.MmsServerConfiguration;
+import net.maritimecloud.net.mms.MmsClient;
+import net.maritimecloud.net.mms.MmsClientConfiguration;
+import net.maritimecloud.util.geometry.PositionReader;
+import net.maritimecloud.util.geometry.PositionTime;
+
+/**
+ * The base class for benchmark scenarios. Each run starts a fresh in-process server, lets the scenario create its
+ * clients, runs a number of warmup operations followed by the measured operations, and finally shuts everything down.
+ * <p>
+ * How operations are issued and measured is up to the scenario. Most scenarios extend
+ * {@link AbstractOpenLoopBenchmark}, which issues operations at a fixed target rate.
+ *
+ * @author Kasper Nielsen
+ */
+public abstract class AbstractBenchmark {
+
+    /** The clients created by the scenario. */
+    private final List<MmsClient> clients = new ArrayList<>();
+
+    /** The options of the benchmark. */
+    final BenchmarkOptions options;
+
+    /** The port the server is listening on. */
+    int port;
+
+    /** The server. */
+    MmsServer server;
+
+    AbstractBenchmark(BenchmarkOptions options) {
+        this.options = requireNonNull(options);
+    }
+
+    /**
+     * Returns the name of the scenario.
+     *
+     * @return the name of the scenario
+     */
+    abstract String getName();
+
+    /**
+     * Adds the parameters of the scenario to the specified result.
+     *
+     * @param result
+     *            the result to add parameters to
+     */
+    void addParameters(BenchmarkResult result) {
+        result.parameter("operations", operations());
+    }
+
+    /**
+     * Creates a new client that is connected directly to the server.
+     *
+     * @param id
+     *            the id of the client
+     * @param lat
+     *            the latitude of the client
+     * @param lon
+     *            the longitude of the client
+     * @return the new client
+     * @throws InterruptedException
+     *             if interrupted while waiting for the client to connect
+     */
+    MmsClient newClient(String id, double lat, double lon) throws InterruptedException {
+        return newClient(id, lat, lon, port);
+    }
+
+    MmsClient newClient(String id, double lat, double lon, int port) throws InterruptedException {
+        MmsClientConfiguration conf = MmsClientConfiguration.create(MaritimeId.create(id));
+        conf.setHost("localhost:" + port);
+        conf.setPositionReader(new PositionReader() {
+            public PositionTime getCurrentPosition() {
+                return PositionTime.create(lat, lon, System.currentTimeMillis());
+            }
+        });
+        MmsClient c = conf.build();
+        clients.add(c);
+        if (!c.connection().awaitConnected(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Client " + id + " could not connect");
+        }
+        return c;
+    }
+
+    /**
+     * Runs the scenario.
+     *
+     * @return the result of the run
+     * @throws Exception
+     *             if the scenario failed
+     */
+    public BenchmarkResult run() throws Exception {
+        port = ThreadLocalRandom.current().nextInt(40000, 50000);
+        server = new MmsServerConfiguration().setServerPort(port).build();
+        server.start().join();
+        try {
+            setup();
+            measure(warmupOperations(), new LatencyHistogram(), new LongAdder());
+
+            LatencyHistogram histogram = new LatencyHistogram();
+            LongAdder failures = new LongAdder();
+            long start = System.nanoTime();
+            measure(operations(), histogram, failures);
+
+            BenchmarkResult result = new BenchmarkResult(getName(), histogram);
+            result.setDurationNanos(System.nanoTime() - start);
+            result.setFailures(failures.sum());
+            addParameters(result);
+            return result;
+        } finally {
+            teardown();
+        }
+    }
+
+    /**
+     * Performs the specified number of operations, recording latencies in the specified histogram.
+     *
+     * @param operations
+     *            the number of operations to perform
+     * @param histogram
+     *            the histogram to record latencies in
+     * @param failures
+     *            a counter of failed operations
+     * @throws Exception
+     *             if the operations could not be performed
+     * @see AbstractOpenLoopBenchmark
+     */
+    abstract void measure(int operations, LatencyHistogram histogram, LongAdder failures) throws Exception;
+
+    /**
+     * Returns the number of measured operations.
+     *
+     * @return the number of measured operations
+     */
+    int operations() {
+        return options.operations;
+    }
+
+    /**
+     * Returns the number of warmup operations.
+     *
+     * @return the number of warmup operations
+     */
+    int warmupOperations() {
+        return options.warmup;
+    }
+
+    /**
+     * Creates the clients needed by the scenario.
+     *
+     * @throws Exception
+     *             if the scenario could not be set up
+     */
+    abstract void setup() throws Exception;
+
+    /** Shuts down all clients and the server. */
+    void teardown() throws Exception {
+        for (MmsClient c : clients) {
+            c.shutdown();
+        }
+        for (MmsClient c : clients) {
+            c.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        clients.clear();
+        server.shutdown();
+        server.awaitTerminated(10, TimeUnit.SECONDS);
+    }
+}
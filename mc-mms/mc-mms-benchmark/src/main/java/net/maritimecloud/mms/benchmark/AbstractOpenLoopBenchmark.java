@@ -0,0 +1,140 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import net.maritimecloud.internal.util.LatencyHistogram;
+
+/**
+ * The base class for scenarios whose operations are independent of each other. Operations are issued open loop at a
+ * fixed target rate, and latency is measured from the time the operation was <em>supposed</em> to start. A stall in
+ * the system under test (or in the issuing thread) therefore shows up as latency for every operation that should have
+ * been issued during the stall, instead of silently lowering the rate (coordinated omission).
+ *
+ * @author Kasper Nielsen
+ */
+abstract class AbstractOpenLoopBenchmark extends AbstractBenchmark {
+
+    AbstractOpenLoopBenchmark(BenchmarkOptions options) {
+        super(options);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void addParameters(BenchmarkResult result) {
+        result.parameter("rate", options.rate);
+        super.addParameters(result);
+    }
+
+    /**
+     * Returns the number of completions expected per operation. For example, the number of receivers of a broadcast.
+     *
+     * @return the number of completions expected per operation
+     */
+    int completionsPerOperation() {
+        return 1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void measure(int operations, LatencyHistogram histogram, LongAdder failures) throws Exception {
+        CountDownLatch done = new CountDownLatch(operations);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.rate);
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            long intendedStart = start + i * intervalNanos;
+            for (long now = System.nanoTime(); now < intendedStart; now = System.nanoTime()) {
+                LockSupport.parkNanos(intendedStart - now);
+            }
+            Completion c = new Completion(intendedStart, completionsPerOperation(), histogram, failures, done);
+            try {
+                startOperation(i, c);
+            } catch (Exception e) {
+                c.failRemaining();
+            }
+        }
+        if (!done.await(options.timeoutSeconds, TimeUnit.SECONDS)) {
+            failures.add(done.getCount());
+        }
+    }
+
+    /**
+     * Starts a single operation. The scenario must invoke {@link Completion#complete()} (or {@link Completion#fail()})
+     * {@link #completionsPerOperation()} times when the operation has completed.
+     *
+     * @param index
+     *            the index of the operation
+     * @param completion
+     *            the completion of the operation
+     * @throws Exception
+     *             if the operation could not be started
+     */
+    abstract void startOperation(int index, Completion completion) throws Exception;
+
+    /** Tracks the completion of a single operation that was intended to start at a specific time. */
+    static final class Completion {
+
+        private final CountDownLatch done;
+
+        private final LongAdder failures;
+
+        private final LatencyHistogram histogram;
+
+        private final long intendedStart;
+
+        private final AtomicInteger remaining;
+
+        Completion(long intendedStart, int expected, LatencyHistogram histogram, LongAdder failures,
+                CountDownLatch done) {
+            this.intendedStart = intendedStart;
+            this.remaining = new AtomicInteger(expected);
+            this.histogram = histogram;
+            this.failures = failures;
+            this.done = done;
+        }
+
+        /** Records the latency since the intended start of the operation. */
+        void complete() {
+            histogram.recordValue(System.nanoTime() - intendedStart);
+            countDown();
+        }
+
+        /** Records a failure. */
+        void fail() {
+            failures.increment();
+            countDown();
+        }
+
+        /** Records a failure for every completion that has not yet happened. */
+        void failRemaining() {
+            int r = remaining.getAndSet(0);
+            if (r > 0) {
+                failures.add(r);
+                done.countDown();
+            }
+        }
+
+        private void countDown() {
+            if (remaining.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+    }
+}
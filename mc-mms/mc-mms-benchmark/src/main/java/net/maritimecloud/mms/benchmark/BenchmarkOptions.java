@@ -0,0 +1,68 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Command line options for the benchmark runner. Every scenario reads the options that applies to it.
+ *
+ * @author Kasper Nielsen
+ */
+public class BenchmarkOptions {
+
+    @Parameter(names = "-scenario", description = "The scenarios to run (broadcast, rpc, reconnect, locate), all if not specified")
+    List<String> scenarios = new ArrayList<>();
+
+    @Parameter(names = "-clients", description = "The number of clients (broadcast receivers, or endpoints to locate among)")
+    int clients = 20;
+
+    @Parameter(names = "-operations", description = "The number of measured operations")
+    int operations = 10000;
+
+    @Parameter(names = "-warmup", description = "The number of warmup operations")
+    int warmup = 1000;
+
+    @Parameter(names = "-rate", description = "The target rate of operations per second")
+    double rate = 1000;
+
+    @Parameter(names = "-backgroundRate", description = "The rate of background invocations per second for the locate scenario")
+    double backgroundRate = 1000;
+
+    @Parameter(names = "-backlog", description = "The number of messages queued during a reconnect")
+    int backlog = 500;
+
+    @Parameter(names = "-reconnects", description = "The number of measured reconnects")
+    int reconnects = 50;
+
+    @Parameter(names = "-reconnectInterval", description = "The intended interval between reconnects in milliseconds")
+    long reconnectIntervalMillis = 500;
+
+    @Parameter(names = "-timeout", description = "The number of seconds to wait for outstanding operations")
+    int timeoutSeconds = 30;
+
+    @Parameter(names = "-label", description = "A label identifying the run in the output, for example a commit id")
+    String label;
+
+    @Parameter(names = "-out", description = "A file to append results to, standard out if not specified")
+    File out;
+
+    @Parameter(names = { "-help", "-h" }, help = true)
+    boolean help;
+}
@@ -0,0 +1,119 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.benchmark;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import net.maritimecloud.internal.util.LatencyHistogram;
+
+/**
+ * The result of running a single benchmark scenario. Results are written as a single line of JSON so the output of a
+ * run can be appended to a file and compared across commits with standard tools.
+ *
+ * @author Kasper Nielsen
+ */
+public final class BenchmarkResult {
+
+    /** The percentiles included in the output. */
+    static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+    /** The latency histogram (in nanoseconds). */
+    private final LatencyHistogram histogram;
+
+    /** The parameters of the scenario. */
+    private final Map<String, Object> parameters = new LinkedHashMap<>();
+
+    /** The name of the scenario. */
+    private final String scenario;
+
+    /** The number of operations that failed or timed out. */
+    private long failures;
+
+    /** The wall clock duration of the measurement in nanoseconds. */
+    private long durationNanos;
+
+    BenchmarkResult(String scenario, LatencyHistogram histogram) {
+        this.scenario = requireNonNull(scenario);
+        this.histogram = requireNonNull(histogram);
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    BenchmarkResult parameter(String name, Object value) {
+        parameters.put(name, value);
+        return this;
+    }
+
+    void setDurationNanos(long durationNanos) {
+        this.durationNanos = durationNanos;
+    }
+
+    void setFailures(long failures) {
+        this.failures = failures;
+    }
+
+    /**
+     * Returns this result as a single line of JSON.
+     *
+     * @param label
+     *            a label identifying the run, typically a commit id (may be null)
+     * @return this result as a single line of JSON
+     */
+    public String toJSON(String label) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"scenario\":\"").append(scenario).append('"');
+        if (label != null) {
+            sb.append(",\"label\":\"").append(label.replace("\"", "\\\"")).append('"');
+        }
+        sb.append(",\"parameters\":{");
+        boolean first = true;
+        for (Map.Entry<String, Object> e : parameters.entrySet()) {
+            sb.append(first ? "" : ",").append('"').append(e.getKey()).append("\":");
+            Object v = e.getValue();
+            if (v instanceof Number || v instanceof Boolean) {
+                sb.append(v);
+            } else {
+                sb.append('"').append(v).append('"');
+            }
+            first = false;
+        }
+        sb.append('}');
+        double seconds = durationNanos / 1e9;
+        sb.append(",\"count\":").append(histogram.getCount());
+        sb.append(",\"failures\":").append(failures);
+        sb.append(String.format(Locale.US, ",\"durationSeconds\":%.3f", seconds));
+        sb.append(String.format(Locale.US, ",\"throughputPerSecond\":%.1f",
+                seconds == 0 ? 0 : histogram.getCount() / seconds));
+        sb.append(",\"latencyMicros\":{");
+        sb.append(String.format(Locale.US, "\"min\":%.1f,\"mean\":%.1f", histogram.getMin() / 1e3,
+                histogram.getMean() / 1e3));
+        for (double p : PERCENTILES) {
+            sb.append(String.format(Locale.US, ",\"p%s\":%.1f", p == (long) p ? Long.toString((long) p) : Double
+                    .toString(p), histogram.getValueAtPercentile(p) / 1e3));
+        }
+        sb.append(String.format(Locale.US, ",\"max\":%.1f}}", histogram.getMax() / 1e3));
+        return sb.toString();
+    }
+}
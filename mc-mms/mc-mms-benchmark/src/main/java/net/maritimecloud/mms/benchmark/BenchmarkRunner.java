@@ -0,0 +1,76 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.benchmark;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+import com.beust.jcommander.JCommander;
+
+/**
+ * Runs one or more benchmark scenarios and prints one line of JSON per scenario. For example:
+ *
+ * <pre>
+ * java net.maritimecloud.mms.benchmark.BenchmarkRunner -scenario rpc -rate 2000 -label $(git rev-parse --short HEAD) -out results.jsonl
+ * </pre>
+ *
+ * @author Kasper Nielsen
+ */
+public class BenchmarkRunner {
+
+    /** The names of all scenarios, in the order they are run. */
+    static final List<String> SCENARIOS = Arrays.asList("broadcast", "rpc", "reconnect", "locate");
+
+    static AbstractBenchmark create(String scenario, BenchmarkOptions options) {
+        switch (scenario) {
+        case "broadcast":
+            return new BroadcastFanoutBenchmark(options);
+        case "rpc":
+            return new RpcRoundTripBenchmark(options);
+        case "reconnect":
+            return new ReconnectBenchmark(options);
+        case "locate":
+            return new LocateUnderLoadBenchmark(options);
+        default:
+            throw new IllegalArgumentException("Unknown scenario '" + scenario + "', valid scenarios are " + SCENARIOS);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkOptions options = new BenchmarkOptions();
+        JCommander jc = new JCommander(options, args);
+        if (options.help) {
+            jc.usage();
+            return;
+        }
+        List<String> scenarios = options.scenarios.isEmpty() ? SCENARIOS : options.scenarios;
+        for (String scenario : scenarios) {
+            create(scenario, options); // fail fast on unknown scenarios
+        }
+        try (PrintStream out = options.out == null ? new PrintStream(System.out) {
+            public void close() {
+                flush(); // do not close System.out
+            }
+        } : new PrintStream(new FileOutputStream(options.out, true), true, "UTF-8")) {
+            for (String scenario : scenarios) {
+                BenchmarkResult result = create(scenario, options).run();
+                out.println(result.toJSON(options.label));
+            }
+        }
+        System.exit(0);
+    }
+}
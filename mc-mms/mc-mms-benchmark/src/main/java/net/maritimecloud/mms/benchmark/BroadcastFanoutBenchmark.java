@@ -0,0 +1,84 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.benchmark;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.maritimecloud.mms.stubs.BroadcastTestMessage;
+import net.maritimecloud.net.mms.MmsClient;
+
+/**
+ * Measures the latency from a broadcast is sent until it has been delivered to each of N receivers. One latency value
+ * is recorded per receiver, so the high percentiles reflect the slowest receivers.
+ *
+ * @author Kasper Nielsen
+ */
+class BroadcastFanoutBenchmark extends AbstractOpenLoopBenchmark {
+
+    /** Outstanding broadcasts by id. */
+    private final ConcurrentHashMap<Integer, Completion> outstanding = new ConcurrentHashMap<>();
+
+    /** The id of the next broadcast. */
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    private MmsClient sender;
+
+    BroadcastFanoutBenchmark(BenchmarkOptions options) {
+        super(options);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void addParameters(BenchmarkResult result) {
+        super.addParameters(result);
+        result.parameter("receivers", options.clients);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    int completionsPerOperation() {
+        return options.clients;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    String getName() {
+        return "broadcast";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void setup() throws Exception {
+        sender = newClient("mmsi:1", 1, 1);
+        for (int i = 0; i < options.clients; i++) {
+            MmsClient c = newClient("mmsi:" + (100000 + i), 1, 1);
+            c.broadcastSubscribe(BroadcastTestMessage.class, (header, m) -> {
+                Completion completion = outstanding.get(m.getId());
+                if (completion != null) {
+                    completion.complete();
+                }
+            });
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void startOperation(int index, Completion completion) throws Exception {
+        int id = nextId.getAndIncrement();
+        outstanding.put(id, completion);
+        sender.broadcast(new BroadcastTestMessage().setId(id).setMsg("benchmark"));
+    }
+}
@@ -0,0 +1,100 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.mms.tck.stubs.AbstractTestEndpoint;
+import net.maritimecloud.mms.tck.stubs.TestEndpoint;
+import net.maritimecloud.net.MessageHeader;
+import net.maritimecloud.net.mms.MmsClient;
+
+/**
+ * Measures the latency of locating the nearest endpoint among N registered endpoints, while the server is relaying a
+ * steady stream of background invocations between the endpoints.
+ *
+ * @author Kasper Nielsen
+ */
+class LocateUnderLoadBenchmark extends AbstractOpenLoopBenchmark {
+
+    /** Issues the background invocations. */
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor();
+
+    private MmsClient locator;
+
+    LocateUnderLoadBenchmark(BenchmarkOptions options) {
+        super(options);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void addParameters(BenchmarkResult result) {
+        super.addParameters(result);
+        result.parameter("endpoints", options.clients);
+        result.parameter("backgroundRate", options.backgroundRate);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    String getName() {
+        return "locate";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void setup() throws Exception {
+        locator = newClient("mmsi:1", 1, 1);
+        List<TestEndpoint> endpoints = new ArrayList<>();
+        MmsClient caller = newClient("mmsi:2", 1, 1);
+        for (int i = 0; i < options.clients; i++) {
+            // Spread the endpoints out so the server has to actually compare distances
+            MmsClient c = newClient("mmsi:" + (100000 + i), 1 + i * 0.01, 1);
+            c.endpointRegister(new AbstractTestEndpoint() {
+                protected Long hello(MessageHeader context, Long testId) {
+                    return testId;
+                }
+            }).awaitRegistered(10, TimeUnit.SECONDS);
+            endpoints.add(caller.endpointCreate(c.getClientId(), TestEndpoint.class));
+        }
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.backgroundRate);
+        background.scheduleAtFixedRate(() -> {
+            endpoints.get(ThreadLocalRandom.current().nextInt(endpoints.size())).hello(0L);
+        }, 0, Math.max(1, periodNanos), TimeUnit.NANOSECONDS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void startOperation(int index, Completion completion) throws Exception {
+        locator.endpointLocate(TestEndpoint.class).findNearest().handle((v, t) -> {
+            if (t == null && v != null) {
+                completion.complete();
+            } else {
+                completion.fail();
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void teardown() throws Exception {
+        background.shutdownNow();
+        super.teardown();
+    }
+}
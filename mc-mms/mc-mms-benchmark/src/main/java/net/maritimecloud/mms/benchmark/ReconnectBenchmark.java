@@ -0,0 +1,148 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.benchmark;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import net.maritimecloud.internal.util.LatencyHistogram;
+import net.maritimecloud.mms.stubs.BroadcastTestMessage;
+import net.maritimecloud.net.mms.MmsClient;
+
+import test.util.ProxyTester;
+
+/**
+ * Measures how long it takes for a client to reconnect, resume its session, and receive a backlog of messages that was
+ * queued by the server while the client was disconnected. The receiver connects through a proxy, whose connections
+ * are killed at the start of each iteration.
+ * <p>
+ * Each iteration can only start when the previous one has finished, so latencies are recorded with
+ * {@link LatencyHistogram#recordValueWithExpectedInterval(long, long)} to correct for coordinated omission.
+ *
+ * @author Kasper Nielsen
+ */
+class ReconnectBenchmark extends AbstractBenchmark {
+
+    /** The backlog of the current iteration. */
+    private final AtomicReference<Backlog> current = new AtomicReference<>(new Backlog("", 0));
+
+    /** The number of iterations started, including warmup, used to tag the messages of each backlog. */
+    private int iterations;
+
+    private ProxyTester proxy;
+
+    private MmsClient sender;
+
+    ReconnectBenchmark(BenchmarkOptions options) {
+        super(options);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void addParameters(BenchmarkResult result) {
+        result.parameter("backlog", options.backlog);
+        result.parameter("operations", operations());
+        result.parameter("intervalMillis", options.reconnectIntervalMillis);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    String getName() {
+        return "reconnect";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void measure(int operations, LatencyHistogram histogram, LongAdder failures) throws Exception {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(options.reconnectIntervalMillis);
+        long next = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            for (long now = System.nanoTime(); now < next; now = System.nanoTime()) {
+                LockSupport.parkNanos(next - now);
+            }
+            Backlog backlog = new Backlog("backlog-" + iterations++, options.backlog);
+            current.set(backlog);
+            long start = System.nanoTime();
+            proxy.killAll();
+            for (int j = 0; j < options.backlog; j++) {
+                sender.broadcast(new BroadcastTestMessage().setId(j).setMsg(backlog.tag));
+            }
+            if (backlog.received.await(options.timeoutSeconds, TimeUnit.SECONDS)) {
+                histogram.recordValueWithExpectedInterval(System.nanoTime() - start, intervalNanos);
+            } else {
+                failures.increment();
+            }
+            next += intervalNanos;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    int operations() {
+        return options.reconnects;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void setup() throws Exception {
+        int proxyPort = ThreadLocalRandom.current().nextInt(50000, 60000);
+        proxy = new ProxyTester(new InetSocketAddress(proxyPort), new InetSocketAddress(port));
+        proxy.start();
+        sender = newClient("mmsi:1", 1, 1);
+        MmsClient receiver = newClient("mmsi:2", 1, 1, proxyPort);
+        receiver.broadcastSubscribe(BroadcastTestMessage.class, (header, m) -> {
+            Backlog backlog = current.get();
+            // Late messages from an iteration that timed out must not count towards the current one
+            if (backlog.tag.equals(m.getMsg())) {
+                backlog.received.countDown();
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void teardown() throws Exception {
+        super.teardown();
+        if (proxy != null) {
+            proxy.shutdown();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    int warmupOperations() {
+        return Math.max(1, options.reconnects / 10);
+    }
+
+    /** The messages queued for the receiver in a single iteration. */
+    static final class Backlog {
+
+        /** Counts down the messages of the backlog that have been received. */
+        final CountDownLatch received;
+
+        /** The message text that identifies the messages of the backlog. */
+        final String tag;
+
+        Backlog(String tag, int size) {
+            this.tag = tag;
+            this.received = new CountDownLatch(size);
+        }
+    }
+}
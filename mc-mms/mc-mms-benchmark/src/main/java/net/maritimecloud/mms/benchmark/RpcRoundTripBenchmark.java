@@ -0,0 +1,67 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.mms.tck.stubs.AbstractTestEndpoint;
+import net.maritimecloud.mms.tck.stubs.TestEndpoint;
+import net.maritimecloud.net.MessageHeader;
+import net.maritimecloud.net.mms.MmsClient;
+
+/**
+ * Measures the round-trip latency of remote method invocations between two clients, relayed through the server.
+ *
+ * @author Kasper Nielsen
+ */
+class RpcRoundTripBenchmark extends AbstractOpenLoopBenchmark {
+
+    private TestEndpoint endpoint;
+
+    RpcRoundTripBenchmark(BenchmarkOptions options) {
+        super(options);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    String getName() {
+        return "rpc";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void setup() throws Exception {
+        MmsClient caller = newClient("mmsi:1", 1, 1);
+        MmsClient callee = newClient("mmsi:2", 1, 1);
+        callee.endpointRegister(new AbstractTestEndpoint() {
+            protected Long hello(MessageHeader context, Long testId) {
+                return testId;
+            }
+        }).awaitRegistered(10, TimeUnit.SECONDS);
+        endpoint = caller.endpointCreate(callee.getClientId(), TestEndpoint.class);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void startOperation(int index, Completion completion) throws Exception {
+        endpoint.hello((long) index).handle((v, t) -> {
+            if (t == null) {
+                completion.complete();
+            } else {
+                completion.fail();
+            }
+        });
+    }
+}
@@ -16,6 +16,7 @@ package net.maritimecloud.net.mms;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import net.maritimecloud.net.MessageHeader;
@@ -33,12 +34,20 @@ public class MmsBroadcastOptions {
 
     private int radius = 50000;
 
+    /** Invoked if the server rejects the broadcast, or null. */
+    private Consumer<? super MmsRequestRejectedException> rejectionConsumer;
+
+    /** The number of seconds to keep delivering the broadcast to actors entering the area, 0 for none. */
+    private int timeToLive;
+
     public MmsBroadcastOptions() {}
 
     MmsBroadcastOptions(MmsBroadcastOptions options) {
         this.area = options.area;
         this.consumer = options.consumer;
         this.radius = options.radius;
+        this.rejectionConsumer = options.rejectionConsumer;
+        this.timeToLive = options.timeToLive;
     }
 
     /**
@@ -55,6 +64,19 @@ public class MmsBroadcastOptions {
         return radius;
     }
 
+    /**
+     * Returns the time to live of the broadcast.
+     *
+     * @param unit
+     *            the unit of the returned time
+     * @return the time to live of the broadcast, 0 if the broadcast is only delivered to actors within the area at the
+     *         time it is sent
+     * @see #setTimeToLive(long, TimeUnit)
+     */
+    public long getTimeToLive(TimeUnit unit) {
+        return unit.convert(timeToLive, TimeUnit.SECONDS);
+    }
+
     /**
      * @return the consumer
      */
@@ -62,6 +84,31 @@ public class MmsBroadcastOptions {
         return consumer;
     }
 
+    /**
+     * Returns the consumer that is invoked if the server rejects the broadcast.
+     *
+     * @return the consumer that is invoked if the server rejects the broadcast, or null
+     * @see #onRejected(Consumer)
+     */
+    public Consumer<? super MmsRequestRejectedException> getRejected() {
+        return rejectionConsumer;
+    }
+
+    /**
+     * The specified consumer will be invoked if the server rejects the broadcast, for example because the client has
+     * exceeded its broadcast rate. The server acknowledges a broadcast before deciding whether or not to relay it, so
+     * {@link net.maritimecloud.net.DispatchedMessage#relayed()} may complete normally for a broadcast that is
+     * rejected. The exception includes the time the server has asked the client to wait before retrying.
+     *
+     * @param consumer
+     *            the consumer of the rejection
+     * @return this option object
+     */
+    public MmsBroadcastOptions onRejected(Consumer<? super MmsRequestRejectedException> consumer) {
+        this.rejectionConsumer = requireNonNull(consumer);
+        return this;
+    }
+
     /**
      * The specified consumer will be invoked every time a remote party has received the broadcast message.
      * <p>
@@ -111,6 +158,28 @@ public class MmsBroadcastOptions {
         return this;
     }
 
+    /**
+     * Sets for how long the broadcast should be kept by the server after it has been sent. Actors entering the area of
+     * the broadcast within this time will also receive it, exactly once. This is useful for messages such as
+     * navigational warnings, that should not have to be re-broadcast at regular intervals. The time is rounded up to
+     * whole seconds. The default is 0, which means the broadcast is only delivered to actors within the area at the
+     * time it is sent.
+     *
+     * @param time
+     *            the time to live
+     * @param unit
+     *            the unit of the time
+     * @return this option object
+     */
+    public MmsBroadcastOptions setTimeToLive(long time, TimeUnit unit) {
+        if (time < 0) {
+            throw new IllegalArgumentException("time must be non-negative, was " + time);
+        }
+        long millis = unit.toMillis(time);
+        this.timeToLive = (int) Math.min(Integer.MAX_VALUE, (millis + 999) / 1000);
+        return this;
+    }
+
     public MmsBroadcastOptions immutable() {
         return new Immutable(this);
     }
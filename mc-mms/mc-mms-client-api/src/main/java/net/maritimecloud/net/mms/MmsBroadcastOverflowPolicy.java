@@ -0,0 +1,31 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.net.mms;
+
+/**
+ * What to do with a received broadcast when the mailbox of a subscription is full, because its consumer cannot keep
+ * up with the rate of broadcasts.
+ *
+ * @author Kasper Nielsen
+ * @see MmsClientConfiguration#setBroadcastMailboxSize(int)
+ */
+public enum MmsBroadcastOverflowPolicy {
+
+    /** Drops the oldest broadcast waiting in the mailbox, so the consumer always gets the most recent broadcasts. */
+    DROP_OLDEST,
+
+    /** Drops the broadcast that was just received, so the consumer gets broadcasts without gaps, until it overflows. */
+    DROP_NEWEST;
+}
@@ -15,6 +15,7 @@
 package net.maritimecloud.net.mms;
 
 import net.maritimecloud.core.id.MaritimeId;
+import net.maritimecloud.message.MessageFormatType;
 import net.maritimecloud.net.Environment;
 import net.maritimecloud.util.geometry.Circle;
 import net.maritimecloud.util.geometry.PositionReader;
@@ -22,11 +23,15 @@ import net.maritimecloud.util.geometry.PositionReaderSimulator;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static java.util.Objects.requireNonNull;
 
@@ -42,14 +47,53 @@ public class MmsClientConfiguration {
     /** Whether or not we will automatically connect to the MMS server when the client has been created. */
     private boolean autoConnect = true;
 
+    /** Whether or not broadcast subscriptions are registered with the server. */
+    private boolean broadcastFiltering;
+
+    /** The maximum number of broadcasts waiting to be delivered to a single subscription. */
+    private int broadcastMailboxSize = 1024;
+
+    /** What to do with a broadcast if the mailbox of a subscription is full. */
+    private MmsBroadcastOverflowPolicy broadcastOverflowPolicy = MmsBroadcastOverflowPolicy.DROP_OLDEST;
+
+    /** The executor broadcasts are delivered on, or null to use the threads of the client. */
+    private Executor dispatchExecutor;
+
     private MaritimeId id;
 
+    /** The default time to wait for the result of a remote invocation. */
+    private long invocationTimeoutNanos = TimeUnit.MINUTES.toNanos(5);
+
+    /** The maximum number of remote invocations waiting for a result. */
+    private int maxPendingInvocations = 10_000;
+
+    /** Whether or not broadcasts are delivered to each subscription one at a time in the order they were received. */
+    private boolean orderedBroadcastDelivery = true;
+
     long keepAliveNanos = TimeUnit.SECONDS.toNanos(2);
 
     final List<MmsConnection.Listener> connectionListeners = new ArrayList<>();
 
     private String host;
 
+    /** The directory of the persistent outbox, or null if messages are not persisted. */
+    private String outboxDirectory;
+
+    /** The format of broadcast payloads and endpoint invocations, or null to use the format of the connection. */
+    private MessageFormatType payloadFormat;
+
+    /** The key broadcasts are signed with, or null if broadcasts are not signed. */
+    private PrivateKey privateKey;
+
+    /** Resolves the public keys of senders, or null if signatures of received broadcasts are not verified. */
+    private Function<MaritimeId, PublicKey> publicKeyResolver;
+
+    /** The maximum interval between position reports when adaptive position reporting is enabled. */
+    private long positionReportMaxIntervalNanos = TimeUnit.SECONDS.toNanos(30);
+
+    /** The deviation in meters that triggers a position report, or 0 to report at every keep alive. */
+    private double positionReportThreshold;
+
     private PositionReader positionReader = new PositionReaderSimulator().forArea(Circle.create(0, 0, 50000));
 
     final Properties properties = new Properties();
@@ -206,6 +250,261 @@ public class MmsClientConfiguration {
         return this;
     }
 
+    /**
+     * Returns the format of broadcast payloads and endpoint invocation parameters sent by the client, or null if
+     * {@link MessageFormatType#HUMAN_READABLE} is used.
+     *
+     * @return the format of broadcast payloads and endpoint invocation parameters sent by the client
+     * @see #setPayloadFormat(MessageFormatType)
+     */
+    public MessageFormatType getPayloadFormat() {
+        return payloadFormat;
+    }
+
+    /**
+     * Sets the format of broadcast payloads and endpoint invocation parameters sent by the client. The format is tagged
+     * on each message, so receivers can read payloads in any format. Except for clients that are older than payload
+     * formats, which can only read {@link MessageFormatType#HUMAN_READABLE} payloads. So the default is null, which
+     * means {@link MessageFormatType#HUMAN_READABLE}, independently of the format of the connection (see
+     * {@link #setUseBinary(boolean)}).
+     *
+     * @param payloadFormat
+     *            the payload format, or null to use {@link MessageFormatType#HUMAN_READABLE}
+     * @return this configuration
+     */
+    public MmsClientConfiguration setPayloadFormat(MessageFormatType payloadFormat) {
+        this.payloadFormat = payloadFormat;
+        return this;
+    }
+
+    /**
+     * Returns the key broadcasts sent by the client are signed with, or null if broadcasts are not signed.
+     *
+     * @return the key broadcasts sent by the client are signed with
+     * @see #setPrivateKey(PrivateKey)
+     */
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    /**
+     * Sets the key broadcasts sent by the client are signed with. Receivers that verify signatures (see
+     * {@link #setPublicKeyResolver(Function)}) must be able to resolve the matching public key from the id of the
+     * client. The key must be usable with the SHA512withECDSA algorithm. The default is null, which means that
+     * broadcasts are not signed.
+     *
+     * @param privateKey
+     *            the key to sign broadcasts with, or null to not sign broadcasts
+     * @return this configuration
+     */
+    public MmsClientConfiguration setPrivateKey(PrivateKey privateKey) {
+        this.privateKey = privateKey;
+        return this;
+    }
+
+    /**
+     * Returns the function that resolves the public keys of senders, or null if signatures are not verified.
+     *
+     * @return the function that resolves the public keys of senders
+     * @see #setPublicKeyResolver(Function)
+     */
+    public Function<MaritimeId, PublicKey> getPublicKeyResolver() {
+        return publicKeyResolver;
+    }
+
+    /**
+     * Sets the function that resolves the public key of a sender. If set, the signatures of received broadcasts are
+     * verified before they are delivered, and broadcasts that are unsigned, from unknown senders (the function returns
+     * null) or with an invalid signature are dropped. Keys are cached, so the function is normally only invoked once
+     * per sender. The default is null, which means that signatures are not verified.
+     *
+     * @param publicKeyResolver
+     *            the function that resolves public keys, or null to not verify signatures
+     * @return this configuration
+     */
+    public MmsClientConfiguration setPublicKeyResolver(Function<MaritimeId, PublicKey> publicKeyResolver) {
+        this.publicKeyResolver = publicKeyResolver;
+        return this;
+    }
+
+    /**
+     * Returns whether or not broadcast subscriptions are registered with the server.
+     *
+     * @return whether or not broadcast subscriptions are registered with the server
+     * @see #setBroadcastFiltering(boolean)
+     */
+    public boolean useBroadcastFiltering() {
+        return broadcastFiltering;
+    }
+
+    /**
+     * Sets whether or not the types and areas of broadcast subscriptions are registered with the server. If enabled,
+     * the server only sends broadcasts the client has subscribed to, instead of sending all broadcasts and having the
+     * client discard the ones nobody is interested in. The default is false.
+     *
+     * @param broadcastFiltering
+     *            whether or not to register broadcast subscriptions with the server
+     * @return this configuration
+     */
+    public MmsClientConfiguration setBroadcastFiltering(boolean broadcastFiltering) {
+        this.broadcastFiltering = broadcastFiltering;
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of broadcasts waiting to be delivered to a single subscription.
+     *
+     * @return the maximum number of broadcasts waiting to be delivered to a single subscription
+     * @see #setBroadcastMailboxSize(int)
+     */
+    public int getBroadcastMailboxSize() {
+        return broadcastMailboxSize;
+    }
+
+    /**
+     * Sets the maximum number of broadcasts waiting to be delivered to a single subscription, when broadcasts are
+     * delivered in order. If a consumer cannot keep up, broadcasts are dropped according to the overflow policy, so a
+     * slow consumer cannot use up all memory. The default is 1024.
+     *
+     * @param broadcastMailboxSize
+     *            the maximum number of broadcasts waiting to be delivered to a single subscription
+     * @return this configuration
+     * @see #setBroadcastOverflowPolicy(MmsBroadcastOverflowPolicy)
+     */
+    public MmsClientConfiguration setBroadcastMailboxSize(int broadcastMailboxSize) {
+        if (broadcastMailboxSize <= 0) {
+            throw new IllegalArgumentException("broadcastMailboxSize must be positive, was " + broadcastMailboxSize);
+        }
+        this.broadcastMailboxSize = broadcastMailboxSize;
+        return this;
+    }
+
+    /**
+     * Returns what to do with a broadcast if the mailbox of a subscription is full.
+     *
+     * @return what to do with a broadcast if the mailbox of a subscription is full
+     */
+    public MmsBroadcastOverflowPolicy getBroadcastOverflowPolicy() {
+        return broadcastOverflowPolicy;
+    }
+
+    /**
+     * Sets what to do with a broadcast if the mailbox of a subscription is full. The default is
+     * {@link MmsBroadcastOverflowPolicy#DROP_OLDEST}.
+     *
+     * @param broadcastOverflowPolicy
+     *            what to do with a broadcast if the mailbox of a subscription is full
+     * @return this configuration
+     */
+    public MmsClientConfiguration setBroadcastOverflowPolicy(MmsBroadcastOverflowPolicy broadcastOverflowPolicy) {
+        this.broadcastOverflowPolicy = requireNonNull(broadcastOverflowPolicy);
+        return this;
+    }
+
+    /**
+     * Returns the executor broadcasts are delivered on, or null if the threads of the client are used.
+     *
+     * @return the executor broadcasts are delivered on
+     */
+    public Executor getDispatchExecutor() {
+        return dispatchExecutor;
+    }
+
+    /**
+     * Sets the executor that broadcasts are delivered to consumers on. By default the client uses its own threads.
+     * For example, a virtual thread per task executor can be used on runtimes that support virtual threads, so every
+     * delivery gets its own thread. The executor is not shut down when the client is closed.
+     *
+     * @param dispatchExecutor
+     *            the executor broadcasts are delivered on, or null to use the threads of the client
+     * @return this configuration
+     */
+    public MmsClientConfiguration setDispatchExecutor(Executor dispatchExecutor) {
+        this.dispatchExecutor = dispatchExecutor;
+        return this;
+    }
+
+    /**
+     * Returns whether or not broadcasts are delivered to each subscription in the order they were received.
+     *
+     * @return whether or not broadcasts are delivered to each subscription in the order they were received
+     */
+    public boolean isOrderedBroadcastDelivery() {
+        return orderedBroadcastDelivery;
+    }
+
+    /**
+     * Sets whether or not broadcasts are delivered to each subscription one at a time, in the order they were
+     * received. Every subscription has its own mailbox, so a slow consumer only delays broadcasts to itself. If
+     * false, broadcasts are delivered concurrently as soon as they are received, and the same consumer may be invoked
+     * by several threads at once. The default is true.
+     *
+     * @param orderedBroadcastDelivery
+     *            whether or not broadcasts are delivered to each subscription in the order they were received
+     * @return this configuration
+     */
+    public MmsClientConfiguration setOrderedBroadcastDelivery(boolean orderedBroadcastDelivery) {
+        this.orderedBroadcastDelivery = orderedBroadcastDelivery;
+        return this;
+    }
+
+    /**
+     * Returns the default time to wait for the result of a remote invocation.
+     *
+     * @param unit
+     *            the unit of the timeout
+     * @return the default time to wait for the result of a remote invocation
+     * @see #setInvocationTimeout(long, TimeUnit)
+     */
+    public long getInvocationTimeout(TimeUnit unit) {
+        return unit.convert(invocationTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets the default time to wait for the result of a remote invocation, after which the invocation fails with a
+     * {@link java.util.concurrent.TimeoutException}. A shorter timeout can be used for a single invocation with
+     * {@link net.maritimecloud.net.EndpointInvocationFuture#orTimeout(long, TimeUnit)}. The default is 5 minutes.
+     *
+     * @param timeout
+     *            the timeout
+     * @param unit
+     *            the unit of the timeout
+     * @return this configuration
+     */
+    public MmsClientConfiguration setInvocationTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive, was " + timeout);
+        }
+        invocationTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of remote invocations waiting for a result.
+     *
+     * @return the maximum number of remote invocations waiting for a result
+     * @see #setMaxPendingInvocations(int)
+     */
+    public int getMaxPendingInvocations() {
+        return maxPendingInvocations;
+    }
+
+    /**
+     * Sets the maximum number of remote invocations waiting for a result. Invoking a remote endpoint when the maximum
+     * has been reached fails with a {@link java.util.concurrent.RejectedExecutionException}. The default is 10000.
+     *
+     * @param maxPendingInvocations
+     *            the maximum number of remote invocations waiting for a result
+     * @return this configuration
+     */
+    public MmsClientConfiguration setMaxPendingInvocations(int maxPendingInvocations) {
+        if (maxPendingInvocations <= 0) {
+            throw new IllegalArgumentException("maxPendingInvocations must be positive, was " + maxPendingInvocations);
+        }
+        this.maxPendingInvocations = maxPendingInvocations;
+        return this;
+    }
+
     public long getKeepAlive(TimeUnit unit) {
         return unit.convert(keepAliveNanos, TimeUnit.NANOSECONDS);
     }
@@ -215,6 +514,90 @@ public class MmsClientConfiguration {
         return this;
     }
 
+    /**
+     * Returns the directory of the persistent outbox, or null if messages are not persisted.
+     *
+     * @return the directory of the persistent outbox
+     * @see #setOutboxDirectory(String)
+     */
+    public String getOutboxDirectory() {
+        return outboxDirectory;
+    }
+
+    /**
+     * Sets a directory in which messages are persisted until they have been acknowledged by the server. Messages sent
+     * while the client is offline, or that were not acknowledged before the client was stopped, are sent when the
+     * client connects again, even after a restart. If the server still has the session of the client, the session is
+     * resumed and no message is delivered twice. Position reports are never persisted. The directory must not be used
+     * by more than one client at a time. The default is null, which means that messages are not persisted.
+     *
+     * @param outboxDirectory
+     *            the directory of the outbox, or null if messages should not be persisted
+     * @return this configuration
+     */
+    public MmsClientConfiguration setOutboxDirectory(String outboxDirectory) {
+        this.outboxDirectory = outboxDirectory;
+        return this;
+    }
+
+    /**
+     * Returns the maximum interval between position reports when adaptive position reporting is enabled.
+     *
+     * @param unit
+     *            the unit of the interval
+     * @return the maximum interval between position reports
+     * @see #setPositionReportThreshold(double)
+     */
+    public long getPositionReportMaxInterval(TimeUnit unit) {
+        return unit.convert(positionReportMaxIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets the maximum interval between position reports when adaptive position reporting is enabled. The default is
+     * 30 seconds.
+     *
+     * @param time
+     *            the maximum interval
+     * @param unit
+     *            the unit of the interval
+     * @return this configuration
+     * @see #setPositionReportThreshold(double)
+     */
+    public MmsClientConfiguration setPositionReportMaxInterval(long time, TimeUnit unit) {
+        positionReportMaxIntervalNanos = unit.toNanos(time);
+        return this;
+    }
+
+    /**
+     * Returns the deviation in meters that triggers a position report, or 0 if adaptive position reporting is
+     * disabled.
+     *
+     * @return the deviation in meters that triggers a position report
+     * @see #setPositionReportThreshold(double)
+     */
+    public double getPositionReportThreshold() {
+        return positionReportThreshold;
+    }
+
+    /**
+     * Enables adaptive position reporting. Instead of reporting its position at every keep alive, the client reports
+     * its course and speed, from which the server extrapolates the position of the client. A new report is only sent
+     * when the actual position deviates from the extrapolated position by more than the specified number of meters, or
+     * when the maximum interval between reports (see {@link #setPositionReportMaxInterval(long, TimeUnit)}) has
+     * passed. The default is 0, which means that the position is reported at every keep alive.
+     *
+     * @param meters
+     *            the deviation in meters that triggers a position report, or 0 to report at every keep alive
+     * @return this configuration
+     */
+    public MmsClientConfiguration setPositionReportThreshold(double meters) {
+        if (meters < 0) {
+            throw new IllegalArgumentException("meters must be non-negative, was " + meters);
+        }
+        this.positionReportThreshold = meters;
+        return this;
+    }
+
     public List<MmsConnection.Listener> getListeners() {
         return connectionListeners;
     }
@@ -62,6 +62,12 @@ public final class MmsConnectionClosingCode implements Serializable {
 
     public static final MmsConnectionClosingCode CLIENT_TIMEOUT = new MmsConnectionClosingCode(4108, "Client Timeout");
 
+    /**
+     * Sent from a MMS server that is too busy to accept new connections, for example, because all clients reconnect
+     * after the server has been restarted. The welcome message sent before closing tells the client when to try again.
+     */
+    public static final MmsConnectionClosingCode SERVER_BUSY = new MmsConnectionClosingCode(4110, "Server Busy");
+
     /** Sent in case of an authentication error */
     public static final MmsConnectionClosingCode AUTHENTICATION_ERROR = new MmsConnectionClosingCode(5001, "Authentication Error");
 
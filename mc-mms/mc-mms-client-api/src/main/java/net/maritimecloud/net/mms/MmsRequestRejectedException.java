@@ -0,0 +1,53 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.net.mms;
+
+/**
+ * Thrown when the MMS server rejects a request, for example because the client has exceeded its broadcast rate.
+ *
+ * @author Kasper Nielsen
+ */
+public class MmsRequestRejectedException extends MmsConnectionException {
+
+    /** serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The error code sent by the server. */
+    private final int errorCode;
+
+    /** The number of milliseconds to wait before retrying, or 0 if not specified. */
+    private final long retryAfterMillis;
+
+    public MmsRequestRejectedException(String message, int errorCode, long retryAfterMillis) {
+        super(message);
+        this.errorCode = errorCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return the error code sent by the server
+     */
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * @return the number of milliseconds the server has asked the client to wait before retrying the request, or 0 if
+     *         the server did not specify it
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
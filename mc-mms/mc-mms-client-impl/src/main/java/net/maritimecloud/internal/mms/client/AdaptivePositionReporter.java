@@ -0,0 +1,114 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.client;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.internal.mms.messages.PositionReport;
+import net.maritimecloud.internal.util.DeadReckoning;
+import net.maritimecloud.util.geometry.PositionTime;
+
+/**
+ * Decides when the position of the client must be reported when adaptive position reporting is enabled. The course
+ * and speed of the client are estimated from recent positions and sent with each report, so the server can
+ * extrapolate the position until the next report. A new report is only needed when the actual position deviates from
+ * the extrapolated position by more than a threshold, or when the maximum interval between reports has passed.
+ *
+ * @author Kasper Nielsen
+ */
+class AdaptivePositionReporter {
+
+    /** The course and speed are estimated from the positions within this window. */
+    static final long VELOCITY_WINDOW_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    /** The latest report, or null if no report has been made. */
+    private PositionReport latest;
+
+    /** The time of the latest report (System.nanoTime). */
+    private long latestNanos;
+
+    /** The maximum interval between reports in nanoseconds. */
+    private final long maxIntervalNanos;
+
+    /** Recent positions, oldest first. */
+    private final ArrayDeque<PositionTime> samples = new ArrayDeque<>();
+
+    /** The maximum deviation in meters from the extrapolated position before a new report is needed. */
+    private final double threshold;
+
+    /**
+     * Creates a new reporter.
+     *
+     * @param threshold
+     *            the maximum deviation in meters from the extrapolated position before a new report is needed
+     * @param maxIntervalNanos
+     *            the maximum interval between reports in nanoseconds
+     */
+    AdaptivePositionReporter(double threshold, long maxIntervalNanos) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be positive, was " + threshold);
+        }
+        this.threshold = threshold;
+        this.maxIntervalNanos = maxIntervalNanos;
+    }
+
+    /**
+     * Returns the report to send, or null if the server can extrapolate the current position well enough.
+     *
+     * @param current
+     *            the current position of the client, or null if unknown
+     * @param nanos
+     *            the current time (System.nanoTime)
+     * @param force
+     *            whether or not a report must be returned
+     * @return the report to send, or null if no report is needed
+     */
+    synchronized PositionReport next(PositionTime current, long nanos, boolean force) {
+        boolean due = force || latest == null || nanos - latestNanos >= maxIntervalNanos;
+        PositionReport pr = new PositionReport();
+        if (current != null) {
+            PositionTime last = samples.peekLast();
+            if (last == null || current.getTime() > last.getTime()) {
+                samples.addLast(current);
+            }
+            while (samples.size() > 1 && current.getTime() - samples.peekFirst().getTime() > VELOCITY_WINDOW_MILLIS) {
+                samples.pollFirst();
+            }
+            if (!due) {
+                if (!latest.hasPositionTime()) {
+                    due = true; // the first known position
+                } else {
+                    PositionTime predicted = DeadReckoning.extrapolate(latest.getPositionTime(), latest.getCourse(),
+                            latest.getSpeed(), current.getTime());
+                    due = predicted.rhumbLineDistanceTo(current) > threshold;
+                }
+            }
+            pr.setPositionTime(current);
+            PositionTime oldest = samples.peekFirst();
+            long millis = current.getTime() - oldest.getTime();
+            if (millis > 0) {
+                pr.setCourse((float) oldest.rhumbLineBearingTo(current));
+                pr.setSpeed((float) (oldest.rhumbLineDistanceTo(current) * 1000 / millis));
+            }
+        }
+        if (!due) {
+            return null;
+        }
+        latest = pr;
+        latestNanos = nanos;
+        return pr;
+    }
+}
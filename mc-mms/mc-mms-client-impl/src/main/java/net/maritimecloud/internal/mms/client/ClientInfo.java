@@ -21,8 +21,10 @@ import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 
 import net.maritimecloud.core.id.MaritimeId;
+import net.maritimecloud.internal.net.util.PayloadFormat;
 import net.maritimecloud.internal.util.logging.Logger;
 import net.maritimecloud.message.MessageFormatType;
 import net.maritimecloud.net.mms.MmsClientConfiguration;
@@ -39,8 +41,12 @@ public class ClientInfo {
 
     private static final Logger LOGGER = Logger.get(ClientInfo.class);
 
+    /** The smallest number of milliseconds to wait before reconnecting. */
     public static int RECONNECT_TIME_DELAY = 2000;
 
+    /** The largest number of milliseconds to wait before reconnecting. */
+    public static int MAX_RECONNECT_TIME_DELAY = 120_000;
+
     final Map<String, String> clientConnectString;
 
     /** The id of this client */
@@ -48,8 +54,17 @@ public class ClientInfo {
 
     private volatile long latestConnectionAttempt = -1;
 
+    /** The previous delay before reconnecting, or 0 after having connected successfully. Guarded by this. */
+    private long reconnectDelay;
+
+    /** The time (epoch millis) before which the server has asked us not to connect, or 0. Guarded by this. */
+    private long retryAfter;
+
     private final MessageFormatType messageFormatType;
 
+    /** The format of broadcast payloads and endpoint invocation parameters sent by this client. */
+    private final PayloadFormat payloadFormat;
+
     /** Responsible for creating a current position and time. */
     final PositionReader positionReader;
 
@@ -61,6 +76,8 @@ public class ClientInfo {
         this.positionReader = configuration.getPositionReader();
         this.messageFormatType = configuration.useBinary() ? MessageFormatType.MACHINE_READABLE
                 : MessageFormatType.HUMAN_READABLE;
+        // JSON unless set explicitly, as older clients can only read JSON payloads
+        this.payloadFormat = PayloadFormat.of(configuration.getPayloadFormat());
         clientConnectString = new HashMap<>();
         clientConnectString.put("version", "0.3");
         if (configuration.properties().getName() != null) {
@@ -134,6 +151,42 @@ public class ClientInfo {
         return latestConnectionAttempt;
     }
 
+    /**
+     * Returns the number of milliseconds to wait before the next connection attempt. If the server has told us when to
+     * try again, that time is used, with a little jitter. Otherwise the delay grows exponentially with decorrelated
+     * jitter, so clients that were disconnected at the same time, for example, because the server was restarted, do
+     * not reconnect in lockstep.
+     *
+     * @return the number of milliseconds to wait before the next connection attempt
+     */
+    public synchronized long nextReconnectDelay() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        long hint = retryAfter - System.currentTimeMillis();
+        retryAfter = 0;
+        if (hint > 0) {
+            return hint + r.nextLong(hint / 10 + 1);
+        }
+        long base = RECONNECT_TIME_DELAY;
+        long upper = Math.max(base, Math.max(base, reconnectDelay) * 3);
+        reconnectDelay = Math.min(MAX_RECONNECT_TIME_DELAY, base + r.nextLong(upper - base + 1));
+        return reconnectDelay;
+    }
+
+    /** Invoked when the client has successfully connected, resets the delay before reconnecting. */
+    public synchronized void resetReconnectDelay() {
+        reconnectDelay = 0;
+    }
+
+    /**
+     * Invoked when the server is too busy to accept a connection.
+     *
+     * @param millis
+     *            the number of milliseconds the server has asked us to wait before connecting again
+     */
+    public synchronized void setRetryAfter(long millis) {
+        retryAfter = System.currentTimeMillis() + Math.min(millis, MAX_RECONNECT_TIME_DELAY);
+    }
+
     /**
      * @return the messageFormatType
      */
@@ -141,6 +194,13 @@ public class ClientInfo {
         return messageFormatType;
     }
 
+    /**
+     * @return the payloadFormat
+     */
+    public PayloadFormat getPayloadFormat() {
+        return payloadFormat;
+    }
+
     public URI getServerURI() {
         return serverUri;
     }
@@ -22,6 +22,7 @@ import net.maritimecloud.internal.mms.client.connection.ClientConnection;
 import net.maritimecloud.internal.mms.messages.PositionReport;
 import net.maritimecloud.internal.util.logging.Logger;
 import net.maritimecloud.net.mms.MmsClientConfiguration;
+import net.maritimecloud.util.geometry.PositionTime;
 
 import org.cakeframework.container.concurrent.ScheduleAtFixedRate;
 
@@ -32,6 +33,9 @@ import org.cakeframework.container.concurrent.ScheduleAtFixedRate;
  */
 public class ConnectionKeepAlive {
 
+    /** Decides when to report the position if adaptive position reporting is enabled, otherwise null. */
+    private final AdaptivePositionReporter adaptive;
+
     /** The logger. */
     private static final Logger LOGGER = Logger.get(ConnectionKeepAlive.class);
 
@@ -51,6 +55,9 @@ public class ConnectionKeepAlive {
         this.connection = requireNonNull(connection);
         this.clientInfo = requireNonNull(clientInfo);
         this.minimumSignalDuration = builder.getKeepAlive(TimeUnit.NANOSECONDS);
+        double threshold = builder.getPositionReportThreshold();
+        this.adaptive = threshold > 0 ? new AdaptivePositionReporter(threshold,
+                builder.getPositionReportMaxInterval(TimeUnit.NANOSECONDS)) : null;
     }
 
     @ScheduleAtFixedRate(value = 1, unit = TimeUnit.SECONDS)
@@ -62,8 +69,16 @@ public class ConnectionKeepAlive {
         long now = System.nanoTime();
         // Only send a message if it is more MINIMUM_SIGNAL_DURATION time since the last signal
         if (force || now - latestTime > minimumSignalDuration) {
-            PositionReport pr = new PositionReport();
-            clientInfo.getCurrentPosition().ifPresent(pt -> pr.setPositionTime(pt)); // set available position
+            PositionTime current = clientInfo.getCurrentPosition().orElse(null);
+            PositionReport pr;
+            if (adaptive == null) {
+                pr = new PositionReport().setPositionTime(current); // set available position
+            } else {
+                pr = adaptive.next(current, now, force);
+                if (pr == null) {
+                    return; // the server can extrapolate our position
+                }
+            }
             connection.sendMessage(pr);
             LOGGER.debug("Sending ping, [position = " + pr.getPositionTime() + "]");
             latestTime = now;
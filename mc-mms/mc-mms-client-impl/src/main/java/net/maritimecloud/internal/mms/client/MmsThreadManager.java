@@ -16,8 +16,10 @@ package net.maritimecloud.internal.mms.client;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -27,13 +29,8 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import net.maritimecloud.internal.net.util.DefaultEndpointInvocationFuture;
-import net.maritimecloud.internal.util.concurrent.CompletableFuture;
-import net.maritimecloud.internal.util.concurrent.ConcurrentWeakHashSet;
-import net.maritimecloud.net.mms.MmsClientClosedException;
-import net.maritimecloud.util.Binary;
+import net.maritimecloud.net.mms.MmsClientConfiguration;
 
-import org.cakeframework.container.lifecycle.RunOnStart;
 import org.cakeframework.container.lifecycle.RunOnStop;
 
 /**
@@ -52,33 +49,77 @@ public class MmsThreadManager {
     final ThreadPoolExecutor es = new ThreadPoolExecutor(0, 100, 60L, TimeUnit.SECONDS,
             new SynchronousQueue<Runnable>(), new DefaultThreadFactory("GeneralPool", Executors.defaultThreadFactory()));
 
-    /** A list of all outstanding futures. Is used to cancel each future in case of shutdown. */
-    final ConcurrentWeakHashSet<DefaultEndpointInvocationFuture<?>> futures = new ConcurrentWeakHashSet<>();
+    /** The maximum number of threads delivering broadcasts in order. */
+    static final int MAX_DISPATCHER_THREADS = 100;
+
+    /**
+     * Delivers broadcasts in order to each subscription. A subscription uses at most one thread at a time. If more
+     * than {@link #MAX_DISPATCHER_THREADS} subscriptions are busy, the remaining ones wait in the queue. A task gives up
+     * its thread after delivering a limited number of broadcasts, so a slow consumer only delays other subscriptions
+     * when all threads are busy.
+     */
+    final ThreadPoolExecutor dispatcher;
+
+    /** The executor specified by the user to deliver broadcasts on, or null. */
+    final Executor dispatchExecutor;
+
+    /** Verifies the signatures of received broadcasts, one thread per processor. */
+    final ThreadPoolExecutor verifier;
 
     /** A {@link ScheduledExecutorService} for scheduling various tasks. */
     final ScheduledThreadPoolExecutor ses = new ScheduledThreadPoolExecutor(2, new DefaultThreadFactory("Scheduler",
             Executors.defaultThreadFactory()));
 
-    public <T> DefaultEndpointInvocationFuture<T> create(Binary messageId) {
-        DefaultEndpointInvocationFuture<T> t = new DefaultEndpointInvocationFuture<>(new CompletableFuture<T>(),
-                messageId);
-        futures.add(t);
-        return t;
+    public MmsThreadManager(MmsClientConfiguration configuration) {
+        this.dispatchExecutor = configuration.getDispatchExecutor();
+        int processors = Runtime.getRuntime().availableProcessors();
+        this.verifier = new ThreadPoolExecutor(processors, processors, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DefaultThreadFactory("SignatureVerifier",
+                        Executors.defaultThreadFactory()));
+        verifier.allowCoreThreadTimeOut(true);
+        this.dispatcher = new ThreadPoolExecutor(MAX_DISPATCHER_THREADS, MAX_DISPATCHER_THREADS, 60L,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DefaultThreadFactory("Dispatcher",
+                        Executors.defaultThreadFactory()));
+        dispatcher.allowCoreThreadTimeOut(true);
     }
 
+    /**
+     * Returns the executor to deliver broadcasts on.
+     *
+     * @param ordered
+     *            whether or not each task delivers all pending broadcasts of a subscription in order, in which case
+     *            there is at most one task per subscription
+     * @return the executor to deliver broadcasts on
+     */
+    public Executor getBroadcastExecutor(boolean ordered) {
+        if (dispatchExecutor != null) {
+            return dispatchExecutor;
+        }
+        return ordered ? dispatcher : es;
+    }
 
-    public void broadcastReceived(Runnable r) {
-        es.execute(r);
+    /**
+     * Returns the executor to verify the signatures of received broadcasts on.
+     *
+     * @return the executor to verify the signatures of received broadcasts on
+     */
+    public Executor getSignatureExecutor() {
+        return verifier;
     }
 
-    @RunOnStart
-    public void start() {
-        // Clean up weak references
-        ses.schedule(new Runnable() {
-            public void run() {
-                futures.cleanup();
-            }
-        }, 1, TimeUnit.MINUTES);
+    /**
+     * Runs the specified task periodically until the client is stopped.
+     *
+     * @param command
+     *            the task to run
+     * @param period
+     *            the period between runs
+     * @param unit
+     *            the unit of the period
+     * @return a future that can be used to cancel the task
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long period, TimeUnit unit) {
+        return ses.scheduleAtFixedRate(command, period, period, unit);
     }
 
     /**
@@ -114,13 +155,9 @@ public class MmsThreadManager {
     @RunOnStop
     public void stop() {
         es.shutdown();
+        dispatcher.shutdown();
+        verifier.shutdown();
         ses.shutdown();
-        for (DefaultEndpointInvocationFuture<?> f : futures) {
-            if (!f.isDone()) {
-                f.completeExceptionally(new MmsClientClosedException("OOps"));
-            }
-        }
-
         for (Runnable r : ses.getQueue()) {
             ScheduledFuture<?> sf = (ScheduledFuture<?>) r;
             sf.cancel(false);
@@ -16,37 +16,52 @@ package net.maritimecloud.internal.mms.client.broadcast;
 
 import static java.util.Objects.requireNonNull;
 
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import net.maritimecloud.core.id.MaritimeId;
 import net.maritimecloud.internal.message.MessageHelper;
-import net.maritimecloud.internal.message.text.json.JsonMessageReader;
 import net.maritimecloud.internal.mms.client.ClientInfo;
 import net.maritimecloud.internal.mms.client.MmsThreadManager;
 import net.maritimecloud.internal.mms.client.connection.ClientConnection;
+import net.maritimecloud.internal.mms.client.endpoint.ClientEndpointManager;
+import net.maritimecloud.internal.mms.messages.ServerRequestError;
+import net.maritimecloud.internal.mms.messages.services.Services;
 import net.maritimecloud.internal.net.messages.Broadcast;
 import net.maritimecloud.internal.net.messages.BroadcastAck;
+import net.maritimecloud.internal.net.messages.BroadcastAckBatch;
 import net.maritimecloud.internal.net.messages.MessageHasher;
+import net.maritimecloud.internal.net.messages.SignatureVerifier;
 import net.maritimecloud.internal.net.util.DefaultAcknowledgement;
 import net.maritimecloud.internal.net.util.DefaultMessageHeader;
+import net.maritimecloud.internal.net.util.PayloadFormat;
 import net.maritimecloud.internal.util.Coverage;
 import net.maritimecloud.internal.util.MessageStore;
 import net.maritimecloud.internal.util.concurrent.CompletableFuture;
 import net.maritimecloud.internal.util.logging.Logger;
-import net.maritimecloud.message.MessageSerializer;
 import net.maritimecloud.net.BroadcastConsumer;
 import net.maritimecloud.net.BroadcastMessage;
 import net.maritimecloud.net.BroadcastSubscription;
 import net.maritimecloud.net.DispatchedMessage;
 import net.maritimecloud.net.MessageHeader;
 import net.maritimecloud.net.mms.MmsBroadcastOptions;
+import net.maritimecloud.net.mms.MmsBroadcastOverflowPolicy;
 import net.maritimecloud.net.mms.MmsClient;
+import net.maritimecloud.net.mms.MmsClientConfiguration;
 import net.maritimecloud.net.mms.MmsClientClosedException;
+import net.maritimecloud.net.mms.MmsRequestRejectedException;
 import net.maritimecloud.util.Binary;
 import net.maritimecloud.util.geometry.Area;
 import net.maritimecloud.util.geometry.Circle;
@@ -66,9 +81,27 @@ public class ClientBroadcastManager {
     /** The logger. */
     static final Logger LOG = Logger.get(ClientBroadcastManager.class);
 
+    /** The maximum number of public keys of senders to cache. */
+    static final int MAX_CACHED_KEYS = 1024;
+
+    /** The maximum number of broadcasts with a verified signature to remember. */
+    static final int MAX_VERIFIED_BROADCASTS = 4096;
+
     /** The network */
     private final ClientConnection connection;
 
+    /** The executor broadcasts are delivered on. */
+    final Executor dispatchExecutor;
+
+    /** The maximum number of broadcasts waiting to be delivered to a single subscription. */
+    final int mailboxSize;
+
+    /** Whether or not broadcasts are delivered to each subscription in the order they were received. */
+    final boolean orderedDelivery;
+
+    /** What to do with a broadcast if the mailbox of a subscription is full. */
+    final MmsBroadcastOverflowPolicy overflowPolicy;
+
     /** Broadcast that have been sent. Will be cleared regularly */
     private final MessageStore<DispatchedBroadcast> dispatchedBroadcasts = new MessageStore<>();
 
@@ -81,22 +114,51 @@ public class ClientBroadcastManager {
     /** A map of local broadcast subscribers. */
     final ConcurrentHashMap<String, SubscriptionSet> subscribers = new ConcurrentHashMap<>();
 
-    /** Thread manager takes care of asynchronous processing. */
-    private final MmsThreadManager threadManager;
-
     private final ClientInfo info;
 
     final ScheduledExecutorService ses;
 
+    /** Used for registering subscriptions with the server, or null if subscriptions are not registered. */
+    private final ClientEndpointManager endpointManager;
+
+    /** Whether or not subscriptions have been registered with the server in the current session. */
+    private boolean subscriptionsRegistered;
+
+    /** Verifies the signatures of received broadcasts, or null if signatures are not verified. */
+    private final SignatureVerifier verifier;
+
+    /**
+     * The delivery of the latest broadcast received from each sender whose signature is being verified. Used for
+     * delivering broadcasts from the same sender in the order they were received.
+     */
+    private final ConcurrentHashMap<String, java.util.concurrent.CompletableFuture<Void>> verifying =
+            new ConcurrentHashMap<>();
+
+    /** The key sent broadcasts are signed with, or null if broadcasts are not signed. */
+    private final PrivateKey privateKey;
+
     public ClientBroadcastManager(ClientInfo info, MmsThreadManager threadManager, ClientConnection connection,
-            ThreadManager tmm) {
+            ThreadManager tmm, ClientEndpointManager endpointManager, MmsClientConfiguration configuration) {
         this.connection = requireNonNull(connection);
-        this.threadManager = requireNonNull(threadManager);
         this.info = requireNonNull(info);
+        this.endpointManager = configuration.useBroadcastFiltering() ? requireNonNull(endpointManager) : null;
+        this.orderedDelivery = configuration.isOrderedBroadcastDelivery();
+        this.dispatchExecutor = threadManager.getBroadcastExecutor(orderedDelivery);
+        this.mailboxSize = configuration.getBroadcastMailboxSize();
+        this.overflowPolicy = configuration.getBroadcastOverflowPolicy();
         ses = tmm.getScheduledExecutor("");
+        Function<MaritimeId, PublicKey> resolver = configuration.getPublicKeyResolver();
+        this.verifier = resolver == null ? null : new SignatureVerifier(id -> resolver.apply(MaritimeId.create(id)),
+                MAX_CACHED_KEYS, MAX_VERIFIED_BROADCASTS, threadManager.getSignatureExecutor());
+        this.privateKey = configuration.getPrivateKey();
 
         connection.subscribe(BroadcastAck.class, (a, e) -> onBroadcastAck(e));
+        connection.subscribe(BroadcastAckBatch.class, (a, e) -> onBroadcastAckBatch(e));
         connection.subscribe(Broadcast.class, (a, e) -> onBroadcastMessage(e));
+        connection.subscribe(ServerRequestError.class, (a, e) -> onRequestError(e));
+        if (this.endpointManager != null) {
+            connection.addNewSessionListener(() -> newSession());
+        }
     }
 
     /**
@@ -123,15 +185,62 @@ public class ClientBroadcastManager {
                 throw new MmsClientClosedException("The mms client has been shutdown");
             }
             SubscriptionSet set = subscribers.computeIfAbsent(type, e -> new SubscriptionSet(this, type));
-            return set.newSubscription(bd, listener, area == null ? Coverage.ALL
+            BroadcastSubscription s = set.newSubscription(bd, listener, area == null ? Coverage.ALL
                     : new Coverage.StaticAreaCoverage(area));
+            subscriptionsChanged();
+            return s;
         } finally {
             subscribeLock.readLock().unlock();
         }
     }
 
-    DispatchedMessage brodcast(BroadcastMessage message, Area area, int radius,
-            Consumer<? super MessageHeader> ackConsumer) {
+    /** Invoked whenever a subscription has been added or cancelled. */
+    void subscriptionsChanged() {
+        if (endpointManager != null) {
+            registerSubscriptions(false);
+        }
+    }
+
+    /**
+     * Registers the current subscriptions with the server. The server keeps a single set of types and a single area
+     * per session, so the types of all subscriptions are sent together with the union of their areas. Broadcasts
+     * from outside the area of a particular subscription are still filtered out locally.
+     *
+     * @param newSession
+     *            whether or not a new session has been created, in which case nothing is sent if there are no
+     *            subscriptions
+     */
+    synchronized void registerSubscriptions(boolean newSession) {
+        List<String> types = new ArrayList<>();
+        Area area = null;
+        boolean everywhere = false;
+        for (SubscriptionSet set : subscribers.values()) {
+            if (!set.listeners.isEmpty()) {
+                types.add(set.broadcastType);
+                for (SubscriptionSet.DefaultSubscription s : set.listeners) {
+                    if (s.coverage instanceof Coverage.StaticAreaCoverage) {
+                        Area a = ((Coverage.StaticAreaCoverage) s.coverage).getArea();
+                        area = area == null ? a : area.unionWith(a);
+                    } else {
+                        everywhere = true;
+                    }
+                }
+            }
+        }
+        if (newSession) {
+            subscriptionsRegistered = false;
+        }
+        // A new session receives all broadcasts until it registers subscriptions. If the connection is disabled, the
+        // subscriptions are registered when the next session is created
+        if ((!types.isEmpty() || subscriptionsRegistered) && connection.isEnabled()) {
+            Services s = endpointManager.endpointFrom(null, Services.class);
+            s.subscribe(types, everywhere ? null : area);
+            subscriptionsRegistered = true;
+        }
+    }
+
+    DispatchedMessage brodcast(BroadcastMessage message, Area area, int radius, int timeToLive,
+            Consumer<? super MessageHeader> ackConsumer, Consumer<? super MmsRequestRejectedException> rejected) {
         String broadcastType = MessageHelper.getName(message);
 
         Broadcast broadcast = new Broadcast();
@@ -150,13 +259,24 @@ public class ClientBroadcastManager {
         }
         broadcast.setArea(broadcastArea);
         broadcast.setAckBroadcast(ackConsumer != null);
-        broadcast.setPayload(Binary.copyFromUtf8(MessageSerializer.writeToJSON(message,
-                MessageHelper.getSerializer(message))));
+        if (timeToLive > 0) {
+            broadcast.setTimeToLive(timeToLive);
+        }
+        PayloadFormat format = info.getPayloadFormat();
+        broadcast.setPayload(format.write(message, MessageHelper.getSerializer(message)));
+        broadcast.setPayloadFormat(format.toTag());
 
         broadcast.setMessageId(MessageHasher.calculateSHA256(broadcast));
+        if (privateKey != null) {
+            try {
+                broadcast.setSignature(MessageHasher.sign(broadcast, privateKey));
+            } catch (SignatureException e) {
+                throw new IllegalStateException("Could not sign broadcast", e);
+            }
+        }
 
         DefaultAcknowledgement ack = new DefaultAcknowledgement();
-        DispatchedBroadcast db = new DispatchedBroadcast(broadcast, ack, ackConsumer);
+        DispatchedBroadcast db = new DispatchedBroadcast(broadcast, ack, ackConsumer, rejected);
 
         sendLock.readLock().lock();
         try {
@@ -190,6 +310,37 @@ public class ClientBroadcastManager {
         }
     }
 
+    /**
+     * Invoked whenever the server has aggregated the acks of a number of receivers. Each ack is relayed exactly as if
+     * it had been received on its own.
+     *
+     * @param batch
+     *            the batch of acks
+     */
+    private void onBroadcastAckBatch(BroadcastAckBatch batch) {
+        DispatchedBroadcast f = dispatchedBroadcasts.find(batch.getAckForMessageId());
+        if (f != null) { // Just ignore the acks if we do not have a matching dispatched broadcast
+            for (BroadcastAck ack : batch.getAcks()) {
+                f.acked(ack);
+            }
+        }
+    }
+
+    /**
+     * Invoked whenever the server has rejected a request. Only rejected broadcasts are handled here.
+     *
+     * @param error
+     *            the error that was received
+     */
+    private void onRequestError(ServerRequestError error) {
+        DispatchedBroadcast f = dispatchedBroadcasts.find(error.getRequestId());
+        if (f != null) {
+            int code = error.hasErrorCode() ? error.getErrorCode() : 0;
+            long retryAfter = error.hasRetryAfter() ? error.getRetryAfter() : 0;
+            f.rejected(new MmsRequestRejectedException(error.getErrorMessage(), code, retryAfter));
+        }
+    }
+
     /**
      * Invoked whenever a broadcast message is received from a remote actor.
      *
@@ -198,23 +349,87 @@ public class ClientBroadcastManager {
      */
     private void onBroadcastMessage(Broadcast broadcast) {
         SubscriptionSet set = subscribers.get(broadcast.getBroadcastType());
-        if (set != null && !set.listeners.isEmpty()) {
-            MessageHeader header = new DefaultMessageHeader(MaritimeId.create(broadcast.getSenderId()),
-                    broadcast.getMessageId(), broadcast.getSenderTimestamp(), broadcast.getSenderPosition());
-
-            // Deliver to each listener
-            for (SubscriptionSet.DefaultSubscription s : set.listeners) {
-                BroadcastMessage message;
-                JsonMessageReader r = new JsonMessageReader(broadcast.getPayload().toStringUtf8());
+        if (set == null || set.listeners.isEmpty()) {
+            return;
+        } else if (verifier == null) {
+            deliver(set, broadcast);
+        } else if (!broadcast.hasSignature() || !broadcast.hasSenderId()) {
+            LOG.warn("Ignoring unsigned broadcast " + broadcast.getMessageId() + " from " + broadcast.getSenderId());
+        } else {
+            // Signatures are verified in parallel on the threads of the verifier. But a broadcast is not delivered
+            // until the previous broadcast from the same sender has been delivered, to keep the order of the sender.
+            String sender = broadcast.getSenderId();
+            java.util.concurrent.CompletableFuture<Boolean> valid = verifier.verify(broadcast);
+            java.util.concurrent.CompletableFuture<Void> delivered = verifying.compute(sender,
+                    (k, previous) -> (previous == null ? valid : previous.thenCompose(v -> valid)).handle(
+                            (isValid, cause) -> deliverVerified(set, broadcast, isValid, cause)));
+            delivered.thenRun(() -> verifying.remove(sender, delivered));
+        }
+    }
+
+    /**
+     * Delivers a received broadcast whose signature has been verified.
+     *
+     * @param set
+     *            the subscribers of the type of broadcast
+     * @param broadcast
+     *            the broadcast to deliver
+     * @param valid
+     *            whether or not the broadcast has a valid signature
+     * @param cause
+     *            the exception thrown while verifying the signature, or null
+     * @return null
+     */
+    private Void deliverVerified(SubscriptionSet set, Broadcast broadcast, Boolean valid, Throwable cause) {
+        if (cause != null) {
+            LOG.error("Could not verify broadcast " + broadcast.getMessageId(), cause);
+        } else if (!valid) {
+            LOG.warn("Ignoring broadcast " + broadcast.getMessageId() + " with an invalid signature from "
+                    + broadcast.getSenderId());
+        } else {
+            deliver(set, broadcast);
+        }
+        return null;
+    }
+
+    /**
+     * Delivers a received broadcast to all local subscribers.
+     *
+     * @param set
+     *            the subscribers of the type of broadcast
+     * @param broadcast
+     *            the broadcast to deliver
+     */
+    private void deliver(SubscriptionSet set, Broadcast broadcast) {
+        MessageHeader header = new DefaultMessageHeader(MaritimeId.create(broadcast.getSenderId()),
+                broadcast.getMessageId(), broadcast.getSenderTimestamp(), broadcast.getSenderPosition());
+
+        PayloadFormat format;
+        try {
+            format = PayloadFormat.fromTag(broadcast.getPayloadFormat());
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Ignoring broadcast " + broadcast.getMessageId() + ", " + e.getMessage());
+            return;
+        }
+
+        // Decode the payload once per deserializer, and share the immutable message between all listeners
+        HashMap<BroadcastDeserializer, BroadcastMessage> decoded = new HashMap<>(2);
+        for (SubscriptionSet.DefaultSubscription s : set.listeners) {
+            if (!s.isCovered(header)) {
+                continue;
+            }
+            BroadcastMessage message = decoded.get(s.bd);
+            if (message == null) {
                 try {
-                    message = s.bd.convert(broadcast.getBroadcastType(), r);
+                    message = s.bd.convert(broadcast.getBroadcastType(),
+                            format.newMessageReader(broadcast.getPayload())).immutable();
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    LOG.error("Could not read broadcast of type " + broadcast.getBroadcastType(), e);
                     return;
                 }
-
-                threadManager.broadcastReceived(() -> s.deliver(header, message));
+                decoded.put(s.bd, message);
             }
+            s.dispatch(header, message);
         }
     }
 
@@ -231,6 +446,7 @@ public class ClientBroadcastManager {
             sendLock.writeLock().lock();
             try {
                 isShutdown = true;
+                verifying.clear();
                 // Cancel all acknowledgements
                 MmsClientClosedException e = new MmsClientClosedException("Client has been shutdown");
                 dispatchedBroadcasts.forEach(b -> b.shutdownClient(e));
@@ -245,7 +461,9 @@ public class ClientBroadcastManager {
     }
 
     public void newSession() {
-        // send subscriptions.
+        if (endpointManager != null) {
+            registerSubscriptions(true);
+        }
 
         // Spoergsmmalet er om vi skal serializer alle beskeder, dvs total order af beskeder?
 
@@ -256,6 +474,7 @@ public class ClientBroadcastManager {
 
     public DispatchedMessage broadcast(BroadcastMessage message, MmsBroadcastOptions options) {
         MmsBroadcastOptions op = options.immutable();
-        return brodcast(message, op.getArea(), op.getRadius(), op.getRemoteReceive());
+        return brodcast(message, op.getArea(), op.getRadius(), (int) op.getTimeToLive(TimeUnit.SECONDS),
+                op.getRemoteReceive(), op.getRejected());
     }
 }
@@ -25,6 +25,7 @@ import net.maritimecloud.internal.net.util.DefaultMessageHeader;
 import net.maritimecloud.internal.util.logging.Logger;
 import net.maritimecloud.net.MessageHeader;
 import net.maritimecloud.net.mms.MmsClientClosedException;
+import net.maritimecloud.net.mms.MmsRequestRejectedException;
 
 /**
  * A broadcast that has been sent. Is primarily used for relaying acks back to a user that specifies an ack consumers.
@@ -42,11 +43,15 @@ class DispatchedBroadcast extends DefaultDispatchedMessage {
     /** The type of the broadcast. */
     final String broadcastType;
 
+    /** An optional consumer of a rejection by the server. */
+    final Consumer<? super MmsRequestRejectedException> rejectionConsumer;
+
     DispatchedBroadcast(Broadcast broadcast, DefaultAcknowledgement acknowledgement,
-            Consumer<? super MessageHeader> consumer) {
+            Consumer<? super MessageHeader> consumer, Consumer<? super MmsRequestRejectedException> rejectionConsumer) {
         super(broadcast.getMessageId(), broadcast.getSenderPosition(), broadcast.getSenderTimestamp(), acknowledgement);
         this.ackConsumer = consumer;
         this.broadcastType = broadcast.getBroadcastType();
+        this.rejectionConsumer = rejectionConsumer;
     }
 
     /**
@@ -60,7 +65,32 @@ class DispatchedBroadcast extends DefaultDispatchedMessage {
     }
 
     /**
-     * This method is invoked whenever we receive an ack from a remote client.
+     * Invoked whenever the server has rejected the broadcast, for example because the client has exceeded its
+     * broadcast rate. The server acknowledges the broadcast at the protocol level before it has decided whether or
+     * not to relay it, so the broadcast may already have been marked as relayed. The rejection is always passed to the
+     * rejection consumer, if any, and is logged if it could not be reported in any other way.
+     *
+     * @param e
+     *            the rejection
+     */
+    void rejected(MmsRequestRejectedException e) {
+        boolean reported = relayed.completeExceptionally(e);
+        if (rejectionConsumer != null) {
+            try {
+                rejectionConsumer.accept(e);
+                reported = true;
+            } catch (Exception ex) {
+                LOG.error("Failed to process rejection of broadcast with id = " + getMessageId(), ex);
+            }
+        }
+        if (!reported) {
+            LOG.warn("Broadcast with id = " + getMessageId() + " was rejected by the server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * This method is invoked whenever we receive an ack from a remote client. The ack might be part of a batch, in
+     * which case it does not include the id of the broadcast.
      *
      * @param ack
      *            the ack that we received
@@ -69,7 +99,7 @@ class DispatchedBroadcast extends DefaultDispatchedMessage {
         if (ackConsumer != null) { // only makes sense if user has specified an ack consumer
             try {
                 MaritimeId id = MaritimeId.create(ack.getReceiverId());
-                MessageHeader header = new DefaultMessageHeader(id, ack.getAckForMessageId(),
+                MessageHeader header = new DefaultMessageHeader(id, getMessageId(),
                         ack.getReceiverTimestamp(), ack.getReceiverPosition());
                 if (!relayed.isDone()) {
                     // highly unlikely we will get an ack back before we have registered that the mms server has
@@ -78,7 +108,7 @@ class DispatchedBroadcast extends DefaultDispatchedMessage {
                 }
                 ackConsumer.accept(header);
             } catch (Exception e) {
-                LOG.error("Failed to process broadcast ack for id = " + ack.getAckForMessageId(), e);
+                LOG.error("Failed to process broadcast ack for id = " + getMessageId(), e);
             }
         }
     }
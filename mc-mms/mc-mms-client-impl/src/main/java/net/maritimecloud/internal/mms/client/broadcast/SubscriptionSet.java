@@ -18,7 +18,12 @@ import static java.util.Objects.requireNonNull;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import net.maritimecloud.internal.util.Coverage;
@@ -27,6 +32,7 @@ import net.maritimecloud.net.BroadcastConsumer;
 import net.maritimecloud.net.BroadcastMessage;
 import net.maritimecloud.net.BroadcastSubscription;
 import net.maritimecloud.net.MessageHeader;
+import net.maritimecloud.net.mms.MmsBroadcastOverflowPolicy;
 import net.maritimecloud.util.Binary;
 
 /**
@@ -39,6 +45,9 @@ class SubscriptionSet {
     /** The logger. */
     static final Logger LOG = Logger.get(SubscriptionSet.class);
 
+    /** The maximum number of broadcasts delivered by a single task, before giving other subscriptions a chance. */
+    static final int MAX_DELIVERIES_PER_TASK = 64;
+
     /** The broadcast manager. */
     final ClientBroadcastManager broadcastManager;
 
@@ -65,17 +74,41 @@ class SubscriptionSet {
     void remove(DefaultSubscription s) {
         broadcastManager.subscribeLock.readLock().lock();
         try {
-            listeners.remove(s);
+            if (listeners.remove(s)) {
+                broadcastManager.subscriptionsChanged();
+            }
         } finally {
             broadcastManager.subscribeLock.readLock().unlock();
         }
     }
 
+    /**
+     * A subscription. When broadcasts are delivered in order, received broadcasts are put in a bounded mailbox, which
+     * is drained by at most one task at a time.
+     */
     class DefaultSubscription implements BroadcastSubscription {
 
         /** The number of broadcast messages received. */
         private final AtomicLong count = new AtomicLong();
 
+        /** The number of broadcasts dropped because the mailbox was full. */
+        private final AtomicLong dropped = new AtomicLong();
+
+        /** The delivery lag of the latest broadcast in nanoseconds. */
+        private volatile long latestLag;
+
+        /** Broadcasts waiting to be delivered, in the order they were received. */
+        private final ConcurrentLinkedQueue<Delivery> mailbox = new ConcurrentLinkedQueue<>();
+
+        /** The longest delivery lag in nanoseconds. */
+        private final AtomicLong maxLag = new AtomicLong();
+
+        /** The number of broadcasts in the mailbox. */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /** Whether or not a task draining the mailbox has been submitted. */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
         /** A unique id of this subscription. */
         private final Binary id = Binary.random(32);
 
@@ -97,6 +130,81 @@ class SubscriptionSet {
         @Override
         public void cancel() {
             remove(this);
+            // drop anything that has not been delivered, a concurrent drain may be polling the mailbox as well
+            while (mailbox.poll() != null) {
+                pending.decrementAndGet();
+            }
+        }
+
+        /**
+         * Dispatches a received broadcast for delivery to the consumer of this subscription.
+         *
+         * @param broadcastHeader
+         *            the header of the broadcast
+         * @param message
+         *            the broadcast
+         */
+        void dispatch(MessageHeader broadcastHeader, BroadcastMessage message) {
+            Delivery d = new Delivery(broadcastHeader, message, System.nanoTime());
+            if (!broadcastManager.orderedDelivery) {
+                execute(() -> deliver(d));
+                return;
+            }
+            if (pending.incrementAndGet() > broadcastManager.mailboxSize) {
+                if (broadcastManager.overflowPolicy == MmsBroadcastOverflowPolicy.DROP_NEWEST) {
+                    pending.decrementAndGet();
+                    dropped.incrementAndGet();
+                    return;
+                } else if (mailbox.poll() != null) {
+                    pending.decrementAndGet();
+                    dropped.incrementAndGet();
+                }
+            }
+            mailbox.add(d);
+            schedule();
+        }
+
+        /** Delivers broadcasts from the mailbox, until it is empty or the task has delivered enough. */
+        private void drain() {
+            try {
+                for (int i = 0; i < MAX_DELIVERIES_PER_TASK; i++) {
+                    Delivery d = mailbox.poll();
+                    if (d == null) {
+                        break;
+                    }
+                    pending.decrementAndGet();
+                    deliver(d);
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            schedule(); // in case more broadcasts have arrived
+        }
+
+        private void deliver(Delivery d) {
+            long lag = System.nanoTime() - d.received;
+            latestLag = lag;
+            maxLag.accumulateAndGet(lag, Math::max);
+            deliver(d.header, d.message);
+        }
+
+        private boolean execute(Runnable r) {
+            try {
+                broadcastManager.dispatchExecutor.execute(r);
+                return true;
+            } catch (RejectedExecutionException e) {
+                if (!broadcastManager.isShutdown) {
+                    LOG.error("Could not deliver broadcast of type " + broadcastType, e);
+                }
+                return false;
+            }
+        }
+
+        /** Submits a task draining the mailbox, unless one has already been submitted. */
+        private void schedule() {
+            if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true) && !execute(this::drain)) {
+                scheduled.set(false); // broadcasts are delivered when the next one arrives
+            }
         }
 
         @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -105,7 +213,7 @@ class SubscriptionSet {
             // Naar man broadcaster til et area har man ingen position med, Vi bliver sgu noedt til at sende et area
             // med.
 
-            if (broadcastHeader.getSenderPosition() == null || coverage.isCovered(broadcastHeader.getSenderPosition())) {
+            if (isCovered(broadcastHeader)) {
                 try {
                     ((BroadcastConsumer) listener).onMessage(broadcastHeader, message);
                     count.incrementAndGet();
@@ -116,6 +224,18 @@ class SubscriptionSet {
             }
         }
 
+        /**
+         * Returns whether or not a broadcast with the specified header should be delivered to this subscription.
+         *
+         * @param broadcastHeader
+         *            the header of the broadcast
+         * @return whether or not the broadcast should be delivered to this subscription
+         */
+        boolean isCovered(MessageHeader broadcastHeader) {
+            return broadcastHeader.getSenderPosition() == null
+                    || coverage.isCovered(broadcastHeader.getSenderPosition());
+        }
+
         /** {@inheritDoc} */
         @Override
         public Binary getId() {
@@ -128,10 +248,53 @@ class SubscriptionSet {
             return count.get();
         }
 
+        /** {@inheritDoc} */
+        @Override
+        public long getNumberOfDroppedMessages() {
+            return dropped.get();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int getNumberOfPendingMessages() {
+            return Math.max(0, pending.get());
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long getDeliveryLag(TimeUnit unit) {
+            return unit.convert(latestLag, TimeUnit.NANOSECONDS);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long getMaxDeliveryLag(TimeUnit unit) {
+            return unit.convert(maxLag.get(), TimeUnit.NANOSECONDS);
+        }
+
         /** {@inheritDoc} */
         @Override
         public String getBroadcastType() {
             return broadcastType;
         }
     }
+
+    /** A broadcast waiting to be delivered. */
+    static final class Delivery {
+
+        /** The header of the broadcast. */
+        final MessageHeader header;
+
+        /** The broadcast. */
+        final BroadcastMessage message;
+
+        /** The time the broadcast was received, as given by {@link System#nanoTime()}. */
+        final long received;
+
+        Delivery(MessageHeader header, BroadcastMessage message, long received) {
+            this.header = header;
+            this.message = message;
+            this.received = received;
+        }
+    }
 }
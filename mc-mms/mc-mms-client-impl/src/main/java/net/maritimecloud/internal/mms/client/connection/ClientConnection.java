@@ -16,6 +16,8 @@ package net.maritimecloud.internal.mms.client.connection;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -24,10 +26,12 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 import net.maritimecloud.internal.mms.client.ClientInfo;
+import net.maritimecloud.internal.mms.client.connection.session.Outbox;
 import net.maritimecloud.internal.mms.client.connection.session.Session;
 import net.maritimecloud.internal.mms.client.connection.session.SessionListener;
 import net.maritimecloud.internal.mms.client.connection.transport.ClientTransportFactory;
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority;
 import net.maritimecloud.internal.util.concurrent.CompletableFuture;
 import net.maritimecloud.internal.util.logging.Logger;
 import net.maritimecloud.message.Message;
@@ -58,6 +62,9 @@ public class ClientConnection {
 
     private final ReentrantLock lock = new ReentrantLock();
 
+    /** The persistent outbox, or null if messages are not persisted. */
+    private final Outbox outbox;
+
     volatile Session session;
 
     final SessionListener sessionListener = new SessionListener() {
@@ -79,10 +86,22 @@ public class ClientConnection {
     /** Consumers of messages. */
     private final CopyOnWriteArraySet<Consumer<MmsMessage>> subscribers = new CopyOnWriteArraySet<>();
 
+    /** Invoked whenever a new session has been created. */
+    private final CopyOnWriteArraySet<Runnable> newSessionListeners = new CopyOnWriteArraySet<>();
+
     public ClientConnection(ClientTransportFactory ctm, ClientInfo info, MmsClientConfiguration b) {
         this.ctm = requireNonNull(ctm);
         this.clientInfo = requireNonNull(info);
         this.connectionListener = new MmsConnectionListenerInvoker(this, b);
+        if (b.getOutboxDirectory() == null) {
+            this.outbox = null;
+        } else {
+            try {
+                this.outbox = Outbox.open(Paths.get(b.getOutboxDirectory()));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open outbox in " + b.getOutboxDirectory(), e);
+            }
+        }
     }
 
     public boolean await(boolean connected, long timeout, TimeUnit unit) throws InterruptedException {
@@ -112,10 +131,13 @@ public class ClientConnection {
     }
 
     void listenerConnectionClosed(MmsConnectionClosingCode closingCode) {
+        boolean newSession = false;
         lock.lock();
         try {
             if (isEnabled) { // Reconnect
-                session = Session.createNewSessionAndConnect(ctm, clientInfo, sessionListener, connectionListener);
+                session = Session.createNewSessionAndConnect(ctm, clientInfo, sessionListener, connectionListener,
+                        outbox);
+                newSession = true;
             } else {
                 session = null;
             }
@@ -123,6 +145,19 @@ public class ClientConnection {
         } finally {
             lock.unlock();
         }
+        if (newSession) {
+            listenerNewSession();
+        }
+    }
+
+    void listenerNewSession() {
+        for (Runnable r : newSessionListeners) {
+            try {
+                r.run();
+            } catch (Exception e) {
+                LOGGER.error("Failed to invoke new session listener", e);
+            }
+        }
     }
 
     void listenerOnMessage(MmsMessage message) {
@@ -137,26 +172,42 @@ public class ClientConnection {
     }
 
     public CompletableFuture<Void> sendMessage(Message b) {
+        return sendMessage(b, MmsMessagePriority.of(b));
+    }
+
+    /**
+     * Sends a message with the specified priority, instead of the default priority of the type of message.
+     *
+     * @param b
+     *            the message to send
+     * @param priority
+     *            the priority of the message
+     * @return a future that is completed when the message has been acknowledged by the server
+     */
+    public CompletableFuture<Void> sendMessage(Message b, MmsMessagePriority priority) {
         Session session = this.session;
         if (session == null) {
             throw new IllegalStateException("The mms connection has not been enabled.");
         } else {
             CompletableFuture<Void> result = new CompletableFuture<>();
             // Save message for later sending
-            session.sendMessage(b, result);
+            session.sendMessage(b, priority, result);
             return result;
         }
     }
 
     public void setEnabled(boolean isEnabled) {
         LOGGER.debug(isEnabled ? "Enabling" : "Disabling" + " connection to the MMS Server");
+        boolean newSession = false;
         lock.lock();
         try {
             if (isEnabled != this.isEnabled) {
                 this.isEnabled = isEnabled;
                 if (isEnabled) {
                     if (session == null) {
-                        session = Session.createNewSessionAndConnect(ctm, clientInfo, sessionListener, connectionListener);
+                        session = Session.createNewSessionAndConnect(ctm, clientInfo, sessionListener,
+                                connectionListener, outbox);
+                        newSession = true;
                     }
                 } else { // Disable
                     if (session != null) { // only disconnect if we have an active session
@@ -168,11 +219,29 @@ public class ClientConnection {
         } finally {
             lock.unlock();
         }
+        if (newSession) {
+            listenerNewSession();
+        }
     }
 
     @RunOnStop
     public void shutdown() {
         setEnabled(false);
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    /**
+     * Adds a listener that is invoked whenever a new session has been created. Messages sent from the listener are
+     * the first messages sent in the new session. The listener is not invoked if an existing session is resumed, as
+     * the server still has all state of the session.
+     *
+     * @param listener
+     *            the listener to add
+     */
+    public void addNewSessionListener(Runnable listener) {
+        newSessionListeners.add(requireNonNull(listener));
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,545 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.client.connection.session;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority;
+import net.maritimecloud.internal.util.logging.Logger;
+import net.maritimecloud.message.Message;
+import net.maritimecloud.util.Binary;
+
+/**
+ * A persistent outbox of messages that have not yet been acknowledged by the server. The outbox survives restarts of
+ * the client, so messages queued while offline are not lost, and the session can be resumed with the server where it
+ * left off. Messages are kept on disk and not in the heap, so a large backlog does not use memory.
+ * <p>
+ * The outbox is an append-only log of memory-mapped segment files, named by their sequence number. Every record
+ * starts with its length, followed by a type and a body. The length is written last, and a length of 0 marks the end
+ * of a segment, so a record that was only partly written before the process died is ignored.
+ *
+ * <pre>
+ * ADD    seq:int64 priority:byte message:bytes   a message was added to the outbox (MmsMessage binary format)
+ * SENT   seq:int64 messageId:int64               a message was sent with the specified message id
+ * ACK    messageId:int64                         all messages up to and including the id have been received
+ * RESET  messageId:int64                         the session was resumed (0 if a new session was created), all
+ *                                                messages up to and including the id have been received and all
+ *                                                other messages must be renumbered
+ * </pre>
+ *
+ * The id of the session and the id of the latest message received from the server are kept in a separate file,
+ * which is overwritten in place. Segments are deleted in the background, oldest first, when all messages added in
+ * them have been acknowledged.
+ * <p>
+ * Messages are resent in order, and messages acknowledged by a resumed session are never resent. If the server no
+ * longer has the session, messages that were sent but not acknowledged are resent in a new session.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Kasper Nielsen
+ */
+public class Outbox implements Closeable {
+
+    /** The default size of a segment. */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    /** The logger. */
+    static final Logger LOGGER = Logger.get(Outbox.class);
+
+    /** The magic number of the session file. */
+    static final int MAGIC = 0x4D434F42; // MCOB
+
+    /** The maximum length of a session id. */
+    static final int MAX_SESSION_ID_LENGTH = 256;
+
+    /** The offsets of the fields in the session file. */
+    static final int SESSION_LATEST_RECEIVED = 4, SESSION_ID_LENGTH = 12, SESSION_ID = 16;
+
+    /** The types of records. */
+    static final byte ADD = 1, SENT = 2, ACK = 3, RESET = 4;
+
+    /** Deletes segments in the background. */
+    static final Executor COMPACTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("MMSClient-OutboxCompactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** The directory of the outbox. */
+    private final Path directory;
+
+    /** Live messages, in the order they were added. */
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+
+    /** The id of the latest message acknowledged by the server. */
+    private long latestAck;
+
+    /** The sequence number of the next message added. */
+    private long nextSeq = 1;
+
+    /** Whether or not the session of the outbox can still be resumed. */
+    private boolean resumable = true;
+
+    /** The size of new segments. */
+    private final int segmentSize;
+
+    /** The segments by their number, oldest first. The last segment is the one that is appended to. */
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    /** Messages that have been sent but not acknowledged, in the order of their message id. */
+    private final ArrayDeque<Entry> sent = new ArrayDeque<>();
+
+    /** The session file. */
+    private final MappedByteBuffer session;
+
+    private Outbox(Path directory, int segmentSize, MappedByteBuffer session) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.session = session;
+    }
+
+    /**
+     * Acknowledges all sent messages up to and including the specified message id.
+     *
+     * @param messageId
+     *            the id of the latest message received by the server
+     */
+    public synchronized void acked(long messageId) {
+        if (messageId > latestAck) {
+            ack(messageId);
+            append(ACK, 8).putLong(messageId);
+            commit();
+            compact();
+        }
+    }
+
+    /**
+     * Returns whether or not the specified message has not yet been acknowledged.
+     *
+     * @param seq
+     *            the sequence number of the message
+     * @return whether or not the message has not yet been acknowledged
+     */
+    synchronized boolean contains(long seq) {
+        return entries.containsKey(seq);
+    }
+
+    private void ack(long messageId) {
+        while (!sent.isEmpty() && sent.peekFirst().messageId <= messageId) {
+            Entry e = sent.pollFirst();
+            entries.remove(e.seq);
+            e.segment.live--;
+        }
+        latestAck = Math.max(latestAck, messageId);
+    }
+
+    /**
+     * Adds a message to the outbox.
+     *
+     * @param message
+     *            the message to add
+     * @param priority
+     *            the priority of the message
+     * @return the sequence number of the message
+     * @throws IOException
+     *             if the message could not be serialized
+     */
+    public synchronized long add(Message message, MmsMessagePriority priority) throws IOException {
+        byte[] data = new MmsMessage(message).toBinary();
+        long seq = nextSeq++;
+        MappedByteBuffer b = append(ADD, 9 + data.length);
+        b.putLong(seq).put((byte) priority.ordinal());
+        Entry e = new Entry(seq, priority, current(), b.position(), data.length);
+        b.put(data);
+        commit();
+        entries.put(seq, e);
+        e.segment.live++;
+        return seq;
+    }
+
+    /** Starts a new record, and returns the buffer to write the body of the record to. */
+    private MappedByteBuffer append(byte type, int bodyLength) {
+        Segment s = current();
+        int length = 1 + bodyLength;
+        // leave room for the length of the record and for the length marking the end of the segment
+        if (s == null || s.position + 4 + length + 4 > s.buffer.capacity()) {
+            long number = s == null ? 1 : s.number + 1;
+            try {
+                s = Segment.create(directory, number, Math.max(segmentSize, 4 + length + 4));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not create outbox segment " + number, e);
+            }
+            segments.put(number, s);
+        }
+        s.pending = length;
+        s.buffer.position(s.position + 4);
+        s.buffer.put(type);
+        return s.buffer;
+    }
+
+    /** Closes the outbox, the segments are unmapped when garbage collected. */
+    @Override
+    public synchronized void close() {
+        session.force();
+        for (Segment s : segments.values()) {
+            s.buffer.force();
+        }
+    }
+
+    /** Commits the record started by {@link #append(byte, int)} by writing its length. */
+    private void commit() {
+        Segment s = current();
+        s.buffer.putInt(s.position, s.pending);
+        s.position += 4 + s.pending;
+    }
+
+    /** Deletes the oldest segments if all messages added in them have been acknowledged. */
+    private void compact() {
+        // The segments are deleted in order, as a segment may contain records for messages added in older segments
+        for (Iterator<Segment> iterator = segments.values().iterator(); iterator.hasNext();) {
+            Segment s = iterator.next();
+            if (s.live > 0 || s == current()) {
+                return;
+            }
+            iterator.remove();
+            COMPACTOR.execute(() -> {
+                try {
+                    Files.deleteIfExists(s.path);
+                } catch (IOException e) {
+                    LOGGER.error("Could not delete outbox segment " + s.path, e);
+                }
+            });
+        }
+    }
+
+    private Segment current() {
+        return segments.isEmpty() ? null : segments.lastEntry().getValue();
+    }
+
+    /**
+     * Returns the id of the latest message received from the server.
+     *
+     * @return the id of the latest message received from the server
+     */
+    public synchronized long getLatestReceivedId() {
+        return session.getLong(SESSION_LATEST_RECEIVED);
+    }
+
+    /**
+     * Returns the id of the current session, or null if there is no session.
+     *
+     * @return the id of the current session
+     */
+    public synchronized Binary getSessionId() {
+        int length = session.getInt(SESSION_ID_LENGTH);
+        if (length <= 0) {
+            return null;
+        }
+        byte[] id = new byte[length];
+        for (int i = 0; i < length; i++) {
+            id[i] = session.get(SESSION_ID + i);
+        }
+        return Binary.copyFrom(id);
+    }
+
+    /**
+     * Records that a new session has been created. Messages that were sent but not acknowledged in the previous
+     * session are sent again in the new session.
+     *
+     * @param sessionId
+     *            the id of the new session
+     */
+    public synchronized void newSession(Binary sessionId) {
+        byte[] id = sessionId.toByteArray();
+        if (id.length > MAX_SESSION_ID_LENGTH) {
+            throw new IllegalArgumentException("Session id is too long, length = " + id.length);
+        }
+        for (int i = 0; i < id.length; i++) {
+            session.put(SESSION_ID + i, id[i]);
+        }
+        session.putInt(SESSION_ID_LENGTH, id.length);
+        session.putLong(SESSION_LATEST_RECEIVED, 0);
+        resumed(0);
+        latestAck = 0; // message ids start from 1 in the new session
+    }
+
+    /**
+     * Returns all messages that have not been acknowledged. Messages that have been sent come first in the order they
+     * were sent, followed by messages that have not been sent in the order they were added.
+     *
+     * @return all messages that have not been acknowledged
+     */
+    synchronized List<Entry> pending() {
+        List<Entry> result = new ArrayList<>(sent);
+        for (Entry e : entries.values()) {
+            if (e.messageId == 0) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads a message that has not yet been acknowledged.
+     *
+     * @param seq
+     *            the sequence number of the message
+     * @return the message, or null if the message has been acknowledged
+     */
+    public synchronized Message read(long seq) {
+        Entry e = entries.get(seq);
+        if (e == null) {
+            return null;
+        }
+        byte[] data = new byte[e.length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = e.segment.buffer.get(e.offset + i);
+        }
+        try {
+            return MmsMessage.parseBinaryMessage(data).getM();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read message " + seq + " from outbox " + directory, ex);
+        }
+    }
+
+    /**
+     * Records the id of the latest message received from the server.
+     *
+     * @param messageId
+     *            the id of the latest message received from the server
+     */
+    public synchronized void received(long messageId) {
+        session.putLong(SESSION_LATEST_RECEIVED, messageId);
+    }
+
+    /**
+     * Records that the session has been resumed. Messages that have not been received by the server are renumbered
+     * when they are sent again.
+     *
+     * @param lastReceivedId
+     *            the id of the latest message received by the server
+     */
+    public synchronized void resumed(long lastReceivedId) {
+        reset(lastReceivedId);
+        append(RESET, 8).putLong(lastReceivedId);
+        commit();
+        compact();
+    }
+
+    private void reset(long lastReceivedId) {
+        ack(lastReceivedId);
+        for (Entry e : sent) {
+            e.messageId = 0;
+        }
+        sent.clear();
+    }
+
+    /**
+     * Records that a message has been sent.
+     *
+     * @param seq
+     *            the sequence number of the message
+     * @param messageId
+     *            the id the message was sent with
+     */
+    public synchronized void sent(long seq, long messageId) {
+        Entry e = entries.get(seq);
+        if (e != null) {
+            e.messageId = messageId;
+            sent.addLast(e);
+            append(SENT, 16).putLong(seq).putLong(messageId);
+            commit();
+        }
+    }
+
+    /**
+     * Returns the id of the session that can be resumed, or null if there is no session to resume. Only the first
+     * session created after the outbox has been opened can resume the session.
+     *
+     * @return the id of the session that can be resumed, or null if there is no session to resume
+     */
+    synchronized Binary takeResumableSession() {
+        Binary id = resumable ? getSessionId() : null;
+        resumable = false;
+        return id;
+    }
+
+    /**
+     * Opens an outbox with the default segment size, creating it if it does not exist.
+     *
+     * @param directory
+     *            the directory of the outbox
+     * @return the outbox
+     * @throws IOException
+     *             if the outbox could not be opened
+     */
+    public static Outbox open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens an outbox, creating it if it does not exist.
+     *
+     * @param directory
+     *            the directory of the outbox
+     * @param segmentSize
+     *            the size of new segments
+     * @return the outbox
+     * @throws IOException
+     *             if the outbox could not be opened
+     */
+    public static Outbox open(Path directory, int segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        MappedByteBuffer session = map(directory.resolve("session"), SESSION_ID + MAX_SESSION_ID_LENGTH);
+        if (session.getInt(0) != MAGIC) {
+            session.putInt(0, MAGIC);
+        }
+        Outbox o = new Outbox(directory, segmentSize, session);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, "*.log")) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                long number = Long.parseLong(name.substring(0, name.length() - 4));
+                o.segments.put(number, new Segment(p, number, map(p, 0)));
+            }
+        }
+        for (Segment s : o.segments.values()) {
+            o.replay(s);
+        }
+        return o;
+    }
+
+    /** Replays the records of a segment. */
+    private void replay(Segment s) {
+        MappedByteBuffer b = s.buffer;
+        for (;;) {
+            int length = s.position + 4 <= b.capacity() ? b.getInt(s.position) : 0;
+            if (length <= 0 || s.position + 4 + length > b.capacity()) {
+                return;
+            }
+            b.position(s.position + 4);
+            byte type = b.get();
+            if (type == ADD) {
+                long seq = b.getLong();
+                Entry e = new Entry(seq, MmsMessagePriority.values()[b.get()], s, b.position(), length - 10);
+                entries.put(seq, e);
+                s.live++;
+                nextSeq = Math.max(nextSeq, seq + 1);
+            } else if (type == SENT) {
+                Entry e = entries.get(b.getLong());
+                if (e != null) {
+                    e.messageId = b.getLong();
+                    sent.addLast(e);
+                }
+            } else if (type == ACK) {
+                ack(b.getLong());
+            } else if (type == RESET) {
+                long lastReceivedId = b.getLong();
+                reset(lastReceivedId);
+                latestAck = lastReceivedId;
+            }
+            s.position += 4 + length;
+        }
+    }
+
+    private static MappedByteBuffer map(Path p, int minimumSize) throws IOException {
+        try (FileChannel fc = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return fc.map(MapMode.READ_WRITE, 0, Math.max(minimumSize, fc.size()));
+        }
+    }
+
+    /** A message that has not been acknowledged. */
+    static final class Entry {
+
+        /** The length of the message. */
+        final int length;
+
+        /** The id the message was sent with, or 0 if it has not been sent in the current numbering. */
+        long messageId;
+
+        /** The offset of the message in the segment. */
+        final int offset;
+
+        /** The priority of the message. */
+        final MmsMessagePriority priority;
+
+        /** The segment the message was added in. */
+        final Segment segment;
+
+        /** The sequence number of the message. */
+        final long seq;
+
+        Entry(long seq, MmsMessagePriority priority, Segment segment, int offset, int length) {
+            this.seq = seq;
+            this.priority = requireNonNull(priority);
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /** A segment file. */
+    static final class Segment {
+
+        /** The mapped file. */
+        final MappedByteBuffer buffer;
+
+        /** The number of live messages added in this segment. */
+        int live;
+
+        /** The number of the segment. */
+        final long number;
+
+        /** The file. */
+        final Path path;
+
+        /** The length of the record currently being appended. */
+        int pending;
+
+        /** The position of the next record. */
+        int position;
+
+        Segment(Path path, long number, MappedByteBuffer buffer) {
+            this.path = path;
+            this.number = number;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path directory, long number, int size) throws IOException {
+            Path p = directory.resolve(String.format("%019d.log", number));
+            return new Segment(p, number, map(p, size));
+        }
+    }
+}
@@ -22,6 +22,7 @@ import net.maritimecloud.internal.mms.client.ClientInfo;
 import net.maritimecloud.internal.mms.client.connection.transport.ClientTransportFactory;
 import net.maritimecloud.internal.mms.client.connection.transport.ClientTransportListener;
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority;
 import net.maritimecloud.internal.util.concurrent.CompletableFuture;
 import net.maritimecloud.internal.util.logging.Logger;
 import net.maritimecloud.message.Message;
@@ -52,6 +53,9 @@ public class Session {
 
     final ReentrantLock lock = new ReentrantLock();
 
+    /** The outbox of the client, or null if messages are not persisted. */
+    final Outbox outbox;
+
     final ReentrantLock receiveLock = new ReentrantLock();
 
     final SessionSender sender;
@@ -64,9 +68,14 @@ public class Session {
     final ClientTransportListener tl;
 
     Session(ClientTransportFactory ctm, ClientInfo info, SessionListener listener,
-            MmsConnection.Listener connectionListener) {
+            MmsConnection.Listener connectionListener, Outbox outbox) {
         this.ctm = requireNonNull(ctm);
         this.info = requireNonNull(info);
+        this.outbox = outbox;
+        if (outbox != null) { // resume the session persisted in the outbox, if any
+            this.sessionId = outbox.takeResumableSession();
+            this.latestReceivedId = sessionId == null ? 0 : outbox.getLatestReceivedId();
+        }
         this.sender = new SessionSender(this);
         this.listener = requireNonNull(listener);
         this.connectionListener = requireNonNull(connectionListener);
@@ -162,13 +171,38 @@ public class Session {
     }
 
     public void sendMessage(Message message, CompletableFuture<Void> onAck) {
-        sender.send(message, onAck);
+        sendMessage(message, MmsMessagePriority.of(message), onAck);
+    }
+
+    public void sendMessage(Message message, MmsMessagePriority priority, CompletableFuture<Void> onAck) {
+        sender.send(message, priority, onAck);
     }
 
     public static Session createNewSessionAndConnect(ClientTransportFactory ctm, ClientInfo info,
             SessionListener listener, MmsConnection.Listener connectionListener) {
+        return createNewSessionAndConnect(ctm, info, listener, connectionListener, null);
+    }
+
+    /**
+     * Creates a new session and starts connecting it.
+     *
+     * @param ctm
+     *            the factory of transports
+     * @param info
+     *            information about the client
+     * @param listener
+     *            the session listener
+     * @param connectionListener
+     *            the connection listener
+     * @param outbox
+     *            the outbox to persist messages in, or null if messages should not be persisted. If the outbox has a
+     *            session that can be resumed, the session is resumed instead of creating a new one
+     * @return the new session
+     */
+    public static Session createNewSessionAndConnect(ClientTransportFactory ctm, ClientInfo info,
+            SessionListener listener, MmsConnection.Listener connectionListener, Outbox outbox) {
         LOGGER.debug("Creating new session");
-        Session session = new Session(ctm, info, listener, connectionListener);
+        Session session = new Session(ctm, info, listener, connectionListener, outbox);
         session.fullyLock();
         try {
             SessionStateConnecting ssc = new SessionStateConnecting(session, info);
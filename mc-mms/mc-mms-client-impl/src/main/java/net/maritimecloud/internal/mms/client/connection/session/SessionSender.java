@@ -16,219 +16,378 @@ package net.maritimecloud.internal.mms.client.connection.session;
 
 import static java.util.Objects.requireNonNull;
 
-import java.util.AbstractMap;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.locks.Condition;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import net.maritimecloud.internal.mms.client.connection.transport.ClientTransport;
+import net.maritimecloud.internal.mms.messages.PositionReport;
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessageQueue;
 import net.maritimecloud.internal.util.concurrent.CompletableFuture;
+import net.maritimecloud.internal.util.logging.Logger;
 import net.maritimecloud.message.Message;
+import net.maritimecloud.net.mms.MmsConnectionClosingCode;
 
 /**
+ * Sends messages for a session. Messages are queued by priority and are assigned a message id when they are taken
+ * from the queue, so message ids are always sent in increasing order, no matter the priority of each message.
+ * <p>
+ * Threads sending messages or receiving acknowledgements never take a lock. They hand over messages and acks to the
+ * sender thread through lock-free structures, and then wake it up. The sender thread takes the lock once per batch of
+ * messages to assign ids and to record the messages as unacknowledged, and then writes the whole batch to the
+ * transport without holding the lock. The transport writes asynchronously, and may slow down the sender thread if too
+ * many messages are waiting to be written, but never threads sending messages.
+ * <p>
+ * Only the latest position of the client matters, so a position report that has not yet been sent is replaced in
+ * place by a newer one. And when reconnecting, only the latest unacknowledged position report is resent.
+ * <p>
+ * If the session has an {@link Outbox}, all messages except position reports are added to it before they are queued,
+ * and are only read back from it when they are sent. Messages restored from the outbox are sent before any new
+ * messages, once the session has connected.
  *
  * @author Kasper Nielsen
  */
 class SessionSender extends Thread {
 
-    final ReentrantLock lock = new ReentrantLock();
+    /** The logger. */
+    static final Logger LOGGER = Logger.get(SessionSender.class);
 
-    final Session session;
+    /** The maximum number of messages written to the transport in one batch. */
+    static final int MAX_BATCH_SIZE = 64;
 
-    volatile long nextMsgId = 1L;
+    /** The highest message id that has been acknowledged by the remote end. */
+    final AtomicLong acked = new AtomicLong();
 
-    final ConcurrentSkipListMap<Long, UnAcked> futures = new ConcurrentSkipListMap<>();
+    /** Messages that have been sent but that are not yet moved to the priority lanes by the sender thread. */
+    final ConcurrentLinkedQueue<Msg> inbox = new ConcurrentLinkedQueue<>();
 
-    final LinkedList<Msg> messages = new LinkedList<>();
+    /** Guards the priority lanes, the unacknowledged messages and message ids. Never held while writing. */
+    final ReentrantLock lock = new ReentrantLock();
 
-    /** Signaled when the state of the connection manager changes. */
-    final Condition stateChange = lock.newCondition();
+    /** Messages that have not yet been assigned a message id, by priority. Guarded by lock. */
+    final MmsMessageQueue<Msg> messages = new MmsMessageQueue<>();
 
-    final Writer writer = new Writer();
+    /** The id of the next message. Guarded by lock. */
+    long nextMsgId = 1L;
 
-    static final Executor e;
+    /** The position report waiting in the lanes, if any. Newer reports replace it in place. Guarded by lock. */
+    Msg pendingPosition;
 
-    static {
-        e = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    /** Messages restored from the outbox that are not yet back in their lanes. Guarded by lock. */
+    private List<Outbox.Entry> restored;
 
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread t = Executors.defaultThreadFactory().newThread(r);
-                t.setDaemon(true);
-                return t;
-            }
-        });
-    }
+    final Session session;
+
+    /** Messages that have been written but not yet acknowledged. Guarded by lock. */
+    final UnackedRing unacked = new UnackedRing(1L);
 
     SessionSender(Session session) {
         this.session = requireNonNull(session);
+        this.restored = session.outbox == null ? null : session.outbox.pending();
         setDaemon(true);
         setName("MMSClient-SessionSender");
-
     }
 
+    /** Completes the futures of all unacknowledged messages. Must be called while holding the lock. */
     void completeAll() {
-        for (UnAcked m : futures.values()) {
-            m.msg.onAck.complete(null);
-        }
+        unacked.ackUpTo(nextMsgId - 1);
     }
 
+    /**
+     * Invoked whenever the remote end has acknowledged all messages up to and including the specified id.
+     *
+     * @param id
+     *            the id of the latest message received by the remote end
+     */
     void onAck(long id) {
-        lock.lock();
-        try {
-            Entry<Long, SessionSender.UnAcked> e = futures.firstEntry();
-            while (e != null && e.getKey() <= id) {
-                e = futures.pollFirstEntry();
-                e.getValue().msg.onAck.complete(null);
-                e = futures.firstEntry();
-            }
-        } finally {
-            lock.unlock();
+        acked.accumulateAndGet(id, Math::max);
+        LockSupport.unpark(this);
+    }
+
+    /** Invoked when a new session has been created. Must be called while holding the lock. */
+    void newSessionUnderLock() {
+        if (session.outbox != null) {
+            session.outbox.newSession(session.sessionId);
+            requeueRestored();
         }
     }
 
     void reconnectUnderLock(long lastReceivedId) {
-        onAck(lastReceivedId);
+        unacked.ackUpTo(Math.max(acked.get(), lastReceivedId));
+        if (session.outbox != null) {
+            session.outbox.resumed(lastReceivedId);
+        }
+        // Unacked messages are renumbered when they are resent, so they can be put back in their lanes. Newest first,
+        // so any position report older than the latest one is stale and is dropped
+        for (long id = unacked.end - 1; id >= unacked.first; id--) {
+            Msg m = unacked.get(id);
+            if (m.message instanceof PositionReport) {
+                if (pendingPosition != null) {
+                    m.supersededBy(pendingPosition);
+                    continue;
+                }
+                pendingPosition = m;
+            }
+            messages.addFirst(m, m.priority);
+        }
+        requeueRestored();
         nextMsgId = lastReceivedId + 1;
-        for (UnAcked u : futures.descendingMap().values()) {
-            messages.addFirst(u.msg);
+        unacked.reset(nextMsgId);
+        LockSupport.unpark(this);
+    }
+
+    /** Puts the messages restored from the outbox first in their lanes, if they have not been acknowledged since. */
+    private void requeueRestored() {
+        if (restored != null) {
+            for (int i = restored.size() - 1; i >= 0; i--) {
+                Outbox.Entry e = restored.get(i);
+                if (session.outbox.contains(e.seq)) {
+                    messages.addFirst(new Msg(e.seq, e.priority, new CompletableFuture<>()), e.priority);
+                }
+            }
+            restored = null;
         }
-        futures.clear();
-        stateChange.signalAll();
     }
 
     public void run() {
+        List<MmsMessage> batch = new ArrayList<>(MAX_BATCH_SIZE);
         while (!session.isClosed) {
+            ClientTransport transport = null;
             lock.lock();
             try {
+                long ack = acked.get();
+                unacked.ackUpTo(ack);
+                if (session.outbox != null) {
+                    session.outbox.acked(ack);
+                }
+                for (Msg m = inbox.poll(); m != null; m = inbox.poll()) {
+                    enqueue(m);
+                }
                 SessionState s = session.state;
-
                 if (s instanceof SessionStateConnected) {
-                    SessionStateConnected ssc = (SessionStateConnected) s;
-                    Msg poll = messages.poll();
-                    if (poll == Msg.SUP) {
-                        poll = null;
-                    }
-
-                    if (poll != null) {
-                        MmsMessage mms = new MmsMessage(poll.message);
-                        long id = nextMsgId;
-                        mms.setMessageId(id);
-
-                        futures.put(id, new UnAcked(poll, mms));
-                        nextMsgId++;
-                        mms.setLatestReceivedId(session.latestReceivedId);
-                        writer.send(ssc.transport, mms, e);
+                    transport = ((SessionStateConnected) s).transport;
+                    long latestReceivedId = session.latestReceivedId;
+                    while (batch.size() < MAX_BATCH_SIZE && !messages.isEmpty()) {
+                        Msg m = messages.poll();
+                        if (m == pendingPosition) {
+                            pendingPosition = null;
+                        }
+                        Message message = m.message;
+                        if (m.seq != 0) {
+                            try {
+                                message = session.outbox.read(m.seq);
+                            } catch (RuntimeException e) {
+                                LOGGER.error("Could not read message from outbox", e);
+                                m.onAck.completeExceptionally(e);
+                                continue;
+                            }
+                            session.outbox.sent(m.seq, nextMsgId);
+                        }
+                        MmsMessage mms = new MmsMessage(message);
+                        mms.setMessageId(nextMsgId);
+                        mms.setLatestReceivedId(latestReceivedId);
+                        unacked.add(nextMsgId++, m);
+                        batch.add(mms);
                     }
                 }
-
-                if (!session.isClosed && messages.isEmpty()) {
-                    try {
-                        stateChange.await();
-                    } catch (InterruptedException probablyShutdown) {}
-                }
             } finally {
                 lock.unlock();
             }
+
+            if (!batch.isEmpty()) {
+                // Writes are asynchronous. If a write fails, the messages are still unacked and are resent when
+                // reconnecting, so their futures are completed when the resent messages are acknowledged
+                ClientTransport t = transport;
+                try {
+                    t.sendMessages(batch).handle((v, cause) -> {
+                        if (cause != null && session.state instanceof SessionStateConnected
+                                && ((SessionStateConnected) session.state).transport == t) {
+                            LOGGER.error("Failed to send messages, reconnecting", cause);
+                            t.closeTransport(MmsConnectionClosingCode.INTERNAL_ERROR.withMessage(cause.getMessage()));
+                        }
+                        return null;
+                    });
+                } catch (Exception e) {
+                    LOGGER.error("Failed to send messages", e);
+                }
+                batch.clear();
+            } else if (inbox.isEmpty()) {
+                LockSupport.park(this);
+                Thread.interrupted(); // probably shutdown, checked by the loop
+            }
+        }
+    }
+
+    /** Adds a message to its lane, or replaces the pending position report if the message is a newer one. */
+    private void enqueue(Msg m) {
+        if (m.message instanceof PositionReport) {
+            if (pendingPosition != null) {
+                pendingPosition.replaceWith(m);
+                return;
+            }
+            pendingPosition = m;
         }
+        messages.add(m, m.priority);
     }
 
-    void send(Message message, CompletableFuture<Void> onAck) {
-        lock.lock();
-        try {
-            messages.add(new Msg(message, onAck));
-            stateChange.signalAll();
-        } finally {
-            lock.unlock();
+    void send(Message message, MmsMessagePriority priority, CompletableFuture<Void> onAck) {
+        Outbox outbox = session.outbox;
+        if (outbox == null || message instanceof PositionReport) {
+            inbox.add(new Msg(message, priority, onAck));
+        } else {
+            try {
+                inbox.add(new Msg(outbox.add(message, priority), priority, onAck));
+            } catch (IOException | RuntimeException e) {
+                onAck.completeExceptionally(e);
+                return;
+            }
         }
+        LockSupport.unpark(this);
     }
 
+    /** Wakes up the sender thread, for example, when the state of the session has changed. */
     void sup() {
-        lock.lock();
-        try {
-            messages.add(null);
-            stateChange.signalAll();
-        } finally {
-            lock.unlock();
-        }
+        LockSupport.unpark(this);
     }
 
-    static class UnAcked {
-        final Msg msg;
+    static class Msg {
+
+        /** The message, replaced if a newer position report supersedes it. Null if the message is in the outbox. */
+        Message message;
+
+        /** Completed when the message has been acknowledged. Guarded by lock. */
+        CompletableFuture<Void> onAck;
+
+        final MmsMessagePriority priority;
 
-        final MmsMessage mm;
+        /** The sequence number of the message in the outbox, or 0 if the message is not in the outbox. */
+        final long seq;
 
-        UnAcked(Msg msg, MmsMessage mm) {
-            this.msg = msg;
-            this.mm = mm;
+        Msg(Message message, MmsMessagePriority priority, CompletableFuture<Void> onAck) {
+            this.message = requireNonNull(message);
+            this.priority = requireNonNull(priority);
+            this.onAck = requireNonNull(onAck);
+            this.seq = 0;
+        }
+
+        Msg(long seq, MmsMessagePriority priority, CompletableFuture<Void> onAck) {
+            this.seq = seq;
+            this.priority = requireNonNull(priority);
+            this.onAck = requireNonNull(onAck);
+        }
+
+        /**
+         * Drops this message in favor of a newer message. This message is completed when the newer message is.
+         *
+         * @param newer
+         *            the newer message
+         */
+        void supersededBy(Msg newer) {
+            CompletableFuture<Void> f = onAck;
+            newer.onAck.whenComplete((v, cause) -> {
+                if (cause == null) {
+                    f.complete(null);
+                } else {
+                    f.completeExceptionally(cause);
+                }
+            });
+        }
+
+        /**
+         * Replaces this message with a newer message, keeping the place of this message in its lane.
+         *
+         * @param newer
+         *            the newer message
+         */
+        void replaceWith(Msg newer) {
+            supersededBy(newer);
+            message = newer.message;
+            onAck = newer.onAck;
         }
     }
 
-    static class Msg {
-        static final Msg SUP = new Msg();
+    /**
+     * The messages that have been written but not yet acknowledged, in a ring indexed by message id. Acknowledgements
+     * move a cursor forward over the ring, so acknowledging a message takes constant time. This class is not
+     * thread-safe.
+     */
+    static final class UnackedRing {
+
+        /** The id of the first unacknowledged message. */
+        long first;
 
-        final Message message;
+        /** The id following the latest message added. */
+        long end;
 
-        final CompletableFuture<Void> onAck;
+        /** The messages, the length is always a power of 2. */
+        private Msg[] ring = new Msg[64];
 
-        Msg() {
-            this.message = null;
-            this.onAck = null;
+        UnackedRing(long nextId) {
+            reset(nextId);
         }
 
-        Msg(Message message, CompletableFuture<Void> onAck) {
-            this.message = requireNonNull(message);
-            this.onAck = requireNonNull(onAck);
+        /**
+         * Completes and removes all messages up to and including the specified id.
+         *
+         * @param id
+         *            the id of the latest acknowledged message
+         */
+        void ackUpTo(long id) {
+            while (first <= id && first < end) {
+                int i = index(first++);
+                Msg m = ring[i];
+                ring[i] = null;
+                m.onAck.complete(null);
+            }
         }
-    }
 
-    static class Writer implements Runnable {
-        private final ReentrantLock executorLock = new ReentrantLock();
-
-        private final BlockingQueue<Map.Entry<ClientTransport, MmsMessage>> q = new LinkedBlockingQueue<>();
-
-        /** {@inheritDoc} */
-        public void run() {
-            // We need retry check for extra elements one more time, if we have successfully polled elements
-            // This is because of a rare race condition where
-            // T1[Executor Thread] : q.poll() returns null
-            // T2 : submits an message to be send and queues this runnable, T3 picks it up.
-            // T3[Executor Thread] can not obtain the lock because T1 has not yet released it and returns emptyhanded
-
-            boolean sholdRetry;
-            do {
-                sholdRetry = false;
-                if (executorLock.tryLock()) {
-                    try {
-                        Entry<ClientTransport, MmsMessage> s = q.poll();
-                        while (s != null) {
-                            sholdRetry = true;
-                            try {
-                                s.getKey().sendMessage(s.getValue());
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                            s = q.poll();
-                        }
-                    } finally {
-                        executorLock.unlock();
-                    }
+        /**
+         * Adds a message, the id must be the id following the latest message added.
+         *
+         * @param id
+         *            the id of the message
+         * @param msg
+         *            the message
+         */
+        void add(long id, Msg msg) {
+            if (id != end) {
+                throw new IllegalArgumentException("Expected message id " + end + ", was " + id);
+            }
+            if (end - first == ring.length) {
+                Msg[] r = new Msg[ring.length * 2];
+                for (long i = first; i < end; i++) {
+                    r[(int) (i & (r.length - 1))] = ring[index(i)];
                 }
-            } while (sholdRetry);
+                ring = r;
+            }
+            ring[index(end++)] = msg;
         }
 
-        void send(ClientTransport transport, MmsMessage message, Executor e) {
-            q.add(new AbstractMap.SimpleImmutableEntry<>(transport, message));
-            e.execute(this);
+        Msg get(long id) {
+            return ring[index(id)];
+        }
+
+        private int index(long id) {
+            return (int) (id & (ring.length - 1));
+        }
+
+        /**
+         * Removes all messages without completing them, the next message added must have the specified id.
+         *
+         * @param nextId
+         *            the id of the next message to add
+         */
+        void reset(long nextId) {
+            for (long i = first; i < end; i++) {
+                ring[index(i)] = null;
+            }
+            first = end = nextId;
         }
     }
 }
@@ -44,6 +44,9 @@ final class SessionStateConnected extends SessionState {
         session.receiveLock.lock();
         try {
             session.latestReceivedId = message.getMessageId();
+            if (session.outbox != null) {
+                session.outbox.received(message.getMessageId());
+            }
             session.sender.onAck(message.getLatestReceivedId());
             session.listener.onMessage(message);
         } finally {
@@ -71,6 +74,7 @@ final class SessionStateConnected extends SessionState {
             // only update state if the current state == expected state after fully locking
             if (session.state == connectingState) {
                 LOGGER.info("Connected to  " + connectingState.uri);
+                session.info.resetReconnectDelay();
 
                 if (existingSessionId == null) { // New session
                     LOGGER.debug("Created new session with id " + newSessionId);
@@ -78,12 +82,16 @@ final class SessionStateConnected extends SessionState {
                 }
 
                 session.state = new SessionStateConnected(session, connectingState.transport);
+                if (existingSessionId == null) {
+                    session.sender.newSessionUnderLock();
+                }
 
                 // If we are reconnecting make sure we resend messages that have not been acknowledged
                 if (existingSessionId != null) {
                     LOGGER.debug("Reconnected with session id " + existingSessionId);
                     session.sender.reconnectUnderLock(lastReceivedMessage);
                 }
+                session.sender.sup(); // send messages queued while connecting
 
                 // invoke user specified connection listeners.
                 session.connectionListener.connected(connectingState.uri);
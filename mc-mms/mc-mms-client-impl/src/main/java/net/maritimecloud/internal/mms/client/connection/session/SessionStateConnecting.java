@@ -28,6 +28,7 @@ import net.maritimecloud.internal.mms.client.connection.transport.ClientTranspor
 import net.maritimecloud.internal.mms.messages.Connected;
 import net.maritimecloud.internal.mms.messages.Hello;
 import net.maritimecloud.internal.mms.messages.Welcome;
+import net.maritimecloud.internal.mms.messages.spi.MmsFeatures;
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
 import net.maritimecloud.internal.util.logging.Logger;
 import net.maritimecloud.message.Message;
@@ -87,16 +88,17 @@ final class SessionStateConnecting extends SessionState {
     }
 
     void run0() {
-        // To avoid a situation where we constantly reconnect
-        // we make sure that there is at lease 2000 milliseconds
-        long awaitMillis = Math.max(
-                ClientInfo.RECONNECT_TIME_DELAY - (System.currentTimeMillis() - info.getLatestConnectionAttempt()), 0);
-        awaitMillis = 0;
-        if (awaitMillis > 0) {
-            LOG.info("Sleeping for " + awaitMillis + " ms before connecting again.");
-            try {
-                Thread.sleep(awaitMillis);
-            } catch (InterruptedException ignore) {}
+        // Wait before reconnecting, so clients that lost their connection at the same time do not reconnect at once
+        if (info.getLatestConnectionAttempt() >= 0) {
+            long awaitMillis = info.nextReconnectDelay();
+            if (awaitMillis > 0) {
+                LOG.info("Sleeping for " + awaitMillis + " ms before connecting again.");
+                try {
+                    if (cancel.await(awaitMillis, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException ignore) {}
+            }
         }
         LOG.info("Trying to connect to " + uri);
         session.connectionListener.connecting(uri);
@@ -114,7 +116,7 @@ final class SessionStateConnecting extends SessionState {
                 }
             }
             try {
-                cancel.await(2, TimeUnit.SECONDS); // exponential backoff?
+                cancel.await(info.nextReconnectDelay(), TimeUnit.MILLISECONDS);
             } catch (InterruptedException ignore) {}
         }
     }
@@ -148,6 +150,11 @@ final class SessionStateConnecting extends SessionState {
     }
 
     private void onWelcome(Welcome w) {
+        if (w.hasRetryAfter()) { // The server is busy and closes the connection, try again when asked to
+            LOG.info("Server is busy, will try to connect again in " + w.getRetryAfter() + " ms");
+            info.setRetryAfter(w.getRetryAfter());
+            return;
+        }
         Hello h = new Hello();
         // Client properties
         h.setClientId(session.info.getClientId().toString());
@@ -156,6 +163,7 @@ final class SessionStateConnecting extends SessionState {
                 h.putProperties(e.getKey(), e.getValue());
             }
         }
+        h.putProperties(MmsFeatures.HELLO_PROPERTY, MmsFeatures.SUPPORTED);
 
         // Reconnect if we have an ongoing session
         if (session.sessionId != null) { // reconnecting or not
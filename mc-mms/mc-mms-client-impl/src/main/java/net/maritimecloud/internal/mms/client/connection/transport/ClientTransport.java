@@ -18,9 +18,11 @@ import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.util.concurrent.CompletableFuture;
 import net.maritimecloud.internal.util.logging.Logger;
 import net.maritimecloud.net.mms.MmsConnection;
 import net.maritimecloud.net.mms.MmsConnectionClosingCode;
@@ -125,10 +127,28 @@ public abstract class ClientTransport {
     }
 
     /**
-     * Sends the specified message.
+     * Sends the specified message without waiting for it to be written.
      *
      * @param message
      *            the message to send
+     * @return a future that is completed when the message has been written, or completed exceptionally if it could
+     *         not be written
      */
-    public abstract void sendMessage(MmsMessage message);
+    public abstract CompletableFuture<Void> sendMessage(MmsMessage message);
+
+    /**
+     * Sends the specified messages in order without waiting for them to be written.
+     *
+     * @param messages
+     *            the messages to send
+     * @return a future that is completed when all the messages have been written, or completed exceptionally if any
+     *         of them could not be written
+     */
+    public CompletableFuture<Void> sendMessages(List<MmsMessage> messages) {
+        CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+        for (MmsMessage m : messages) {
+            last = sendMessage(m);
+        }
+        return last;
+    }
 }
@@ -28,22 +28,36 @@ import javax.websocket.DeploymentException;
 import javax.websocket.Endpoint;
 import javax.websocket.EndpointConfig;
 import javax.websocket.MessageHandler;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 import javax.websocket.WebSocketContainer;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.util.Objects.requireNonNull;
 
 /**
  * The default implementation of a connection transport.
+ * <p>
+ * Messages are serialized by the sending thread and queued as frames, which are written using the asynchronous remote
+ * endpoint, so no thread ever blocks on the network. Only one frame is written at a time, as some containers, such as
+ * Tomcat, do not allow concurrent asynchronous writes (see https://github.com/MaritimeCloud/MaritimeCloud/issues/29).
+ * The completion of one write starts the next. While more frames are queued, the container is allowed to batch them,
+ * and the batch is flushed once the queue has been drained. The number of queued frames is bounded, so a sender that
+ * is faster than the link is slowed down. And when the socket is closed, all queued frames fail immediately.
  *
  * @author Kasper Nielsen
  */
@@ -52,6 +66,9 @@ public final class ClientTransportJsr356 extends ClientTransport { // Class must
     /** The logger. */
     static final Logger LOGGER = Logger.get(ClientTransportJsr356.class);
 
+    /** The maximum number of frames queued for writing. */
+    static final int MAX_QUEUED_FRAMES = 1024;
+
     /** The WebSocket container. */
     private final WebSocketContainer container;
 
@@ -59,11 +76,23 @@ public final class ClientTransportJsr356 extends ClientTransport { // Class must
 
     private final MessageFormatType mft;
 
+    /** Whether or not the socket has been closed, after which all frames fail immediately. */
+    private volatile boolean closed;
+
+    /** Frames waiting to be written, in order. */
+    private final ConcurrentLinkedQueue<Frame> frames = new ConcurrentLinkedQueue<>();
+
+    /** A permit for every frame that can be queued. */
+    private final Semaphore permits = new Semaphore(MAX_QUEUED_FRAMES);
+
+    /** Whether or not a frame is currently being written. */
+    private final AtomicBoolean writing = new AtomicBoolean();
+
     /**
-     * See https://github.com/MaritimeCloud/MaritimeCloud/issues/29, basically we need a lock for async writes in
-     * Tomcat.
+     * Whether or not the container is allowed to batch frames, in which case it completes a write once the frame has
+     * been buffered. Only accessed by the thread that is writing.
      */
-    private final Object writeLock = new Object();
+    private boolean batching;
 
     /** The WebSocket session object set after having successfully connected. */
     private volatile Session wsSession;
@@ -136,42 +165,131 @@ public final class ClientTransportJsr356 extends ClientTransport { // Class must
         }
     }
 
+    /** Fails all queued frames. */
+    private void failQueued(Throwable cause) {
+        for (Frame f = frames.poll(); f != null; f = frames.poll()) {
+            permits.release();
+            f.written.completeExceptionally(cause);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
-    public void sendMessage(MmsMessage message) {
-        Session session = this.wsSession;
-        if (session != null) {
-            message.setInbound(false);
-            if (mft == MessageFormatType.MACHINE_READABLE) {
-                try {
+    public CompletableFuture<Void> sendMessage(MmsMessage message) {
+        return sendMessages(Collections.singletonList(message));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Void> sendMessages(List<MmsMessage> messages) {
+        CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+        boolean binary = mft == MessageFormatType.MACHINE_READABLE;
+        for (MmsMessage message : messages) {
+            Frame f = new Frame(message);
+            try {
+                // Serialize in the calling thread, so the writing thread only writes
+                message.setInbound(false);
+                if (binary) {
                     byte[] data = message.toBinary();
                     connectionListener.binaryMessageSend(data);
-                    synchronized (writeLock) {
-                        session.getBasicRemote().sendBinary(ByteBuffer.wrap(data));
-                    }
-                } catch (IOException e) {
-                    if (wsSession.isOpen()) {
-                        // TODO: Proper error handling
-                        throw new RuntimeException("Error sending binary message", e);
-                    }
-                }
-            } else {
-                try {
+                    f.data = data;
+                } else {
                     String textToSend = message.toText();
                     connectionListener.textMessageSend(textToSend);
-                    synchronized (writeLock) {
-                        session.getBasicRemote().sendText(textToSend);
-                    }
-                } catch (IOException e) {
-                    if (wsSession.isOpen()) {
-                        // TODO: Proper error handling
-                        throw new RuntimeException("Error sending text message", e);
+                    f.data = textToSend;
+                }
+                if (!permits.tryAcquire()) {
+                    writeNext(); // the queue is full, make sure the frames already queued are being written
+                    while (!permits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                        if (closed || wsSession == null) {
+                            throw new ClosedChannelException();
+                        }
                     }
                 }
+            } catch (IOException e) {
+                f.written.completeExceptionally(e);
+                last = f.written;
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                f.written.completeExceptionally(e);
+                last = f.written;
+                break;
+            }
+            frames.add(f);
+            last = f.written;
+        }
+        if (closed || wsSession == null) { // closed while queueing
+            failQueued(new ClosedChannelException());
+        } else {
+            writeNext();
+        }
+        return last;
+    }
+
+    /** Starts writing queued frames, unless a frame is already being written. */
+    private void writeNext() {
+        while (!frames.isEmpty() && writing.compareAndSet(false, true)) {
+            writeQueued();
+        }
+    }
+
+    /**
+     * Writes queued frames until the queue is empty, or until a write does not complete immediately, in which case
+     * the thread that completes the write continues. Must only be invoked by the thread that is writing.
+     */
+    void writeQueued() {
+        // Writes that complete immediately are handled by this loop, instead of by recursive calls from the handler
+        for (Frame f = frames.poll(); f != null; f = frames.poll()) {
+            if (!write(f)) {
+                return;
             }
+        }
+        writing.set(false);
+    }
 
-            transportListener.onMessageSent(message);
+    /**
+     * Writes the specified frame.
+     *
+     * @param f
+     *            the frame to write
+     * @return true if the write has completed, false if the handler of the write will continue writing
+     */
+    private boolean write(Frame f) {
+        Session session = this.wsSession;
+        if (session == null) {
+            f.onResult(new SendResult(new ClosedChannelException()));
+            return f.returned();
+        }
+        RemoteEndpoint.Async remote;
+        boolean more = !frames.isEmpty();
+        try {
+            remote = session.getAsyncRemote();
+            if (more && !batching) {
+                remote.setBatchingAllowed(true);
+                batching = true;
+            }
+            if (f.data instanceof byte[]) {
+                remote.sendBinary(ByteBuffer.wrap((byte[]) f.data), f);
+            } else {
+                remote.sendText((String) f.data, f);
+            }
+        } catch (IOException | RuntimeException e) {
+            batching = false;
+            f.onResult(new SendResult(e));
+            return f.returned();
         }
+        if (!more && batching) {
+            batching = false;
+            try {
+                remote.setBatchingAllowed(false); // flushes the batch
+            } catch (IOException e) {
+                // The frames have been handed to the container, the socket is closed when the connection fails
+                LOGGER.error("Failed to flush batch of frames", e);
+                failQueued(e);
+            }
+        }
+        return f.returned();
     }
 
     /**
@@ -220,6 +338,8 @@ public final class ClientTransportJsr356 extends ClientTransport { // Class must
         public void onClose(Session session, CloseReason closeReason) {
             LOGGER.info("Socket closed");
             wsSession = null;
+            closed = true;
+            failQueued(new ClosedChannelException());
             MmsConnectionClosingCode reason = MmsConnectionClosingCode.create(closeReason.getCloseCode().getCode(),
                     closeReason.getReasonPhrase());
             //Start a new thread to close it. Websocket async is a total mess
@@ -232,6 +352,57 @@ public final class ClientTransportJsr356 extends ClientTransport { // Class must
         }
     }
 
+    /** A serialized message waiting to be written, and the handler of the write. */
+    final class Frame implements SendHandler {
+
+        /** The serialized message, either a byte array or a string. */
+        Object data;
+
+        /** The message. */
+        final MmsMessage message;
+
+        /** Completed when the frame has been written. */
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        /**
+         * Set by whichever comes last of the write completing and the writing thread returning from the write. The
+         * last one continues writing queued frames.
+         */
+        private final AtomicBoolean handoff = new AtomicBoolean();
+
+        Frame(MmsMessage message) {
+            this.message = message;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onResult(SendResult result) {
+            permits.release();
+            if (result.isOK()) {
+                written.complete(null);
+                transportListener.onMessageSent(message);
+            } else {
+                // The socket is broken, no need to try writing the rest
+                written.completeExceptionally(result.getException());
+                failQueued(result.getException());
+            }
+            if (!handoff.compareAndSet(false, true)) {
+                // The writing thread has already returned, so continue writing in this thread
+                writeQueued();
+                writeNext();
+            }
+        }
+
+        /**
+         * Invoked by the writing thread when it returns from the write.
+         *
+         * @return true if the write has already completed, false if the handler will continue writing
+         */
+        boolean returned() {
+            return !handoff.compareAndSet(false, true);
+        }
+    }
+
     /**
      * Custom websocket endpoint configurator class.
      * <p>
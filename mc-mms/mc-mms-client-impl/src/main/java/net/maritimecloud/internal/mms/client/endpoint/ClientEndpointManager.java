@@ -17,7 +17,8 @@ package net.maritimecloud.internal.mms.client.endpoint;
 import static java.util.Objects.requireNonNull;
 
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import net.maritimecloud.core.id.MaritimeId;
 import net.maritimecloud.internal.mms.client.ClientInfo;
@@ -29,6 +30,7 @@ import net.maritimecloud.internal.net.endpoint.EndpointMirror;
 import net.maritimecloud.internal.net.messages.MethodInvoke;
 import net.maritimecloud.internal.net.messages.MethodInvokeResult;
 import net.maritimecloud.internal.net.util.DefaultEndpointInvocationFuture;
+import net.maritimecloud.internal.net.util.PayloadFormat;
 import net.maritimecloud.message.Message;
 import net.maritimecloud.message.MessageSerializer;
 import net.maritimecloud.message.ValueSerializer;
@@ -38,11 +40,14 @@ import net.maritimecloud.net.EndpointRegistration;
 import net.maritimecloud.net.LocalEndpoint;
 import net.maritimecloud.net.mms.MmsClient;
 import net.maritimecloud.net.mms.MmsClientClosedException;
+import net.maritimecloud.net.mms.MmsClientConfiguration;
 import net.maritimecloud.net.mms.MmsEndpointLocator;
-import net.maritimecloud.util.Binary;
 import net.maritimecloud.util.Timestamp;
 import net.maritimecloud.util.geometry.PositionTime;
 
+import org.cakeframework.container.lifecycle.RunOnStart;
+import org.cakeframework.container.lifecycle.RunOnStop;
+
 /**
  *
  * @author Kasper Nielsen
@@ -56,8 +61,8 @@ public class ClientEndpointManager {
     /** A map of subscribers. ChannelName -> List of listeners. */
     final EndpointManager em = new EndpointManager();
 
-    /** The client container. */
-    final ConcurrentHashMap<Binary, RemoteInvocation> invokers = new ConcurrentHashMap<>();
+    /** Remote invocations that are waiting for a result. */
+    final PendingInvocations invokers;
 
     final MmsThreadManager threadManager;
 
@@ -70,11 +75,16 @@ public class ClientEndpointManager {
      *            the thread manager
      * @param clientInfo
      *            clientInfo
+     * @param configuration
+     *            the configuration of the client
      */
-    public ClientEndpointManager(ClientConnection connection, MmsThreadManager threadManager, ClientInfo clientInfo) {
+    public ClientEndpointManager(ClientConnection connection, MmsThreadManager threadManager, ClientInfo clientInfo,
+            MmsClientConfiguration configuration) {
         this.connection = requireNonNull(connection);
         this.threadManager = requireNonNull(threadManager);
         this.clientInfo = requireNonNull(clientInfo);
+        this.invokers = new PendingInvocations(configuration.getMaxPendingInvocations(),
+                configuration.getInvocationTimeout(TimeUnit.NANOSECONDS), System.nanoTime());
 
         connection.subscribe(MethodInvoke.class, (a, e) -> onMethodInvoke(e));
         connection.subscribe(MethodInvokeResult.class, (a, e) -> onMethodInvokeResult(e));
@@ -104,32 +114,66 @@ public class ClientEndpointManager {
         return (T) m.instantiate(new DefaultEndpointInvocator(this, id));
     }
 
+    /**
+     * Invokes a method on a remote endpoint. The invocation times out with a
+     * {@link java.util.concurrent.TimeoutException} if no result has been received within the invocation timeout of
+     * the client, or within the timeout given to {@link EndpointInvocationFuture#orTimeout(long, TimeUnit)} if that is
+     * shorter.
+     *
+     * @param receiver
+     *            the receiver of the invocation, or null if the server should find one
+     * @param endpoint
+     *            the name of the endpoint method
+     * @param parameters
+     *            the parameters of the invocation
+     * @param serializer
+     *            the serializer of the parameters
+     * @param resultParser
+     *            the serializer of the result
+     * @param <T>
+     *            the type of result
+     * @return a future for the result
+     * @throws RejectedExecutionException
+     *             if the maximum number of pending invocations has been reached
+     * @throws MmsClientClosedException
+     *             if the client has been shutdown
+     * @throws IllegalStateException
+     *             if the connection has not been enabled
+     */
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public <T> EndpointInvocationFuture<T> invokeRemote(MaritimeId receiver, String endpoint, Message parameters,
             MessageSerializer<? extends Message> serializer, ValueSerializer<T> resultParser) {
         requireNonNull(endpoint, "endpoint is null");
         requireNonNull(parameters, "parameters is null");
 
-        MethodInvoke ei = new MethodInvoke();
-        ei.setMessageId(Binary.random(32));
-        ei.setEndpointMethod(endpoint);
-        // Vi skal have en serializer med i metoden
-        ei.setParameters(MessageSerializer.writeToJSON(parameters, (MessageSerializer) serializer));
-        if (receiver != null) {
-            ei.setReceiverId(receiver.toString());
-        }
-        ei.setSenderTimestamp(Timestamp.now());
-        Optional<PositionTime> r = clientInfo.getCurrentPosition();
-        if (r.isPresent()) {
-            ei.setSenderPosition(r.get());
+        RemoteInvocation ri = invokers.add(resultParser, System.nanoTime());
+        DefaultEndpointInvocationFuture<T> result = (DefaultEndpointInvocationFuture<T>) ri.fr;
+        try {
+            MethodInvoke ei = new MethodInvoke();
+            ei.setMessageId(ri.fr.getMessageId());
+            ei.setEndpointMethod(endpoint);
+            // Vi skal have en serializer med i metoden
+            PayloadFormat format = clientInfo.getPayloadFormat();
+            if (format == PayloadFormat.BINARY) {
+                ei.setBinaryParameters(format.write(parameters, (MessageSerializer) serializer));
+                ei.setParametersFormat(format.toTag());
+            } else {
+                ei.setParameters(MessageSerializer.writeToJSON(parameters, (MessageSerializer) serializer));
+            }
+            if (receiver != null) {
+                ei.setReceiverId(receiver.toString());
+            }
+            ei.setSenderTimestamp(Timestamp.now());
+            Optional<PositionTime> r = clientInfo.getCurrentPosition();
+            if (r.isPresent()) {
+                ei.setSenderPosition(r.get());
+            }
+            ei.setSenderId(clientInfo.getClientId().toString());
+            result.recivedByCloud = connection.sendMessage(ei);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e); // release the slot, the invocation was never sent
+            throw e;
         }
-        ei.setSenderId(clientInfo.getClientId().toString());
-
-        DefaultEndpointInvocationFuture<T> result = threadManager.create(ei.getMessageId());
-
-        result.recivedByCloud = connection.sendMessage(ei);
-        invokers.put(ei.getMessageId(), new RemoteInvocation(result, resultParser));
-
         return result;
     }
 
@@ -157,6 +201,17 @@ public class ClientEndpointManager {
         em.execute(message, e -> connection.sendMessage(e));
     }
 
+    @RunOnStart
+    public void start() {
+        threadManager.scheduleAtFixedRate(() -> invokers.expire(System.nanoTime()), PendingInvocations.TICK_NANOS,
+                TimeUnit.NANOSECONDS);
+    }
+
+    @RunOnStop
+    public void stop() {
+        invokers.close(new MmsClientClosedException("Client has been shutdown"));
+    }
+
     void onMethodInvokeResult(MethodInvokeResult m) {
         RemoteInvocation f = invokers.get(m.getResultForMessageId());
         if (f != null) {
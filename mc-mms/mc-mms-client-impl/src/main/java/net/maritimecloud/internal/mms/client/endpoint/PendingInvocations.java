@@ -0,0 +1,257 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.client.endpoint;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.maritimecloud.internal.net.util.DefaultEndpointInvocationFuture;
+import net.maritimecloud.internal.util.concurrent.CompletableFuture;
+import net.maritimecloud.message.ValueSerializer;
+import net.maritimecloud.net.mms.MmsClientClosedException;
+import net.maritimecloud.util.Binary;
+
+/**
+ * The remote invocations that are waiting for a result. The number of pending invocations is bounded, and every
+ * invocation times out if no result has been received before its deadline.
+ * <p>
+ * Deadlines are kept in a hashed timer wheel that is advanced by calling {@link #expire(long)} once every tick. Adding
+ * or rescheduling an invocation is constant time, and each tick only visits the invocations in a single bucket.
+ * Invocations that complete are removed from the table immediately, and from the wheel the next time their bucket is
+ * visited.
+ * <p>
+ * Invocations are identified by a {@code long} that is sent as an 8 byte message id. Ids are assigned sequentially
+ * from a random starting point, so results for invocations from a previous run of the client are not mistaken for
+ * results of new invocations.
+ *
+ * @author Kasper Nielsen
+ */
+class PendingInvocations {
+
+    /** The duration of a tick of the wheel. */
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** The number of buckets in the wheel, must be a power of 2. */
+    static final int WHEEL_SIZE = 512;
+
+    /** The pending invocations. */
+    private final ConcurrentHashMap<Long, RemoteInvocation> invocations = new ConcurrentHashMap<>();
+
+    /** Whether or not no more invocations are accepted. */
+    private volatile boolean isClosed;
+
+    /** The maximum number of pending invocations. */
+    private final int maxPending;
+
+    /** The id of the next invocation. */
+    private final AtomicLong nextId = new AtomicLong(ThreadLocalRandom.current().nextLong());
+
+    /** The time ticks are measured from. */
+    private final long origin;
+
+    /** The number of pending invocations, including those that have been reserved but not yet added. */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** The latest tick that has been expired. */
+    private long tick;
+
+    /** The default timeout in nanoseconds. */
+    private final long timeoutNanos;
+
+    /** The buckets of the wheel. */
+    private final ConcurrentLinkedQueue<RemoteInvocation>[] wheel;
+
+    @SuppressWarnings("unchecked")
+    PendingInvocations(int maxPending, long timeoutNanos, long now) {
+        this.maxPending = maxPending;
+        this.timeoutNanos = timeoutNanos;
+        this.origin = now;
+        wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Creates a new pending invocation with the default timeout.
+     *
+     * @param resultSerializer
+     *            the serializer of the result, or null if the invocation has no result
+     * @param now
+     *            the current time as given by {@link System#nanoTime()}
+     * @return the new invocation
+     * @throws RejectedExecutionException
+     *             if there are too many pending invocations
+     * @throws MmsClientClosedException
+     *             if no more invocations are accepted
+     */
+    RemoteInvocation add(ValueSerializer<?> resultSerializer, long now) {
+        if (isClosed) {
+            throw new MmsClientClosedException("The client has been shutdown");
+        } else if (size.incrementAndGet() > maxPending) {
+            size.decrementAndGet();
+            throw new RejectedExecutionException("Too many pending invocations, the maximum is " + maxPending);
+        }
+        long id = nextId.getAndIncrement();
+        InvocationFuture<Object> f = new InvocationFuture<>(this, id);
+        RemoteInvocation ri = new RemoteInvocation(id, f, resultSerializer);
+        invocations.put(id, ri);
+        f.handle((r, e) -> remove(ri)); // release the slot however the invocation completes
+        schedule(ri, now + timeoutNanos);
+        if (isClosed) { // raced with close
+            f.completeExceptionally(new MmsClientClosedException("The client has been shutdown"));
+        }
+        return ri;
+    }
+
+    /**
+     * Completes every pending invocation exceptionally, and rejects any new invocations.
+     *
+     * @param cause
+     *            the cause
+     */
+    void close(Throwable cause) {
+        isClosed = true;
+        for (RemoteInvocation ri : invocations.values()) {
+            ri.fr.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Times out every invocation whose deadline has passed. Should be called every {@link #TICK_NANOS}.
+     *
+     * @param now
+     *            the current time as given by {@link System#nanoTime()}
+     */
+    synchronized void expire(long now) {
+        long current = (now - origin) / TICK_NANOS;
+        // If we are more than a full revolution behind, every bucket is visited once
+        for (long t = Math.max(tick + 1, current - WHEEL_SIZE + 1); t <= current; t++) {
+            int index = (int) (t & (WHEEL_SIZE - 1));
+            for (Iterator<RemoteInvocation> iter = wheel[index].iterator(); iter.hasNext();) {
+                RemoteInvocation ri = iter.next();
+                long deadline = ri.deadline;
+                if (ri.fr.isDone()) {
+                    iter.remove();
+                } else if (deadline - now <= 0) {
+                    iter.remove();
+                    ri.fr.completeExceptionally(new TimeoutException("No result received before the deadline"));
+                } else if (bucket(deadline) != index) {
+                    iter.remove(); // has been rescheduled to another bucket
+                }
+            }
+        }
+        tick = Math.max(tick, current);
+    }
+
+    /**
+     * Returns the pending invocation with the specified message id.
+     *
+     * @param messageId
+     *            the message id
+     * @return the pending invocation, or null if there is no such invocation
+     */
+    RemoteInvocation get(Binary messageId) {
+        return messageId == null || messageId.size() != 8 ? null : invocations.get(messageId.asReadOnlyByteBuffer()
+                .getLong());
+    }
+
+    private void remove(RemoteInvocation ri) {
+        if (invocations.remove(ri.id, ri)) {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Shortens the deadline of the specified invocation.
+     *
+     * @param id
+     *            the id of the invocation
+     * @param timeout
+     *            the maximum time from now to wait for a result
+     * @param unit
+     *            the unit of the timeout
+     */
+    void reschedule(long id, long timeout, TimeUnit unit) {
+        RemoteInvocation ri = invocations.get(id);
+        if (ri != null) {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            if (deadline - ri.deadline < 0) {
+                schedule(ri, deadline);
+            }
+        }
+    }
+
+    private void schedule(RemoteInvocation ri, long deadline) {
+        ri.deadline = deadline;
+        wheel[bucket(deadline)].add(ri);
+    }
+
+    private int bucket(long deadline) {
+        // Round up, so an invocation never times out before its deadline
+        return (int) (((deadline - origin + TICK_NANOS - 1) / TICK_NANOS) & (WHEEL_SIZE - 1));
+    }
+
+    /**
+     * Returns the number of pending invocations.
+     *
+     * @return the number of pending invocations
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the message id for the specified invocation id.
+     *
+     * @param id
+     *            the id of the invocation
+     * @return the message id
+     */
+    static Binary toMessageId(long id) {
+        return Binary.copyFrom(ByteBuffer.allocate(8).putLong(0, id));
+    }
+
+    /** The future of a pending invocation. A timeout also shortens the deadline of the invocation itself. */
+    static final class InvocationFuture<T> extends DefaultEndpointInvocationFuture<T> {
+
+        /** The id of the invocation. */
+        final long id;
+
+        /** The pending invocations. */
+        final PendingInvocations pending;
+
+        InvocationFuture(PendingInvocations pending, long id) {
+            super(new CompletableFuture<T>(), toMessageId(id));
+            this.pending = pending;
+            this.id = id;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public DefaultEndpointInvocationFuture<T> orTimeout(long timeout, TimeUnit unit) {
+            pending.reschedule(id, timeout, unit);
+            return super.orTimeout(timeout, unit);
+        }
+    }
+}
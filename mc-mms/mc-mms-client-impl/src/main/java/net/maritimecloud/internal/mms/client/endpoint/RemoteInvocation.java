@@ -18,10 +18,10 @@ import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
 
-import net.maritimecloud.internal.message.text.json.JsonMessageReader;
 import net.maritimecloud.internal.net.messages.MethodInvokeFailure;
 import net.maritimecloud.internal.net.messages.MethodInvokeResult;
 import net.maritimecloud.internal.net.util.DefaultEndpointInvocationFuture;
+import net.maritimecloud.internal.net.util.PayloadFormat;
 import net.maritimecloud.message.ValueSerializer;
 
 /**
@@ -30,12 +30,19 @@ import net.maritimecloud.message.ValueSerializer;
  */
 class RemoteInvocation {
 
+    /** The time a result must have been received by, as given by {@link System#nanoTime()}. */
+    volatile long deadline;
+
     final DefaultEndpointInvocationFuture<Object> fr;
 
+    /** The id of the invocation. */
+    final long id;
+
     final ValueSerializer<?> resultSerializer;
 
     @SuppressWarnings("unchecked")
-    RemoteInvocation(DefaultEndpointInvocationFuture<?> fr, ValueSerializer<?> vr) {
+    RemoteInvocation(long id, DefaultEndpointInvocationFuture<?> fr, ValueSerializer<?> vr) {
+        this.id = id;
         this.fr = (DefaultEndpointInvocationFuture<Object>) requireNonNull(fr);
         this.resultSerializer = vr;
     }
@@ -48,12 +55,11 @@ class RemoteInvocation {
             if (failure != null) {
                 fr.completeExceptionally(new RuntimeException(failure.getExceptionType()));
             } else {
-                String msg = ack.getResult().toStringUtf8();
                 Object o;
                 try {
-                    o = JsonMessageReader.readFromString(msg, resultSerializer);
+                    o = PayloadFormat.fromTag(ack.getResultFormat()).readValue(ack.getResult(), resultSerializer);
                     fr.complete(o);
-                } catch (IOException e) {
+                } catch (IOException | IllegalArgumentException e) {
                     fr.completeExceptionally(e);
                 }
             }
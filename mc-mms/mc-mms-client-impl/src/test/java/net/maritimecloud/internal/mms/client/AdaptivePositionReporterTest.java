@@ -0,0 +1,93 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.internal.mms.messages.PositionReport;
+import net.maritimecloud.util.geometry.Position;
+import net.maritimecloud.util.geometry.PositionTime;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link AdaptivePositionReporter}.
+ *
+ * @author Kasper Nielsen
+ */
+public class AdaptivePositionReporterTest {
+
+    static final Position START = Position.create(55, 10);
+
+    static PositionTime east(int second) {
+        return START.pointOnBearing(6 * second, 90).withTime(second * 1000L);
+    }
+
+    static PositionReport next(AdaptivePositionReporter r, PositionTime pt, int second) {
+        return r.next(pt, TimeUnit.SECONDS.toNanos(second), false);
+    }
+
+    @Test
+    public void steadyCourse() {
+        AdaptivePositionReporter r = new AdaptivePositionReporter(20, TimeUnit.SECONDS.toNanos(30));
+        PositionReport first = next(r, east(0), 0);
+        assertNotNull(first);
+        assertFalse(first.hasCourse());
+
+        // Not reported until the position deviates more than 20 meters from the first position
+        int second = 1;
+        PositionReport pr;
+        while ((pr = next(r, east(second), second)) == null) {
+            second++;
+        }
+        assertEquals(4, second);
+        assertEquals(90, pr.getCourse(), 0.1);
+        assertEquals(6, pr.getSpeed(), 0.01);
+
+        // The server can now extrapolate the position until the maximum interval has passed
+        for (second = 5; second < 34; second++) {
+            assertNull(next(r, east(second), second));
+        }
+        assertNotNull(next(r, east(34), 34));
+
+        // Turning north
+        PositionTime turn = east(34);
+        second = 35;
+        while (next(r, turn.pointOnBearing(6 * (second - 34), 0).withTime(second * 1000L), second) == null) {
+            second++;
+        }
+        assertTrue(second <= 38);
+    }
+
+    @Test
+    public void forced() {
+        AdaptivePositionReporter r = new AdaptivePositionReporter(20, TimeUnit.SECONDS.toNanos(30));
+        assertNotNull(next(r, east(0), 0));
+        assertNull(next(r, east(0), 1));
+        assertNotNull(r.next(east(0), TimeUnit.SECONDS.toNanos(2), true));
+
+        // Without a position, the client only reports at the maximum interval
+        assertNull(next(r, null, 3));
+        PositionReport pr = next(r, null, 32);
+        assertNotNull(pr);
+        assertFalse(pr.hasPositionTime());
+    }
+}
@@ -0,0 +1,104 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.maritimecloud.core.id.MaritimeId;
+import net.maritimecloud.net.mms.MmsClientConfiguration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the delay between connection attempts in {@link ClientInfo}.
+ *
+ * @author Kasper Nielsen
+ */
+public class ClientInfoTest {
+
+    static final int BASE = 2000;
+
+    static final int MAX = 120_000;
+
+    ClientInfo info;
+
+    int previousBase;
+
+    int previousMax;
+
+    @Before
+    public void setup() {
+        // Other tests set the delay to 0 to reconnect immediately
+        previousBase = ClientInfo.RECONNECT_TIME_DELAY;
+        previousMax = ClientInfo.MAX_RECONNECT_TIME_DELAY;
+        ClientInfo.RECONNECT_TIME_DELAY = BASE;
+        ClientInfo.MAX_RECONNECT_TIME_DELAY = MAX;
+        info = new ClientInfo(MmsClientConfiguration.create(MaritimeId.create("mmsi:1")).setHost("localhost"));
+    }
+
+    @After
+    public void teardown() {
+        ClientInfo.RECONNECT_TIME_DELAY = previousBase;
+        ClientInfo.MAX_RECONNECT_TIME_DELAY = previousMax;
+    }
+
+    /** Tests that each delay is within bounds, and at most three times the previous one. */
+    @Test
+    public void bounds() {
+        long previous = BASE;
+        for (int i = 0; i < 1000; i++) {
+            long delay = info.nextReconnectDelay();
+            assertTrue(delay >= BASE);
+            assertTrue(delay <= MAX);
+            assertTrue(delay <= 3 * previous);
+            previous = delay;
+        }
+    }
+
+    /** Tests that the delay grows until it reaches the maximum, when the client keeps failing to connect. */
+    @Test
+    public void growth() {
+        long max = 0;
+        for (int i = 0; i < 1000; i++) {
+            max = Math.max(max, info.nextReconnectDelay());
+        }
+        assertEquals(MAX, max);
+    }
+
+    @Test
+    public void reset() {
+        while (info.nextReconnectDelay() < MAX) {}
+        info.resetReconnectDelay();
+        assertTrue(info.nextReconnectDelay() <= 3 * BASE);
+    }
+
+    /** Tests that the time the server has asked the client to wait is used for the next attempt only. */
+    @Test
+    public void retryAfter() {
+        info.setRetryAfter(10_000);
+        long delay = info.nextReconnectDelay();
+        assertTrue(delay > 9_000);
+        assertTrue(delay <= 11_000); // at most 10 percent jitter
+
+        assertTrue(info.nextReconnectDelay() <= 3 * BASE);
+
+        // The server cannot ask the client to wait longer than the maximum delay
+        info.setRetryAfter(60 * MAX);
+        assertTrue(info.nextReconnectDelay() <= MAX + MAX / 10);
+    }
+}
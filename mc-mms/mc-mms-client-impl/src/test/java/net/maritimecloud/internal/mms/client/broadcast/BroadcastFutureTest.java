@@ -26,6 +26,7 @@ import net.maritimecloud.internal.mms.messages.PositionReport;
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
 import net.maritimecloud.internal.net.messages.Broadcast;
 import net.maritimecloud.internal.net.messages.BroadcastAck;
+import net.maritimecloud.internal.net.messages.BroadcastAckBatch;
 import net.maritimecloud.mms.stubs.BroadcastTestMessage;
 import net.maritimecloud.net.BroadcastMessage;
 import net.maritimecloud.net.DispatchedMessage;
@@ -107,4 +108,36 @@ public class BroadcastFutureTest extends AbstractClientConnectionTest {
 
         assertTrue(q.isEmpty());
     }
+
+    @Test
+    public void broadcastClientAckBatch() throws Exception {
+        final BlockingQueue<MessageHeader> q = new LinkedBlockingQueue<>();
+
+        MmsClient c = createAndConnect();
+
+        DispatchedMessage bf = c.broadcast(new BroadcastTestMessage().setMsg("hello"),
+                new MmsBroadcastOptions().onRemoteReceive(e -> q.add(e)));
+
+        t.take(Broadcast.class);
+        t.send(new PositionReport(), 0, 1);
+        bf.relayed().orTimeout(1, TimeUnit.SECONDS).join();
+
+        BroadcastAckBatch batch = new BroadcastAckBatch().setAckForMessageId(bf.getMessageId());
+        batch.addAcks(new BroadcastAck().setReceiverId(ID3.toString()).setReceiverPosition(Position.create(3, 3))
+                .setReceiverTimestamp(Timestamp.create(3)));
+        batch.addAcks(new BroadcastAck().setReceiverId(ID4.toString()).setReceiverPosition(Position.create(4, 4))
+                .setReceiverTimestamp(Timestamp.create(4)));
+        t.send(batch, 0, 0);
+
+        MessageHeader a3 = q.poll(1, TimeUnit.SECONDS);
+        assertEquals(ID3, a3.getSender());
+        assertEquals(bf.getMessageId(), a3.getMessageId());
+        assertEquals(Position.create(3, 3), a3.getSenderPosition());
+
+        MessageHeader a4 = q.poll(1, TimeUnit.SECONDS);
+        assertEquals(ID4, a4.getSender());
+        assertEquals(Timestamp.create(4), a4.getSenderTime());
+
+        assertTrue(q.isEmpty());
+    }
 }
@@ -0,0 +1,75 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.client.broadcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.maritimecloud.internal.mms.client.AbstractClientConnectionTest;
+import net.maritimecloud.internal.mms.messages.Connected;
+import net.maritimecloud.internal.mms.messages.Hello;
+import net.maritimecloud.internal.net.messages.MethodInvoke;
+import net.maritimecloud.mms.stubs.BroadcastTestMessage;
+import net.maritimecloud.net.BroadcastSubscription;
+import net.maritimecloud.net.mms.MmsClient;
+import net.maritimecloud.net.mms.MmsConnectionClosingCode;
+
+import org.junit.Test;
+
+/**
+ * Tests that the broadcast subscriptions of a client are registered with the server.
+ *
+ * @author Kasper Nielsen
+ */
+public class BroadcastSubscriptionRegistrationTest extends AbstractClientConnectionTest {
+
+    @Test
+    public void subscribeAndCancel() throws Exception {
+        conf.setBroadcastFiltering(true);
+        MmsClient c = createAndConnect();
+
+        BroadcastSubscription s = c.broadcastSubscribe(BroadcastTestMessage.class, (header, m) -> {});
+        assertTrue(takeSubscribe().contains(BroadcastTestMessage.NAME));
+
+        s.cancel();
+        assertFalse(takeSubscribe().contains(BroadcastTestMessage.NAME));
+    }
+
+    @Test
+    public void newSession() throws Exception {
+        conf.setBroadcastFiltering(true);
+        MmsClient c = createAndConnect();
+
+        c.broadcastSubscribe(BroadcastTestMessage.class, (header, m) -> {});
+        assertTrue(takeSubscribe().contains(BroadcastTestMessage.NAME));
+
+        // Drop the connection and reject the old session, forcing the client to create a new one
+        t.disconnect();
+        t.take(Hello.class);
+        t.close(MmsConnectionClosingCode.INVALID_SESSION.getId(), "invalid session");
+
+        t.take(Hello.class);
+        t.send(new Connected().setSessionId(BIN2).setLastReceivedMessageId(0L));
+        assertTrue(takeSubscribe().contains(BroadcastTestMessage.NAME));
+    }
+
+    /** Takes the next message which must be an invocation of Services.subscribe, and returns its parameters. */
+    String takeSubscribe() {
+        MethodInvoke mi = t.take(MethodInvoke.class);
+        assertEquals("Services.subscribe", mi.getEndpointMethod());
+        return mi.getParameters();
+    }
+}
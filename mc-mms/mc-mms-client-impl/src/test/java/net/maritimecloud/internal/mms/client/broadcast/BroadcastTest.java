@@ -15,10 +15,13 @@
 package net.maritimecloud.internal.mms.client.broadcast;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import net.maritimecloud.internal.mms.client.AbstractClientConnectionTest;
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
@@ -88,6 +91,40 @@ public class BroadcastTest extends AbstractClientConnectionTest {
         assertTrue(cdl.await(2, TimeUnit.SECONDS));
     }
 
+    /** Tests that a broadcast is only read once, and the same immutable message is delivered to all subscribers. */
+    @Test
+    public void broadcastListenShared() throws Exception {
+        MmsClient c = createAndConnect();
+
+        final CountDownLatch cdl = new CountDownLatch(2);
+        final AtomicReferenceArray<BroadcastTestMessage> received = new AtomicReferenceArray<>(2);
+        c.broadcastSubscribe(BroadcastTestMessage.class, (header, m) -> {
+            received.set(0, m);
+            cdl.countDown();
+        });
+        c.broadcastSubscribe(BroadcastTestMessage.class, (header, m) -> {
+            received.set(1, m);
+            cdl.countDown();
+        });
+
+        Broadcast bm = new Broadcast();
+        bm.setBroadcastType(BroadcastTestMessage.class.getCanonicalName());
+        bm.setMessageId(Binary.random(32));
+        bm.setPayload(Binary.copyFromUtf8(new BroadcastTestMessage().setMsg("foo").toJSON()));
+        bm.setSenderPosition(Position.create(1, 1));
+        bm.setSenderTimestamp(Timestamp.create(1));
+        bm.setSenderId(ID2.toString());
+        t.send(bm, 0, 0);
+
+        assertTrue(cdl.await(2, TimeUnit.SECONDS));
+        assertEquals("foo", received.get(0).getMsg());
+        assertSame(received.get(0), received.get(1));
+        try {
+            received.get(0).setMsg("bar");
+            fail("Shared message should be immutable");
+        } catch (UnsupportedOperationException ok) {}
+    }
+
     @Test
     @Ignore
     // Subtype does not work, probably never will
@@ -0,0 +1,203 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.client.broadcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import net.maritimecloud.internal.mms.client.AbstractClientConnectionTest;
+import net.maritimecloud.internal.net.messages.Broadcast;
+import net.maritimecloud.mms.stubs.BroadcastTestMessage;
+import net.maritimecloud.net.BroadcastSubscription;
+import net.maritimecloud.net.mms.MmsBroadcastOverflowPolicy;
+import net.maritimecloud.net.mms.MmsClient;
+import net.maritimecloud.util.Binary;
+import net.maritimecloud.util.Timestamp;
+import net.maritimecloud.util.geometry.Position;
+
+import org.junit.Test;
+
+/**
+ * Tests that broadcasts are delivered in order through the bounded mailbox of each subscription.
+ *
+ * @author Kasper Nielsen
+ */
+public class OrderedBroadcastDeliveryTest extends AbstractClientConnectionTest {
+
+    /** Delivery tasks, only run when the test says so. */
+    final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+
+    /** The messages received by the subscription. */
+    final List<String> received = new CopyOnWriteArrayList<>();
+
+    /** The connection level id of the next broadcast sent to the client. */
+    long nextId = 1;
+
+    BroadcastSubscription subscribe(MmsClient c) {
+        return c.broadcastSubscribe(BroadcastTestMessage.class, (header, m) -> received.add(m.getMsg()));
+    }
+
+    void send(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Broadcast bm = new Broadcast();
+            bm.setBroadcastType(BroadcastTestMessage.NAME);
+            bm.setMessageId(Binary.random(32));
+            bm.setPayload(Binary.copyFromUtf8(new BroadcastTestMessage().setMsg("" + i).toJSON()));
+            bm.setSenderPosition(Position.create(1, 1));
+            bm.setSenderTimestamp(Timestamp.create(1));
+            bm.setSenderId(ID2.toString());
+            t.send(bm, nextId++, 0);
+        }
+    }
+
+    /** Runs delivery tasks until there are no more. */
+    void runTasks() {
+        for (Runnable r = tasks.poll(); r != null; r = tasks.poll()) {
+            r.run();
+        }
+    }
+
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    static List<String> range(int from, int to) {
+        List<String> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            result.add("" + i);
+        }
+        return result;
+    }
+
+    /** Tests that the default dispatcher delivers the broadcasts of a subscription in the order they were received. */
+    @Test
+    public void ordered() throws Exception {
+        MmsClient c = createAndConnect();
+        CountDownLatch cdl = new CountDownLatch(500);
+        c.broadcastSubscribe(BroadcastTestMessage.class, (header, m) -> {
+            received.add(m.getMsg());
+            cdl.countDown();
+        });
+        send(0, 500);
+        assertTrue(cdl.await(5, TimeUnit.SECONDS));
+        assertEquals(range(0, 500), received);
+    }
+
+    /** Tests that a subscription has at most one delivery task at a time. */
+    @Test
+    public void singleTask() throws Exception {
+        conf.setDispatchExecutor(tasks::add);
+        MmsClient c = createAndConnect();
+        BroadcastSubscription s = subscribe(c);
+
+        send(0, 100);
+        await(() -> s.getNumberOfPendingMessages() == 100);
+        assertEquals(1, tasks.size());
+        assertEquals(0, s.getNumberOfReceivedMessages());
+
+        runTasks();
+        assertEquals(range(0, 100), received);
+        assertEquals(100, s.getNumberOfReceivedMessages());
+        assertEquals(0, s.getNumberOfPendingMessages());
+        assertEquals(0, s.getNumberOfDroppedMessages());
+    }
+
+    @Test
+    public void dropOldest() throws Exception {
+        conf.setDispatchExecutor(tasks::add);
+        conf.setBroadcastMailboxSize(10).setBroadcastOverflowPolicy(MmsBroadcastOverflowPolicy.DROP_OLDEST);
+        MmsClient c = createAndConnect();
+        BroadcastSubscription s = subscribe(c);
+
+        send(0, 25);
+        await(() -> s.getNumberOfDroppedMessages() == 15);
+        assertEquals(10, s.getNumberOfPendingMessages());
+
+        runTasks();
+        assertEquals(range(15, 25), received);
+        assertEquals(0, s.getNumberOfPendingMessages());
+        assertEquals(15, s.getNumberOfDroppedMessages());
+    }
+
+    @Test
+    public void dropNewest() throws Exception {
+        conf.setDispatchExecutor(tasks::add);
+        conf.setBroadcastMailboxSize(10).setBroadcastOverflowPolicy(MmsBroadcastOverflowPolicy.DROP_NEWEST);
+        MmsClient c = createAndConnect();
+        BroadcastSubscription s = subscribe(c);
+
+        send(0, 25);
+        await(() -> s.getNumberOfDroppedMessages() == 15);
+        assertEquals(10, s.getNumberOfPendingMessages());
+
+        runTasks();
+        assertEquals(range(0, 10), received);
+        assertEquals(0, s.getNumberOfPendingMessages());
+        assertEquals(15, s.getNumberOfDroppedMessages());
+    }
+
+    /** Tests that broadcasts that have not been delivered when a subscription is cancelled are dropped. */
+    @Test
+    public void cancel() throws Exception {
+        conf.setDispatchExecutor(tasks::add);
+        MmsClient c = createAndConnect();
+        BroadcastSubscription s = subscribe(c);
+
+        send(0, 5);
+        await(() -> s.getNumberOfPendingMessages() == 5);
+        s.cancel();
+        assertEquals(0, s.getNumberOfPendingMessages());
+
+        runTasks();
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void deliveryLag() throws Exception {
+        conf.setDispatchExecutor(tasks::add);
+        MmsClient c = createAndConnect();
+        BroadcastSubscription s = subscribe(c);
+        assertEquals(0, s.getDeliveryLag(TimeUnit.NANOSECONDS));
+        assertEquals(0, s.getMaxDeliveryLag(TimeUnit.NANOSECONDS));
+
+        send(0, 1);
+        await(() -> s.getNumberOfPendingMessages() == 1);
+        Thread.sleep(50);
+        runTasks();
+        long lag = s.getDeliveryLag(TimeUnit.MILLISECONDS);
+        assertTrue(lag >= 50);
+        assertEquals(lag, s.getMaxDeliveryLag(TimeUnit.MILLISECONDS));
+
+        send(1, 2);
+        await(() -> s.getNumberOfPendingMessages() == 1);
+        runTasks();
+        assertEquals(2, s.getNumberOfReceivedMessages());
+        assertTrue(s.getDeliveryLag(TimeUnit.NANOSECONDS) <= s.getMaxDeliveryLag(TimeUnit.NANOSECONDS));
+        assertEquals(lag, s.getMaxDeliveryLag(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,159 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.client.connection.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.internal.mms.client.connection.session.Outbox.Entry;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority;
+import net.maritimecloud.internal.net.messages.Broadcast;
+import net.maritimecloud.util.Binary;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link Outbox}.
+ *
+ * @author Kasper Nielsen
+ */
+public class OutboxTest {
+
+    Path dir;
+
+    static Broadcast msg(String type) {
+        return new Broadcast().setBroadcastType(type);
+    }
+
+    static int segments(Path dir) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.log")) {
+            for (Iterator<Path> iterator = ds.iterator(); iterator.hasNext(); iterator.next()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("outbox");
+    }
+
+    @After
+    public void teardown() throws IOException {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void compact() throws Exception {
+        Outbox o = Outbox.open(dir, 256);
+        for (int i = 1; i <= 100; i++) {
+            o.sent(o.add(msg("b" + i), MmsMessagePriority.NORMAL), i);
+        }
+        assertTrue(segments(dir) > 10);
+        o.acked(100);
+        assertTrue(o.pending().isEmpty());
+
+        // Segments are deleted in the background, only the one being appended to is left
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (segments(dir) > 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, segments(dir));
+        assertTrue(Outbox.open(dir, 256).pending().isEmpty());
+    }
+
+    @Test
+    public void newSession() throws IOException {
+        Outbox o = Outbox.open(dir);
+        assertNull(o.takeResumableSession());
+        o.newSession(Binary.copyFromUtf8("session1"));
+        o.received(12);
+        assertNull(o.takeResumableSession()); // only once after opening
+        o.close();
+
+        o = Outbox.open(dir);
+        assertEquals(12, o.getLatestReceivedId());
+        assertEquals(Binary.copyFromUtf8("session1"), o.takeResumableSession());
+        assertNull(o.takeResumableSession());
+
+        o.newSession(Binary.copyFromUtf8("session2"));
+        assertEquals(0, o.getLatestReceivedId());
+        assertEquals(Binary.copyFromUtf8("session2"), o.getSessionId());
+    }
+
+    @Test
+    public void restoreAndResume() throws IOException {
+        Outbox o = Outbox.open(dir);
+        long s1 = o.add(msg("b1"), MmsMessagePriority.NORMAL);
+        long s2 = o.add(msg("b2"), MmsMessagePriority.NORMAL);
+        long s3 = o.add(msg("b3"), MmsMessagePriority.HIGH);
+        long s4 = o.add(msg("b4"), MmsMessagePriority.NORMAL);
+        o.sent(s3, 1);
+        o.sent(s1, 2);
+        o.sent(s2, 3);
+        o.acked(1);
+        o.close();
+
+        // Sent messages first in the order they were sent, then the rest in the order they were added
+        o = Outbox.open(dir);
+        List<Entry> pending = o.pending();
+        assertEquals(3, pending.size());
+        assertEquals(s1, pending.get(0).seq);
+        assertEquals(2, pending.get(0).messageId);
+        assertEquals(s2, pending.get(1).seq);
+        assertEquals(s4, pending.get(2).seq);
+        assertEquals(0, pending.get(2).messageId);
+        assertEquals(msg("b2"), o.read(s2));
+        assertNull(o.read(s3));
+
+        // The server received message 2 before the client died, so only message 3 and the unsent message remain
+        o.resumed(2);
+        assertFalse(o.contains(s1));
+        assertTrue(o.contains(s2));
+        assertTrue(o.contains(s4));
+        o.sent(s2, 3);
+        o.sent(s4, 4);
+        o.close();
+
+        o = Outbox.open(dir);
+        pending = o.pending();
+        assertEquals(2, pending.size());
+        assertEquals(3, pending.get(0).messageId);
+        assertEquals(4, pending.get(1).messageId);
+        assertEquals(MmsMessagePriority.NORMAL, pending.get(1).priority);
+
+        // Messages added after reopening get new sequence numbers
+        assertTrue(o.add(msg("b5"), MmsMessagePriority.NORMAL) > s4);
+    }
+}
@@ -15,6 +15,7 @@
 package net.maritimecloud.internal.mms.client.connection.session;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.net.URI;
@@ -25,12 +26,14 @@ import java.util.concurrent.TimeUnit;
 
 import net.maritimecloud.internal.mms.messages.Connected;
 import net.maritimecloud.internal.mms.messages.Hello;
+import net.maritimecloud.internal.mms.messages.PositionReport;
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
 import net.maritimecloud.internal.net.messages.Broadcast;
 import net.maritimecloud.internal.util.concurrent.CompletableFuture;
 import net.maritimecloud.net.mms.MmsConnection;
 import net.maritimecloud.net.mms.MmsConnectionClosingCode;
 import net.maritimecloud.util.Binary;
+import net.maritimecloud.util.geometry.PositionTime;
 
 import org.junit.Test;
 
@@ -225,4 +228,50 @@ public class ReconnectTest extends AbstractSessionTest {
         s.closeSession(MmsConnectionClosingCode.NORMAL);
     }
 
+    /** Tests that only the latest unacknowledged position report is resent when reconnecting. */
+    @Test
+    public void reconnectDropsStalePositionReports() throws Exception {
+        CountDownLatch connectCount = new CountDownLatch(2);
+        Session s = connectNormally(e -> {}, new MmsConnection.Listener() {
+
+            /** {@inheritDoc} */
+            @Override
+            public void connected(URI host) {
+                connectCount.countDown();
+            }
+        });
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        s.sendMessage(new PositionReport().setPositionTime(PositionTime.create(1, 1, 1)), first);
+        assertEquals(1, t.t().getMessageId());
+        CompletableFuture<Void> broadcast = new CompletableFuture<>();
+        s.sendMessage(new Broadcast().setSenderId("abc"), broadcast);
+        assertEquals(2, t.t().getMessageId());
+        CompletableFuture<Void> latest = new CompletableFuture<>();
+        s.sendMessage(new PositionReport().setPositionTime(PositionTime.create(2, 2, 2)), latest);
+        assertEquals(3, t.t().getMessageId());
+
+        Binary sessionId = s.sessionId;
+        t.disconnect();
+
+        t.take(Hello.class);
+        t.send(new Connected().setSessionId(sessionId).setLastReceivedMessageId(0L));
+        assertTrue(connectCount.await(2, TimeUnit.SECONDS));
+
+        // The first position report is stale and is not resent
+        MmsMessage mm = t.t();
+        assertEquals(1, mm.getMessageId());
+        assertEquals(PositionTime.create(2, 2, 2), mm.cast(PositionReport.class).getPositionTime());
+        mm = t.t();
+        assertEquals(2, mm.getMessageId());
+        assertEquals("abc", mm.cast(Broadcast.class).getSenderId());
+        assertFalse(first.isDone());
+
+        // Acknowledging the latest position report also completes the stale one
+        t.send(new Broadcast().setSenderId("abc"), 1, 1);
+        latest.join();
+        first.join();
+        assertFalse(broadcast.isDone());
+
+        s.closeSession(MmsConnectionClosingCode.NORMAL);
+    }
 }
@@ -0,0 +1,89 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.client.connection.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.maritimecloud.internal.mms.client.connection.session.SessionSender.Msg;
+import net.maritimecloud.internal.mms.client.connection.session.SessionSender.UnackedRing;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority;
+import net.maritimecloud.internal.net.messages.Broadcast;
+import net.maritimecloud.internal.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link UnackedRing}.
+ *
+ * @author Kasper Nielsen
+ */
+public class UnackedRingTest {
+
+    static Msg msg() {
+        return new Msg(new Broadcast(), MmsMessagePriority.NORMAL, new CompletableFuture<>());
+    }
+
+    @Test
+    public void ackAcrossGrowth() {
+        UnackedRing r = new UnackedRing(10);
+        List<Msg> msgs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Msg m = msg();
+            msgs.add(m);
+            r.add(10 + i, m);
+            if (i == 30) {
+                r.ackUpTo(20); // moves the cursor, so the ring wraps before it grows
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i <= 10, msgs.get(i).onAck.isDone());
+            if (i > 10) {
+                assertSame(msgs.get(i), r.get(10 + i));
+            }
+        }
+        r.ackUpTo(150);
+        assertEquals(151, r.first);
+        assertTrue(msgs.get(140).onAck.isDone());
+        assertFalse(msgs.get(141).onAck.isDone());
+
+        // Acknowledging messages that have not been sent does nothing
+        r.ackUpTo(1000);
+        assertEquals(210, r.first);
+        assertEquals(210, r.end);
+        assertTrue(msgs.get(199).onAck.isDone());
+    }
+
+    @Test
+    public void reset() {
+        UnackedRing r = new UnackedRing(1);
+        Msg m = msg();
+        r.add(1, m);
+        r.reset(1);
+        r.add(1, msg());
+        r.ackUpTo(1);
+        assertFalse(m.onAck.isDone());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void outOfOrder() {
+        new UnackedRing(1).add(2, msg());
+    }
+}
@@ -0,0 +1,226 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.client.connection.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+
+import net.maritimecloud.internal.mms.messages.Hello;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.util.concurrent.CompletableFuture;
+import net.maritimecloud.net.mms.MmsConnection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the asynchronous writing of frames in {@link ClientTransportJsr356}, against a fake websocket session.
+ *
+ * @author Kasper Nielsen
+ */
+public class ClientTransportJsr356Test {
+
+    /** The handlers of writes that have not yet completed, if writes are not completed immediately. */
+    final LinkedBlockingQueue<SendHandler> pending = new LinkedBlockingQueue<>();
+
+    /** The frames sent to the remote endpoint, in order. */
+    final List<String> sent = new CopyOnWriteArrayList<>();
+
+    /** Every invocation of setBatchingAllowed. */
+    final List<Boolean> batching = new CopyOnWriteArrayList<>();
+
+    /** The result of every write if writes are completed immediately, or null if writes are completed by the test. */
+    volatile SendResult immediate;
+
+    ClientTransportJsr356 transport;
+
+    ClientTransportJsr356.ClientTransportEndpoint endpoint;
+
+    Session session;
+
+    @Before
+    public void setup() {
+        RemoteEndpoint.Async remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { RemoteEndpoint.Async.class }, (p, m, args) -> {
+                    if (m.getName().equals("sendText")) {
+                        sent.add((String) args[0]);
+                        SendHandler h = (SendHandler) args[1];
+                        SendResult r = immediate;
+                        if (r == null) {
+                            pending.add(h);
+                        } else {
+                            h.onResult(r);
+                        }
+                    } else if (m.getName().equals("setBatchingAllowed")) {
+                        batching.add((Boolean) args[0]);
+                    }
+                    return null;
+                });
+        session = (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Session.class }, (
+                p, m, args) -> m.getName().equals("getAsyncRemote") ? remote : null);
+        WebSocketContainer container = (WebSocketContainer) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { WebSocketContainer.class }, (p, m, args) -> null);
+        transport = new ClientTransportJsr356(null, new ClientTransportListener() {},
+                new MmsConnection.Listener() {}, container);
+        endpoint = transport.new ClientTransportEndpoint();
+        endpoint.onOpen(session, null);
+    }
+
+    static MmsMessage message(int i) {
+        return new MmsMessage(new Hello().setClientId("mmsi:" + i));
+    }
+
+    static List<MmsMessage> messages(int count) {
+        List<MmsMessage> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(message(i));
+        }
+        return result;
+    }
+
+    static Throwable failure(CompletableFuture<Void> f) {
+        assertTrue(f.isCompletedExceptionally());
+        try {
+            f.join();
+            throw new AssertionError();
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+
+    /** Only one frame is written at a time, the completion of one write starts the next. */
+    @Test
+    public void oneWriteAtATime() throws Exception {
+        CompletableFuture<Void> f1 = transport.sendMessage(message(1));
+        CompletableFuture<Void> f2 = transport.sendMessage(message(2));
+        assertEquals(1, sent.size());
+        assertEquals(1, pending.size());
+
+        pending.poll().onResult(new SendResult());
+        assertTrue(f1.isDone());
+        assertFalse(f2.isDone());
+        assertEquals(2, sent.size());
+        assertTrue(sent.get(1).contains("mmsi:2"));
+
+        pending.poll().onResult(new SendResult());
+        assertTrue(f2.isDone());
+        assertFalse(f2.isCompletedExceptionally());
+    }
+
+    /** Writes that complete immediately are looped over, instead of recursing through the handler. */
+    @Test
+    public void immediateCompletion() throws Exception {
+        immediate = new SendResult();
+        CompletableFuture<Void> f = transport.sendMessages(messages(20_000));
+        assertTrue(f.isDone());
+        assertFalse(f.isCompletedExceptionally());
+        assertEquals(20_000, sent.size());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(sent.get(i).contains("mmsi:" + i + "\""));
+        }
+    }
+
+    /** The frames of a list are batched, and the batch is flushed after the last frame. */
+    @Test
+    public void batching() throws Exception {
+        immediate = new SendResult();
+        transport.sendMessages(messages(5));
+        assertEquals(5, sent.size());
+        assertEquals(2, batching.size());
+        assertTrue(batching.get(0));
+        assertFalse(batching.get(1));
+
+        // A single frame is not batched
+        transport.sendMessage(message(6));
+        assertEquals(2, batching.size());
+    }
+
+    /** A sender blocks when the maximum number of frames are queued, until a frame has been written. */
+    @Test
+    public void boundedQueue() throws Exception {
+        for (int i = 0; i < ClientTransportJsr356.MAX_QUEUED_FRAMES; i++) {
+            transport.sendMessage(message(i));
+        }
+        CountDownLatch queued = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            transport.sendMessage(message(-1));
+            queued.countDown();
+        });
+        t.start();
+        assertFalse(queued.await(300, TimeUnit.MILLISECONDS));
+
+        pending.poll().onResult(new SendResult());
+        assertTrue(queued.await(5, TimeUnit.SECONDS));
+    }
+
+    /** A failed write fails the frame and all queued frames. */
+    @Test
+    public void writeFailure() throws Exception {
+        CompletableFuture<Void> f1 = transport.sendMessage(message(1));
+        CompletableFuture<Void> f2 = transport.sendMessage(message(2));
+        CompletableFuture<Void> f3 = transport.sendMessage(message(3));
+
+        IOException cause = new IOException("broken");
+        pending.poll().onResult(new SendResult(cause));
+        assertSame(cause, failure(f1));
+        assertSame(cause, failure(f2));
+        assertSame(cause, failure(f3));
+        assertEquals(1, sent.size());
+
+        immediate = new SendResult(cause);
+        assertSame(cause, failure(transport.sendMessage(message(4))));
+    }
+
+    /** When the socket is closed, queued frames fail immediately, as do frames sent afterwards. */
+    @Test
+    public void failQueuedOnClose() throws Exception {
+        CompletableFuture<Void> f1 = transport.sendMessage(message(1));
+        CompletableFuture<Void> f2 = transport.sendMessage(message(2));
+        CompletableFuture<Void> f3 = transport.sendMessage(message(3));
+
+        endpoint.onClose(session, new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "bye"));
+        assertFalse(f1.isDone()); // is being written
+        assertTrue(failure(f2) instanceof ClosedChannelException);
+        assertTrue(failure(f3) instanceof ClosedChannelException);
+        assertTrue(failure(transport.sendMessage(message(4))) instanceof ClosedChannelException);
+
+        pending.poll().onResult(new SendResult(new ClosedChannelException()));
+        assertTrue(failure(f1) instanceof ClosedChannelException);
+        if (sent.size() != 1) {
+            fail("Only the first frame should have been written, was " + sent);
+        }
+    }
+}
@@ -15,7 +15,12 @@
 package net.maritimecloud.internal.mms.client.endpoint;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import net.maritimecloud.internal.mms.client.AbstractClientConnectionTest;
+import net.maritimecloud.internal.mms.client.ClientInfo;
+import net.maritimecloud.internal.mms.client.MmsThreadManager;
+import net.maritimecloud.internal.mms.client.connection.ClientConnection;
+import net.maritimecloud.internal.mms.client.connection.transport.ClientTransportFactory;
 import net.maritimecloud.internal.net.messages.MethodInvoke;
 import net.maritimecloud.internal.net.messages.MethodInvokeResult;
 import net.maritimecloud.mms.stubs.HelloWorldEndpoint;
@@ -131,6 +136,29 @@ public class EndpointTest extends AbstractClientConnectionTest {
         // assertTrue(f.receivedByCloud().isDone());
     }
 
+    /** Tests that an invocation that could not be sent does not keep its slot among the pending invocations. */
+    @Test
+    public void invokeNotSent() throws Exception {
+        conf.setMaxPendingInvocations(2);
+        ClientInfo info = new ClientInfo(conf);
+        ClientConnection connection = new ClientConnection(ClientTransportFactory.create(conf), info, conf);
+        MmsThreadManager threadManager = new MmsThreadManager(conf);
+        try {
+            // The connection has never been enabled, so invocations cannot be sent
+            ClientEndpointManager m = new ClientEndpointManager(connection, threadManager, info, conf);
+            HelloWorldEndpoint hw = m.endpointFrom(ID4, HelloWorldEndpoint.class);
+            for (int i = 0; i < 5; i++) {
+                try {
+                    hw.hello();
+                    fail("Should have failed");
+                } catch (IllegalStateException ok) {}
+            }
+            assertEquals(0, m.invokers.size());
+        } finally {
+            threadManager.stop();
+        }
+    }
+
 
     // @Test
     // public void invocation() throws Exception {
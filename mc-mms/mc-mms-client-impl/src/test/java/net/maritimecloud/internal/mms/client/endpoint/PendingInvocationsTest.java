@@ -0,0 +1,135 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.client.endpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.maritimecloud.net.mms.MmsClientClosedException;
+import net.maritimecloud.util.Binary;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link PendingInvocations}.
+ *
+ * @author Kasper Nielsen
+ */
+public class PendingInvocationsTest {
+
+    static final long TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    final long now = System.nanoTime();
+
+    @Test
+    public void bounded() {
+        PendingInvocations p = new PendingInvocations(2, TIMEOUT, now);
+        RemoteInvocation r1 = p.add(null, now);
+        p.add(null, now);
+        try {
+            p.add(null, now);
+            fail("Should have been rejected");
+        } catch (RejectedExecutionException ok) {}
+        assertEquals(2, p.size());
+
+        r1.fr.complete(null);
+        assertEquals(1, p.size());
+        p.add(null, now);
+        assertEquals(2, p.size());
+    }
+
+    @Test
+    public void close() {
+        PendingInvocations p = new PendingInvocations(10, TIMEOUT, now);
+        RemoteInvocation r = p.add(null, now);
+        p.close(new MmsClientClosedException("closed"));
+        assertCause(r, MmsClientClosedException.class);
+        assertEquals(0, p.size());
+        try {
+            p.add(null, now);
+            fail("Should have been rejected");
+        } catch (MmsClientClosedException ok) {}
+    }
+
+    @Test
+    public void messageId() {
+        PendingInvocations p = new PendingInvocations(10, TIMEOUT, now);
+        RemoteInvocation r1 = p.add(null, now);
+        RemoteInvocation r2 = p.add(null, now);
+        assertEquals(8, r1.fr.getMessageId().size());
+        assertFalse(r1.fr.getMessageId().equals(r2.fr.getMessageId()));
+
+        assertSame(r1, p.get(r1.fr.getMessageId()));
+        assertSame(r2, p.get(Binary.copyFrom(r2.fr.getMessageId().toByteArray())));
+        assertNull(p.get(Binary.random(32)));
+        assertNull(p.get(null));
+
+        r1.fr.complete(null);
+        assertNull(p.get(r1.fr.getMessageId()));
+    }
+
+    @Test
+    public void timeout() {
+        PendingInvocations p = new PendingInvocations(10, TIMEOUT, now);
+        RemoteInvocation r = p.add(null, now);
+        p.expire(now + TIMEOUT - PendingInvocations.TICK_NANOS);
+        assertFalse(r.fr.isDone());
+
+        p.expire(now + TIMEOUT + PendingInvocations.TICK_NANOS);
+        assertCause(r, TimeoutException.class);
+        assertEquals(0, p.size());
+    }
+
+    @Test
+    public void timeoutAfterSeveralRevolutions() {
+        long timeout = PendingInvocations.TICK_NANOS * PendingInvocations.WHEEL_SIZE * 3;
+        PendingInvocations p = new PendingInvocations(10, timeout, now);
+        RemoteInvocation r = p.add(null, now);
+        for (long t = now; t < now + timeout - PendingInvocations.TICK_NANOS; t += PendingInvocations.TICK_NANOS) {
+            p.expire(t);
+        }
+        assertFalse(r.fr.isDone());
+        p.expire(now + timeout + PendingInvocations.TICK_NANOS);
+        assertTrue(r.fr.isDone());
+    }
+
+    @Test
+    public void orTimeoutShortensDeadline() {
+        PendingInvocations p = new PendingInvocations(10, TIMEOUT, now);
+        RemoteInvocation r = p.add(null, now);
+        r.fr.orTimeout(1, TimeUnit.SECONDS);
+        p.expire(System.nanoTime() + TimeUnit.SECONDS.toNanos(2));
+        assertCause(r, TimeoutException.class);
+        assertEquals(0, p.size());
+    }
+
+    static void assertCause(RemoteInvocation r, Class<? extends Throwable> type) {
+        try {
+            r.fr.join();
+            fail("Should have failed");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause().toString(), type.isInstance(e.getCause()));
+        }
+    }
+}
@@ -35,6 +35,12 @@ public class PositionReport implements Message {
     /** Field definition. */
     private PositionTime positionTime;
 
+    /** Field definition. */
+    private Float course;
+
+    /** Field definition. */
+    private Float speed;
+
     /** Creates a new PositionReport. */
     public PositionReport() {}
 
@@ -46,6 +52,8 @@ public class PositionReport implements Message {
      */
     PositionReport(MessageReader reader) throws IOException {
         this.positionTime = reader.readPositionTime(3, "positionTime", null);
+        this.course = reader.readFloat(4, "course", null);
+        this.speed = reader.readFloat(5, "speed", null);
     }
 
     /**
@@ -56,10 +64,14 @@ public class PositionReport implements Message {
      */
     PositionReport(PositionReport instance) {
         this.positionTime = instance.positionTime;
+        this.course = instance.course;
+        this.speed = instance.speed;
     }
 
     void writeTo(MessageWriter w) throws IOException {
         w.writePositionTime(3, "positionTime", positionTime);
+        w.writeFloat(4, "course", course);
+        w.writeFloat(5, "speed", speed);
     }
 
     public PositionTime getPositionTime() {
@@ -75,6 +87,34 @@ public class PositionReport implements Message {
         return this;
     }
 
+    /** The course over ground in degrees, used for extrapolating the position until the next report. */
+    public Float getCourse() {
+        return course;
+    }
+
+    public boolean hasCourse() {
+        return course != null;
+    }
+
+    public PositionReport setCourse(Float course) {
+        this.course = course;
+        return this;
+    }
+
+    /** The speed over ground in meters per second, used for extrapolating the position until the next report. */
+    public Float getSpeed() {
+        return speed;
+    }
+
+    public boolean hasSpeed() {
+        return speed != null;
+    }
+
+    public PositionReport setSpeed(Float speed) {
+        this.speed = speed;
+        return this;
+    }
+
     /** {@inheritDoc} */
     @Override
     public PositionReport immutable() {
@@ -96,7 +136,9 @@ public class PositionReport implements Message {
     /** {@inheritDoc} */
     @Override
     public int hashCode() {
-        return Hashing.hashcode(this.positionTime);
+        int result = 31 + Hashing.hashcode(this.positionTime);
+        result = 31 * result + Hashing.hashcode(this.course);
+        return 31 * result + Hashing.hashcode(this.speed);
     }
 
     /** {@inheritDoc} */
@@ -106,7 +148,9 @@ public class PositionReport implements Message {
             return true;
         } else if (other instanceof PositionReport) {
             PositionReport o = (PositionReport) other;
-            return Objects.equals(positionTime, o.positionTime);
+            return Objects.equals(positionTime, o.positionTime) &&
+                   Objects.equals(course, o.course) &&
+                   Objects.equals(speed, o.speed);
         }
         return false;
     }
@@ -151,5 +195,17 @@ public class PositionReport implements Message {
         public PositionReport setPositionTime(PositionTime positionTime) {
             throw new UnsupportedOperationException("Instance is immutable");
         }
+
+        /** {@inheritDoc} */
+        @Override
+        public PositionReport setCourse(Float course) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public PositionReport setSpeed(Float speed) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
     }
 }
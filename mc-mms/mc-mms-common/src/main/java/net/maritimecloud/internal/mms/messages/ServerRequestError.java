@@ -0,0 +1,240 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.messages;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import net.maritimecloud.internal.message.Hashing;
+import net.maritimecloud.message.Message;
+import net.maritimecloud.message.MessageReader;
+import net.maritimecloud.message.MessageSerializer;
+import net.maritimecloud.message.MessageWriter;
+import net.maritimecloud.util.Binary;
+
+public class ServerRequestError implements Message {
+
+    /** The full name of this message. */
+    public static final String NAME = "net.maritimecloud.internal.mms.messages.ServerRequestError";
+
+    /** A message serializer that can read and write instances of this class. */
+    public static final MessageSerializer<ServerRequestError> SERIALIZER = new Serializer();
+
+    /** Field definition. */
+    private Binary requestId;
+
+    /** Field definition. */
+    private Integer errorCode;
+
+    /** Field definition. */
+    private String errorMessage;
+
+    /** Field definition. */
+    private Integer retryAfter;
+
+    /** Creates a new ServerRequestError. */
+    public ServerRequestError() {}
+
+    /**
+     * Creates a new ServerRequestError by reading from a message reader.
+     *
+     * @param reader
+     *            the message reader
+     */
+    ServerRequestError(MessageReader reader) throws IOException {
+        this.requestId = reader.readBinary(1, "requestId", null);
+        this.errorCode = reader.readInt(2, "errorCode", null);
+        this.errorMessage = reader.readText(3, "errorMessage", null);
+        this.retryAfter = reader.readInt(4, "retryAfter", null);
+    }
+
+    /**
+     * Creates a new ServerRequestError by copying an existing.
+     *
+     * @param instance
+     *            the instance to copy all fields from
+     */
+    ServerRequestError(ServerRequestError instance) {
+        this.requestId = instance.requestId;
+        this.errorCode = instance.errorCode;
+        this.errorMessage = instance.errorMessage;
+        this.retryAfter = instance.retryAfter;
+    }
+
+    void writeTo(MessageWriter w) throws IOException {
+        w.writeBinary(1, "requestId", requestId);
+        w.writeInt(2, "errorCode", errorCode);
+        w.writeText(3, "errorMessage", errorMessage);
+        w.writeInt(4, "retryAfter", retryAfter);
+    }
+
+    /** Returns the message id of the request that failed. */
+    public Binary getRequestId() {
+        return requestId;
+    }
+
+    public boolean hasRequestId() {
+        return requestId != null;
+    }
+
+    public ServerRequestError setRequestId(Binary requestId) {
+        this.requestId = requestId;
+        return this;
+    }
+
+    /** Returns the error code. */
+    public Integer getErrorCode() {
+        return errorCode;
+    }
+
+    public boolean hasErrorCode() {
+        return errorCode != null;
+    }
+
+    public ServerRequestError setErrorCode(Integer errorCode) {
+        this.errorCode = errorCode;
+        return this;
+    }
+
+    /** Returns a description of the error. */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public boolean hasErrorMessage() {
+        return errorMessage != null;
+    }
+
+    public ServerRequestError setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+        return this;
+    }
+
+    /** Returns the number of milliseconds to wait before retrying the request, if it can be retried. */
+    public Integer getRetryAfter() {
+        return retryAfter;
+    }
+
+    public boolean hasRetryAfter() {
+        return retryAfter != null;
+    }
+
+    public ServerRequestError setRetryAfter(Integer retryAfter) {
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ServerRequestError immutable() {
+        return new Immutable(this);
+    }
+
+    /** Returns a JSON representation of this message */
+    public String toJSON() {
+        return MessageSerializer.writeToJSON(this, SERIALIZER);
+    }
+
+    /**
+     * Creates a message of this type from a JSON throwing a runtime exception if the format of the message does not match
+     */
+    public static ServerRequestError fromJSON(CharSequence c) {
+        return MessageSerializer.readFromJSON(SERIALIZER, c);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        int result = 31 + Hashing.hashcode(this.requestId);
+        result = 31 * result + Hashing.hashcode(this.errorCode);
+        result = 31 * result + Hashing.hashcode(this.errorMessage);
+        return 31 * result + Hashing.hashcode(this.retryAfter);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        } else if (other instanceof ServerRequestError) {
+            ServerRequestError o = (ServerRequestError) other;
+            return Objects.equals(requestId, o.requestId) &&
+                   Objects.equals(errorCode, o.errorCode) &&
+                   Objects.equals(errorMessage, o.errorMessage) &&
+                   Objects.equals(retryAfter, o.retryAfter);
+        }
+        return false;
+    }
+
+    /** A serializer for reading and writing instances of ServerRequestError. */
+    static class Serializer extends MessageSerializer<ServerRequestError> {
+
+        /** {@inheritDoc} */
+        @Override
+        public ServerRequestError read(MessageReader reader) throws IOException {
+            return new ServerRequestError(reader);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void write(ServerRequestError message, MessageWriter writer) throws IOException {
+            message.writeTo(writer);
+        }
+    }
+
+    /** An immutable version of ServerRequestError. */
+    static class Immutable extends ServerRequestError {
+
+        /**
+         * Creates a new Immutable instance.
+         *
+         * @param instance
+         *            the instance to make an immutable copy of
+         */
+        Immutable(ServerRequestError instance) {
+            super(instance);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public ServerRequestError immutable() {
+            return this;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public ServerRequestError setRequestId(Binary requestId) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public ServerRequestError setErrorCode(Integer errorCode) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public ServerRequestError setErrorMessage(String errorMessage) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public ServerRequestError setRetryAfter(Integer retryAfter) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+    }
+}
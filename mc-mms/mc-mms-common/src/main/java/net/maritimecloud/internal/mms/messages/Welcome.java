@@ -45,6 +45,9 @@ public class Welcome implements Message {
     /** Field definition. */
     private final Map<String, String> properties;
 
+    /** Field definition. */
+    private Integer retryAfter;
+
     /** Creates a new Welcome. */
     public Welcome() {
         protocolVersion = new java.util.ArrayList<>();
@@ -61,6 +64,7 @@ public class Welcome implements Message {
         this.protocolVersion = MessageHelper.readList(1, "protocolVersion", reader, ValueSerializer.INT);
         this.serverId = reader.readText(2, "serverId", null);
         this.properties = MessageHelper.readMap(3, "properties", reader, ValueSerializer.TEXT, ValueSerializer.TEXT);
+        this.retryAfter = reader.readInt(4, "retryAfter", null);
     }
 
     /**
@@ -73,12 +77,14 @@ public class Welcome implements Message {
         this.protocolVersion = MessageHelper.immutableCopy(instance.protocolVersion);
         this.serverId = instance.serverId;
         this.properties = MessageHelper.immutableCopy(instance.properties);
+        this.retryAfter = instance.retryAfter;
     }
 
     void writeTo(MessageWriter w) throws IOException {
         w.writeList(1, "protocolVersion", protocolVersion, ValueSerializer.INT);
         w.writeText(2, "serverId", serverId);
         w.writeMap(3, "properties", properties, ValueSerializer.TEXT, ValueSerializer.TEXT);
+        w.writeInt(4, "retryAfter", retryAfter);
     }
 
     /** Returns a list of protocol versions this server understands. */
@@ -133,6 +139,23 @@ public class Welcome implements Message {
         return this;
     }
 
+    /**
+     * Returns the number of milliseconds the client should wait before connecting again. Only set if the server is
+     * too busy to accept the connection, in which case the server closes the connection after the welcome message.
+     */
+    public Integer getRetryAfter() {
+        return retryAfter;
+    }
+
+    public boolean hasRetryAfter() {
+        return retryAfter != null;
+    }
+
+    public Welcome setRetryAfter(Integer retryAfter) {
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
     /** {@inheritDoc} */
     @Override
     public Welcome immutable() {
@@ -156,7 +179,8 @@ public class Welcome implements Message {
     public int hashCode() {
         int result = 31 + Hashing.hashcode(this.protocolVersion);
         result = 31 * result + Hashing.hashcode(this.serverId);
-        return 31 * result + Hashing.hashcode(this.properties);
+        result = 31 * result + Hashing.hashcode(this.properties);
+        return 31 * result + Hashing.hashcode(this.retryAfter);
     }
 
     /** {@inheritDoc} */
@@ -168,7 +192,8 @@ public class Welcome implements Message {
             Welcome o = (Welcome) other;
             return Objects.equals(protocolVersion, o.protocolVersion) &&
                    Objects.equals(serverId, o.serverId) &&
-                   Objects.equals(properties, o.properties);
+                   Objects.equals(properties, o.properties) &&
+                   Objects.equals(retryAfter, o.retryAfter);
         }
         return false;
     }
@@ -225,5 +250,11 @@ public class Welcome implements Message {
         public Welcome putProperties(String key, String value) {
             throw new UnsupportedOperationException("Instance is immutable");
         }
+
+        /** {@inheritDoc} */
+        @Override
+        public Welcome setRetryAfter(Integer retryAfter) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
     }
 }
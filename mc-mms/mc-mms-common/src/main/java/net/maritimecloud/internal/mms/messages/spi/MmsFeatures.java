@@ -0,0 +1,63 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.messages.spi;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optional protocol features. A client lists the features it supports in the {@link #HELLO_PROPERTY} property of its
+ * Hello message, and the server only uses a feature with clients that have listed it. Clients built before a feature
+ * was introduced never list it, so they keep working against newer servers.
+ *
+ * @author Kasper Nielsen
+ */
+public final class MmsFeatures {
+
+    /** The client understands {@link MmsMessageType#BROADCAST_ACK_BATCH} messages. */
+    public static final String BROADCAST_ACK_BATCH = "broadcastAckBatch";
+
+    /** The name of the Hello property with a comma separated list of features. */
+    public static final String HELLO_PROPERTY = "features";
+
+    /** The features supported by this implementation. */
+    public static final String SUPPORTED = BROADCAST_ACK_BATCH;
+
+    /** Cannot instantiate. */
+    private MmsFeatures() {}
+
+    /**
+     * Returns the features listed in the specified Hello properties.
+     *
+     * @param helloProperties
+     *            the properties of a Hello message
+     * @return the features listed in the properties, or an empty set if none are listed
+     */
+    public static Set<String> parse(Map<String, String> helloProperties) {
+        String s = helloProperties == null ? null : helloProperties.get(HELLO_PROPERTY);
+        if (s == null || s.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new HashSet<>();
+        for (String f : s.split(",")) {
+            if (!f.trim().isEmpty()) {
+                result.add(f.trim());
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
@@ -20,12 +20,14 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.maritimecloud.internal.message.MessageHelper;
 import net.maritimecloud.internal.message.binary.protobuf.ProtobufMessageReader;
 import net.maritimecloud.internal.message.binary.protobuf.ProtobufMessageWriter;
 import net.maritimecloud.internal.message.text.json.JsonMessageReader;
 import net.maritimecloud.internal.net.messages.Broadcast;
+import net.maritimecloud.internal.net.util.PayloadFormat;
 import net.maritimecloud.message.Message;
 import net.maritimecloud.message.MessageSerializer;
 import net.maritimecloud.net.BroadcastMessage;
@@ -36,6 +38,11 @@ import net.maritimecloud.net.BroadcastMessage;
  * @author Kasper Nielsen
  */
 public class MmsMessage {
+
+    /** The serializers of broadcast messages that have been read, by the name of the broadcast message. */
+    private static final ConcurrentHashMap<String, MessageSerializer<BroadcastMessage>> BROADCAST_SERIALIZERS =
+            new ConcurrentHashMap<>();
+
     boolean fastAck;
 
     Long latestReceivedId;
@@ -219,14 +226,17 @@ public class MmsMessage {
     }
 
     public static BroadcastMessage tryRead(Broadcast bd) throws ReflectiveOperationException {
-        return tryRead(bd.getBroadcastType(), bd.getPayload().toStringUtf8());
+        PayloadFormat format = PayloadFormat.fromTag(bd.getPayloadFormat());
+        MessageSerializer<BroadcastMessage> p = serializerOf(bd.getBroadcastType());
+        try {
+            return p.read(format.newMessageReader(bd.getPayload()));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read message from " + format, e);
+        }
     }
 
-    @SuppressWarnings("unchecked")
     public static BroadcastMessage tryRead(String name, String contents) throws ReflectiveOperationException {
-        Class<BroadcastMessage> cl = (Class<BroadcastMessage>) Class.forName(name);
-        Field field = cl.getField("SERIALIZER");
-        MessageSerializer<BroadcastMessage> p = (MessageSerializer<BroadcastMessage>) field.get(null);
+        MessageSerializer<BroadcastMessage> p = serializerOf(name);
         JsonMessageReader r = new JsonMessageReader(contents);
         try {
             return p.read(r);
@@ -235,6 +245,29 @@ public class MmsMessage {
         }
     }
 
+    /**
+     * Returns the serializer of the broadcast message with the specified name. The serializer is looked up on the
+     * classpath the first time it is requested, and cached after that.
+     *
+     * @param name
+     *            the name of the broadcast message
+     * @return the serializer of the broadcast message
+     * @throws ReflectiveOperationException
+     *             if the serializer could not be found
+     */
+    @SuppressWarnings("unchecked")
+    public static MessageSerializer<BroadcastMessage> serializerOf(String name) throws ReflectiveOperationException {
+        MessageSerializer<BroadcastMessage> p = BROADCAST_SERIALIZERS.get(name);
+        if (p == null) {
+            // right now: msdl message name == full Java class name
+            Class<BroadcastMessage> cl = (Class<BroadcastMessage>) Class.forName(name);
+            Field field = cl.getField("SERIALIZER");
+            p = (MessageSerializer<BroadcastMessage>) field.get(null);
+            BROADCAST_SERIALIZERS.putIfAbsent(name, p);
+        }
+        return p;
+    }
+
     public boolean isInbound() {
         return inbound;
     }
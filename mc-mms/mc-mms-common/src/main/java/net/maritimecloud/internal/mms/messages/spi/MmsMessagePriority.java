@@ -0,0 +1,58 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.messages.spi;
+
+import static java.util.Objects.requireNonNull;
+
+import net.maritimecloud.message.Message;
+
+/**
+ * The priority with which a message is sent to the remote side. Each type of message has a default priority, which
+ * can be overridden for a single message when it is sent. Messages are written by taking turns between the priorities,
+ * where each priority may send up to its weight of messages per turn. So a backlog of low priority messages cannot
+ * hold back a high priority message for long, while low priority messages are never starved completely.
+ *
+ * @author Kasper Nielsen
+ */
+public enum MmsMessagePriority {
+
+    /** Control messages and keep alives, whose delay might make the remote side think the connection is dead. */
+    HIGH(8),
+
+    /** Method invocations, results and broadcast acknowledgements. */
+    NORMAL(4),
+
+    /** Bulk messages such as broadcasts. */
+    LOW(1);
+
+    /** The number of messages of this priority that may be sent per turn. */
+    final int weight;
+
+    MmsMessagePriority(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Returns the default priority of the specified message.
+     *
+     * @param message
+     *            the message
+     * @return the default priority of the message
+     */
+    public static MmsMessagePriority of(Message message) {
+        MmsMessageType type = MmsMessageType.getTypeOf(requireNonNull(message).getClass());
+        return type == null ? NORMAL : type.priority;
+    }
+}
@@ -0,0 +1,124 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.messages.spi;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+
+/**
+ * A queue of messages waiting to be sent, with a lane for each {@link MmsMessagePriority}. Elements are polled from
+ * the lanes using weighted round robin, in order of priority within each turn. Elements of the same priority are
+ * always polled in the order they were added.
+ * <p>
+ * Because elements are not polled in the order they were added, message ids must be assigned when an element is
+ * polled and not when it is added. Otherwise the remote side would acknowledge messages it has not received yet.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @param <T>
+ *            the type of elements in the queue
+ * @author Kasper Nielsen
+ */
+public class MmsMessageQueue<T> {
+
+    /** The priorities, highest priority first. */
+    private static final MmsMessagePriority[] PRIORITIES = MmsMessagePriority.values();
+
+    /** The number of elements each lane may still poll in the current turn. */
+    private final int[] credits = new int[PRIORITIES.length];
+
+    /** The lanes, indexed by the ordinal of the priority. */
+    private final ArrayDeque<T>[] lanes;
+
+    /** The total number of elements in all lanes. */
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public MmsMessageQueue() {
+        lanes = new ArrayDeque[PRIORITIES.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ArrayDeque<>();
+            credits[i] = PRIORITIES[i].weight;
+        }
+    }
+
+    /**
+     * Adds an element to the end of the lane of the specified priority.
+     *
+     * @param element
+     *            the element to add
+     * @param priority
+     *            the priority of the element
+     */
+    public void add(T element, MmsMessagePriority priority) {
+        lanes[priority.ordinal()].addLast(requireNonNull(element));
+        size++;
+    }
+
+    /**
+     * Adds an element to the front of the lane of the specified priority. Used for requeuing messages that must be
+     * resent.
+     *
+     * @param element
+     *            the element to add
+     * @param priority
+     *            the priority of the element
+     */
+    public void addFirst(T element, MmsMessagePriority priority) {
+        lanes[priority.ordinal()].addFirst(requireNonNull(element));
+        size++;
+    }
+
+    /** Removes all elements from the queue. */
+    public void clear() {
+        for (ArrayDeque<T> lane : lanes) {
+            lane.clear();
+        }
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes and returns the next element to send.
+     *
+     * @return the next element to send, or null if the queue is empty
+     */
+    public T poll() {
+        if (size == 0) {
+            return null;
+        }
+        for (;;) {
+            for (int i = 0; i < lanes.length; i++) {
+                if (credits[i] > 0 && !lanes[i].isEmpty()) {
+                    credits[i]--;
+                    size--;
+                    return lanes[i].pollFirst();
+                }
+            }
+            // Every non-empty lane has used its credits, start a new turn
+            for (int i = 0; i < lanes.length; i++) {
+                credits[i] = PRIORITIES[i].weight;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
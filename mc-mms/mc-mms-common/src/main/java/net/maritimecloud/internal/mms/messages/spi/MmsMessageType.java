@@ -25,9 +25,11 @@ import net.maritimecloud.internal.mms.messages.Close;
 import net.maritimecloud.internal.mms.messages.Connected;
 import net.maritimecloud.internal.mms.messages.Hello;
 import net.maritimecloud.internal.mms.messages.PositionReport;
+import net.maritimecloud.internal.mms.messages.ServerRequestError;
 import net.maritimecloud.internal.mms.messages.Welcome;
 import net.maritimecloud.internal.net.messages.Broadcast;
 import net.maritimecloud.internal.net.messages.BroadcastAck;
+import net.maritimecloud.internal.net.messages.BroadcastAckBatch;
 import net.maritimecloud.internal.net.messages.MethodInvoke;
 import net.maritimecloud.internal.net.messages.MethodInvokeResult;
 import net.maritimecloud.message.Message;
@@ -43,20 +45,20 @@ enum MmsMessageType {
     // 0 - 7 : lifecycle, connect/reconnect/disconnect.. keep/alive
 
     /** This is the first message sent by the server to client. Whenever a Websocket connection has been created. */
-    WELCOME(1, Welcome.class, Welcome.SERIALIZER), // 1. message from server 2 client
+    WELCOME(1, Welcome.class, Welcome.SERIALIZER, MmsMessagePriority.HIGH), // 1. message from server 2 client
 
     /** This is the first message from the client to server. Contains an optional reconnect token. */
-    HELLO(2, Hello.class, Hello.SERIALIZER), // 1. message from client 2 server
+    HELLO(2, Hello.class, Hello.SERIALIZER, MmsMessagePriority.HIGH), // 1. message from client 2 server
 
     /** The final handshake massage from the server, contains the connection id */
-    CONNECTED(3, Connected.class, Connected.SERIALIZER), // 2. message from server 2 client
+    CONNECTED(3, Connected.class, Connected.SERIALIZER, MmsMessagePriority.HIGH), // 2. message from server 2 client
 
     /** The final handshake massage from the server, contains the connection id */
-    CLOSE(4, Close.class, Close.SERIALIZER), // 2. message from server 2 client
+    CLOSE(4, Close.class, Close.SERIALIZER, MmsMessagePriority.HIGH), // 2. message from server 2 client
 
 
     /** A keep alive message sent periodically. Contains current position/time. */
-    POSITION_REPORT(8, PositionReport.class, PositionReport.SERIALIZER),
+    POSITION_REPORT(8, PositionReport.class, PositionReport.SERIALIZER, MmsMessagePriority.HIGH),
 
     // Channel Switched + men er jo naesten det samme som reconnect
     // nej lige saa snart man er connected, starter man med at sende beskeder der
@@ -68,19 +70,22 @@ enum MmsMessageType {
     /* ******************** Communication client<->server ******************* */
 
     /** Invokes a remote service. */
-    METHOD_INVOKE(10, MethodInvoke.class, MethodInvoke.SERIALIZER), //
+    METHOD_INVOKE(10, MethodInvoke.class, MethodInvoke.SERIALIZER, MmsMessagePriority.NORMAL), //
 
     /** The result of invoking a remote service. */
-    METHOD_INVOKE_RESULT(11, MethodInvokeResult.class, MethodInvokeResult.SERIALIZER), //
+    METHOD_INVOKE_RESULT(11, MethodInvokeResult.class, MethodInvokeResult.SERIALIZER, MmsMessagePriority.NORMAL), //
 
     /** Broadcasts a message. */
-    BROADCAST(12, Broadcast.class, Broadcast.SERIALIZER), // client->server
+    BROADCAST(12, Broadcast.class, Broadcast.SERIALIZER, MmsMessagePriority.LOW), // client->server
 
     /** Acknowledgment of a received broadcast by a remote client. */
-    BROADCAST_ACK(13, BroadcastAck.class, BroadcastAck.SERIALIZER),
+    BROADCAST_ACK(13, BroadcastAck.class, BroadcastAck.SERIALIZER, MmsMessagePriority.NORMAL),
+
+    /** Acknowledgments of a received broadcast by a number of remote clients. */
+    BROADCAST_ACK_BATCH(14, BroadcastAckBatch.class, BroadcastAckBatch.SERIALIZER, MmsMessagePriority.NORMAL),
 
     /** The standard error message sent for an invalid request from the client */
-    // REQUEST_ERROR(15, ServerRequestError.class), // <- requestId, int error_code, String message
+    REQUEST_ERROR(15, ServerRequestError.class, ServerRequestError.SERIALIZER, MmsMessagePriority.HIGH),
     ;
     final Class<? extends Message> cl;
 
@@ -88,13 +93,18 @@ enum MmsMessageType {
 
     final MessageSerializer<? extends Message> p;
 
-    MmsMessageType(int type, Class<? extends Message> cl, MessageSerializer<? extends Message> p) {
+    /** The default priority of messages of this type. */
+    final MmsMessagePriority priority;
+
+    MmsMessageType(int type, Class<? extends Message> cl, MessageSerializer<? extends Message> p,
+            MmsMessagePriority priority) {
         if (type < 1 || type > 15) {
             throw new IllegalArgumentException("type must be 1>= type <=15");
         }
         this.type = type;
         this.cl = requireNonNull(cl);
         this.p = p;
+        this.priority = requireNonNull(priority);
     }
 
     public static MessageSerializer<? extends Message> getParser(int type) {
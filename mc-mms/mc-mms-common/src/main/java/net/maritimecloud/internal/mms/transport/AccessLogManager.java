@@ -21,6 +21,7 @@ import net.maritimecloud.internal.mms.messages.PositionReport;
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
 import net.maritimecloud.internal.net.messages.Broadcast;
 import net.maritimecloud.internal.net.messages.BroadcastAck;
+import net.maritimecloud.internal.net.messages.BroadcastAckBatch;
 import net.maritimecloud.internal.net.messages.MethodInvoke;
 import net.maritimecloud.internal.net.messages.MethodInvokeResult;
 import net.maritimecloud.message.Message;
@@ -291,6 +292,7 @@ public class AccessLogManager {
                 if (m instanceof Broadcast && !inbound) {
                     return false;
                 } else if (m instanceof BroadcastAck ||
+                        m instanceof BroadcastAckBatch ||
                         m instanceof Connected ||
                         m instanceof PositionReport ||
                         m instanceof MethodInvokeResult) {
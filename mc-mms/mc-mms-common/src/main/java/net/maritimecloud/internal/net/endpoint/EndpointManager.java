@@ -16,7 +16,7 @@ package net.maritimecloud.internal.net.endpoint;
 
 import static java.util.Objects.requireNonNull;
 
-import java.io.StringWriter;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -28,15 +28,15 @@ import java.util.function.Consumer;
 
 import net.maritimecloud.core.id.MaritimeId;
 import net.maritimecloud.internal.message.text.json.JsonMessageReader;
-import net.maritimecloud.internal.message.text.json.JsonValueWriter;
 import net.maritimecloud.internal.msdl.dynamic.AbstractAsynchronousDynamicEndpointImplementation;
 import net.maritimecloud.internal.net.messages.MethodInvoke;
 import net.maritimecloud.internal.net.messages.MethodInvokeFailure;
 import net.maritimecloud.internal.net.messages.MethodInvokeResult;
 import net.maritimecloud.internal.net.util.DefaultMessageHeader;
+import net.maritimecloud.internal.net.util.PayloadFormat;
+import net.maritimecloud.internal.net.util.PayloadFormat.ValueBuffer;
 import net.maritimecloud.message.MessageReader;
 import net.maritimecloud.net.EndpointImplementation;
-import net.maritimecloud.util.Binary;
 
 /**
  *
@@ -134,29 +134,30 @@ public class EndpointManager {
 
         void execute(MethodInvoke ei, MethodInvokeResult ack, Map<String, Object> context) {
             MaritimeId sourceId = MaritimeId.create(ei.getSenderId());
+            PayloadFormat format = PayloadFormat.fromTag(ei.getParametersFormat());
             MessageReader r = null;
-            if (ei.getParameters() != null) {
-                r = new JsonMessageReader(ei.getParameters());
+            try {
+                r = parametersReader(ei, format);
+            } catch (IOException e) {
+                failed(ack, e);
+                return;
             }
 
             DefaultMessageHeader mc = new DefaultMessageHeader(sourceId, ei.getMessageId(), ei.getSenderTimestamp(),
                     ei.getSenderPosition(), context);
 
-            StringWriter sw = new StringWriter();
+            // Reply in the same format as the parameters, which the invoker is known to understand
+            ValueBuffer result = format.newValueBuffer();
             try {
                 implementation.invoke(EndpointMirror.stripEndpointName(ei.getEndpointMethod()), mc, r,
-                        new JsonValueWriter(sw));
+                        result.getWriter());
             } catch (Exception e) {
-                MethodInvokeFailure mif = new MethodInvokeFailure();
-                mif.setExceptionType(e.getClass().getName());
-                mif.setDescription(e.getMessage());
-                mif.setErrorCode(1);
-                ack.setFailure(mif);
+                failed(ack, e);
                 e.printStackTrace();
             }
 
             if (!ack.hasFailure()) {
-                ack.setResult(Binary.copyFromUtf8(sw.toString()));
+                setResult(ack, format, result);
             }
         }
 
@@ -164,15 +165,20 @@ public class EndpointManager {
         void executeAsync(MethodInvoke ei, MethodInvokeResult ack, Map<String, Object> context,
                 Consumer<MethodInvokeResult> consumer) {
             MaritimeId sourceId = MaritimeId.create(ei.getSenderId());
+            PayloadFormat format = PayloadFormat.fromTag(ei.getParametersFormat());
             MessageReader r = null;
-            if (ei.getParameters() != null) {
-                r = new JsonMessageReader(ei.getParameters());
+            try {
+                r = parametersReader(ei, format);
+            } catch (IOException e) {
+                failed(ack, e);
+                consumer.accept(ack);
+                return;
             }
 
             DefaultMessageHeader mc = new DefaultMessageHeader(sourceId, ei.getMessageId(), ei.getSenderTimestamp(),
                     ei.getSenderPosition(), context);
 
-            StringWriter sw = new StringWriter();
+            ValueBuffer result = format.newValueBuffer();
 
             CompletableFuture<Object> f = new CompletableFuture<>();
             f.handle((v, t) -> {
@@ -185,7 +191,7 @@ public class EndpointManager {
                     t.printStackTrace();
                 }
                 if (!ack.hasFailure()) {
-                    ack.setResult(Binary.copyFromUtf8(sw.toString()));
+                    setResult(ack, format, result);
                 }
                 consumer.accept(ack);
                 return null;
@@ -193,7 +199,7 @@ public class EndpointManager {
 
             try {
                 implementation.invokeAsync(EndpointMirror.stripEndpointName(ei.getEndpointMethod()), mc, r,
-                        new JsonValueWriter(sw), (CompletableFuture) f);
+                        result.getWriter(), (CompletableFuture) f);
             } catch (Exception e) {
                 MethodInvokeFailure mif = new MethodInvokeFailure();
                 mif.setExceptionType(e.getClass().getName());
@@ -207,5 +213,29 @@ public class EndpointManager {
         public String getName() {
             return implementation.getEndpointName();
         }
+
+        private static void failed(MethodInvokeResult ack, Throwable t) {
+            MethodInvokeFailure mif = new MethodInvokeFailure();
+            mif.setExceptionType(t.getClass().getName());
+            mif.setDescription(t.getMessage());
+            mif.setErrorCode(1);
+            ack.setFailure(mif);
+        }
+
+        private static MessageReader parametersReader(MethodInvoke ei, PayloadFormat format) throws IOException {
+            if (format == PayloadFormat.BINARY) {
+                return ei.getBinaryParameters() == null ? null : format.newMessageReader(ei.getBinaryParameters());
+            }
+            return ei.getParameters() == null ? null : new JsonMessageReader(ei.getParameters());
+        }
+
+        private static void setResult(MethodInvokeResult ack, PayloadFormat format, ValueBuffer result) {
+            try {
+                ack.setResult(result.toBinary());
+                ack.setResultFormat(format.toTag());
+            } catch (IOException e) {
+                failed(ack, e);
+            }
+        }
     }
 }
@@ -62,6 +62,12 @@ public class Broadcast implements Message {
     /** Field definition. */
     private Integer radius;
 
+    /** Field definition. */
+    private Integer timeToLive;
+
+    /** Field definition. */
+    private Integer payloadFormat;
+
     /** Field definition. */
     private Binary signature;
 
@@ -84,6 +90,8 @@ public class Broadcast implements Message {
         this.ackBroadcast = reader.readBoolean(7, "ackBroadcast", null);
         this.area = reader.readMessage(10, "area", net.maritimecloud.util.geometry.Area.SERIALIZER);
         this.radius = reader.readInt(11, "radius", null);
+        this.timeToLive = reader.readInt(12, "timeToLive", null);
+        this.payloadFormat = reader.readInt(13, "payloadFormat", null);
         this.signature = reader.readBinary(15, "signature", null);
     }
 
@@ -103,6 +111,8 @@ public class Broadcast implements Message {
         this.ackBroadcast = instance.ackBroadcast;
         this.area = MessageHelper.immutable(instance.area);
         this.radius = instance.radius;
+        this.timeToLive = instance.timeToLive;
+        this.payloadFormat = instance.payloadFormat;
         this.signature = instance.signature;
     }
 
@@ -116,6 +126,8 @@ public class Broadcast implements Message {
         w.writeBoolean(7, "ackBroadcast", ackBroadcast);
         w.writeMessage(10, "area", area, net.maritimecloud.util.geometry.Area.SERIALIZER);
         w.writeInt(11, "radius", radius);
+        w.writeInt(12, "timeToLive", timeToLive);
+        w.writeInt(13, "payloadFormat", payloadFormat);
         w.writeBinary(15, "signature", signature);
     }
 
@@ -249,6 +261,37 @@ public class Broadcast implements Message {
         return this;
     }
 
+    /**
+     * Returns the number of seconds the broadcast should also be delivered to clients entering the area after it has
+     * been sent. (Optional)
+     */
+    public Integer getTimeToLive() {
+        return timeToLive;
+    }
+
+    public boolean hasTimeToLive() {
+        return timeToLive != null;
+    }
+
+    public Broadcast setTimeToLive(Integer timeToLive) {
+        this.timeToLive = timeToLive;
+        return this;
+    }
+
+    /** Returns the format of the payload, 0 or absent for JSON and 1 for binary. (Optional) */
+    public Integer getPayloadFormat() {
+        return payloadFormat;
+    }
+
+    public boolean hasPayloadFormat() {
+        return payloadFormat != null;
+    }
+
+    public Broadcast setPayloadFormat(Integer payloadFormat) {
+        this.payloadFormat = payloadFormat;
+        return this;
+    }
+
     /** Returns the signature of this message (optional). */
     public Binary getSignature() {
         return signature;
@@ -293,6 +336,8 @@ public class Broadcast implements Message {
         result = 31 * result + Hashing.hashcode(this.ackBroadcast);
         result = 31 * result + Hashing.hashcode(this.area);
         result = 31 * result + Hashing.hashcode(this.radius);
+        result = 31 * result + Hashing.hashcode(this.timeToLive);
+        result = 31 * result + Hashing.hashcode(this.payloadFormat);
         return 31 * result + Hashing.hashcode(this.signature);
     }
 
@@ -312,6 +357,8 @@ public class Broadcast implements Message {
                    Objects.equals(ackBroadcast, o.ackBroadcast) &&
                    Objects.equals(area, o.area) &&
                    Objects.equals(radius, o.radius) &&
+                   Objects.equals(timeToLive, o.timeToLive) &&
+                   Objects.equals(payloadFormat, o.payloadFormat) &&
                    Objects.equals(signature, o.signature);
         }
         return false;
@@ -406,6 +453,18 @@ public class Broadcast implements Message {
             throw new UnsupportedOperationException("Instance is immutable");
         }
 
+        /** {@inheritDoc} */
+        @Override
+        public Broadcast setTimeToLive(Integer timeToLive) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Broadcast setPayloadFormat(Integer payloadFormat) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+
         /** {@inheritDoc} */
         @Override
         public Broadcast setSignature(Binary signature) {
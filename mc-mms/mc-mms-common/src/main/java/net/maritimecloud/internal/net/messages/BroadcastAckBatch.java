@@ -0,0 +1,200 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.net.messages;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import net.maritimecloud.internal.message.Hashing;
+import net.maritimecloud.internal.message.MessageHelper;
+import net.maritimecloud.message.Message;
+import net.maritimecloud.message.MessageReader;
+import net.maritimecloud.message.MessageSerializer;
+import net.maritimecloud.message.MessageWriter;
+import net.maritimecloud.util.Binary;
+
+public class BroadcastAckBatch implements Message {
+
+    /** The full name of this message. */
+    public static final String NAME = "net.maritimecloud.internal.net.messages.BroadcastAckBatch";
+
+    /** A message serializer that can read and write instances of this class. */
+    public static final MessageSerializer<BroadcastAckBatch> SERIALIZER = new Serializer();
+
+    /** Field definition. */
+    private Binary ackForMessageId;
+
+    /** Field definition. */
+    private final List<BroadcastAck> acks;
+
+    /** Creates a new BroadcastAckBatch. */
+    public BroadcastAckBatch() {
+        acks = new java.util.ArrayList<>();
+    }
+
+    /**
+     * Creates a new BroadcastAckBatch by reading from a message reader.
+     *
+     * @param reader
+     *            the message reader
+     */
+    BroadcastAckBatch(MessageReader reader) throws IOException {
+        this.ackForMessageId = reader.readBinary(1, "ackForMessageId", null);
+        this.acks = MessageHelper.readList(2, "acks", reader, BroadcastAck.SERIALIZER);
+    }
+
+    /**
+     * Creates a new BroadcastAckBatch by copying an existing.
+     *
+     * @param instance
+     *            the instance to copy all fields from
+     */
+    BroadcastAckBatch(BroadcastAckBatch instance) {
+        this.ackForMessageId = instance.ackForMessageId;
+        this.acks = MessageHelper.immutableCopy(instance.acks);
+    }
+
+    void writeTo(MessageWriter w) throws IOException {
+        w.writeBinary(1, "ackForMessageId", ackForMessageId);
+        w.writeList(2, "acks", acks, BroadcastAck.SERIALIZER);
+    }
+
+    /** Returns the broadcast id of the broadcast being acknowledged. */
+    public Binary getAckForMessageId() {
+        return ackForMessageId;
+    }
+
+    public boolean hasAckForMessageId() {
+        return ackForMessageId != null;
+    }
+
+    public BroadcastAckBatch setAckForMessageId(Binary ackForMessageId) {
+        this.ackForMessageId = ackForMessageId;
+        return this;
+    }
+
+    /**
+     * Returns the acks of each receiver. The acks do not include the broadcast id, which is only included once in the
+     * batch.
+     */
+    public List<BroadcastAck> getAcks() {
+        return java.util.Collections.unmodifiableList(acks);
+    }
+
+    public boolean hasAcks() {
+        return acks != null;
+    }
+
+    public BroadcastAckBatch addAcks(BroadcastAck acks) {
+        java.util.Objects.requireNonNull(acks, "acks is null");
+        this.acks.add(acks);
+        return this;
+    }
+
+    public BroadcastAckBatch addAllAcks(Collection<? extends BroadcastAck> acks) {
+        for (BroadcastAck e : acks) {
+            addAcks(e);
+        }
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public BroadcastAckBatch immutable() {
+        return new Immutable(this);
+    }
+
+    /** Returns a JSON representation of this message */
+    public String toJSON() {
+        return MessageSerializer.writeToJSON(this, SERIALIZER);
+    }
+
+    /**
+     * Creates a message of this type from a JSON throwing a runtime exception if the format of the message does not match
+     */
+    public static BroadcastAckBatch fromJSON(CharSequence c) {
+        return MessageSerializer.readFromJSON(SERIALIZER, c);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        int result = 31 + Hashing.hashcode(this.ackForMessageId);
+        return 31 * result + Hashing.hashcode(this.acks);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        } else if (other instanceof BroadcastAckBatch) {
+            BroadcastAckBatch o = (BroadcastAckBatch) other;
+            return Objects.equals(ackForMessageId, o.ackForMessageId) &&
+                   Objects.equals(acks, o.acks);
+        }
+        return false;
+    }
+
+    /** A serializer for reading and writing instances of BroadcastAckBatch. */
+    static class Serializer extends MessageSerializer<BroadcastAckBatch> {
+
+        /** {@inheritDoc} */
+        @Override
+        public BroadcastAckBatch read(MessageReader reader) throws IOException {
+            return new BroadcastAckBatch(reader);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void write(BroadcastAckBatch message, MessageWriter writer) throws IOException {
+            message.writeTo(writer);
+        }
+    }
+
+    /** An immutable version of BroadcastAckBatch. */
+    static class Immutable extends BroadcastAckBatch {
+
+        /**
+         * Creates a new Immutable instance.
+         *
+         * @param instance
+         *            the instance to make an immutable copy of
+         */
+        Immutable(BroadcastAckBatch instance) {
+            super(instance);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public BroadcastAckBatch immutable() {
+            return this;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public BroadcastAckBatch setAckForMessageId(Binary ackForMessageId) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public BroadcastAckBatch addAcks(BroadcastAck acks) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.net.messages;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+
+import net.maritimecloud.internal.message.MessageHelper;
+import net.maritimecloud.internal.security.SecurityTools;
+import net.maritimecloud.message.Message;
+import net.maritimecloud.message.MessageSerializer;
+import net.maritimecloud.util.Binary;
+import net.maritimecloud.util.Timestamp;
+import net.maritimecloud.util.geometry.Position;
+
+/**
+ * Writes the canonical form of the fields of a message directly into a SHA-256 digest or a signature, without building
+ * an intermediate representation of the message. The canonical form is the concatenation of the fields, where text is
+ * UTF-8 encoded, integers are 4 byte big endian, timestamps are 8 byte big endian millis, positions are 4 byte big
+ * endian latitude and longitude in units of 10<sup>-7</sup> degrees, and nested messages are JSON. Absent optional
+ * fields are left out.
+ * <p>
+ * A writer is not thread safe, use {@link #get()} to obtain the writer of the current thread. The digest, signature
+ * and buffers of a writer are reused between messages.
+ *
+ * @author Kasper Nielsen
+ */
+final class CanonicalWriter {
+
+    /** The units per degree of positions. Must match {@link Position#toBinary()}. */
+    private static final double UNITS_PER_DEGREE = 10_000_000d;
+
+    /** The writer of each thread. */
+    private static final ThreadLocal<CanonicalWriter> WRITERS = ThreadLocal.withInitial(CanonicalWriter::new);
+
+    /** Used for encoding text. */
+    private final CharsetEncoder encoder = UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /** The SHA-256 digest. */
+    private final MessageDigest sha256;
+
+    /** A scratch buffer for encoding fields. */
+    private final ByteBuffer scratch = ByteBuffer.allocate(256);
+
+    /** The signature owned by this writer, lazily created. */
+    private Signature owned;
+
+    /** The signature being written into. */
+    private Signature signature;
+
+    /** Whether or not the fields are written into the signature instead of the digest. */
+    private boolean signing;
+
+    /** An output stream writing into the current target, used for binary fields and nested messages. */
+    private final OutputStream stream = new OutputStream() {
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                update(b, off, len);
+            } catch (SignatureException e) {
+                throw new IOException(e);
+            }
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+    };
+
+    private CanonicalWriter() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("All java implementations should have SHA-256", e);
+        }
+    }
+
+    /**
+     * Prepares the writer for calculating a SHA-256 hash.
+     *
+     * @return this writer
+     */
+    CanonicalWriter beginDigest() {
+        sha256.reset();
+        signature = null;
+        signing = false;
+        return this;
+    }
+
+    /**
+     * Prepares the writer for signing with the specified key.
+     *
+     * @param key
+     *            the private key to sign with
+     * @return this writer
+     */
+    CanonicalWriter beginSign(PrivateKey key) {
+        try {
+            owned().initSign(key);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException("The specified private key is invalid", e);
+        }
+        return begin(owned);
+    }
+
+    /**
+     * Prepares the writer for verifying a signature with the specified key.
+     *
+     * @param key
+     *            the public key to verify with
+     * @return this writer
+     */
+    CanonicalWriter beginVerify(PublicKey key) {
+        try {
+            owned().initVerify(key);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException("The specified public key is invalid", e);
+        }
+        return begin(owned);
+    }
+
+    /**
+     * Prepares the writer for signing or verifying with a signature that has already been initialized.
+     *
+     * @param signature
+     *            the initialized signature
+     * @return this writer
+     */
+    CanonicalWriter begin(Signature signature) {
+        this.signature = signature;
+        signing = true;
+        return this;
+    }
+
+    /** Returns the SHA-256 hash of the fields written since {@link #beginDigest()}. */
+    Binary digest() {
+        return Binary.copyFrom(sha256.digest());
+    }
+
+    /** Returns the signature of the fields written since {@link #beginSign(PrivateKey)}. */
+    Binary sign() throws SignatureException {
+        return Binary.copyFrom(signature.sign());
+    }
+
+    /** Verifies the signature of the fields written since {@link #beginVerify(PublicKey)}. */
+    boolean verify(Binary signature) throws SignatureException {
+        return this.signature.verify(signature.toByteArray());
+    }
+
+    private Signature owned() {
+        if (owned == null) {
+            owned = SecurityTools.newSignature();
+        }
+        return owned;
+    }
+
+    private void update(byte[] b, int off, int len) throws SignatureException {
+        if (signing) {
+            signature.update(b, off, len);
+        } else {
+            sha256.update(b, off, len);
+        }
+    }
+
+    private void flushScratch() throws SignatureException {
+        scratch.flip();
+        update(scratch.array(), 0, scratch.limit());
+        scratch.clear();
+    }
+
+    /** Unwraps a signature exception thrown through the output stream. */
+    private static SignatureException rethrow(IOException e) throws SignatureException {
+        if (e.getCause() instanceof SignatureException) {
+            throw (SignatureException) e.getCause();
+        }
+        throw new RuntimeException("Failed to write field", e);
+    }
+
+    private static void checkPresent(Object value, boolean optional, String name) {
+        if (value == null && !optional) {
+            throw new IllegalArgumentException("The field '" + name + "' was not filled out");
+        }
+    }
+
+    CanonicalWriter writeBinary(Binary binary, boolean optional, String name) throws SignatureException {
+        checkPresent(binary, optional, name);
+        if (binary != null) {
+            try {
+                binary.writeTo(stream);
+            } catch (IOException e) {
+                throw rethrow(e);
+            }
+        }
+        return this;
+    }
+
+    CanonicalWriter writeInt(Integer value, boolean optional, String name) throws SignatureException {
+        checkPresent(value, optional, name);
+        if (value != null) {
+            scratch.putInt(value);
+            flushScratch();
+        }
+        return this;
+    }
+
+    CanonicalWriter writeMessage(Message message, boolean optional, String name) throws SignatureException {
+        checkPresent(message, optional, name);
+        if (message != null) {
+            try {
+                writeJson(message, MessageHelper.getSerializer(message));
+            } catch (IOException e) {
+                throw rethrow(e);
+            }
+        }
+        return this;
+    }
+
+    private <T extends Message> void writeJson(T message, MessageSerializer<T> serializer) throws IOException {
+        MessageSerializer.writeToJSON(message, serializer, new OutputStreamWriter(stream, UTF_8));
+    }
+
+    CanonicalWriter writePosition(Position position, boolean optional, String name) throws SignatureException {
+        checkPresent(position, optional, name);
+        if (position != null) {
+            scratch.putInt((int) (position.getLatitude() * UNITS_PER_DEGREE));
+            scratch.putInt((int) (position.getLongitude() * UNITS_PER_DEGREE));
+            flushScratch();
+        }
+        return this;
+    }
+
+    CanonicalWriter writeText(String text, boolean optional, String name) throws SignatureException {
+        checkPresent(text, optional, name);
+        if (text != null) {
+            CharBuffer in = CharBuffer.wrap(text);
+            encoder.reset();
+            CoderResult r;
+            do {
+                r = encoder.encode(in, scratch, true);
+                flushScratch();
+            } while (r.isOverflow());
+            while (encoder.flush(scratch).isOverflow()) {
+                flushScratch();
+            }
+            flushScratch();
+        }
+        return this;
+    }
+
+    CanonicalWriter writeTimestamp(Timestamp timestamp, boolean optional, String name) throws SignatureException {
+        checkPresent(timestamp, optional, name);
+        if (timestamp != null) {
+            scratch.putLong(timestamp.getTime());
+            flushScratch();
+        }
+        return this;
+    }
+
+    /**
+     * Returns the writer of the current thread.
+     *
+     * @return the writer of the current thread
+     */
+    static CanonicalWriter get() {
+        return WRITERS.get();
+    }
+}
@@ -16,144 +16,117 @@ package net.maritimecloud.internal.net.messages;
 
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.Signature;
 import java.security.SignatureException;
 
-import net.maritimecloud.internal.security.SecurityTools;
-import net.maritimecloud.message.Message;
 import net.maritimecloud.util.Binary;
-import net.maritimecloud.util.Timestamp;
-import net.maritimecloud.util.geometry.Position;
 
 /**
+ * Calculates hashes and signatures of messages. The fields of a message are written in their canonical form directly
+ * into a digest or signature that is reused by the current thread, see {@link CanonicalWriter}.
  *
  * @author Kasper Nielsen
  */
 public class MessageHasher {
 
-    static Binary binaryOf(Broadcast br) {
-        Binary b = Binary.EMPTY;
-        b = b.concat(from(br.getBroadcastType(), false, "broadcastType"));
-        b = b.concat(from(br.getSenderId(), false, "senderId"));
-        b = b.concat(from(br.getSenderTimestamp(), false, "senderTimestamp"));
-        b = b.concat(from(br.getSenderPosition(), true, "senderPosition"));
-        b = b.concat(from(br.getPayload(), true, "payload"));
-        return b;
-    }
-
-    static Binary binaryOf(BroadcastAck br) {
-        Binary b = Binary.EMPTY;
-        b = b.concat(from(br.getAckForMessageId(), false, "broadcastType"));
-        b = b.concat(from(br.getOriginalSenderId(), false, "senderId"));
-        b = b.concat(from(br.getReceiverId(), false, "senderTimestamp"));
-        b = b.concat(from(br.getReceiverTimestamp(), true, "senderPosition"));
-        return b.concat(from(br.getReceiverPosition(), true, "payload"));
-    }
-
-    static Binary binaryOf(MethodInvoke mi) {
-        Binary b = Binary.EMPTY;
-        b = b.concat(from(mi.getEndpointMethod(), false, "endpointMethod"));
-        b = b.concat(from(mi.getSenderId(), false, "senderId"));
-        b = b.concat(from(mi.getSenderTimestamp(), false, "senderTimestamp"));
-        b = b.concat(from(mi.getSenderPosition(), true, "senderPosition"));
-        b = b.concat(from(mi.getReceiverId(), true, "receiverId")); // null=server
-        return b.concat(from(mi.getParameters(), true, "parameters")); // true
-    }
-
-    static Binary binaryOf(MethodInvokeResult mir) {
-        Binary b = Binary.EMPTY;
-        b = b.concat(from(mir.getResultForMessageId(), false, "resultForMessageId"));
-        b = b.concat(from(mir.getOriginalSenderId(), false, "originalSenderId"));
-        b = b.concat(from(mir.getReceiverId(), false, "receiverId"));
-        b = b.concat(from(mir.getReceiverTimestamp(), true, "senderPosition"));
-        b = b.concat(from(mir.getResult(), true, "receiverId")); // null=server
-        return b.concat(from(mir.getFailure(), true, "parameters")); // true
+    static CanonicalWriter write(Broadcast br, CanonicalWriter w) throws SignatureException {
+        w.writeText(br.getBroadcastType(), false, "broadcastType");
+        w.writeText(br.getSenderId(), false, "senderId");
+        w.writeTimestamp(br.getSenderTimestamp(), false, "senderTimestamp");
+        w.writePosition(br.getSenderPosition(), true, "senderPosition");
+        w.writeBinary(br.getPayload(), true, "payload");
+        w.writeInt(br.getPayloadFormat(), true, "payloadFormat"); // absent for JSON payloads
+        return w.writeInt(br.getTimeToLive(), true, "timeToLive"); // absent for broadcasts that are not kept
     }
 
-    public static Binary calculateSHA256(Broadcast mi) {
-        return binaryOf(mi).sha256();
-    }
-
-    public static Binary calculateSHA256(BroadcastAck mi) {
-        return binaryOf(mi).sha256();
+    static CanonicalWriter write(BroadcastAck br, CanonicalWriter w) throws SignatureException {
+        w.writeBinary(br.getAckForMessageId(), false, "broadcastType");
+        w.writeText(br.getOriginalSenderId(), false, "senderId");
+        w.writeText(br.getReceiverId(), false, "senderTimestamp");
+        w.writeTimestamp(br.getReceiverTimestamp(), true, "senderPosition");
+        return w.writePosition(br.getReceiverPosition(), true, "payload");
     }
 
-    public static Binary calculateSHA256(MethodInvoke mi) {
-        return binaryOf(mi).sha256();
+    static CanonicalWriter write(MethodInvoke mi, CanonicalWriter w) throws SignatureException {
+        w.writeText(mi.getEndpointMethod(), false, "endpointMethod");
+        w.writeText(mi.getSenderId(), false, "senderId");
+        w.writeTimestamp(mi.getSenderTimestamp(), false, "senderTimestamp");
+        w.writePosition(mi.getSenderPosition(), true, "senderPosition");
+        w.writeText(mi.getReceiverId(), true, "receiverId"); // null=server
+        w.writeText(mi.getParameters(), true, "parameters"); // true
+        return w.writeBinary(mi.getBinaryParameters(), true, "binaryParameters");
     }
 
-    public static Binary calculateSHA256(MethodInvokeResult mi) {
-        return binaryOf(mi).sha256();
+    static CanonicalWriter write(MethodInvokeResult mir, CanonicalWriter w) throws SignatureException {
+        w.writeBinary(mir.getResultForMessageId(), false, "resultForMessageId");
+        w.writeText(mir.getOriginalSenderId(), false, "originalSenderId");
+        w.writeText(mir.getReceiverId(), false, "receiverId");
+        w.writeTimestamp(mir.getReceiverTimestamp(), true, "senderPosition");
+        w.writeBinary(mir.getResult(), true, "receiverId"); // null=server
+        w.writeMessage(mir.getFailure(), true, "parameters"); // true
+        return w.writeInt(mir.getResultFormat(), true, "resultFormat"); // absent for JSON results
     }
 
-    static Binary checkEmpty(boolean optional, String name) {
-        if (optional) {
-            return Binary.EMPTY;
+    public static Binary calculateSHA256(Broadcast mi) {
+        try {
+            return write(mi, CanonicalWriter.get().beginDigest()).digest();
+        } catch (SignatureException e) {
+            throw new IllegalStateException(e); // digests do not throw signature exceptions
         }
-        throw new IllegalArgumentException("The field '" + name + "' was not filled out");
-    }
-
-    static Binary from(Binary binary, boolean optional, String name) {
-        return binary == null ? checkEmpty(optional, name) : binary;
-    }
-
-    static Binary from(Message mes, boolean optional, String name) {
-        return mes == null ? checkEmpty(optional, name) : Binary.copyFromUtf8(mes.toJSON());
     }
 
-    static Binary from(Position position, boolean optional, String name) {
-        return position == null ? checkEmpty(optional, name) : position.toBinary();
-    }
-
-    static Binary from(String str, boolean optional, String name) {
-        return str == null ? checkEmpty(optional, name) : Binary.copyFromUtf8(str);
+    public static Binary calculateSHA256(BroadcastAck mi) {
+        try {
+            return write(mi, CanonicalWriter.get().beginDigest()).digest();
+        } catch (SignatureException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    static Binary from(Timestamp timestamp, boolean optional, String name) {
-        return timestamp == null ? checkEmpty(optional, name) : timestamp.toBinary();
+    public static Binary calculateSHA256(MethodInvoke mi) {
+        try {
+            return write(mi, CanonicalWriter.get().beginDigest()).digest();
+        } catch (SignatureException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    static Binary sign(Binary b, PrivateKey key) throws SignatureException {
-        Signature dsa = SecurityTools.newSignatureForSigning(key);
-        dsa.update(b.toByteArray());
-        byte[] signature = dsa.sign();
-        return Binary.copyFrom(signature);
+    public static Binary calculateSHA256(MethodInvokeResult mi) {
+        try {
+            return write(mi, CanonicalWriter.get().beginDigest()).digest();
+        } catch (SignatureException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     public static Binary sign(Broadcast mi, PrivateKey key) throws SignatureException {
-        return sign(binaryOf(mi), key);
+        return write(mi, CanonicalWriter.get().beginSign(key)).sign();
     }
 
     public static Binary sign(BroadcastAck mi, PrivateKey key) throws SignatureException {
-        return sign(binaryOf(mi), key);
+        return write(mi, CanonicalWriter.get().beginSign(key)).sign();
     }
 
     public static Binary sign(MethodInvoke mi, PrivateKey key) throws SignatureException {
-        return sign(binaryOf(mi), key);
+        return write(mi, CanonicalWriter.get().beginSign(key)).sign();
     }
 
     public static Binary sign(MethodInvokeResult mi, PrivateKey key) throws SignatureException {
-        return sign(binaryOf(mi), key);
-    }
-
-    static boolean verify(Binary b, PublicKey key) throws SignatureException {
-        Signature dsa = SecurityTools.newSignatureForVerify(key);
-        return dsa.verify(b.toByteArray());
+        return write(mi, CanonicalWriter.get().beginSign(key)).sign();
     }
 
     public static boolean verify(Broadcast mi, PublicKey key) throws SignatureException {
-        return verify(binaryOf(mi), key);
+        return mi.hasSignature() && write(mi, CanonicalWriter.get().beginVerify(key)).verify(mi.getSignature());
     }
 
     public static boolean verify(BroadcastAck mi, PublicKey key) throws SignatureException {
-        return verify(binaryOf(mi), key);
+        return mi.hasSignature() && write(mi, CanonicalWriter.get().beginVerify(key)).verify(mi.getSignature());
     }
 
     public static boolean verify(MethodInvoke mi, PublicKey key) throws SignatureException {
-        return verify(binaryOf(mi), key);
+        return mi.hasSignature() && write(mi, CanonicalWriter.get().beginVerify(key)).verify(mi.getSignature());
     }
 
     public static boolean verify(MethodInvokeResult mi, PublicKey key) throws SignatureException {
-        return verify(binaryOf(mi), key);
+        return mi.hasSignature() && write(mi, CanonicalWriter.get().beginVerify(key)).verify(mi.getSignature());
     }
 }
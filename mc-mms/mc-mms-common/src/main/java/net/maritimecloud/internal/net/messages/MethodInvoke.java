@@ -55,6 +55,12 @@ public class MethodInvoke implements Message {
     /** Field definition. */
     private String parameters;
 
+    /** Field definition. */
+    private Integer parametersFormat;
+
+    /** Field definition. */
+    private Binary binaryParameters;
+
     /** Field definition. */
     private Binary signature;
 
@@ -75,6 +81,8 @@ public class MethodInvoke implements Message {
         this.senderPosition = reader.readPosition(5, "senderPosition", null);
         this.receiverId = reader.readText(6, "receiverId", null);
         this.parameters = reader.readText(7, "parameters", null);
+        this.parametersFormat = reader.readInt(8, "parametersFormat", null);
+        this.binaryParameters = reader.readBinary(9, "binaryParameters", null);
         this.signature = reader.readBinary(15, "signature", null);
     }
 
@@ -92,6 +100,8 @@ public class MethodInvoke implements Message {
         this.senderPosition = instance.senderPosition;
         this.receiverId = instance.receiverId;
         this.parameters = instance.parameters;
+        this.parametersFormat = instance.parametersFormat;
+        this.binaryParameters = instance.binaryParameters;
         this.signature = instance.signature;
     }
 
@@ -103,6 +113,8 @@ public class MethodInvoke implements Message {
         w.writePosition(5, "senderPosition", senderPosition);
         w.writeText(6, "receiverId", receiverId);
         w.writeText(7, "parameters", parameters);
+        w.writeInt(8, "parametersFormat", parametersFormat);
+        w.writeBinary(9, "binaryParameters", binaryParameters);
         w.writeBinary(15, "signature", signature);
     }
 
@@ -206,6 +218,34 @@ public class MethodInvoke implements Message {
         return this;
     }
 
+    /** Returns the format of the parameters, 0 or absent for JSON and 1 for binary. (Optional) */
+    public Integer getParametersFormat() {
+        return parametersFormat;
+    }
+
+    public boolean hasParametersFormat() {
+        return parametersFormat != null;
+    }
+
+    public MethodInvoke setParametersFormat(Integer parametersFormat) {
+        this.parametersFormat = parametersFormat;
+        return this;
+    }
+
+    /** Returns the parameters for the endpoint invocation if they are in binary format. (Optional) */
+    public Binary getBinaryParameters() {
+        return binaryParameters;
+    }
+
+    public boolean hasBinaryParameters() {
+        return binaryParameters != null;
+    }
+
+    public MethodInvoke setBinaryParameters(Binary binaryParameters) {
+        this.binaryParameters = binaryParameters;
+        return this;
+    }
+
     public Binary getSignature() {
         return signature;
     }
@@ -247,6 +287,8 @@ public class MethodInvoke implements Message {
         result = 31 * result + Hashing.hashcode(this.senderPosition);
         result = 31 * result + Hashing.hashcode(this.receiverId);
         result = 31 * result + Hashing.hashcode(this.parameters);
+        result = 31 * result + Hashing.hashcode(this.parametersFormat);
+        result = 31 * result + Hashing.hashcode(this.binaryParameters);
         return 31 * result + Hashing.hashcode(this.signature);
     }
 
@@ -264,6 +306,8 @@ public class MethodInvoke implements Message {
                    Objects.equals(senderPosition, o.senderPosition) &&
                    Objects.equals(receiverId, o.receiverId) &&
                    Objects.equals(parameters, o.parameters) &&
+                   Objects.equals(parametersFormat, o.parametersFormat) &&
+                   Objects.equals(binaryParameters, o.binaryParameters) &&
                    Objects.equals(signature, o.signature);
         }
         return false;
@@ -346,6 +390,18 @@ public class MethodInvoke implements Message {
             throw new UnsupportedOperationException("Instance is immutable");
         }
 
+        /** {@inheritDoc} */
+        @Override
+        public MethodInvoke setParametersFormat(Integer parametersFormat) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public MethodInvoke setBinaryParameters(Binary binaryParameters) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+
         /** {@inheritDoc} */
         @Override
         public MethodInvoke setSignature(Binary signature) {
@@ -55,6 +55,9 @@ public class MethodInvokeResult implements Message {
     /** Field definition. */
     private MethodInvokeFailure failure;
 
+    /** Field definition. */
+    private Integer resultFormat;
+
     /** Field definition. */
     private Binary signature;
 
@@ -75,6 +78,7 @@ public class MethodInvokeResult implements Message {
         this.receiverTimestamp = reader.readTimestamp(5, "receiverTimestamp", null);
         this.result = reader.readBinary(7, "result", null);
         this.failure = reader.readMessage(8, "failure", MethodInvokeFailure.SERIALIZER);
+        this.resultFormat = reader.readInt(9, "resultFormat", null);
         this.signature = reader.readBinary(15, "signature", null);
     }
 
@@ -92,6 +96,7 @@ public class MethodInvokeResult implements Message {
         this.receiverTimestamp = instance.receiverTimestamp;
         this.result = instance.result;
         this.failure = MessageHelper.immutable(instance.failure);
+        this.resultFormat = instance.resultFormat;
         this.signature = instance.signature;
     }
 
@@ -103,6 +108,7 @@ public class MethodInvokeResult implements Message {
         w.writeTimestamp(5, "receiverTimestamp", receiverTimestamp);
         w.writeBinary(7, "result", result);
         w.writeMessage(8, "failure", failure, MethodInvokeFailure.SERIALIZER);
+        w.writeInt(9, "resultFormat", resultFormat);
         w.writeBinary(15, "signature", signature);
     }
 
@@ -206,6 +212,20 @@ public class MethodInvokeResult implements Message {
         return this;
     }
 
+    /** Returns the format of the result, 0 or absent for JSON and 1 for binary. (Optional) */
+    public Integer getResultFormat() {
+        return resultFormat;
+    }
+
+    public boolean hasResultFormat() {
+        return resultFormat != null;
+    }
+
+    public MethodInvokeResult setResultFormat(Integer resultFormat) {
+        this.resultFormat = resultFormat;
+        return this;
+    }
+
     /** Returns the signature of this message (Optional). */
     public Binary getSignature() {
         return signature;
@@ -248,6 +268,7 @@ public class MethodInvokeResult implements Message {
         result = 31 * result + Hashing.hashcode(this.receiverTimestamp);
         result = 31 * result + Hashing.hashcode(this.result);
         result = 31 * result + Hashing.hashcode(this.failure);
+        result = 31 * result + Hashing.hashcode(this.resultFormat);
         return 31 * result + Hashing.hashcode(this.signature);
     }
 
@@ -265,6 +286,7 @@ public class MethodInvokeResult implements Message {
                    Objects.equals(receiverTimestamp, o.receiverTimestamp) &&
                    Objects.equals(result, o.result) &&
                    Objects.equals(failure, o.failure) &&
+                   Objects.equals(resultFormat, o.resultFormat) &&
                    Objects.equals(signature, o.signature);
         }
         return false;
@@ -347,6 +369,12 @@ public class MethodInvokeResult implements Message {
             throw new UnsupportedOperationException("Instance is immutable");
         }
 
+        /** {@inheritDoc} */
+        @Override
+        public MethodInvokeResult setResultFormat(Integer resultFormat) {
+            throw new UnsupportedOperationException("Instance is immutable");
+        }
+
         /** {@inheritDoc} */
         @Override
         public MethodInvokeResult setSignature(Binary signature) {
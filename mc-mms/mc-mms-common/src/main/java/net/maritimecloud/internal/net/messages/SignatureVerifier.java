@@ -0,0 +1,189 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.net.messages;
+
+import static java.util.Objects.requireNonNull;
+
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import net.maritimecloud.internal.security.SecurityTools;
+import net.maritimecloud.util.Binary;
+
+/**
+ * Verifies the signatures of broadcasts on the threads of an executor.
+ * <p>
+ * The public key of each sender is resolved once and kept in a bounded cache, together with a pool of signatures that
+ * have already been initialized with the key. Messages that have been verified are remembered by their hash, so a
+ * message that is received more than once, for example a broadcast delivered to many local consumers, is only
+ * verified once.
+ *
+ * @author Kasper Nielsen
+ */
+public class SignatureVerifier {
+
+    /** The maximum number of signatures pooled per sender. */
+    static final int MAX_POOLED_SIGNATURES = 4;
+
+    /** The executor that verifies signatures. */
+    private final Executor executor;
+
+    /** The public keys of senders, by sender id. Guarded by itself. */
+    private final LinkedHashMap<String, SenderKey> keys;
+
+    /** Resolves the public key of a sender, returns null if the sender is unknown. */
+    private final Function<String, PublicKey> keyResolver;
+
+    /** The signatures of messages that have been verified, by the hash of the message. Guarded by itself. */
+    private final LinkedHashMap<Binary, Binary> verified;
+
+    /**
+     * Creates a new verifier.
+     *
+     * @param keyResolver
+     *            resolves the public key of a sender id, returns null if the sender is unknown
+     * @param maxKeys
+     *            the maximum number of public keys to cache
+     * @param maxVerified
+     *            the maximum number of verified messages to remember
+     * @param executor
+     *            the executor that verifies signatures
+     */
+    public SignatureVerifier(Function<String, PublicKey> keyResolver, int maxKeys, int maxVerified,
+            Executor executor) {
+        this.keyResolver = requireNonNull(keyResolver);
+        this.keys = lru(maxKeys);
+        this.verified = lru(maxVerified);
+        this.executor = requireNonNull(executor);
+    }
+
+    /**
+     * Asynchronously verifies the signature of the specified broadcast.
+     *
+     * @param broadcast
+     *            the broadcast to verify
+     * @return a future that completes with whether or not the broadcast has a valid signature
+     */
+    public CompletableFuture<Boolean> verify(Broadcast broadcast) {
+        return verify(broadcast.getSenderId(), broadcast.getSignature(), () -> MessageHasher.calculateSHA256(broadcast),
+                w -> MessageHasher.write(broadcast, w));
+    }
+
+    private CompletableFuture<Boolean> verify(String senderId, Binary signature, HashFunction hash, Fields fields) {
+        if (senderId == null || signature == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            Binary h = hash.hash();
+            synchronized (verified) {
+                if (signature.equals(verified.get(h))) {
+                    return true;
+                }
+            }
+            SenderKey key = keyOf(senderId);
+            if (key == null) {
+                return false;
+            }
+            Signature s = key.acquire();
+            boolean valid;
+            try {
+                valid = fields.write(CanonicalWriter.get().begin(s)).verify(signature);
+            } catch (SignatureException e) {
+                valid = false; // malformed signature, the signature object has been reset
+            }
+            key.release(s);
+            if (valid) {
+                synchronized (verified) {
+                    verified.put(h, signature);
+                }
+            }
+            return valid;
+        }, executor);
+    }
+
+    private SenderKey keyOf(String senderId) {
+        synchronized (keys) {
+            SenderKey key = keys.get(senderId);
+            if (key != null) {
+                return key;
+            }
+        }
+        PublicKey publicKey = keyResolver.apply(senderId);
+        if (publicKey == null) {
+            return null;
+        }
+        SenderKey key = new SenderKey(publicKey);
+        synchronized (keys) {
+            SenderKey existing = keys.putIfAbsent(senderId, key);
+            return existing == null ? key : existing;
+        }
+    }
+
+    private static <K, V> LinkedHashMap<K, V> lru(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive, was " + maxSize);
+        }
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /** Writes the canonical fields of a message. */
+    interface Fields {
+        CanonicalWriter write(CanonicalWriter w) throws SignatureException;
+    }
+
+    /** Calculates the hash of a message. */
+    interface HashFunction {
+        Binary hash();
+    }
+
+    /** The public key of a sender, and a pool of signatures initialized with the key. */
+    static final class SenderKey {
+
+        /** Signatures initialized for verifying with the key. */
+        private final ConcurrentLinkedQueue<Signature> pool = new ConcurrentLinkedQueue<>();
+
+        /** The public key. */
+        private final PublicKey publicKey;
+
+        SenderKey(PublicKey publicKey) {
+            this.publicKey = publicKey;
+        }
+
+        Signature acquire() {
+            Signature s = pool.poll();
+            return s == null ? SecurityTools.newSignatureForVerify(publicKey) : s;
+        }
+
+        void release(Signature s) {
+            // A signature is reset after each verification, so it can be reused without initializing it again
+            if (pool.size() < MAX_POOLED_SIGNATURES) {
+                pool.offer(s);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.net.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import net.maritimecloud.internal.message.binary.protobuf.ProtobufMessageReader;
+import net.maritimecloud.internal.message.binary.protobuf.ProtobufMessageWriter;
+import net.maritimecloud.internal.message.binary.protobuf.ProtobufValueReader;
+import net.maritimecloud.internal.message.binary.protobuf.ProtobufValueWriter;
+import net.maritimecloud.internal.message.text.json.JsonMessageReader;
+import net.maritimecloud.internal.message.text.json.JsonValueWriter;
+import net.maritimecloud.message.Message;
+import net.maritimecloud.message.MessageFormatType;
+import net.maritimecloud.message.MessageReader;
+import net.maritimecloud.message.MessageSerializer;
+import net.maritimecloud.message.ValueSerializer;
+import net.maritimecloud.message.ValueWriter;
+import net.maritimecloud.util.Binary;
+
+/**
+ * The format of the payload of a broadcast, or of the parameters and result of an endpoint invocation. The format is
+ * tagged on the message carrying the payload. An absent tag means JSON, which is what clients that do not know about
+ * payload formats send, so clients using different formats can talk to each other.
+ *
+ * @author Kasper Nielsen
+ */
+public enum PayloadFormat {
+
+    /** The payload is UTF-8 encoded JSON. */
+    JSON(0),
+
+    /** The payload is in the Protobuf based binary format. */
+    BINARY(1);
+
+    /** The tag of the format. */
+    private final int tag;
+
+    PayloadFormat(int tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Returns a message reader for the specified payload.
+     *
+     * @param payload
+     *            the payload
+     * @return a message reader for the payload
+     * @throws IOException
+     *             if the payload could not be read
+     */
+    public MessageReader newMessageReader(Binary payload) throws IOException {
+        return this == BINARY ? new ProtobufMessageReader(payload.newInput()) : new JsonMessageReader(
+                payload.toStringUtf8());
+    }
+
+    /**
+     * Returns a new buffer that values can be written to in this format.
+     *
+     * @return a new buffer
+     */
+    public ValueBuffer newValueBuffer() {
+        return new ValueBuffer(this);
+    }
+
+    /**
+     * Reads a value from the specified payload.
+     *
+     * @param payload
+     *            the payload
+     * @param serializer
+     *            the serializer of the value
+     * @return the value
+     * @throws IOException
+     *             if the value could not be read
+     */
+    public <T> T readValue(Binary payload, ValueSerializer<T> serializer) throws IOException {
+        return this == BINARY ? ProtobufValueReader.read(payload.toByteArray(), serializer) : JsonMessageReader
+                .readFromString(payload.toStringUtf8(), serializer);
+    }
+
+    /**
+     * Returns the tag to set on a message carrying a payload in this format. Returns null for JSON, so messages with
+     * JSON payloads are identical to those sent by clients that do not know about payload formats.
+     *
+     * @return the tag to set, or null for JSON
+     */
+    public Integer toTag() {
+        return this == JSON ? null : tag;
+    }
+
+    /**
+     * Writes the specified message in this format.
+     *
+     * @param message
+     *            the message to write
+     * @param serializer
+     *            the serializer of the message
+     * @return the written message
+     */
+    public <T extends Message> Binary write(T message, MessageSerializer<T> serializer) {
+        if (this == JSON) {
+            return Binary.copyFromUtf8(MessageSerializer.writeToJSON(message, serializer));
+        }
+        try {
+            return Binary.copyFrom(ProtobufMessageWriter.write(message, serializer));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write message as binary", e);
+        }
+    }
+
+    /**
+     * Returns the format with the specified tag.
+     *
+     * @param tag
+     *            the tag, or null if the message carrying the payload did not have a tag
+     * @return the format with the specified tag
+     * @throws IllegalArgumentException
+     *             if the tag is unknown
+     */
+    public static PayloadFormat fromTag(Integer tag) {
+        if (tag == null || tag == JSON.tag) {
+            return JSON;
+        } else if (tag == BINARY.tag) {
+            return BINARY;
+        }
+        throw new IllegalArgumentException("Unknown payload format " + tag);
+    }
+
+    /**
+     * Returns the payload format matching the specified message format.
+     *
+     * @param type
+     *            the message format
+     * @return the matching payload format
+     */
+    public static PayloadFormat of(MessageFormatType type) {
+        return type == MessageFormatType.MACHINE_READABLE ? BINARY : JSON;
+    }
+
+    /** A buffer that values can be written to in a specific format. */
+    public static final class ValueBuffer {
+
+        /** The bytes written in the binary format. */
+        private final ByteArrayOutputStream bytes;
+
+        /** The text written in the JSON format. */
+        private final StringWriter text;
+
+        /** The value writer. */
+        private final ValueWriter writer;
+
+        ValueBuffer(PayloadFormat format) {
+            if (format == BINARY) {
+                bytes = new ByteArrayOutputStream();
+                text = null;
+                writer = new ProtobufValueWriter(bytes);
+            } else {
+                bytes = null;
+                text = new StringWriter();
+                writer = new JsonValueWriter(text);
+            }
+        }
+
+        /**
+         * Returns the value writer of the buffer.
+         *
+         * @return the value writer of the buffer
+         */
+        public ValueWriter getWriter() {
+            return writer;
+        }
+
+        /**
+         * Returns the values that have been written to the buffer.
+         *
+         * @return the values that have been written to the buffer
+         * @throws IOException
+         *             if the values could not be flushed
+         */
+        public Binary toBinary() throws IOException {
+            if (text != null) {
+                return Binary.copyFromUtf8(text.toString());
+            }
+            writer.flush();
+            return Binary.copyFrom(bytes.toByteArray());
+        }
+    }
+}
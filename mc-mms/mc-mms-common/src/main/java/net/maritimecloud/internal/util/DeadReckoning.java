@@ -0,0 +1,56 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.util;
+
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.util.geometry.PositionTime;
+
+/**
+ * Estimates positions from a reported position, course and speed. Clients use it to decide when their position must
+ * be reported, and the server uses it to estimate the position of clients between reports.
+ *
+ * @author Kasper Nielsen
+ */
+public final class DeadReckoning {
+
+    /** Positions are never extrapolated further than this into the future. */
+    public static final long MAX_EXTRAPOLATION_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /** Cannot instantiate. */
+    private DeadReckoning() {}
+
+    /**
+     * Estimates the position at the specified time.
+     *
+     * @param reported
+     *            the reported position
+     * @param course
+     *            the reported course over ground in degrees, or null if unknown
+     * @param speed
+     *            the reported speed over ground in meters per second, or null if unknown
+     * @param time
+     *            the time to estimate the position at (epoch millis)
+     * @return the estimated position, or the reported position if the course or speed is unknown or if the time is
+     *         not after the time of the reported position
+     */
+    public static PositionTime extrapolate(PositionTime reported, Float course, Float speed, long time) {
+        if (course == null || speed == null || speed <= 0 || time <= reported.getTime()) {
+            return reported;
+        }
+        long millis = Math.min(time - reported.getTime(), MAX_EXTRAPOLATION_MILLIS);
+        return reported.pointOnBearing(speed * millis / 1000d, course).withTime(reported.getTime() + millis);
+    }
+}
@@ -0,0 +1,213 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent log-linear latency histogram in the spirit of HdrHistogram. Values are bucketed by their power of two
+ * and then into 64 linear sub buckets, giving a relative error of less than 1.6% over the full range of positive long
+ * values. Recording is wait-free and may happen from any number of threads, and does not allocate, so it is cheap
+ * enough to use on the message path. It is used both by the metrics of the server and by the benchmarks, which is why
+ * it lives in this module.
+ * <p>
+ * To avoid coordinated omission, either measure latency from the <em>intended</em> start time of an operation, or
+ * record with {@link #recordValueWithExpectedInterval(long, long)} when an operation can only be issued after the
+ * previous one has completed.
+ *
+ * @author Kasper Nielsen
+ */
+public final class LatencyHistogram {
+
+    /** The number of bits used for linear sub buckets. */
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /** The number of linear sub buckets per power of two. */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** Values below this threshold are recorded exactly. */
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT << 1;
+
+    /** The total number of buckets. */
+    public static final int BUCKETS = LINEAR_LIMIT + (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Returns the index of the bucket the specified value is recorded in.
+     *
+     * @param value
+     *            the non-negative value
+     * @return the index of the bucket the value is recorded in
+     */
+    public static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS; // >= 1
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * Returns the highest value that is recorded in the specified bucket.
+     *
+     * @param index
+     *            the index of the bucket
+     * @return the highest value that is recorded in the bucket
+     */
+    public static long highestValueAt(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 1;
+        long sub = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns the lowest value that is recorded in the specified bucket.
+     *
+     * @param index
+     *            the index of the bucket
+     * @return the lowest value that is recorded in the bucket
+     */
+    public static long lowestValueAt(int index) {
+        return index == 0 ? 0 : highestValueAt(index - 1) + 1;
+    }
+
+    /**
+     * Returns the number of values recorded in the specified bucket.
+     *
+     * @param index
+     *            the index of the bucket
+     * @return the number of values recorded in the bucket
+     */
+    public long getCountAt(int index) {
+        return counts.get(index);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the largest recorded value, or 0 if no values has been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of all recorded values.
+     *
+     * @return the mean of all recorded values, or 0 if no values has been recorded
+     */
+    public double getMean() {
+        long c = count.sum();
+        return c == 0 ? 0 : (double) total.sum() / c;
+    }
+
+    /**
+     * Returns the smallest recorded value.
+     *
+     * @return the smallest recorded value, or 0 if no values has been recorded
+     */
+    public long getMin() {
+        long m = min.get();
+        return m == Long.MAX_VALUE ? 0 : m;
+    }
+
+    /**
+     * Returns the value at the specified percentile. The returned value is the upper bound of the bucket containing
+     * the percentile, so it never understates the latency.
+     *
+     * @param percentile
+     *            the percentile in the range 0-100
+     * @return the value at the specified percentile
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100, was " + percentile);
+        }
+        long c = count.sum();
+        if (c == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * c));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Records a single value.
+     *
+     * @param value
+     *            the value to record
+     * @throws IllegalArgumentException
+     *             if the value is negative
+     */
+    public void recordValue(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must be non-negative, was " + value);
+        }
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+        min.accumulate(value);
+    }
+
+    /**
+     * Records a value measured by a closed loop that expected to issue an operation every {@code expectedInterval}.
+     * If the value is larger than the expected interval, the samples that the loop failed to issue while it was stalled
+     * are added as well, linearly decreasing from {@code value - expectedInterval} down to {@code expectedInterval}.
+     *
+     * @param value
+     *            the value to record
+     * @param expectedInterval
+     *            the expected interval between operations, 0 or negative to disable correction
+     */
+    public void recordValueWithExpectedInterval(long value, long expectedInterval) {
+        recordValue(value);
+        if (expectedInterval > 0) {
+            for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+                recordValue(missing);
+            }
+        }
+    }
+}
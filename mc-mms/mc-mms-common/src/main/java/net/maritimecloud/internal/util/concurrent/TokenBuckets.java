@@ -0,0 +1,76 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets implemented using the generic cell rate algorithm. The state of a bucket is a single
+ * {@link AtomicLong} holding the theoretical arrival time of the next request, as given by {@link System#nanoTime()}.
+ * Each admitted request moves the arrival time forward by its cost, and a request is admitted as long as the arrival
+ * time is no more than the tolerance ahead of the current time. The tolerance is the size of the burst allowed times
+ * the cost of a single request.
+ * <p>
+ * A bucket is updated with a compare and set, so no locks are taken when admitting a request.
+ *
+ * @author Kasper Nielsen
+ */
+public final class TokenBuckets {
+
+    /** Cannot instantiate. */
+    private TokenBuckets() {}
+
+    /**
+     * Tries to admit a request.
+     *
+     * @param bucket
+     *            the bucket
+     * @param now
+     *            the current value of {@link System#nanoTime()}
+     * @param cost
+     *            the number of nanoseconds the request moves the bucket forward
+     * @param tolerance
+     *            the number of nanoseconds the bucket may be ahead of time
+     * @return 0 if the request was admitted, otherwise the number of nanoseconds until it would be admitted
+     */
+    public static long acquire(AtomicLong bucket, long now, long cost, long tolerance) {
+        for (;;) {
+            long tat = bucket.get();
+            long start = tat - now > 0 ? tat : now;
+            long ahead = start - now;
+            if (ahead > tolerance) {
+                return ahead - tolerance;
+            } else if (bucket.compareAndSet(tat, start + cost)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of nanoseconds until a request would be admitted, without changing the bucket.
+     *
+     * @param bucket
+     *            the bucket
+     * @param now
+     *            the current value of {@link System#nanoTime()}
+     * @param tolerance
+     *            the number of nanoseconds the bucket may be ahead of time
+     * @return 0 if a request would be admitted now, otherwise the number of nanoseconds until it would be admitted
+     */
+    public static long wait(AtomicLong bucket, long now, long tolerance) {
+        long ahead = bucket.get() - now;
+        return ahead > tolerance ? ahead - tolerance : 0;
+    }
+}
@@ -0,0 +1,130 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.mms.messages.spi;
+
+import static net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority.HIGH;
+import static net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority.LOW;
+import static net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority.NORMAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link MmsMessageQueue}.
+ *
+ * @author Kasper Nielsen
+ */
+public class MmsMessageQueueTest {
+
+    static MmsMessageQueue<String> fill(int perLane) {
+        MmsMessageQueue<String> q = new MmsMessageQueue<>();
+        for (int i = 0; i < perLane; i++) {
+            q.add("L" + i, LOW);
+            q.add("N" + i, NORMAL);
+            q.add("H" + i, HIGH);
+        }
+        return q;
+    }
+
+    @Test
+    public void empty() {
+        MmsMessageQueue<String> q = new MmsMessageQueue<>();
+        assertTrue(q.isEmpty());
+        assertNull(q.poll());
+    }
+
+    /** Each turn polls up to 8 high, 4 normal and 1 low priority element, in that order. */
+    @Test
+    public void weightedRoundRobin() {
+        MmsMessageQueue<String> q = fill(20);
+        assertEquals(60, q.size());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 26; i++) {
+            sb.append(q.poll().charAt(0));
+        }
+        assertEquals("HHHHHHHHNNNNLHHHHHHHHNNNNL", sb.toString());
+        assertEquals(34, q.size());
+    }
+
+    /** A lane that runs dry gives its turn to the other lanes, so no lane is starved. */
+    @Test
+    public void emptyLanesDoNotBlockOthers() {
+        MmsMessageQueue<String> q = new MmsMessageQueue<>();
+        for (int i = 0; i < 3; i++) {
+            q.add("L" + i, LOW);
+        }
+        q.add("H0", HIGH);
+        assertEquals("H0", q.poll());
+        assertEquals("L0", q.poll());
+        assertEquals("L1", q.poll());
+        assertEquals("L2", q.poll());
+        assertNull(q.poll());
+        assertTrue(q.isEmpty());
+    }
+
+    /** Elements of the same priority are polled in the order they were added. */
+    @Test
+    public void fifoWithinLane() {
+        MmsMessageQueue<String> q = fill(20);
+        int h = 0, n = 0, l = 0;
+        for (String s = q.poll(); s != null; s = q.poll()) {
+            int i = Integer.parseInt(s.substring(1));
+            switch (s.charAt(0)) {
+            case 'H':
+                assertEquals(h++, i);
+                break;
+            case 'N':
+                assertEquals(n++, i);
+                break;
+            default:
+                assertEquals(l++, i);
+            }
+        }
+        assertEquals(20, h);
+        assertEquals(20, n);
+        assertEquals(20, l);
+    }
+
+    /** Requeued elements are polled before any other element of the same priority. */
+    @Test
+    public void addFirst() {
+        MmsMessageQueue<String> q = new MmsMessageQueue<>();
+        q.add("N0", NORMAL);
+        q.add("N1", NORMAL);
+        q.addFirst("R1", NORMAL);
+        q.addFirst("R0", NORMAL); // requeued newest first, so R0 ends up first
+        assertEquals(4, q.size());
+        assertEquals("R0", q.poll());
+        assertEquals("R1", q.poll());
+        assertEquals("N0", q.poll());
+        assertEquals("N1", q.poll());
+
+        q.add("L0", LOW);
+        q.addFirst("H0", HIGH);
+        assertEquals("H0", q.poll());
+        assertEquals("L0", q.poll());
+    }
+
+    @Test
+    public void clear() {
+        MmsMessageQueue<String> q = fill(5);
+        q.clear();
+        assertTrue(q.isEmpty());
+        assertEquals(0, q.size());
+        assertNull(q.poll());
+    }
+}
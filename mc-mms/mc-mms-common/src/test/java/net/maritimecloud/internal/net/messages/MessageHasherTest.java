@@ -0,0 +1,163 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.net.messages;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+import net.maritimecloud.util.Binary;
+import net.maritimecloud.util.Timestamp;
+import net.maritimecloud.util.geometry.Position;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link MessageHasher}. The expected hashes were calculated with the original implementation, which
+ * concatenated the fields into a single binary before hashing it. Message ids are derived from these hashes, so they
+ * must never change.
+ *
+ * @author Kasper Nielsen
+ */
+public class MessageHasherTest {
+
+    static Broadcast newBroadcast() {
+        return new Broadcast().setBroadcastType("net.maritimecloud.mms.stubs.BroadcastTestMessage")
+                .setSenderId("mmsi:1").setSenderTimestamp(Timestamp.create(1000))
+                .setSenderPosition(Position.create(55.5, 12.5)).setPayload(Binary.copyFromUtf8("{\"msg\":\"hello\"}"));
+    }
+
+    static BroadcastAck newBroadcastAck() {
+        return new BroadcastAck().setAckForMessageId(Binary.copyFromUtf8("id")).setOriginalSenderId("mmsi:1")
+                .setReceiverId("mmsi:2").setReceiverTimestamp(Timestamp.create(2000))
+                .setReceiverPosition(Position.create(-10.25, 20.75));
+    }
+
+    static MethodInvoke newMethodInvoke() {
+        return new MethodInvoke().setEndpointMethod("HelloWorld.hello").setSenderId("mmsi:1")
+                .setSenderTimestamp(Timestamp.create(3000)).setSenderPosition(Position.create(1, 2))
+                .setReceiverId("mmsi:2").setParameters("{\"name\":\"foo\"}")
+                .setBinaryParameters(Binary.copyFromUtf8("bin"));
+    }
+
+    static MethodInvokeResult newMethodInvokeResult() {
+        return new MethodInvokeResult().setResultForMessageId(Binary.copyFromUtf8("id")).setOriginalSenderId("mmsi:1")
+                .setReceiverId("mmsi:2").setReceiverTimestamp(Timestamp.create(4000));
+    }
+
+    @Test
+    public void broadcast() {
+        assertEquals("10DC41DCD49211738153B841E2106D4D9C1502FF7849C2F15A153FDF929A5B83",
+                MessageHasher.calculateSHA256(newBroadcast()).hexString());
+    }
+
+    @Test
+    public void broadcastAck() {
+        assertEquals("0A98CAC4B571F5918A623CC84BCC7053C74E416C282EEA2EBA0F5D6B13B1D56B",
+                MessageHasher.calculateSHA256(newBroadcastAck()).hexString());
+    }
+
+    @Test
+    public void methodInvoke() {
+        assertEquals("14492493ABA3E73A12D5226EDD865205151B7473AEF6117D466D54B175347E11",
+                MessageHasher.calculateSHA256(newMethodInvoke()).hexString());
+
+        // Invocation of a server service, all optional fields are missing
+        MethodInvoke mi = new MethodInvoke().setEndpointMethod("Services.subscribe").setSenderId("mmsi:1")
+                .setSenderTimestamp(Timestamp.create(3000));
+        assertEquals("7EBD68B914F34A4A66BEA892E7E1A6D7E2881F29B918BF3D4D8DF696E5898B81",
+                MessageHasher.calculateSHA256(mi).hexString());
+    }
+
+    @Test
+    public void methodInvokeResult() {
+        MethodInvokeResult r = newMethodInvokeResult().setResult(Binary.copyFromUtf8("\"ABC\""));
+        assertEquals("FB6E687FF17FBA69BB8E4868DEF93F3CADE56C94DDE607C96CFC28F4C6F71AD8",
+                MessageHasher.calculateSHA256(r).hexString());
+
+        // The failure is a nested message, which is hashed as JSON
+        MethodInvokeResult f = newMethodInvokeResult().setFailure(
+                new MethodInvokeFailure().setErrorCode(1).setExceptionType("java.lang.IllegalStateException")
+                        .setDescription("boom"));
+        assertEquals("06EB2E40F5269BA4DC16791B36452088192A9C404E04A2BB462A69FC4969C888",
+                MessageHasher.calculateSHA256(f).hexString());
+    }
+
+    /** Tests that the format of a payload is part of the hash, but only when it is tagged. */
+    @Test
+    public void payloadFormat() {
+        Binary json = MessageHasher.calculateSHA256(newBroadcast());
+        Binary binary = MessageHasher.calculateSHA256(newBroadcast().setPayloadFormat(1));
+        assertFalse(json.equals(binary));
+        assertEquals(binary, MessageHasher.calculateSHA256(newBroadcast().setPayloadFormat(1)));
+
+        MethodInvokeResult r = newMethodInvokeResult().setResult(Binary.copyFromUtf8("\"ABC\""));
+        json = MessageHasher.calculateSHA256(r);
+        binary = MessageHasher.calculateSHA256(r.setResultFormat(1));
+        assertFalse(json.equals(binary));
+        assertEquals("FB6E687FF17FBA69BB8E4868DEF93F3CADE56C94DDE607C96CFC28F4C6F71AD8", json.hexString());
+    }
+
+    /** Tests that the time to live of a broadcast is part of the hash, but only when it is set. */
+    @Test
+    public void timeToLive() {
+        Binary ttl = MessageHasher.calculateSHA256(newBroadcast().setTimeToLive(60));
+        assertFalse(ttl.equals(MessageHasher.calculateSHA256(newBroadcast())));
+        assertFalse(ttl.equals(MessageHasher.calculateSHA256(newBroadcast().setTimeToLive(120))));
+        assertEquals("3DCA0519B95ABE2A3A68CD63E0EDF42975EA7B470F377E25203396242ADC7FEE", ttl.hexString());
+        assertEquals("10DC41DCD49211738153B841E2106D4D9C1502FF7849C2F15A153FDF929A5B83",
+                MessageHasher.calculateSHA256(newBroadcast()).hexString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingRequiredField() {
+        MessageHasher.calculateSHA256(newBroadcast().setSenderId(null));
+    }
+
+    @Test
+    public void signAndVerify() throws Exception {
+        PrivateKey key = SignatureVerifierTest.KEY1.getPrivate();
+        PublicKey pub = SignatureVerifierTest.KEY1.getPublic();
+        PublicKey other = SignatureVerifierTest.KEY2.getPublic();
+
+        Broadcast b = newBroadcast();
+        assertFalse(MessageHasher.verify(b, pub)); // not signed
+        b.setSignature(MessageHasher.sign(b, key));
+        assertTrue(MessageHasher.verify(b, pub));
+        assertFalse(MessageHasher.verify(b, other));
+        assertFalse(MessageHasher.verify(b.setPayload(Binary.copyFromUtf8("{\"msg\":\"bye\"}")), pub));
+
+        BroadcastAck ba = newBroadcastAck();
+        ba.setSignature(MessageHasher.sign(ba, key));
+        assertTrue(MessageHasher.verify(ba, pub));
+        assertFalse(MessageHasher.verify(ba, other));
+        assertFalse(MessageHasher.verify(ba.setReceiverId("mmsi:3"), pub));
+
+        MethodInvoke mi = newMethodInvoke();
+        mi.setSignature(MessageHasher.sign(mi, key));
+        assertTrue(MessageHasher.verify(mi, pub));
+        assertFalse(MessageHasher.verify(mi, other));
+        assertFalse(MessageHasher.verify(mi.setParameters("{\"name\":\"bar\"}"), pub));
+
+        MethodInvokeResult r = newMethodInvokeResult().setResult(Binary.copyFromUtf8("\"ABC\""));
+        r.setSignature(MessageHasher.sign(r, key));
+        assertTrue(MessageHasher.verify(r, pub));
+        assertFalse(MessageHasher.verify(r, other));
+        assertFalse(MessageHasher.verify(r.setResult(Binary.copyFromUtf8("\"DEF\"")), pub));
+    }
+}
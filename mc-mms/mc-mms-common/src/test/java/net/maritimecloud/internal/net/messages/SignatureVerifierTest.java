@@ -0,0 +1,160 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.net.messages;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.maritimecloud.util.Binary;
+import net.maritimecloud.util.Timestamp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link SignatureVerifier}.
+ *
+ * @author Kasper Nielsen
+ */
+public class SignatureVerifierTest {
+
+    static final KeyPair KEY1 = newKeyPair();
+
+    static final KeyPair KEY2 = newKeyPair();
+
+    /** The public keys returned by the resolver. */
+    final Map<String, PublicKey> keys = new HashMap<>();
+
+    /** The number of times the resolver has been invoked. */
+    final AtomicInteger resolved = new AtomicInteger();
+
+    @Before
+    public void setup() {
+        keys.put("mmsi:1", KEY1.getPublic());
+        keys.put("mmsi:2", KEY2.getPublic());
+    }
+
+    SignatureVerifier newVerifier(int maxKeys, int maxVerified) {
+        return new SignatureVerifier(id -> {
+            resolved.incrementAndGet();
+            return keys.get(id);
+        }, maxKeys, maxVerified, Runnable::run);
+    }
+
+    static Broadcast newBroadcast(String sender, String payload) {
+        Broadcast b = new Broadcast();
+        b.setBroadcastType("test.Hello");
+        b.setSenderId(sender);
+        b.setSenderTimestamp(Timestamp.create(1000));
+        b.setPayload(Binary.copyFromUtf8(payload));
+        b.setMessageId(MessageHasher.calculateSHA256(b));
+        return b;
+    }
+
+    static Broadcast sign(Broadcast b, KeyPair key) throws Exception {
+        return b.setSignature(MessageHasher.sign(b, key.getPrivate()));
+    }
+
+    @Test
+    public void valid() throws Exception {
+        SignatureVerifier v = newVerifier(10, 10);
+        assertTrue(v.verify(sign(newBroadcast("mmsi:1", "hello"), KEY1)).get());
+        assertTrue(v.verify(sign(newBroadcast("mmsi:2", "hello"), KEY2)).get());
+    }
+
+    @Test
+    public void unsigned() throws Exception {
+        SignatureVerifier v = newVerifier(10, 10);
+        assertFalse(v.verify(newBroadcast("mmsi:1", "hello")).get());
+        assertEquals(0, resolved.get());
+    }
+
+    @Test
+    public void tampered() throws Exception {
+        SignatureVerifier v = newVerifier(10, 10);
+        Broadcast b = sign(newBroadcast("mmsi:1", "hello"), KEY1);
+        b.setPayload(Binary.copyFromUtf8("goodbye"));
+        assertFalse(v.verify(b).get());
+
+        // signed by another sender than the one it claims to be from
+        assertFalse(v.verify(sign(newBroadcast("mmsi:1", "hello"), KEY2)).get());
+
+        // a tampered broadcast is not remembered as verified
+        Broadcast c = sign(newBroadcast("mmsi:1", "hello"), KEY1);
+        assertTrue(v.verify(c).get());
+        assertFalse(v.verify(c.setSenderTimestamp(Timestamp.create(2000))).get());
+    }
+
+    @Test
+    public void unknownSender() throws Exception {
+        SignatureVerifier v = newVerifier(10, 10);
+        assertFalse(v.verify(sign(newBroadcast("mmsi:3", "hello"), KEY1)).get());
+    }
+
+    /** The public key of a sender is only resolved once, until it is evicted. */
+    @Test
+    public void keyCache() throws Exception {
+        SignatureVerifier v = newVerifier(1, 100);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(v.verify(sign(newBroadcast("mmsi:1", "hello" + i), KEY1)).get());
+        }
+        assertEquals(1, resolved.get());
+
+        // evicts the key of mmsi:1
+        assertTrue(v.verify(sign(newBroadcast("mmsi:2", "hello"), KEY2)).get());
+        assertEquals(2, resolved.get());
+        assertTrue(v.verify(sign(newBroadcast("mmsi:1", "hello5"), KEY1)).get());
+        assertEquals(3, resolved.get());
+    }
+
+    /** A broadcast that has already been verified is not verified again, so the key is not needed. */
+    @Test
+    public void verifiedCache() throws Exception {
+        SignatureVerifier v = newVerifier(1, 100);
+        Broadcast b = sign(newBroadcast("mmsi:1", "hello"), KEY1);
+        assertTrue(v.verify(b).get());
+
+        // evicts the key of mmsi:1
+        assertTrue(v.verify(sign(newBroadcast("mmsi:2", "hello"), KEY2)).get());
+        assertEquals(2, resolved.get());
+
+        keys.clear();
+        assertTrue(v.verify(b).get());
+        assertEquals(2, resolved.get());
+
+        // but only with the same signature
+        Broadcast other = newBroadcast("mmsi:1", "hello").setSignature(Binary.copyFromUtf8("foo"));
+        assertFalse(v.verify(other).get());
+        assertEquals(3, resolved.get());
+    }
+
+    static KeyPair newKeyPair() {
+        try {
+            KeyPairGenerator g = KeyPairGenerator.getInstance("EC");
+            g.initialize(256);
+            return g.generateKeyPair();
+        } catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.internal.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Kasper Nielsen
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void indexRoundTrip() {
+        for (long v : new long[] { 0, 1, 127, 128, 129, 255, 256, 1000, 1_000_000, Long.MAX_VALUE }) {
+            int index = LatencyHistogram.indexOf(v);
+            assertTrue(LatencyHistogram.highestValueAt(index) >= v);
+            assertTrue(index == 0 || LatencyHistogram.highestValueAt(index - 1) < v);
+            assertTrue(LatencyHistogram.lowestValueAt(index) <= v);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.recordValue(i * 1000);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(1000, h.getMin());
+        assertEquals(1_000_000, h.getMax());
+        assertEquals(500_500, h.getMean(), 0.1);
+        long p50 = h.getValueAtPercentile(50);
+        assertTrue(p50 >= 500_000 && p50 < 500_000 * 1.016);
+        assertEquals(1_000_000, h.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void coordinatedOmissionCorrection() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.recordValueWithExpectedInterval(1000, 100);
+        // 1000, 900, 800, ..., 100
+        assertEquals(10, h.getCount());
+        assertEquals(100, h.getMin());
+        assertEquals(1000, h.getMax());
+    }
+}
@@ -22,13 +22,18 @@ import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import net.maritimecloud.core.id.ServerId;
 import net.maritimecloud.internal.mms.transport.AccessLogManager;
+import net.maritimecloud.mms.server.broadcast.BroadcastRateLimiter;
 import net.maritimecloud.mms.server.broadcast.ServerBroadcastManager;
 import net.maritimecloud.mms.server.connection.client.ClientManager;
 import net.maritimecloud.mms.server.connection.client.ClientReaper;
 import net.maritimecloud.mms.server.connection.client.DefaultTransportListener;
+import net.maritimecloud.mms.server.connection.client.HandshakeAdmissionController;
 import net.maritimecloud.mms.server.endpoints.ServerEndpointManager;
 import net.maritimecloud.mms.server.endpoints.ServerServices;
+import net.maritimecloud.mms.server.metrics.ServerMetrics;
+import net.maritimecloud.mms.server.rest.TailTargetLog;
 import net.maritimecloud.mms.server.security.MmsSecurityManager;
+import net.maritimecloud.mms.server.tracker.FleetSnapshots;
 import net.maritimecloud.mms.server.tracker.PositionTracker;
 import org.cakeframework.container.spi.AbstractContainerConfiguration;
 import org.cakeframework.container.spi.ContainerComposer;
@@ -59,6 +64,10 @@ import static net.maritimecloud.internal.mms.transport.AccessLogManager.AccessLo
  *     <li>-accessLogFormat: The access log message format. One of 'text', 'binary' or 'compact'</li>
  *     <li>-accessLogFilter: The filter to apply to the access log.
  *                           Example: "inbound && msg.m.class.simpleName != 'PositionReport'"</li>
+ *     <li>-broadcastRate: The maximum number of broadcasts per second from a single client</li>
+ *     <li>-broadcastBurst: The number of broadcasts a client may send at once, regardless of the broadcast rate</li>
+ *     <li>-broadcastRatePerType: Whether the broadcast rate applies to each type of broadcast separately</li>
+ *     <li>-broadcastFanoutBudget: The maximum number of recipients of broadcasts per second</li>
  * </ul>
  *
  * The format of the MMS configuration file can be seen from the default {@code src/main/resources/mms.conf}
@@ -94,6 +103,30 @@ public class MmsServerConfiguration implements AccessLogConfiguration {
             "e.g. \"inbound && msg.m.class.simpleName != 'PositionReport'\"")
     String accessLogFilter;
 
+    @Parameter(names = "-broadcastRate", description = "The maximum number of broadcasts per second from a single " +
+            "client")
+    Double broadcastRate;
+
+    @Parameter(names = "-broadcastBurst", description = "The number of broadcasts a client may send at once, " +
+            "regardless of the broadcast rate")
+    Integer broadcastBurst;
+
+    @Parameter(names = "-broadcastRatePerType", description = "Whether the broadcast rate applies to each type of " +
+            "broadcast separately")
+    Boolean broadcastRatePerType;
+
+    @Parameter(names = "-broadcastFanoutBudget", description = "The maximum number of recipients of broadcasts per " +
+            "second")
+    Integer broadcastFanoutBudget;
+
+    @Parameter(names = "-handshakeRate", description = "The maximum number of new client connections accepted per " +
+            "second")
+    Double handshakeRate;
+
+    @Parameter(names = "-handshakeBurst", description = "The number of new client connections accepted at once, " +
+            "regardless of the handshake rate")
+    Integer handshakeBurst;
+
     /**
      * @return the id
      */
@@ -126,6 +159,48 @@ public class MmsServerConfiguration implements AccessLogConfiguration {
         return accessLogFilter;
     }
 
+    /**
+     * @return the maximum number of broadcasts per second from a single client, or null if unlimited
+     */
+    public Double getBroadcastRate() {
+        return broadcastRate;
+    }
+
+    /**
+     * @return the number of broadcasts a client may send at once, or null if only a single broadcast
+     */
+    public Integer getBroadcastBurst() {
+        return broadcastBurst;
+    }
+
+    /**
+     * @return the maximum number of recipients of broadcasts per second, or null if unlimited
+     */
+    public Integer getBroadcastFanoutBudget() {
+        return broadcastFanoutBudget;
+    }
+
+    /**
+     * @return whether the broadcast rate applies to each type of broadcast separately
+     */
+    public Boolean isBroadcastRatePerType() {
+        return broadcastRatePerType;
+    }
+
+    /**
+     * @return the maximum number of new client connections accepted per second, or null if unlimited
+     */
+    public Double getHandshakeRate() {
+        return handshakeRate;
+    }
+
+    /**
+     * @return the number of new client connections accepted at once, or null if only a single connection
+     */
+    public Integer getHandshakeBurst() {
+        return handshakeBurst;
+    }
+
     /**
      * @return the securePort
      */
@@ -176,6 +251,66 @@ public class MmsServerConfiguration implements AccessLogConfiguration {
         return this;
     }
 
+    /**
+     * @param broadcastRate
+     *            the maximum number of broadcasts per second from a single client
+     * @return this configuration
+     */
+    public MmsServerConfiguration setBroadcastRate(double broadcastRate) {
+        this.broadcastRate = broadcastRate;
+        return this;
+    }
+
+    /**
+     * @param broadcastBurst
+     *            the number of broadcasts a client may send at once
+     * @return this configuration
+     */
+    public MmsServerConfiguration setBroadcastBurst(int broadcastBurst) {
+        this.broadcastBurst = broadcastBurst;
+        return this;
+    }
+
+    /**
+     * @param broadcastFanoutBudget
+     *            the maximum number of recipients of broadcasts per second
+     * @return this configuration
+     */
+    public MmsServerConfiguration setBroadcastFanoutBudget(int broadcastFanoutBudget) {
+        this.broadcastFanoutBudget = broadcastFanoutBudget;
+        return this;
+    }
+
+    /**
+     * @param broadcastRatePerType
+     *            whether the broadcast rate applies to each type of broadcast separately
+     * @return this configuration
+     */
+    public MmsServerConfiguration setBroadcastRatePerType(boolean broadcastRatePerType) {
+        this.broadcastRatePerType = broadcastRatePerType;
+        return this;
+    }
+
+    /**
+     * @param handshakeRate
+     *            the maximum number of new client connections accepted per second
+     * @return this configuration
+     */
+    public MmsServerConfiguration setHandshakeRate(double handshakeRate) {
+        this.handshakeRate = handshakeRate;
+        return this;
+    }
+
+    /**
+     * @param handshakeBurst
+     *            the number of new client connections accepted at once
+     * @return this configuration
+     */
+    public MmsServerConfiguration setHandshakeBurst(int handshakeBurst) {
+        this.handshakeBurst = handshakeBurst;
+        return this;
+    }
+
     /**
      * Reads any file configuration specified by a "-conf" parameter
      * @return the file configuration
@@ -205,6 +340,24 @@ public class MmsServerConfiguration implements AccessLogConfiguration {
         if (accessLogFilter == null && fileConf.hasPath("access-log-filter")) {
             accessLogFilter = fileConf.getString("access-log-filter");
         }
+        if (broadcastRate == null && fileConf.hasPath("broadcast-rate")) {
+            broadcastRate = fileConf.getDouble("broadcast-rate");
+        }
+        if (broadcastBurst == null && fileConf.hasPath("broadcast-burst")) {
+            broadcastBurst = fileConf.getInt("broadcast-burst");
+        }
+        if (broadcastRatePerType == null && fileConf.hasPath("broadcast-rate-per-type")) {
+            broadcastRatePerType = fileConf.getBoolean("broadcast-rate-per-type");
+        }
+        if (broadcastFanoutBudget == null && fileConf.hasPath("broadcast-fanout-budget")) {
+            broadcastFanoutBudget = fileConf.getInt("broadcast-fanout-budget");
+        }
+        if (handshakeRate == null && fileConf.hasPath("handshake-rate")) {
+            handshakeRate = fileConf.getDouble("handshake-rate");
+        }
+        if (handshakeBurst == null && fileConf.hasPath("handshake-burst")) {
+            handshakeBurst = fileConf.getInt("handshake-burst");
+        }
 
         return fileConf;
     }
@@ -234,18 +387,23 @@ public class MmsServerConfiguration implements AccessLogConfiguration {
         conf.addService(ClientManager.class);
         conf.addService(ClientReaper.class);
         conf.addService(DefaultTransportListener.class);
+        conf.addService(HandshakeAdmissionController.class);
 
-        conf.addService(new ServerEventListener() {});
+        // The tail log is the server event listener, it does nothing unless someone is tailing traffic
+        conf.addService(TailTargetLog.class);
 
         conf.addService(PositionTracker.class);
+        conf.addService(FleetSnapshots.class);
         conf.addService(WebServer.class);
 
         conf.addService(ServerServices.class);
         conf.addService(MmsServerConnectionBus.class);
         conf.addService(ServerBroadcastManager.class);
+        conf.addService(BroadcastRateLimiter.class);
         conf.addService(ServerEndpointManager.class);
         conf.addService(AccessLogManager.class);
         conf.addService(MetricRegistry.class);
+        conf.addService(ServerMetrics.class);
         conf.addService(new MmsSecurityManager(securityConfig));
         return conf.create();
     }
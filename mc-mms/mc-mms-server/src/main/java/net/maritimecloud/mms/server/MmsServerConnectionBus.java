@@ -17,16 +17,20 @@ package net.maritimecloud.mms.server;
 import static java.util.Objects.requireNonNull;
 import net.maritimecloud.core.id.MaritimeId;
 import net.maritimecloud.internal.mms.messages.PositionReport;
+import net.maritimecloud.internal.mms.messages.ServerRequestError;
 import net.maritimecloud.internal.net.messages.Broadcast;
 import net.maritimecloud.internal.net.messages.MethodInvoke;
 import net.maritimecloud.internal.net.messages.MethodInvokeResult;
 import net.maritimecloud.message.Message;
+import net.maritimecloud.mms.server.broadcast.BroadcastRateLimiter;
+import net.maritimecloud.mms.server.broadcast.BroadcastRejectedException;
 import net.maritimecloud.mms.server.broadcast.ServerBroadcastManager;
 import net.maritimecloud.mms.server.connection.client.Client;
 import net.maritimecloud.mms.server.connection.client.ClientManager;
 import net.maritimecloud.mms.server.connection.client.Session;
 import net.maritimecloud.mms.server.connection.client.SessionMessageFuture;
 import net.maritimecloud.mms.server.endpoints.ServerEndpointManager;
+import net.maritimecloud.util.geometry.PositionTime;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
@@ -43,29 +47,51 @@ public class MmsServerConnectionBus implements Session.Listener {
 
     final ServerEndpointManager sem;
 
+    final BroadcastRateLimiter rateLimiter;
+
     // Metrics
     final Meter broadcastsMeter;
 
+    final Meter broadcastsRejectedMeter;
+
     final Meter methodInvokesMeter;
 
     final Meter positionReportsMeter;
 
 
-    public MmsServerConnectionBus(ServerEndpointManager sem, ClientManager tm, MetricRegistry metrics) {
+    public MmsServerConnectionBus(ServerEndpointManager sem, ClientManager tm, MetricRegistry metrics,
+            BroadcastRateLimiter rateLimiter) {
         this.tm = requireNonNull(tm);
         this.sem = sem;
+        this.rateLimiter = requireNonNull(rateLimiter);
 
         // Metrics
         broadcastsMeter = metrics.meter("broadcasts");
+        broadcastsRejectedMeter = metrics.meter("broadcastsRejected");
         methodInvokesMeter = metrics.meter("methodInvokes");
         positionReportsMeter = metrics.meter("positionReports");
     }
 
     public void onBroadcast(Session connection, Broadcast message) {
         try {
-            PositionReport srm = sbm.broadcast(connection.getClient(), message);
+            Client sender = connection.getClient();
+            // Only a cheap check, the rate is used once the number of recipients is known
+            long wait = rateLimiter.check(sender.getId(), message.getBroadcastType(), System.nanoTime());
+            if (wait > 0) {
+                throw new BroadcastRejectedException("The broadcast rate of the client has been exceeded", wait);
+            }
+            PositionReport srm = sbm.broadcast(sender, message);
+            broadcastsMeter.mark();
             connection.send(srm);
             return;
+        } catch (BroadcastRejectedException e) {
+            broadcastsRejectedMeter.mark();
+            ServerRequestError error = new ServerRequestError();
+            error.setRequestId(message.getMessageId());
+            error.setErrorCode(BroadcastRateLimiter.RATE_LIMITED);
+            error.setErrorMessage(e.getMessage());
+            error.setRetryAfter((int) Math.min(Integer.MAX_VALUE, e.getRetryAfterMillis()));
+            connection.send(error);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -74,7 +100,6 @@ public class MmsServerConnectionBus implements Session.Listener {
     public void onMessage(Session connection, Message message) {
         if (message instanceof Broadcast) {
             onBroadcast(connection, (Broadcast) message);
-            broadcastsMeter.mark();
         } else if (message instanceof MethodInvoke) {
             MethodInvoke mi = (MethodInvoke) message;
             onMethodInvoke(connection, message, mi.getReceiverId(), mi.getSenderId());
@@ -82,6 +107,14 @@ public class MmsServerConnectionBus implements Session.Listener {
         } else if (message instanceof MethodInvokeResult) {
             MethodInvokeResult mi = (MethodInvokeResult) message;
             onMethodInvoke(connection, message, mi.getOriginalSenderId(), mi.getReceiverId());
+        } else if (message instanceof PositionReport) {
+            // The client has already updated its latest position, if the report was not out of date
+            Client c = connection.getClient();
+            PositionTime pt = c.getLatestPositionAndTime();
+            if (pt != null) {
+                sbm.onPositionUpdate(c, pt);
+            }
+            positionReportsMeter.mark();
         }
     }
 
@@ -196,6 +196,9 @@ public class WebServer {
         config.register(sm.inject(EndpointInvoke.class));
         config.register(sm.inject(ClientResource.class));
         config.register(sm.inject(MetricsResource.class));
+        config.register(sm.inject(TailLogger.class));
+        config.register(sm.inject(PositionResource.class));
+        config.register(sm.inject(FleetResource.class));
         config.register(sm.inject(JSONMetricRegistryBodyWriter.class));
         config.register(sm.inject(DmaExceptionMapper.class));
 
@@ -0,0 +1,246 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.broadcast;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import net.maritimecloud.internal.net.messages.Broadcast;
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.util.Binary;
+import net.maritimecloud.util.geometry.Area;
+import net.maritimecloud.util.geometry.Circle;
+import net.maritimecloud.util.geometry.Position;
+import net.maritimecloud.util.geometry.Rectangle;
+
+/**
+ * Keeps broadcasts that have a time to live, so they can be delivered to clients that enter the area of the broadcast
+ * after it has been sent. Broadcasts are indexed by a grid of cells covering the bounding box of their area, so
+ * finding the broadcasts that might cover a position only looks at a single cell. Broadcasts whose area covers too
+ * many cells, or has no reliable bounding box, are kept in a separate list that is checked for every position.
+ * <p>
+ * Expired broadcasts are kept in a queue ordered by expiration time, so purging only touches the broadcasts that have
+ * actually expired.
+ *
+ * @author Kasper Nielsen
+ */
+class ActiveBroadcastStore {
+
+    /** The size of a cell in degrees. */
+    static final int CELL_DEGREES = 1;
+
+    /** Broadcasts whose bounding box covers more cells than this are not indexed by cell. */
+    static final int MAX_CELLS = 1024;
+
+    /** The number of cells per row of the grid. */
+    static final int CELLS_PER_ROW = 360 / CELL_DEGREES;
+
+    /** All active broadcasts by message id. */
+    private final ConcurrentHashMap<Binary, ActiveBroadcast> byId = new ConcurrentHashMap<>();
+
+    /** Active broadcasts by the cells their bounding box covers. */
+    private final ConcurrentHashMap<Integer, CopyOnWriteArrayList<ActiveBroadcast>> cells = new ConcurrentHashMap<>();
+
+    /** Active broadcasts that are not indexed by cell. */
+    private final CopyOnWriteArrayList<ActiveBroadcast> large = new CopyOnWriteArrayList<>();
+
+    /** Active broadcasts ordered by expiration time. */
+    private final PriorityQueue<ActiveBroadcast> expirations = new PriorityQueue<>(
+            Comparator.comparingLong((ActiveBroadcast a) -> a.expiresAt));
+
+    /**
+     * Adds the specified broadcast, unless a broadcast with the same message id is already active.
+     *
+     * @param sender
+     *            the sender of the broadcast
+     * @param broadcast
+     *            the broadcast to add
+     * @param expiresAt
+     *            the time (epoch millis) the broadcast expires
+     * @return the active broadcast, either the new one or an existing one with the same message id
+     */
+    ActiveBroadcast add(Client sender, Broadcast broadcast, long expiresAt) {
+        ActiveBroadcast ab = new ActiveBroadcast(sender, broadcast, expiresAt);
+        ActiveBroadcast existing = byId.putIfAbsent(broadcast.getMessageId(), ab);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (expirations) {
+            expirations.add(ab);
+        }
+        if (ab.cells == null) {
+            large.add(ab);
+        } else {
+            for (int key : ab.cells) {
+                cells.compute(key, (k, list) -> {
+                    CopyOnWriteArrayList<ActiveBroadcast> l = list == null ? new CopyOnWriteArrayList<>() : list;
+                    l.add(ab);
+                    return l;
+                });
+            }
+        }
+        return ab;
+    }
+
+    /**
+     * Invokes the specified consumer for every active broadcast whose bounding box contains the specified position.
+     *
+     * @param position
+     *            the position
+     * @param consumer
+     *            the consumer to invoke
+     */
+    void forEachCandidate(Position position, Consumer<ActiveBroadcast> consumer) {
+        if (byId.isEmpty()) {
+            return; // the common case
+        }
+        CopyOnWriteArrayList<ActiveBroadcast> list = cells.get(cellOf(position.getLatitude(), position.getLongitude()));
+        if (list != null) {
+            list.forEach(consumer);
+        }
+        large.forEach(consumer);
+    }
+
+    /**
+     * Removes all broadcasts that have expired.
+     *
+     * @param now
+     *            the current time (epoch millis)
+     * @return the number of broadcasts that was removed
+     */
+    int purge(long now) {
+        int count = 0;
+        for (;;) {
+            ActiveBroadcast ab;
+            synchronized (expirations) {
+                ab = expirations.peek();
+                if (ab == null || ab.expiresAt > now) {
+                    return count;
+                }
+                expirations.poll();
+            }
+            byId.remove(ab.broadcast.getMessageId(), ab);
+            if (ab.cells == null) {
+                large.remove(ab);
+            } else {
+                for (int key : ab.cells) {
+                    cells.computeIfPresent(key, (k, list) -> {
+                        list.remove(ab);
+                        return list.isEmpty() ? null : list;
+                    });
+                }
+            }
+            count++;
+        }
+    }
+
+    /** Returns the number of active broadcasts. */
+    int size() {
+        return byId.size();
+    }
+
+    /**
+     * Returns the cells covered by the bounding box of the specified area, or null if the area should not be indexed
+     * by cell. Only rectangles and circles are indexed, as they are the only areas with reliable bounding boxes. One
+     * extra cell is added in each direction to allow for rounding errors when calculating the bounding box of a
+     * circle.
+     */
+    static int[] cellsOf(Area area) {
+        if (!(area instanceof Rectangle || area instanceof Circle)) {
+            return null;
+        }
+        Rectangle r;
+        try {
+            r = area.getBoundingBox();
+        } catch (RuntimeException e) { // for example, a circle around a pole
+            return null;
+        }
+        int top = Math.min(180 / CELL_DEGREES - 1, latitudeIndex(r.getTopLeftLatitude()) + 1);
+        int bottom = Math.max(0, latitudeIndex(r.getBottomRightLatitude()) - 1);
+        int left = Math.max(0, longitudeIndex(r.getTopLeftLongitude()) - 1);
+        int right = Math.min(CELLS_PER_ROW - 1, longitudeIndex(r.getBottomRightLongitude()) + 1);
+        // Crossing the date line, or just too big
+        if (left > right || bottom > top || (long) (top - bottom + 1) * (right - left + 1) > MAX_CELLS) {
+            return null;
+        }
+        int[] result = new int[(top - bottom + 1) * (right - left + 1)];
+        int i = 0;
+        for (int lat = bottom; lat <= top; lat++) {
+            for (int lon = left; lon <= right; lon++) {
+                result[i++] = lat * CELLS_PER_ROW + lon;
+            }
+        }
+        return result;
+    }
+
+    static int cellOf(double latitude, double longitude) {
+        return latitudeIndex(latitude) * CELLS_PER_ROW + longitudeIndex(longitude);
+    }
+
+    private static int latitudeIndex(double latitude) {
+        return Math.min(180 / CELL_DEGREES - 1, (int) Math.floor((latitude + 90) / CELL_DEGREES));
+    }
+
+    private static int longitudeIndex(double longitude) {
+        return Math.min(CELLS_PER_ROW - 1, (int) Math.floor((longitude + 180) / CELL_DEGREES));
+    }
+
+    /** A broadcast that is still active. */
+    static final class ActiveBroadcast {
+
+        /** The area of the broadcast. */
+        final Area area;
+
+        /** The broadcast. */
+        final Broadcast broadcast;
+
+        /** The ids of the clients the broadcast has been delivered to. */
+        private final Set<String> delivered = ConcurrentHashMap.newKeySet();
+
+        /** The cells the broadcast is indexed by, or null if it is in the list of large broadcasts. */
+        final int[] cells;
+
+        /** The time (epoch millis) the broadcast expires. */
+        final long expiresAt;
+
+        /** The sender of the broadcast. */
+        final Client sender;
+
+        ActiveBroadcast(Client sender, Broadcast broadcast, long expiresAt) {
+            this.sender = requireNonNull(sender);
+            this.broadcast = requireNonNull(broadcast);
+            this.area = requireNonNull(broadcast.getArea());
+            this.cells = cellsOf(area);
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Marks the broadcast as delivered to the specified client.
+         *
+         * @param client
+         *            the client
+         * @return true if the broadcast had not already been delivered to the client, otherwise false
+         */
+        boolean markDelivered(Client client) {
+            return delivered.add(client.getId());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.broadcast;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.internal.mms.messages.spi.MmsFeatures;
+import net.maritimecloud.internal.net.messages.BroadcastAck;
+import net.maritimecloud.internal.net.messages.BroadcastAckBatch;
+import net.maritimecloud.message.Message;
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.util.Binary;
+
+/**
+ * Collects the acks of each broadcast over a short window, and delivers them to the sender of the broadcast in
+ * batches. A broadcast to a large area can otherwise result in thousands of separate ack messages to the sender. If
+ * only a single ack is received within a window it is sent as a plain {@link BroadcastAck}. Batches are only sent to
+ * clients that support {@link MmsFeatures#BROADCAST_ACK_BATCH}, other clients receive each ack separately.
+ *
+ * @author Kasper Nielsen
+ */
+class BroadcastAckAggregator {
+
+    /** The maximum number of acks in a single batch. */
+    static final int MAX_BATCH_SIZE = 512;
+
+    /** The time to collect acks before sending them. */
+    static final long WINDOW_MILLIS = 100;
+
+    /** Acks that have not yet been sent, by the id of the broadcast being acked. */
+    private final ConcurrentHashMap<Binary, Pending> pending = new ConcurrentHashMap<>();
+
+    /** Used for flushing batches when their window closes. */
+    private final ScheduledExecutorService ses;
+
+    BroadcastAckAggregator(ScheduledExecutorService ses) {
+        this.ses = requireNonNull(ses);
+    }
+
+    /**
+     * Adds an ack that should be delivered to the sender of a broadcast.
+     *
+     * @param sender
+     *            the sender of the broadcast
+     * @param ackForMessageId
+     *            the id of the broadcast
+     * @param ack
+     *            the ack, without the id of the broadcast
+     */
+    void add(Client sender, Binary ackForMessageId, BroadcastAck ack) {
+        Pending[] full = new Pending[1];
+        pending.compute(ackForMessageId, (k, p) -> {
+            if (p == null) {
+                Pending newPending = new Pending(sender, ackForMessageId);
+                ses.schedule(() -> flush(newPending), WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+                p = newPending;
+            }
+            p.acks.add(ack);
+            if (p.acks.size() >= MAX_BATCH_SIZE) {
+                full[0] = p;
+                return null;
+            }
+            return p;
+        });
+        if (full[0] != null) {
+            send(full[0]);
+        }
+    }
+
+    /** Sends the specified batch, unless it has already been sent because it was full. */
+    void flush(Pending p) {
+        if (pending.remove(p.ackForMessageId, p)) {
+            send(p);
+        }
+    }
+
+    /** Sends the acks of the specified batch to the sender of the broadcast. */
+    void send(Pending p) {
+        if (p.acks.size() > 1 && supportsBatches(p.sender)) {
+            send(p.sender, new BroadcastAckBatch().setAckForMessageId(p.ackForMessageId).addAllAcks(p.acks));
+        } else {
+            for (BroadcastAck ack : p.acks) {
+                send(p.sender, ack.setAckForMessageId(p.ackForMessageId));
+            }
+        }
+    }
+
+    /** Sends a message to the specified client. */
+    void send(Client client, Message message) {
+        client.send(message);
+    }
+
+    /** Returns whether or not the specified client can receive batches of acks. */
+    boolean supportsBatches(Client client) {
+        return client.supports(MmsFeatures.BROADCAST_ACK_BATCH);
+    }
+
+    /** The acks of a single broadcast that have not been sent yet. */
+    static final class Pending {
+
+        /** The id of the broadcast. */
+        final Binary ackForMessageId;
+
+        /** The acks, only accessed while holding the lock of the pending map entry. */
+        final List<BroadcastAck> acks = new ArrayList<>();
+
+        /** The sender of the broadcast. */
+        final Client sender;
+
+        Pending(Client sender, Binary ackForMessageId) {
+            this.sender = requireNonNull(sender);
+            this.ackForMessageId = requireNonNull(ackForMessageId);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.broadcast;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.maritimecloud.internal.util.concurrent.TokenBuckets;
+import net.maritimecloud.mms.server.MmsServerConfiguration;
+
+import org.cakeframework.container.concurrent.ScheduleAtFixedRate;
+
+/**
+ * Admission control for broadcasts. Each sender, or optionally each sender and type of broadcast, has a token bucket
+ * that limits the number of broadcasts it may send per second. In addition a single global bucket limits the total
+ * number of recipients that broadcasts are fanned out to per second, so a few large-area broadcasts cannot saturate
+ * the server either.
+ * <p>
+ * The buckets are implemented by {@link TokenBuckets}, so no locks are taken when admitting a broadcast.
+ *
+ * @author Kasper Nielsen
+ */
+public class BroadcastRateLimiter {
+
+    /** The error code sent to a client whose broadcast has been rejected. */
+    public static final int RATE_LIMITED = 429;
+
+    /** The buckets of each sender, or each sender and type. Buckets that are full are removed regularly. */
+    final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    /** The bucket of the fan-out budget. */
+    final AtomicLong fanout = new AtomicLong(System.nanoTime());
+
+    /** The number of nanoseconds that a single recipient uses of the fan-out budget, or 0 if unlimited. */
+    final long fanoutInterval;
+
+    /** The number of nanoseconds the fan-out budget may be ahead of time. */
+    final long fanoutTolerance;
+
+    /** Whether or not each type of broadcast has its own bucket. */
+    final boolean perType;
+
+    /** The number of nanoseconds between broadcasts from a single sender, or 0 if unlimited. */
+    final long senderInterval;
+
+    /** The number of nanoseconds a sender may be ahead of time. */
+    final long senderTolerance;
+
+    public BroadcastRateLimiter(MmsServerConfiguration configuration) {
+        Double rate = configuration.getBroadcastRate();
+        Integer burst = configuration.getBroadcastBurst();
+        Integer budget = configuration.getBroadcastFanoutBudget();
+        if (rate != null && rate > 0) {
+            senderInterval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+            senderTolerance = senderInterval * (Math.max(1, burst == null ? 1 : burst) - 1);
+        } else {
+            senderInterval = senderTolerance = 0;
+        }
+        if (budget != null && budget > 0) {
+            fanoutInterval = Math.max(1, TimeUnit.SECONDS.toNanos(1) / budget);
+            fanoutTolerance = TimeUnit.SECONDS.toNanos(1); // allow one second worth of recipients at once
+        } else {
+            fanoutInterval = fanoutTolerance = 0;
+        }
+        perType = Boolean.TRUE.equals(configuration.isBroadcastRatePerType());
+    }
+
+    /**
+     * Tries to admit a broadcast from the specified sender to the specified number of recipients. Both the rate of the
+     * sender and the fan-out budget are checked before either is charged, so a broadcast that is rejected because of
+     * one of them does not use any of the other.
+     *
+     * @param senderId
+     *            the id of the sender
+     * @param broadcastType
+     *            the type of broadcast
+     * @param recipients
+     *            the number of recipients of the broadcast
+     * @param now
+     *            the current value of {@link System#nanoTime()}
+     * @return 0 if the broadcast was admitted, otherwise the number of nanoseconds until it would be admitted
+     */
+    public long acquire(String senderId, String broadcastType, int recipients, long now) {
+        AtomicLong bucket = senderInterval == 0 ? null : bucketOf(senderId, broadcastType, now);
+        long fanoutCost = fanoutInterval * recipients;
+        long wait = Math.max(bucket == null ? 0 : TokenBuckets.wait(bucket, now, senderTolerance),
+                fanoutCost == 0 ? 0 : TokenBuckets.wait(fanout, now, fanoutTolerance));
+        if (wait > 0) {
+            return wait;
+        }
+        if (bucket != null && (wait = TokenBuckets.acquire(bucket, now, senderInterval, senderTolerance)) > 0) {
+            return wait; // another broadcast from the sender was admitted concurrently
+        }
+        if (fanoutCost > 0 && (wait = TokenBuckets.acquire(fanout, now, fanoutCost, fanoutTolerance)) > 0) {
+            if (bucket != null) {
+                bucket.addAndGet(-senderInterval); // give the token back to the sender
+            }
+            return wait;
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether or not the specified sender may send a broadcast now, without using any of its rate.
+     *
+     * @param senderId
+     *            the id of the sender
+     * @param broadcastType
+     *            the type of broadcast
+     * @param now
+     *            the current value of {@link System#nanoTime()}
+     * @return 0 if the sender may send a broadcast, otherwise the number of nanoseconds until it may
+     */
+    public long check(String senderId, String broadcastType, long now) {
+        if (senderInterval == 0) {
+            return 0;
+        }
+        AtomicLong bucket = buckets.get(perType ? senderId + '\0' + broadcastType : senderId);
+        return bucket == null ? 0 : TokenBuckets.wait(bucket, now, senderTolerance);
+    }
+
+    private AtomicLong bucketOf(String senderId, String broadcastType, long now) {
+        String key = perType ? senderId + '\0' + broadcastType : senderId;
+        AtomicLong bucket = buckets.get(key); // avoid locking the bin if the bucket exists
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        return bucket;
+    }
+
+    /** Removes the buckets of senders that have not used any of their rate recently. */
+    @ScheduleAtFixedRate(value = 1, unit = TimeUnit.MINUTES)
+    public void purgeIdleBuckets() {
+        long now = System.nanoTime();
+        // A full bucket is equivalent to no bucket. If a sender is admitted while its bucket is removed, the sender
+        // gets at most one extra burst
+        buckets.values().removeIf(b -> b.get() - now <= 0);
+    }
+}
@@ -0,0 +1,43 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.broadcast;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thrown when a broadcast is not admitted by the {@link BroadcastRateLimiter}.
+ *
+ * @author Kasper Nielsen
+ */
+public class BroadcastRejectedException extends RuntimeException {
+
+    /** serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The number of nanoseconds until the broadcast would be admitted. */
+    private final long retryAfterNanos;
+
+    public BroadcastRejectedException(String message, long retryAfterNanos) {
+        super(message);
+        this.retryAfterNanos = retryAfterNanos;
+    }
+
+    /**
+     * @return the number of milliseconds until the broadcast would be admitted, rounded up
+     */
+    public long getRetryAfterMillis() {
+        return (retryAfterNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -16,10 +16,6 @@ package net.maritimecloud.mms.server.broadcast;
 
 import static java.util.Objects.requireNonNull;
 
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
-
 import net.maritimecloud.internal.util.concurrent.CustomConcurrentHashMap;
 import net.maritimecloud.internal.util.concurrent.CustomConcurrentHashMap.Strength;
 import net.maritimecloud.mms.server.connection.client.Session;
@@ -27,31 +23,42 @@ import net.maritimecloud.util.geometry.Area;
 import net.maritimecloud.util.geometry.Position;
 
 /**
+ * The sessions that have subscribed to a single type of broadcasts, and the area each of them is interested in.
+ * Sessions are weakly referenced, so subscriptions of sessions that are no longer in use are removed automatically.
  *
  * @author Kasper Nielsen
  */
 class BroadcastSubscriptionSet {
-    final CustomConcurrentHashMap<Session, CopyOnWriteArrayList<Area>> c = new CustomConcurrentHashMap<>(Strength.weak,
-            Strength.strong);
-
-    Set<Session> find(Position position) {
-        for (Entry<Session, CopyOnWriteArrayList<Area>> e : c.entrySet()) {
-            Session c = e.getKey();
-            if (c != null) {
-                // for (Area area : e.getValue()) {}
-            }
-        }
-        return null;
+
+    /** The area of interest of each session. */
+    final CustomConcurrentHashMap<Session, Area> c = new CustomConcurrentHashMap<>(Strength.weak, Strength.strong);
+
+    /** The type of broadcasts. */
+    final String broadcastType;
+
+    BroadcastSubscriptionSet(String broadcastType) {
+        this.broadcastType = requireNonNull(broadcastType);
     }
 
-    void add(Session connection, Area a) {
-        requireNonNull(a);
-        CopyOnWriteArrayList<Area> l = c.get(connection);
-        if (l == null) {
-            c.putIfAbsent(connection, new CopyOnWriteArrayList<Area>());
-            l = c.get(connection);
-        }
-        l.add(a);
+    /**
+     * Returns whether or not the specified session is interested in broadcasts sent from the specified position.
+     *
+     * @param session
+     *            the session
+     * @param senderPosition
+     *            the position of the sender, or null if the sender did not include a position
+     * @return whether or not the session is interested
+     */
+    boolean isSubscribed(Session session, Position senderPosition) {
+        Area a = c.get(session);
+        return a != null && (senderPosition == null || a.contains(senderPosition));
     }
 
+    void add(Session session, Area a) {
+        c.put(session, requireNonNull(a));
+    }
+
+    void remove(Session session) {
+        c.remove(session);
+    }
 }
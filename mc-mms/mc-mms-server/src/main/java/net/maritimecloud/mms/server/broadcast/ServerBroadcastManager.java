@@ -16,70 +16,215 @@ package net.maritimecloud.mms.server.broadcast;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import net.maritimecloud.internal.mms.messages.PositionReport;
 import net.maritimecloud.internal.net.messages.Broadcast;
 import net.maritimecloud.internal.net.messages.BroadcastAck;
+import net.maritimecloud.internal.util.concurrent.CustomConcurrentHashMap;
+import net.maritimecloud.internal.util.concurrent.CustomConcurrentHashMap.Strength;
 import net.maritimecloud.mms.server.MmsServerConnectionBus;
+import net.maritimecloud.mms.server.broadcast.ActiveBroadcastStore.ActiveBroadcast;
 import net.maritimecloud.mms.server.connection.client.Client;
 import net.maritimecloud.mms.server.connection.client.ClientManager;
+import net.maritimecloud.mms.server.connection.client.Session;
+import net.maritimecloud.mms.server.metrics.ServerMetrics;
 import net.maritimecloud.util.geometry.Area;
 import net.maritimecloud.util.geometry.PositionTime;
+import net.maritimecloud.util.geometry.Rectangle;
 
+import org.cakeframework.container.concurrent.ScheduleAtFixedRate;
 import org.cakeframework.container.concurrent.ThreadManager;
 
 /**
  * The server side broadcast manager.
+ * <p>
+ * Clients can register the types of broadcasts they are interested in via {@code Services.subscribe}. Once a session
+ * has registered its subscriptions, it only receives broadcasts of the subscribed types sent from within the
+ * subscribed area. Sessions that have never registered any subscriptions receive all broadcasts, so older clients
+ * keep working.
+ * <p>
+ * Broadcasts with a time to live are kept in an {@link ActiveBroadcastStore} until they expire, and are delivered to
+ * clients that move into their area in the meantime. Each client receives such a broadcast at most once.
+ * <p>
+ * Broadcasts that would exceed the fan-out budget of the {@link BroadcastRateLimiter} are rejected before they are
+ * sent to anyone.
  *
  * @author Kasper Nielsen
  */
 public class ServerBroadcastManager {
 
+    /** The maximum time to live of a broadcast. */
+    static final long MAX_TIME_TO_LIVE_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    /** Batches acks from receivers before they are sent to the sender. */
+    final BroadcastAckAggregator ackAggregator;
+
+    /** Broadcasts that are still delivered to clients entering their area. */
+    final ActiveBroadcastStore activeBroadcasts = new ActiveBroadcastStore();
+
+    /** The subscriptions for each type of broadcast. */
     final ConcurrentHashMap<String, BroadcastSubscriptionSet> listeners = new ConcurrentHashMap<>();
 
+    /** The subscribed types of every session that has registered subscriptions. */
+    final CustomConcurrentHashMap<Session, Set<String>> subscribedTypes = new CustomConcurrentHashMap<>(
+            Strength.weak, Strength.strong);
+
+    private final ServerMetrics metrics;
+
+    /** Limits the total number of recipients of broadcasts. */
+    private final BroadcastRateLimiter rateLimiter;
+
     private final ClientManager tm;
 
     private final ThreadManager threadManager;
 
-    public ServerBroadcastManager(ThreadManager threadManager, ClientManager tm, MmsServerConnectionBus bus) {
+    public ServerBroadcastManager(ThreadManager threadManager, ClientManager tm, MmsServerConnectionBus bus,
+            ServerMetrics metrics, BroadcastRateLimiter rateLimiter) {
         this.tm = requireNonNull(tm);
+        this.rateLimiter = requireNonNull(rateLimiter);
         this.threadManager = threadManager;
+        this.metrics = requireNonNull(metrics);
+        this.ackAggregator = new BroadcastAckAggregator(threadManager.getScheduledExecutor("mms.broadcast.ack"));
         bus.setBroadcastManager(this);
     }
 
+    /**
+     * Sends the specified broadcast to all clients within its area.
+     *
+     * @param sender
+     *            the client that sent the broadcast
+     * @param broadcast
+     *            the broadcast
+     * @return the reply to the sender
+     * @throws BroadcastRejectedException
+     *             if sending the broadcast would exceed the broadcast rate of the sender or the fan-out budget of the
+     *             server
+     */
     public PositionReport broadcast(Client sender, Broadcast broadcast) {
         // final PositionTime sourcePositionTime = send.getPositionTime();
-
+        Executor executor = threadManager.getExecutor("mms.broadcast");
+        // Find the receivers before sending anything, so the fan-out budget can be checked up front
+        ConcurrentLinkedQueue<Client> receivers = new ConcurrentLinkedQueue<>();
         tm.forEachTarget(t -> {
             // We could do some checks with regards to not send to terminated
-            if (t != sender/* && t.isConnected() */) { // do not broadcast to self
-                threadManager.getExecutor("mms.broadcast").execute(() -> broadcast(sender, broadcast, t));
+            // Do not broadcast to self, or to clients that have not subscribed to the type of broadcast
+            if (t != sender/* && t.isConnected() */&& isSubscribed(broadcast, t) && isWithinArea(broadcast, t)) {
+                receivers.add(t);
             }
         });
+        int count = receivers.size();
+        long now = System.nanoTime();
+        long wait = rateLimiter.acquire(sender.getId(), broadcast.getBroadcastType(), count, now);
+        if (wait > 0) {
+            throw new BroadcastRejectedException(rateLimiter.check(sender.getId(), broadcast.getBroadcastType(),
+                    now) > 0 ? "The broadcast rate of the client has been exceeded"
+                    : "The broadcast fan-out budget of the server has been exceeded", wait);
+        }
+
+        // Clients that enter the area from now on are handled by onPositionUpdate. Clients that entered while
+        // looking for receivers receive the broadcast with their next position report
+        ActiveBroadcast active = null;
+        if (broadcast.hasTimeToLive() && broadcast.getTimeToLive() > 0 && broadcast.hasArea()
+                && broadcast.hasMessageId()) {
+            long ttl = Math.min(MAX_TIME_TO_LIVE_SECONDS, broadcast.getTimeToLive());
+            long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl);
+            active = activeBroadcasts.add(sender, broadcast, expiresAt);
+        }
+        for (Client t : receivers) {
+            if (active == null || active.markDelivered(t)) {
+                executor.execute(() -> broadcastSend(sender, broadcast, t));
+            } else {
+                count--;
+            }
+        }
+        metrics.recordBroadcastFanout(count);
         return new PositionReport();
     }
 
-    void broadcast(Client source, Broadcast broadcast, Client destination) {
-        PositionTime latest = destination.getLatestPositionAndTime();
-        if (latest != null) {
-
-            boolean doSend = false;
-            Area area = broadcast.getArea();
-            // if (area instanceof RelativeCircularArea) {
-            // double distance = sourcePositionTime.geodesicDistanceTo(latest);
-            // RelativeCircularArea c = (RelativeCircularArea) area;
-            // doSend = distance < c.getRadius();
-            // } else {
-            doSend = area.contains(latest);
-            // }
-            if (doSend) {
-                broadcastSend(source, broadcast, destination);
+    /**
+     * Invoked whenever a client has reported a new position. Delivers any active broadcasts whose area the client
+     * has entered and that the client has not already received.
+     *
+     * @param client
+     *            the client that reported a position
+     * @param position
+     *            the new position of the client
+     */
+    public void onPositionUpdate(Client client, PositionTime position) {
+        long now = System.currentTimeMillis();
+        activeBroadcasts.forEachCandidate(position, ab -> {
+            Broadcast b = ab.broadcast;
+            if (ab.expiresAt > now && ab.sender != client && ab.area.contains(position) && isSubscribed(b, client)
+                    && ab.markDelivered(client)) {
+                threadManager.getExecutor("mms.broadcast").execute(() -> broadcastSend(ab.sender, b, client));
             }
+        });
+    }
+
+    /** Removes broadcasts whose time to live has expired. */
+    @ScheduleAtFixedRate(value = 1, unit = TimeUnit.SECONDS)
+    public void purgeExpiredBroadcasts() {
+        activeBroadcasts.purge(System.currentTimeMillis());
+    }
+
+    /**
+     * Replaces the subscriptions of the specified session.
+     *
+     * @param session
+     *            the session of the client that subscribes
+     * @param types
+     *            all the types of broadcasts the client is interested in
+     * @param area
+     *            the area the client is interested in, or null if the client is interested in broadcasts from anywhere
+     */
+    public synchronized void subscribe(Session session, List<String> types, Area area) {
+        requireNonNull(session);
+        Set<String> newTypes = new HashSet<>(types);
+        Set<String> oldTypes = subscribedTypes.put(session, newTypes);
+        if (oldTypes != null) {
+            for (String type : oldTypes) {
+                BroadcastSubscriptionSet set = listeners.get(type);
+                if (set != null && !newTypes.contains(type)) {
+                    set.remove(session);
+                }
+            }
+        }
+        Area a = area == null ? Rectangle.ALL : area;
+        for (String type : newTypes) {
+            listeners.computeIfAbsent(type, BroadcastSubscriptionSet::new).add(session, a);
         }
     }
 
+    /** Returns whether or not the current session of the destination has subscribed to the broadcast. */
+    boolean isSubscribed(Broadcast broadcast, Client destination) {
+        Session session = destination.getSession();
+        if (session == null || !subscribedTypes.containsKey(session)) {
+            return true; // never registered any subscriptions, so interested in everything
+        }
+        BroadcastSubscriptionSet set = listeners.get(broadcast.getBroadcastType());
+        return set != null && set.isSubscribed(session, broadcast.getSenderPosition());
+    }
+
+    /** Returns whether or not the latest position of the destination is within the area of the broadcast. */
+    static boolean isWithinArea(Broadcast broadcast, Client destination) {
+        PositionTime latest = destination.getLatestPositionAndTime();
+        // if (area instanceof RelativeCircularArea) {
+        // double distance = sourcePositionTime.geodesicDistanceTo(latest);
+        // RelativeCircularArea c = (RelativeCircularArea) area;
+        // doSend = distance < c.getRadius();
+        // } else {
+        Area area = broadcast.getArea();
+        return latest != null && area.contains(latest);
+    }
+
     void broadcastSend(Client source, Broadcast broadcast, Client destination) {
         Broadcast bd = new Broadcast();
         bd.setMessageId(broadcast.getMessageId());
@@ -89,6 +234,7 @@ public class ServerBroadcastManager {
         bd.setSenderPosition(broadcast.getSenderPosition());
 
         bd.setPayload(broadcast.getPayload());
+        bd.setPayloadFormat(broadcast.getPayloadFormat());
         bd.setSignature(broadcast.getSignature());
 
         CompletableFuture<Void> acked = destination.send(bd).protocolAcked();
@@ -96,15 +242,14 @@ public class ServerBroadcastManager {
         if (broadcast.hasAckBroadcast()) {
             acked.thenAccept(e -> {
                 BroadcastAck ba = new BroadcastAck();
-                ba.setAckForMessageId(bd.getMessageId());
-                // Ignore original sender id
+                // Ignore original sender id, the broadcast id is set by the aggregator
                 ba.setReceiverId(destination.getId());
 
                 PositionTime pt = destination.getLatestPositionAndTime();
                 ba.setReceiverTimestamp(pt.timestamp());
                 ba.setReceiverPosition(pt);
 
-                source.send(ba);
+                ackAggregator.add(source, bd.getMessageId(), ba);
             });
         }
     }
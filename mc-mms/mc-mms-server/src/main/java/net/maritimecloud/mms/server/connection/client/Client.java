@@ -16,11 +16,15 @@ package net.maritimecloud.mms.server.connection.client;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import net.maritimecloud.internal.mms.messages.Connected;
 import net.maritimecloud.internal.mms.messages.PositionReport;
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority;
+import net.maritimecloud.internal.util.DeadReckoning;
 import net.maritimecloud.message.Message;
 import net.maritimecloud.mms.server.connection.transport.ServerTransport;
 import net.maritimecloud.mms.server.endpoints.ServerClientEndpointManager;
@@ -41,11 +45,17 @@ public class Client {
 
     final ServerClientEndpointManager endpointManager = new ServerClientEndpointManager(this);
 
+    /** The optional protocol features listed in the latest Hello message of the client. */
+    volatile Set<String> features = Collections.emptySet();
+
     /** The unique if of the client. */
     private final String id;
 
     volatile PositionTime latestPositionAndTime;
 
+    /** The latest position report, used for extrapolating the position if it has a course and a speed. */
+    volatile PositionReport latestPositionReport;
+
     /** A read write lock for the client. */
     final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -84,6 +94,10 @@ public class Client {
 
 
     SessionMessageFuture sendMessage(Session requireSession, Message m) {
+        return sendMessage(requireSession, m, MmsMessagePriority.of(m));
+    }
+
+    SessionMessageFuture sendMessage(Session requireSession, Message m, MmsMessagePriority priority) {
         lock.readLock().lock();
         try {
             ClientInternalState state = this.state;
@@ -94,7 +108,7 @@ public class Client {
             if (requireSession != null && requireSession != session) {
                 return SessionMessageFuture.wrongSession(m);
             }
-            return session.enqueueMessageWithReadLock(m);
+            return session.enqueueMessageWithReadLock(m, priority);
         } finally {
             lock.readLock().unlock();
         }
@@ -124,6 +138,16 @@ public class Client {
         return id;
     }
 
+    /**
+     * Returns the number of messages that have not yet been acked by the client in the current session.
+     *
+     * @return the number of messages that have not yet been acked, or 0 if the client does not have a session
+     */
+    public int getQueueDepth() {
+        Session session = state.session;
+        return session == null ? 0 : session.getQueueDepth();
+    }
+
     /**
      * @return the latest
      */
@@ -131,6 +155,34 @@ public class Client {
         return latestPositionAndTime;
     }
 
+    /**
+     * Returns the estimated position of the client at the specified time. If the latest position report of the client
+     * included a course and a speed, the position is extrapolated from the report. Otherwise the latest position is
+     * returned.
+     *
+     * @param time
+     *            the time to estimate the position at (epoch millis)
+     * @return the estimated position of the client, or null if the position of the client is unknown
+     */
+    public PositionTime getEstimatedPositionAndTime(long time) {
+        PositionTime pt = latestPositionAndTime;
+        PositionReport pr = latestPositionReport;
+        // The report is only used if it is the source of the latest position, it could also have come from a hello
+        if (pt != null && pr != null && pr.getPositionTime() == pt) {
+            return DeadReckoning.extrapolate(pt, pr.getCourse(), pr.getSpeed(), time);
+        }
+        return pt;
+    }
+
+    /**
+     * Returns the current session of the client.
+     *
+     * @return the current session of the client, or null if the client does not have a session
+     */
+    public Session getSession() {
+        return state.session;
+    }
+
     /**
      * @return the latestReceivedMessage
      */
@@ -182,20 +234,33 @@ public class Client {
             ClientInternalState state = this.state;
             if (state.transport == t && state.state == State.CONNECTED) {
                 if (message.getM() instanceof PositionReport) {
-                    PositionTime pt = ((PositionReport) message.getM()).getPositionTime();
+                    PositionReport pr = (PositionReport) message.getM();
+                    PositionTime pt = pr.getPositionTime();
                     // Should we close the client if going back in time??? Think it can happen
                     // not for a single session, but inbetween sessions.
                     if (pt.getTime() > latestPositionAndTime.getTime()) {
+                        latestPositionReport = pr;
                         latestPositionAndTime = pt;
                     }
                 }
-                state.session.onMessageWithReadLock(message);
+                state.session.onMessageWithReadLock(message, t.getTimeOfLatestIncomingMessage());
             }
         } finally {
             lock.readLock().unlock();
         }
     }
 
+    /**
+     * Returns whether or not the client supports the specified optional protocol feature.
+     *
+     * @param feature
+     *            the feature, see {@link net.maritimecloud.internal.mms.messages.spi.MmsFeatures}
+     * @return whether or not the client supports the feature
+     */
+    public boolean supports(String feature) {
+        return features.contains(feature);
+    }
+
     public SessionMessageFuture send(Message message) {
         return clientManager.sendMessage(id, message);
     }
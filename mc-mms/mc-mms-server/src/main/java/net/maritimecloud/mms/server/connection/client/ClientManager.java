@@ -25,6 +25,7 @@ import java.util.stream.Stream;
 import net.maritimecloud.core.id.MaritimeId;
 import net.maritimecloud.internal.mms.messages.Connected;
 import net.maritimecloud.internal.mms.messages.Hello;
+import net.maritimecloud.internal.mms.messages.spi.MmsFeatures;
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
 import net.maritimecloud.message.Message;
 import net.maritimecloud.mms.server.MmsServer;
@@ -95,6 +96,7 @@ public class ClientManager implements Iterable<Client> {
             if (c == null) { // no existing client
                 c = new Client(this, transport, id);
                 c.latestPositionAndTime = hello.getPositionTime();
+                c.features = MmsFeatures.parse(hello.getProperties());
                 // we need to lock it before we insert it into the hash map so other threads won't attempt to send any
                 // messages before we have sent a Connected message.
                 // We can probably remove it at some point, just need to figure out how?
@@ -113,6 +115,7 @@ public class ClientManager implements Iterable<Client> {
                 c.lock.writeLock().lock();
                 try {
                     c.latestPositionAndTime = hello.getPositionTime(); // lets start by updating the latest timestamp
+                    c.features = MmsFeatures.parse(hello.getProperties()); // might reconnect with another version
 
                     ClientInternalState state = c.state;
                     if (state.state == State.CONNECTING) {
@@ -19,6 +19,7 @@ import static java.util.Objects.requireNonNull;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import net.maritimecloud.core.id.ServerId;
 import net.maritimecloud.internal.mms.messages.Close;
@@ -39,7 +40,11 @@ import net.maritimecloud.net.mms.MmsConnectionClosingCode;
  */
 public class DefaultTransportListener implements ServerTransportListener {
 
-    static final String ATTACHMENT_CLIENT = "client";
+    /** The name of the transport attachment holding the client once it has been resolved from a hello message. */
+    public static final String ATTACHMENT_CLIENT = "client";
+
+    /** Limits the rate of new connections. */
+    private final HandshakeAdmissionController admissionController;
 
     /** The client manager responsible for creating a new client when a hello message is received. */
     private final ClientManager clientManager;
@@ -56,8 +61,10 @@ public class DefaultTransportListener implements ServerTransportListener {
      */
     final Set<ServerTransport> missingHellos = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
-    public DefaultTransportListener(ClientManager clientManager, ServerId id, AccessLogManager accessLogManager) {
+    public DefaultTransportListener(ClientManager clientManager, ServerId id, AccessLogManager accessLogManager,
+            HandshakeAdmissionController admissionController) {
         this.clientManager = requireNonNull(clientManager);
+        this.admissionController = requireNonNull(admissionController);
         this.serverId = id.toString();
         this.accessLogManager = requireNonNull(accessLogManager);
     }
@@ -149,9 +156,18 @@ public class DefaultTransportListener implements ServerTransportListener {
     @Override
     public void onOpen(ServerTransport t) {
         // send a Welcome message to the client as the first thing
-        MmsMessage welcome = new MmsMessage(new Welcome().addProtocolVersion(1).setServerId(serverId)
-                .putProperties("implementation", "mmsServer/0.2"));
-        t.sendMessage(welcome);
+        Welcome welcome = new Welcome().addProtocolVersion(1).setServerId(serverId)
+                .putProperties("implementation", "mmsServer/0.2");
+
+        // If we are too busy, tell the client when to try again, before it sends a hello that we must process
+        long retryAfter = admissionController.admit(System.nanoTime());
+        if (retryAfter > 0) {
+            int millis = (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(retryAfter));
+            t.sendMessage(new MmsMessage(welcome.setRetryAfter(millis)));
+            t.close(MmsConnectionClosingCode.SERVER_BUSY.withMessage("Server busy, retry after " + millis + " ms"));
+            return;
+        }
+        t.sendMessage(new MmsMessage(welcome));
 
         missingHellos.add(t); // add this transport to set of transports waiting for a Hello
     }
@@ -0,0 +1,92 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.connection.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.maritimecloud.internal.util.concurrent.TokenBuckets;
+import net.maritimecloud.mms.server.MmsServerConfiguration;
+
+/**
+ * Admission control for new connections. When the server is restarted every client reconnects at once, and each
+ * handshake is expensive, as it involves authentication and resuming the session of the client. This controller
+ * limits the number of handshakes per second with a token bucket, see {@link TokenBuckets}.
+ * <p>
+ * A client that is not admitted is told when to try again. Each rejected client is given its own retry slot, one
+ * handshake interval after the previous one, so the rejected clients come back spread out at the rate the server can
+ * admit them, instead of all at the same time.
+ *
+ * @author Kasper Nielsen
+ */
+public class HandshakeAdmissionController {
+
+    /** The maximum number of nanoseconds a client is asked to wait. */
+    static final long MAX_RETRY_AFTER = TimeUnit.MINUTES.toNanos(5);
+
+    /** The theoretical arrival time of the next handshake. */
+    final AtomicLong bucket = new AtomicLong(System.nanoTime());
+
+    /** The number of nanoseconds between handshakes, or 0 if unlimited. */
+    final long interval;
+
+    /** The next retry slot that can be handed out to a rejected client. */
+    final AtomicLong retrySlot = new AtomicLong(System.nanoTime());
+
+    /** The number of nanoseconds the bucket may be ahead of time. */
+    final long tolerance;
+
+    public HandshakeAdmissionController(MmsServerConfiguration configuration) {
+        Double rate = configuration.getHandshakeRate();
+        Integer burst = configuration.getHandshakeBurst();
+        if (rate != null && rate > 0) {
+            interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+            tolerance = interval * (Math.max(1, burst == null ? 1 : burst) - 1);
+        } else {
+            interval = tolerance = 0;
+        }
+    }
+
+    /**
+     * Tries to admit a new connection.
+     *
+     * @param now
+     *            the current value of {@link System#nanoTime()}
+     * @return 0 if the connection was admitted, otherwise the number of nanoseconds the client should wait before
+     *         connecting again
+     */
+    public long admit(long now) {
+        if (interval == 0) {
+            return 0;
+        }
+        long wait = TokenBuckets.acquire(bucket, now, interval, tolerance);
+        return wait == 0 ? 0 : reserveRetrySlot(now, wait);
+    }
+
+    private long reserveRetrySlot(long now, long wait) {
+        for (;;) {
+            long slot = retrySlot.get();
+            long retry = slot - (now + wait) > 0 ? slot : now + wait;
+            // Never hand out slots further ahead than clients are asked to wait, otherwise the slots would keep
+            // growing while the server is overloaded, and every later client would be told to wait the maximum
+            if (retry - now > MAX_RETRY_AFTER) {
+                retry = now + MAX_RETRY_AFTER;
+            }
+            if (retrySlot.compareAndSet(slot, retry + interval)) {
+                return retry - now;
+            }
+        }
+    }
+}
@@ -17,20 +17,29 @@ package net.maritimecloud.mms.server.connection.client;
 import static java.util.Objects.requireNonNull;
 
 import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessageQueue;
 import net.maritimecloud.message.Message;
 import net.maritimecloud.mms.server.connection.transport.ServerTransport;
+import net.maritimecloud.mms.server.metrics.ServerMetrics;
 import net.maritimecloud.util.Binary;
 
 import org.cakeframework.container.concurrent.ThreadManager;
 
 /**
+ * A session with a client, which may span multiple connections.
+ * <p>
+ * Messages that are sent are first queued by priority, see {@link MmsMessagePriority}. A message is not assigned a
+ * message id until it is taken from the queue to be written. Because the remote side acknowledges all messages up to
+ * a message id at once, message ids must be written in increasing order even if messages are not written in the order
+ * they were sent.
  *
  * @author Kasper Nielsen
  */
@@ -44,13 +53,19 @@ public class Session {
 
     private long latestMessageIdAckedByRemote /* = 0 */;
 
+    /** The server metrics. */
+    private final ServerMetrics metrics;
+
     long latestMessageIdReceivedByRemote;
 
     private long nextMessageIdToSend = 1;
 
-    /** A queue of messages that have not yet been acked. */
+    /** A queue of messages that have been written but not yet acked, in order of message id. */
     private final Queue<SessionMessageFuture> unAckedMessages = new LinkedBlockingQueue<>();
 
+    /** Messages that have not yet been assigned a message id. Guarded by unAckedMessages. */
+    private final MmsMessageQueue<SessionMessageFuture> pendingMessages = new MmsMessageQueue<>();
+
     /**
      * A executor that is used to asynchronous write messages. The reason is websocket.asyncwrite will sometime call
      * into @onClose on the transport. onClose will try to acquire a write lock, to properly lock it. However, a receive
@@ -69,40 +84,62 @@ public class Session {
     private volatile long timeOfLastReceivedMessage = System.nanoTime();
 
     /** The transport to send messages on. Might be null, for example, if the remote client is disconnected. */
-    private Writer writer;
+    private Writer writer; // guarded by unAckedMessages
 
     Session(Client client) {
         this.client = requireNonNull(client);
         this.sessionMessageListener = requireNonNull(client.clientManager.mmsServer.getService(Session.Listener.class));
         ThreadManager tm = client.clientManager.mmsServer.getService(ThreadManager.class);
         this.sendExecutor = tm.getExecutor("mms");
+        this.metrics = requireNonNull(client.clientManager.mmsServer.getService(ServerMetrics.class));
     }
 
     /** Invoked whenever the session is killed permanently. Makes sure all outstanding writes are marked as failed. */
     void disconnectedWithWriteLock(boolean destroy) {
-        this.writer = null;
+        synchronized (unAckedMessages) {
+            this.writer = null;
+        }
         // loeb igennem alle, marker dem som doede
         // og toem alle koere
     }
 
     // called while readlocked on the client.
     // might be called concurrently, so we lock it for now, but might find another solution in the future
-    SessionMessageFuture enqueueMessageWithReadLock(Message msg) {
+    SessionMessageFuture enqueueMessageWithReadLock(Message msg, MmsMessagePriority priority) {
         // We need to have another thread write the message. The problem is that even though
-        MmsMessage m = new MmsMessage(msg);
+        SessionMessageFuture smf = new SessionMessageFuture(new MmsMessage(msg), requireNonNull(priority));
         synchronized (unAckedMessages) {
-            SessionMessageFuture smf = new SessionMessageFuture(m, nextMessageIdToSend++);
-            m.setMessageId(smf.messageId);
-            m.setLatestReceivedId(latestMessageIdReceivedByRemote);
-            unAckedMessages.add(smf);
+            pendingMessages.add(smf, priority);
 
-            // only write if connected, otherwise leave in notAcked queue
+            // only write if connected, otherwise leave in the pending queue
             if (writer != null) {
-                writer.send(smf, sendExecutor);
+                sendExecutor.execute(writer);
             }
             return smf;
         }
+    }
 
+    /**
+     * Takes the next message to write from the pending queue, and assigns it a message id.
+     *
+     * @param w
+     *            the writer that wants to write the message
+     * @return the next message to write, or null if there are no pending messages or the writer is no longer in use
+     */
+    SessionMessageFuture nextMessageToWrite(Writer w) {
+        synchronized (unAckedMessages) {
+            if (w != writer) {
+                return null; // the client has disconnected or reconnected using another transport
+            }
+            SessionMessageFuture smf = pendingMessages.poll();
+            if (smf != null) {
+                smf.messageId = nextMessageIdToSend++;
+                smf.message.setMessageId(smf.messageId);
+                smf.message.setLatestReceivedId(latestMessageIdReceivedByRemote);
+                unAckedMessages.add(smf);
+            }
+            return smf;
+        }
     }
 
     /**
@@ -116,6 +153,18 @@ public class Session {
         return contextMap.get(key);
     }
 
+    /**
+     * Returns the number of messages that have been sent (or are waiting to be sent) but that have not yet been acked
+     * by the remote client.
+     *
+     * @return the number of unacked messages
+     */
+    public int getQueueDepth() {
+        synchronized (unAckedMessages) {
+            return unAckedMessages.size() + pendingMessages.size();
+        }
+    }
+
     /**
      * Returns the session id of this session.
      *
@@ -140,12 +189,18 @@ public class Session {
     void onConnectWithWriteLock(ServerTransport transport, long msgId) {
         // Start by removing messages that already been acked according to msgId
         removeAckedExclusively(msgId);
-        writer = new Writer(transport);
+        synchronized (unAckedMessages) {
+            writer = new Writer(this, transport, metrics);
 
-        // Technically it is okay to send messages directly but we should probably send them async as well
-        for (SessionMessageFuture f : unAckedMessages) {
-            transport.sendMessage(f.message);
-            nextMessageIdToSend = f.messageId + 1;
+            // Technically it is okay to send messages directly but we should probably send them async as well
+            // Messages that have already been assigned an id must be resent before any pending messages
+            for (SessionMessageFuture f : unAckedMessages) {
+                transport.sendMessage(f.message);
+                nextMessageIdToSend = f.messageId + 1;
+            }
+            if (!pendingMessages.isEmpty()) {
+                sendExecutor.execute(writer);
+            }
         }
     }
 
@@ -154,8 +209,10 @@ public class Session {
      *
      * @param message
      *            the message that was received
+     * @param receivedNanos
+     *            the time (System.nanoTime) the message was received by the transport
      */
-    void onMessageWithReadLock(MmsMessage message) {
+    void onMessageWithReadLock(MmsMessage message, long receivedNanos) {
         timeOfLastReceivedMessage = System.nanoTime();
         latestMessageIdReceivedByRemote = message.getMessageId();
         latestMessageIdAckedByRemote = message.getLatestReceivedId();
@@ -163,6 +220,8 @@ public class Session {
         // Mainly because the listener will most likely send a reply message
         // And it will strange that latestReceivedMessageId has not been updated
         // to include the latest received message (the initiating message of the reply message)
+        metrics.forMessage(message.getM().getClass()).receiveToDispatch
+                .update(System.nanoTime() - receivedNanos, TimeUnit.NANOSECONDS);
         sessionMessageListener.onMessage(this, message.getM());
 
         removeAckedExclusively(latestMessageIdAckedByRemote);
@@ -184,6 +243,19 @@ public class Session {
         return client.sendMessage(this, message);
     }
 
+    /**
+     * Sends a message with the specified priority, instead of the default priority of the type of message.
+     *
+     * @param message
+     *            the message to send
+     * @param priority
+     *            the priority of the message
+     * @return a future for the message
+     */
+    public SessionMessageFuture send(Message message, MmsMessagePriority priority) {
+        return client.sendMessage(this, message, priority);
+    }
+
     public interface Listener {
 
         /**
@@ -202,12 +274,17 @@ public class Session {
     static class Writer implements Runnable {
         private final ReentrantLock executorLock = new ReentrantLock();
 
-        private final BlockingQueue<SessionMessageFuture> q = new LinkedBlockingQueue<>();
+        private final ServerMetrics metrics;
+
+        /** The session to write messages for. */
+        final Session session;
 
         final ServerTransport transport;
 
-        Writer(ServerTransport transport) {
+        Writer(Session session, ServerTransport transport, ServerMetrics metrics) {
+            this.session = requireNonNull(session);
             this.transport = requireNonNull(transport);
+            this.metrics = requireNonNull(metrics);
         }
 
         /** {@inheritDoc} */
@@ -223,15 +300,17 @@ public class Session {
                 sholdRetry = false;
                 if (executorLock.tryLock()) {
                     try {
-                        SessionMessageFuture s = q.poll();
+                        SessionMessageFuture s = session.nextMessageToWrite(this);
                         while (s != null) {
                             sholdRetry = true;
                             try {
+                                metrics.forMessage(s.message.getM().getClass()).sessionQueueTime
+                                        .update(System.nanoTime() - s.creationTime, TimeUnit.NANOSECONDS);
                                 transport.sendMessage(s.message);
                             } catch (Exception e) {
                                 e.printStackTrace();
                             }
-                            s = q.poll();
+                            s = session.nextMessageToWrite(this);
                         }
                     } finally {
                         executorLock.unlock();
@@ -239,10 +318,5 @@ public class Session {
                 }
             } while (sholdRetry);
         }
-
-        void send(SessionMessageFuture f, Executor e) {
-            q.add(f);
-            e.execute(this);
-        }
     }
 }
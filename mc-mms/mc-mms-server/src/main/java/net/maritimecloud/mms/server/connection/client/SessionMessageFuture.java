@@ -17,6 +17,7 @@ package net.maritimecloud.mms.server.connection.client;
 import java.util.concurrent.CompletableFuture;
 
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority;
 import net.maritimecloud.message.Message;
 
 /**
@@ -37,12 +38,15 @@ public class SessionMessageFuture {
     /** The message that should be send, might be null for certain error conditions. */
     final MmsMessage message;
 
-    /** The message id. */
-    final long messageId;
+    /** The message id, assigned when the message is taken from the queue of the session. */
+    long messageId;
 
-    SessionMessageFuture(MmsMessage cm, long messageId) {
+    /** The priority of the message. */
+    final MmsMessagePriority priority;
+
+    SessionMessageFuture(MmsMessage cm, MmsMessagePriority priority) {
         this.message = cm;
-        this.messageId = messageId;
+        this.priority = priority;
     }
 
     /**
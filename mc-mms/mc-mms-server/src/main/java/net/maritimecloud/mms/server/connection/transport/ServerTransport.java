@@ -18,16 +18,20 @@ import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
 import net.maritimecloud.message.MessageFormatType;
 import net.maritimecloud.mms.server.ServerEventListener;
 import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.mms.server.metrics.ServerMetrics;
+import net.maritimecloud.mms.server.metrics.ServerMetrics.MessageTimers;
 import net.maritimecloud.mms.server.security.*;
 import net.maritimecloud.net.mms.MmsConnectionClosingCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
 import javax.websocket.Session;
 import java.nio.ByteBuffer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Objects.requireNonNull;
 
@@ -52,6 +56,9 @@ public final class ServerTransport {
     /** The listener to invoke on incoming messages. */
     private final ServerTransportListener listener;
 
+    /** The server metrics. */
+    private final ServerMetrics metrics;
+
     /** The system time of the last received message. */
     volatile long timeOfLatestIncomingMessage;
 
@@ -67,11 +74,12 @@ public final class ServerTransport {
     /** The client subject */
     Subject subject;
 
-    ServerTransport(MmsSecurityManager securityManager, Session wsSession, ServerTransportListener listener, ServerEventListener eventListener) {
+    ServerTransport(MmsSecurityManager securityManager, Session wsSession, ServerTransportListener listener, ServerEventListener eventListener, ServerMetrics metrics) {
         this.securityManager = requireNonNull(securityManager);
         this.listener = requireNonNull(listener);
         this.wsSession = requireNonNull(wsSession);
         this.eventListener = requireNonNull(eventListener);
+        this.metrics = requireNonNull(metrics);
 
         // Initialize the client Subject
         initializeSubject();
@@ -211,14 +219,20 @@ public final class ServerTransport {
         Session wsSession = this.wsSession;
         if (wsSession != null) {
             try {
+                MessageTimers timers = metrics.forMessage(message.getM().getClass());
+                long start = System.nanoTime();
                 if (channelFormatType == MessageFormatType.MACHINE_READABLE) {
                     byte[] data = message.toBinary();
+                    long serialized = System.nanoTime();
+                    timers.serialization.update(serialized - start, TimeUnit.NANOSECONDS);
                     eventListener.transportBinaryMessageSend(this, data);
-                    wsSession.getAsyncRemote().sendBinary(ByteBuffer.wrap(data));
+                    wsSession.getAsyncRemote().sendBinary(ByteBuffer.wrap(data), sendCompleted(timers, serialized));
                 } else {
                     String textToSend = message.toText();
+                    long serialized = System.nanoTime();
+                    timers.serialization.update(serialized - start, TimeUnit.NANOSECONDS);
                     eventListener.transportTextMessageSend(this, textToSend);
-                    wsSession.getAsyncRemote().sendText(textToSend);
+                    wsSession.getAsyncRemote().sendText(textToSend, sendCompleted(timers, serialized));
                 }
                 listener.onMessageSent(this, message);
             } catch (Exception e) {
@@ -228,6 +242,15 @@ public final class ServerTransport {
         }
     }
 
+    /** Returns a send handler that records the time from the message was handed to the websocket until completion. */
+    private static SendHandler sendCompleted(MessageTimers timers, long startNanos) {
+        return result -> {
+            if (result.isOK()) {
+                timers.sendCompletion.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
     /**
      * Sets a named attachment for this transport. If the attachment is null, the attachment is cleared.
      *
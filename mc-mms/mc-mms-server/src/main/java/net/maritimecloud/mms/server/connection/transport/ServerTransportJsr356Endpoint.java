@@ -15,6 +15,7 @@
 package net.maritimecloud.mms.server.connection.transport;
 
 import net.maritimecloud.mms.server.ServerEventListener;
+import net.maritimecloud.mms.server.metrics.ServerMetrics;
 import net.maritimecloud.mms.server.security.MmsSecurityManager;
 
 import javax.websocket.CloseReason;
@@ -46,10 +47,14 @@ public class ServerTransportJsr356Endpoint {
     /** A listener of events */
     private final ServerEventListener eventListener;
 
-    public ServerTransportJsr356Endpoint(MmsSecurityManager securityManager, ServerEventListener eventListener, ServerTransportListener transport) {
+    /** The server metrics. */
+    private final ServerMetrics metrics;
+
+    public ServerTransportJsr356Endpoint(MmsSecurityManager securityManager, ServerEventListener eventListener, ServerTransportListener transport, ServerMetrics metrics) {
         this.securityManager = requireNonNull(securityManager);
         this.eventListener = requireNonNull(eventListener);
         this.transportListener = requireNonNull(transport);
+        this.metrics = requireNonNull(metrics);
     }
 
     @OnClose
@@ -64,7 +69,7 @@ public class ServerTransportJsr356Endpoint {
         session.setMaxBinaryMessageBufferSize(5 * 1024 * 1024);
         session.setMaxTextMessageBufferSize(5 * 1024 * 1024);
 
-        transport = new ServerTransport(securityManager, session, transportListener, eventListener);
+        transport = new ServerTransport(securityManager, session, transportListener, eventListener, metrics);
         transport.endpointOnOpen();
     }
 
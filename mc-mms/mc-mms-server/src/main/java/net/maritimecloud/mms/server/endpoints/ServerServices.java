@@ -23,9 +23,11 @@ import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
 import net.maritimecloud.internal.mms.messages.services.AbstractServices;
+import net.maritimecloud.mms.server.broadcast.ServerBroadcastManager;
 import net.maritimecloud.mms.server.connection.client.Client;
 import net.maritimecloud.mms.server.connection.client.ClientManager;
 import net.maritimecloud.mms.server.connection.client.Session;
+import net.maritimecloud.mms.server.metrics.ServerMetrics;
 import net.maritimecloud.net.MessageHeader;
 import net.maritimecloud.util.geometry.Area;
 import net.maritimecloud.util.geometry.Position;
@@ -33,6 +35,7 @@ import net.maritimecloud.util.geometry.PositionTime;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 
 /**
  * Manages services for all connected targets.
@@ -41,6 +44,9 @@ import com.codahale.metrics.MetricRegistry;
  */
 public class ServerServices extends AbstractServices {
 
+    /** Manages broadcast subscriptions. */
+    final ServerBroadcastManager broadcastManager;
+
     final ClientManager clientManager;
 
     // Metrics
@@ -48,8 +54,13 @@ public class ServerServices extends AbstractServices {
 
     final Meter serviceLocatesMeter;
 
-    public ServerServices(ClientManager clientManager, MetricRegistry metrics) {
+    final Timer locateTimer;
+
+    public ServerServices(ClientManager clientManager, MetricRegistry metrics, ServerMetrics serverMetrics,
+            ServerBroadcastManager broadcastManager) {
         this.clientManager = requireNonNull(clientManager);
+        this.broadcastManager = requireNonNull(broadcastManager);
+        this.locateTimer = serverMetrics.locate();
 
         endpointRegistrationsMeter = metrics.meter("endpointRegistrations");
         serviceLocatesMeter = metrics.meter("serviceLocates");
@@ -66,18 +77,19 @@ public class ServerServices extends AbstractServices {
         double meters = m <= 0 ? Double.MAX_VALUE : m;
 
         final ConcurrentHashMap<Client, PositionTime> map = new ConcurrentHashMap<>();
+        long now = System.currentTimeMillis();
 
         if (pos == null) {
             clientManager.forEachTarget(tt -> {
                 if (tt.getEndpointManager().hasService(endpointName)) {
-                    map.put(tt, tt.getLatestPositionAndTime());
+                    map.put(tt, tt.getEstimatedPositionAndTime(now));
                 }
             });
         } else {
             // Find all services with the area
             clientManager.forEachTarget(tt -> {
                 if (tt.getEndpointManager().hasService(endpointName)) {
-                    PositionTime pt = tt.getLatestPositionAndTime();
+                    PositionTime pt = tt.getEstimatedPositionAndTime(now);
                     if (pt.geodesicDistanceTo(pos) <= meters) {
                         map.put(tt, pt);
                     }
@@ -107,18 +119,23 @@ public class ServerServices extends AbstractServices {
     /** {@inheritDoc} */
     @Override
     protected List<String> locate(MessageHeader header, String endpointName, Integer meters, Integer max) {
-        Session con = ServerEndpointManager.connection(header);
-        List<Entry<Client, PositionTime>> findService = findServices(con.getClient(), endpointName,
-                header.getSenderPosition(), meters, max);
-        List<String> result = new ArrayList<>();
-        for (Entry<Client, PositionTime> e : findService) {
-            result.add(e.getKey().getId().toString());
+        Timer.Context timer = locateTimer.time();
+        try {
+            Session con = ServerEndpointManager.connection(header);
+            List<Entry<Client, PositionTime>> findService = findServices(con.getClient(), endpointName,
+                    header.getSenderPosition(), meters, max);
+            List<String> result = new ArrayList<>();
+            for (Entry<Client, PositionTime> e : findService) {
+                result.add(e.getKey().getId().toString());
+            }
+
+            // Update metrics
+            serviceLocatesMeter.mark();
+
+            return result;
+        } finally {
+            timer.stop();
         }
-
-        // Update metrics
-        serviceLocatesMeter.mark();
-
-        return result;
     }
 
     /** {@inheritDoc} */
@@ -134,7 +151,10 @@ public class ServerServices extends AbstractServices {
 
     /** {@inheritDoc} */
     @Override
-    protected void subscribe(MessageHeader header, List<String> name, Area area) {}
+    protected void subscribe(MessageHeader header, List<String> name, Area area) {
+        Session con = ServerEndpointManager.connection(header);
+        broadcastManager.subscribe(con, name, area);
+    }
 
     /** {@inheritDoc} */
     @Override
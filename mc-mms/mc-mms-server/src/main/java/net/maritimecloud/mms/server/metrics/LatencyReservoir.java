@@ -0,0 +1,253 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.metrics;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.maritimecloud.internal.util.LatencyHistogram;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+/**
+ * A lock-free reservoir that records values in the log-linear buckets of a {@link LatencyHistogram}, so percentiles
+ * are accurate to within about 1.6%. Recording a value is a couple of atomic increments with no allocation, which
+ * makes it cheap enough to use on the message path, unlike the default exponentially decaying reservoir that takes a
+ * lock when rescaling.
+ * <p>
+ * Values are recorded into the current window. When the window expires it becomes the previous window, and snapshots
+ * are taken over the previous and current window. So a snapshot covers between one and two window lengths of data.
+ *
+ * @author Kasper Nielsen
+ */
+public class LatencyReservoir implements Reservoir {
+
+    /** The default length of a window. */
+    static final long DEFAULT_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /** The maximum number of values returned by {@link Snapshot#getValues()}. */
+    static final int MAX_VALUES = 1 << 16;
+
+    /** The total number of buckets. */
+    static final int BUCKETS = LatencyHistogram.BUCKETS;
+
+    /** The window values are currently recorded into. */
+    private volatile LatencyHistogram current = new LatencyHistogram();
+
+    /** The time (System.nanoTime) of the next rotation. */
+    private final AtomicLong nextRotation;
+
+    /** The previous window. */
+    private volatile LatencyHistogram previous = new LatencyHistogram();
+
+    /** The length of a window in nanoseconds. */
+    private final long windowNanos;
+
+    /** Creates a new reservoir with a window of one minute. */
+    public LatencyReservoir() {
+        this(DEFAULT_WINDOW_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a new reservoir.
+     *
+     * @param window
+     *            the length of a window
+     * @param unit
+     *            the unit of the window
+     */
+    public LatencyReservoir(long window, TimeUnit unit) {
+        this.windowNanos = unit.toNanos(window);
+        if (windowNanos <= 0) {
+            throw new IllegalArgumentException("window must be positive, was " + window);
+        }
+        this.nextRotation = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Snapshot getSnapshot() {
+        rotateIfNeeded(System.nanoTime());
+        return new BucketSnapshot(previous, current);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        rotateIfNeeded(System.nanoTime());
+        return (int) Math.min(Integer.MAX_VALUE, previous.getCount() + current.getCount());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void update(long value) {
+        rotateIfNeeded(System.nanoTime());
+        current.recordValue(Math.max(0, value));
+    }
+
+    private void rotateIfNeeded(long now) {
+        long next = nextRotation.get();
+        if (now - next >= 0 && nextRotation.compareAndSet(next, now + windowNanos)) {
+            // A recorder that read the old current window might still record into it after it has become the previous
+            // window. That is fine, the value will still be part of the next snapshots
+            LatencyHistogram w = current;
+            current = new LatencyHistogram();
+            previous = now - next >= windowNanos ? new LatencyHistogram() : w; // discard if we have been idle for too long
+        }
+    }
+
+    /** A snapshot of one or more windows. */
+    static final class BucketSnapshot extends Snapshot {
+
+        /** The number of values in each bucket. */
+        private final long[] counts = new long[BUCKETS];
+
+        private final long count;
+
+        private final long max;
+
+        private final double mean;
+
+        private final long min;
+
+        private final double stdDev;
+
+        BucketSnapshot(LatencyHistogram... windows) {
+            long max = Long.MIN_VALUE;
+            long min = Long.MAX_VALUE;
+            for (LatencyHistogram w : windows) {
+                if (w.getCount() > 0) { // the min and max of an empty histogram are 0
+                    for (int i = 0; i < BUCKETS; i++) {
+                        counts[i] += w.getCountAt(i);
+                    }
+                    max = Math.max(max, w.getMax());
+                    min = Math.min(min, w.getMin());
+                }
+            }
+            long count = 0;
+            double sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts[i] > 0) {
+                    count += counts[i];
+                    sum += counts[i] * (double) midpoint(i);
+                }
+            }
+            this.count = count;
+            this.max = count == 0 ? 0 : max;
+            this.min = count == 0 ? 0 : min;
+            this.mean = count == 0 ? 0 : sum / count;
+            double variance = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts[i] > 0) {
+                    double d = midpoint(i) - mean;
+                    variance += counts[i] * d * d;
+                }
+            }
+            this.stdDev = count <= 1 ? 0 : Math.sqrt(variance / (count - 1));
+        }
+
+        private static long midpoint(int index) {
+            long low = LatencyHistogram.lowestValueAt(index);
+            return low + (LatencyHistogram.highestValueAt(index) - low) / 2;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, UTF_8))) {
+                for (long value : getValues()) {
+                    out.printf("%d%n", value);
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long getMax() {
+            return max;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public double getMean() {
+            return mean;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long getMin() {
+            return min;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public double getStdDev() {
+            return stdDev;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public double getValue(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.max(min, Math.min(max, LatencyHistogram.highestValueAt(i)));
+                }
+            }
+            return max;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Returns bucket midpoints. If more than {@link LatencyReservoir#MAX_VALUES} values have been recorded, the
+         * values are down sampled proportionally.
+         */
+        @Override
+        public long[] getValues() {
+            double scale = count <= MAX_VALUES ? 1 : (double) MAX_VALUES / count;
+            long[] result = new long[(int) Math.min(count, MAX_VALUES)];
+            int n = 0;
+            for (int i = 0; i < BUCKETS && n < result.length; i++) {
+                long c = Math.round(counts[i] * scale);
+                long value = midpoint(i);
+                for (long j = 0; j < c && n < result.length; j++) {
+                    result[n++] = value;
+                }
+            }
+            return n == result.length ? result : java.util.Arrays.copyOf(result, n);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, count);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.metrics;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.mms.server.connection.client.ClientManager;
+
+import org.cakeframework.container.concurrent.ScheduleAtFixedRate;
+
+import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Latency and queue depth instrumentation of the server. All metrics are registered in the server's
+ * {@link MetricRegistry} with names starting with {@link #PREFIX}, and are recorded using {@link LatencyReservoir}.
+ * <p>
+ * For every type of message the following timers are maintained:
+ * <ul>
+ * <li><b>receiveToDispatch</b> the time from a message was read from the websocket until it is handed to the listener
+ * of the session.</li>
+ * <li><b>sessionQueueTime</b> the time from a message was queued in a session until it is written to the transport.</li>
+ * <li><b>serialization</b> the time spent converting the message to binary or text.</li>
+ * <li><b>sendCompletion</b> the time from a message was handed to the websocket until the write completed.</li>
+ * </ul>
+ *
+ * @author Kasper Nielsen
+ */
+public class ServerMetrics {
+
+    /** The prefix of all metrics maintained by this class. */
+    public static final String PREFIX = "mms.";
+
+    /** The number of seconds to cache gauges that require iterating over all clients. */
+    static final long GAUGE_CACHE_SECONDS = 5;
+
+    /** The number of clients each broadcast was sent to. */
+    private final Histogram broadcastFanout;
+
+    /** The client manager. */
+    private final ClientManager clientManager;
+
+    /** The latency of locating endpoints. */
+    private final Timer locate;
+
+    /** Timers for each type of message. */
+    private final ConcurrentHashMap<Class<?>, MessageTimers> messageTimers = new ConcurrentHashMap<>();
+
+    /** The number of unacked messages per session, sampled periodically. */
+    private final Histogram queueDepth;
+
+    /** The registry to register metrics in. */
+    private final MetricRegistry registry;
+
+    public ServerMetrics(MetricRegistry registry, ClientManager clientManager) {
+        this.registry = requireNonNull(registry);
+        this.clientManager = requireNonNull(clientManager);
+        broadcastFanout = registry.register(PREFIX + "broadcast.fanout", new Histogram(new LatencyReservoir()));
+        locate = registry.register(PREFIX + "endpoints.locate", new Timer(new LatencyReservoir()));
+        queueDepth = registry.register(PREFIX + "sessions.queueDepth", new Histogram(new LatencyReservoir()));
+
+        // Counting clients requires iterating over all of them, so cache the result between scrapes
+        registry.register(PREFIX + "clients.registered", new CachedGauge<Long>(GAUGE_CACHE_SECONDS,
+                TimeUnit.SECONDS) {
+            protected Long loadValue() {
+                return clientManager.stream().count();
+            }
+        });
+        registry.register(PREFIX + "clients.connected", new CachedGauge<Long>(GAUGE_CACHE_SECONDS, TimeUnit.SECONDS) {
+            protected Long loadValue() {
+                return clientManager.stream().filter(Client::isConnected).count();
+            }
+        });
+    }
+
+    /**
+     * Returns the timers for the specified type of message.
+     *
+     * @param messageType
+     *            the type of message
+     * @return the timers for the specified type of message
+     */
+    public MessageTimers forMessage(Class<?> messageType) {
+        MessageTimers t = messageTimers.get(messageType);
+        return t == null ? messageTimers.computeIfAbsent(messageType, MessageTimers::new) : t;
+    }
+
+    /**
+     * Returns a timer measuring the latency of locating endpoints.
+     *
+     * @return a timer measuring the latency of locating endpoints
+     */
+    public Timer locate() {
+        return locate;
+    }
+
+    /**
+     * Records the number of clients a broadcast was sent to.
+     *
+     * @param receivers
+     *            the number of receivers
+     */
+    public void recordBroadcastFanout(int receivers) {
+        broadcastFanout.update(receivers);
+    }
+
+    /** Samples the queue depth of every connected session. */
+    @ScheduleAtFixedRate(value = 1, unit = TimeUnit.SECONDS)
+    public void sampleQueueDepths() {
+        try {
+            clientManager.forEachTarget(c -> {
+                if (c.isConnected()) {
+                    queueDepth.update(c.getQueueDepth());
+                }
+            });
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** The timers maintained for a single type of message. */
+    public final class MessageTimers {
+
+        /** The time from a message was received until it is dispatched. */
+        public final Timer receiveToDispatch;
+
+        /** The time from the message was written until the write completed. */
+        public final Timer sendCompletion;
+
+        /** The time spent serializing messages. */
+        public final Timer serialization;
+
+        /** The time messages spend in the session queue. */
+        public final Timer sessionQueueTime;
+
+        MessageTimers(Class<?> type) {
+            String name = PREFIX + "messages." + type.getSimpleName() + ".";
+            receiveToDispatch = timer(name + "receiveToDispatch");
+            sendCompletion = timer(name + "sendCompletion");
+            serialization = timer(name + "serialization");
+            sessionQueueTime = timer(name + "sessionQueueTime");
+        }
+
+        private Timer timer(String name) {
+            Metric m = registry.getMetrics().get(name); // getTimers() would copy all metrics
+            return m instanceof Timer ? (Timer) m : registry.register(name, new Timer(new LatencyReservoir()));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.rest;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+import javax.ws.rs.BadRequestException;
+
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.mms.server.connection.client.ClientProperties;
+import net.maritimecloud.util.geometry.Area;
+import net.maritimecloud.util.geometry.PositionTime;
+
+/**
+ * The filters and projection of a client listing. Filters are evaluated while iterating over the clients, so clients
+ * that do not match are never materialized. Clients are written directly as JSON, using the same field names as
+ * {@link net.maritimecloud.internal.mms.messages.services.ClientInfo}.
+ *
+ * @author Kasper Nielsen
+ */
+class ClientQuery {
+
+    /** The fields to include. */
+    final EnumSet<Field> fields;
+
+    /** The filter to apply. */
+    final Predicate<Client> filter;
+
+    ClientQuery(List<String> fields, String area, String endpoint, Boolean connected) {
+        this.fields = fields == null || fields.isEmpty() ? EnumSet.allOf(Field.class) : EnumSet.noneOf(Field.class);
+        if (fields != null) {
+            for (String f : fields) {
+                for (String s : f.split(",")) {
+                    this.fields.add(Field.of(s.trim()));
+                }
+            }
+        }
+        Predicate<Client> p = c -> true;
+        // Cheapest filters first
+        if (connected != null) {
+            p = p.and(c -> c.isConnected() == connected.booleanValue());
+        }
+        if (endpoint != null) {
+            p = p.and(c -> c.getEndpointManager().hasService(endpoint));
+        }
+        if (area != null) {
+            Area a;
+            try {
+                a = Area.fromJSON(area);
+            } catch (RuntimeException e) {
+                throw new BadRequestException("Invalid area: " + area, e);
+            }
+            p = p.and(c -> {
+                PositionTime pt = c.getLatestPositionAndTime();
+                return pt != null && a.contains(pt);
+            });
+        }
+        this.filter = p;
+    }
+
+    /** Writes the projected fields of the specified client as a JSON object. */
+    void write(Writer w, Client c) throws IOException {
+        w.write('{');
+        boolean first = true;
+        ClientProperties p = c.getClientProperties();
+        PositionTime pt = c.getLatestPositionAndTime();
+        for (Field f : fields) {
+            switch (f) {
+            case ID:
+                first = writeString(w, first, f, c.getId());
+                break;
+            case NAME:
+                first = writeString(w, first, f, p.getName());
+                break;
+            case DESCRIPTION:
+                first = writeString(w, first, f, p.getDescription());
+                break;
+            case ORGANIZATION:
+                first = writeString(w, first, f, p.getOrganization());
+                break;
+            case LATEST_POSITION:
+                if (pt != null) {
+                    first = name(w, first, f);
+                    w.write("{\"latitude\":");
+                    w.write(Double.toString(pt.getLatitude()));
+                    w.write(",\"longitude\":");
+                    w.write(Double.toString(pt.getLongitude()));
+                    w.write('}');
+                }
+                break;
+            case LAST_SEEN:
+                if (pt != null) {
+                    first = name(w, first, f);
+                    w.write(Long.toString(pt.getTime()));
+                }
+                break;
+            case CONNECTED:
+                first = name(w, first, f);
+                w.write(c.isConnected() ? "true" : "false");
+                break;
+            }
+        }
+        w.write('}');
+    }
+
+    private static boolean name(Writer w, boolean first, Field f) throws IOException {
+        if (!first) {
+            w.write(',');
+        }
+        w.write('"');
+        w.write(f.jsonName);
+        w.write("\":");
+        return false;
+    }
+
+    private static boolean writeString(Writer w, boolean first, Field f, String value) throws IOException {
+        if (value == null) {
+            return first;
+        }
+        name(w, first, f);
+        writeString(w, value);
+        return false;
+    }
+
+    static void writeString(Writer w, String value) throws IOException {
+        w.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                w.write('\\');
+                w.write(c);
+            } else if (c < 0x20) {
+                w.write(String.format("\\u%04x", (int) c));
+            } else {
+                w.write(c);
+            }
+        }
+        w.write('"');
+    }
+
+    /** The fields that can be projected. */
+    enum Field {
+        ID("id"), NAME("name"), DESCRIPTION("description"), ORGANIZATION("organization"), LATEST_POSITION(
+                "latestPosition"), LAST_SEEN("lastSeen"), CONNECTED("connected");
+
+        /** The name of the field in JSON and in the fields query parameter. */
+        final String jsonName;
+
+        Field(String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        static Field of(String name) {
+            for (Field f : values()) {
+                if (f.jsonName.equals(name)) {
+                    return f;
+                }
+            }
+            throw new BadRequestException("Unknown field: " + name);
+        }
+    }
+}
@@ -14,10 +14,27 @@
  */
 package net.maritimecloud.mms.server.rest;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.StreamingOutput;
 
 import net.maritimecloud.message.Message;
+import net.maritimecloud.mms.server.connection.client.Client;
 import net.maritimecloud.mms.server.connection.client.ClientManager;
 
 
@@ -28,9 +45,19 @@ import net.maritimecloud.mms.server.connection.client.ClientManager;
 
 @Path("/clients")
 public class ClientResource {
+
+    /** Orders clients by id. */
+    static final Comparator<Client> BY_ID = Comparator.comparing(Client::getId);
+
+    /** The maximum number of clients per page. */
+    static final int MAX_LIMIT = 1000;
+
     final ClientManagerStatistics cms;
 
+    final ClientManager tm;
+
     public ClientResource(ClientManager tm) {
+        this.tm = tm;
         cms = new ClientManagerStatistics(tm);
     }
 
@@ -39,4 +66,109 @@ public class ClientResource {
     public Message list2() {
         return cms.getAllClients();
     }
+
+    /**
+     * Returns a single page of clients ordered by id. The response is a JSON object with a {@code clients} array and a
+     * {@code nextCursor}, which is null on the last page. Only the clients on the page are retained while iterating,
+     * so the cost is proportional to the size of the page and not to the number of clients.
+     *
+     * @param cursor
+     *            the next cursor of the previous page, or null for the first page
+     * @param limit
+     *            the maximum number of clients to return
+     * @param fields
+     *            the fields to include, all if not specified
+     * @param area
+     *            only include clients whose latest position is within this area (JSON)
+     * @param endpoint
+     *            only include clients that have registered this endpoint
+     * @param connected
+     *            only include clients that are (or are not) currently connected
+     * @return the page
+     */
+    @GET
+    @Path("/page")
+    @Produces("application/json")
+    public StreamingOutput page(@QueryParam("cursor") String cursor, @DefaultValue("100") @QueryParam("limit") int limit,
+            @QueryParam("fields") List<String> fields, @QueryParam("area") String area,
+            @QueryParam("endpoint") String endpoint, @QueryParam("connected") Boolean connected) {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_LIMIT + ", was " + limit);
+        }
+        ClientQuery q = new ClientQuery(fields, area, endpoint, connected);
+
+        // Keep the (limit + 1) smallest ids after the cursor, the extra one tells us if there is another page
+        PriorityQueue<Client> smallest = new PriorityQueue<>(limit + 1, BY_ID.reversed());
+        for (Client c : tm) {
+            if ((cursor == null || c.getId().compareTo(cursor) > 0) && q.filter.test(c)) {
+                smallest.add(c);
+                if (smallest.size() > limit + 1) {
+                    smallest.poll();
+                }
+            }
+        }
+        boolean hasMore = smallest.size() > limit;
+        if (hasMore) {
+            smallest.poll();
+        }
+        List<Client> page = new ArrayList<>(smallest);
+        Collections.sort(page, BY_ID);
+
+        return out -> {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+            w.write("{\"clients\":[");
+            for (int i = 0; i < page.size(); i++) {
+                if (i > 0) {
+                    w.write(',');
+                }
+                q.write(w, page.get(i));
+            }
+            w.write("],\"nextCursor\":");
+            if (hasMore) {
+                ClientQuery.writeString(w, page.get(page.size() - 1).getId());
+            } else {
+                w.write("null");
+            }
+            w.write('}');
+            w.flush();
+        };
+    }
+
+    /**
+     * Streams all matching clients as a JSON object with a {@code clients} array. Clients are written while iterating,
+     * in no particular order, and are never collected in memory.
+     *
+     * @param fields
+     *            the fields to include, all if not specified
+     * @param area
+     *            only include clients whose latest position is within this area (JSON)
+     * @param endpoint
+     *            only include clients that have registered this endpoint
+     * @param connected
+     *            only include clients that are (or are not) currently connected
+     * @return the stream
+     */
+    @GET
+    @Path("/stream")
+    @Produces("application/json")
+    public StreamingOutput stream(@QueryParam("fields") List<String> fields, @QueryParam("area") String area,
+            @QueryParam("endpoint") String endpoint, @QueryParam("connected") Boolean connected) {
+        ClientQuery q = new ClientQuery(fields, area, endpoint, connected);
+        return out -> {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, UTF_8), 16 * 1024);
+            w.write("{\"clients\":[");
+            boolean first = true;
+            for (Client c : tm) {
+                if (q.filter.test(c)) {
+                    if (!first) {
+                        w.write(',');
+                    }
+                    q.write(w, c);
+                    first = false;
+                }
+            }
+            w.write("]}");
+            w.flush();
+        };
+    }
 }
@@ -0,0 +1,56 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.rest;
+
+import static java.util.Objects.requireNonNull;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.StreamingOutput;
+
+import net.maritimecloud.mms.server.tracker.FleetSnapshots;
+
+/**
+ * Exports the latest position of the whole fleet in the binary format described by {@link FleetSnapshots}.
+ *
+ * @author Kasper Nielsen
+ */
+@Path("/fleet")
+public class FleetResource {
+
+    /** The snapshots. */
+    final FleetSnapshots snapshots;
+
+    public FleetResource(FleetSnapshots snapshots) {
+        this.snapshots = requireNonNull(snapshots);
+    }
+
+    /**
+     * Returns a snapshot of the latest position of all clients.
+     *
+     * @param since
+     *            the id of a previous snapshot to only return changes since that snapshot, or 0 for a full snapshot
+     * @return the snapshot
+     */
+    @GET
+    @Path("/snapshot")
+    @Produces("application/octet-stream")
+    public StreamingOutput snapshot(@DefaultValue("0") @QueryParam("since") long since) {
+        return out -> snapshots.write(since, out);
+    }
+}
@@ -2,10 +2,20 @@ package net.maritimecloud.mms.server.rest;
 
 import com.codahale.metrics.JmxReporter;
 import com.codahale.metrics.MetricRegistry;
+import net.maritimecloud.mms.server.metrics.ServerMetrics;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.StreamingOutput;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * REST endpoint for returning metrics about the state of the server
@@ -15,6 +25,9 @@ public class MetricsResource {
 
     final MetricRegistry metrics;
 
+    /** Writes metrics in the OpenMetrics text format. */
+    final OpenMetricsWriter openMetrics = new OpenMetricsWriter();
+
     /**
      * Constructor
      * @param metrics the metrics registry gets injected
@@ -34,4 +47,40 @@ public class MetricsResource {
         return metrics;
     }
 
+    /**
+     * Returns the latency and queue depth metrics maintained by {@link ServerMetrics}.
+     *
+     * @return the latency and queue depth metrics
+     */
+    @GET
+    @Path("/latency")
+    @Produces("text/plain;charset=UTF-8")
+    public MetricRegistry latency() {
+        MetricRegistry result = new MetricRegistry();
+        metrics.getMetrics().forEach((name, metric) -> {
+            if (name.startsWith(ServerMetrics.PREFIX)) {
+                result.register(name, metric);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Streams all metrics in the OpenMetrics text format, suitable for scraping by Prometheus.
+     *
+     * @param families
+     *            family name prefixes to include, for example {@code mms_messages}. All families if not specified
+     * @return the metrics in the OpenMetrics text format
+     */
+    @GET
+    @Path("/openmetrics")
+    @Produces(OpenMetricsWriter.CONTENT_TYPE)
+    public StreamingOutput openMetrics(@QueryParam("family") List<String> families) {
+        return out -> {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, UTF_8), 16 * 1024);
+            openMetrics.write(metrics, families, w);
+            w.flush();
+        };
+    }
+
 }
@@ -0,0 +1,200 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.rest;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Writes the metrics of a {@link MetricRegistry} in the OpenMetrics text format (which is also understood by
+ * Prometheus). Metrics are written directly to the specified writer while iterating over the registry, without
+ * creating sorted copies of the registry as {@link MetricRegistry#getGauges()} and friends do.
+ * <p>
+ * Each Dropwizard metric becomes a metric family:
+ * <ul>
+ * <li>Counters and meters become counters.</li>
+ * <li>Gauges with a numeric or boolean value become gauges, other gauges are ignored.</li>
+ * <li>Histograms become summaries.</li>
+ * <li>Timers become summaries measured in seconds.</li>
+ * </ul>
+ * Gauges are evaluated on every scrape. Gauges that are expensive to calculate should therefore be registered as a
+ * {@link com.codahale.metrics.CachedGauge}.
+ *
+ * @author Kasper Nielsen
+ */
+public class OpenMetricsWriter {
+
+    /** The content type of the OpenMetrics text format. */
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    /** The quantiles written for summaries. */
+    private static final double[] QUANTILES = { 0.5, 0.75, 0.95, 0.98, 0.99, 0.999 };
+
+    /** The textual representation of the quantiles. */
+    private static final String[] QUANTILE_LABELS = { "{quantile=\"0.5\"} ", "{quantile=\"0.75\"} ",
+            "{quantile=\"0.95\"} ", "{quantile=\"0.98\"} ", "{quantile=\"0.99\"} ", "{quantile=\"0.999\"} " };
+
+    /** The number of seconds per nanosecond. */
+    private static final double SECONDS_PER_NANO = 1.0 / TimeUnit.SECONDS.toNanos(1);
+
+    /** A cache of Dropwizard names to family names, so we do not need to sanitize names on every scrape. */
+    private final ConcurrentHashMap<String, String> familyNames = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the OpenMetrics family name for the specified Dropwizard metric name.
+     *
+     * @param name
+     *            the name of the Dropwizard metric
+     * @return the family name
+     */
+    public String familyName(String name) {
+        String s = familyNames.get(name);
+        return s == null ? familyNames.computeIfAbsent(name, OpenMetricsWriter::sanitize) : s;
+    }
+
+    /**
+     * Writes all metrics in the specified registry that matches the specified families.
+     *
+     * @param registry
+     *            the registry to write
+     * @param families
+     *            family name prefixes to include, or null or empty to include all families
+     * @param w
+     *            the writer to write to
+     * @throws IOException
+     *             if the metrics could not be written
+     */
+    public void write(MetricRegistry registry, Collection<String> families, Writer w) throws IOException {
+        for (Map.Entry<String, Metric> e : registry.getMetrics().entrySet()) {
+            String family = familyName(e.getKey());
+            if (matches(family, families)) {
+                writeMetric(w, family, e.getValue());
+            }
+        }
+        w.write("# EOF\n");
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void writeMetric(Writer w, String family, Metric metric) throws IOException {
+        if (metric instanceof Counter) {
+            writeCounter(w, family, ((Counter) metric).getCount());
+        } else if (metric instanceof Meter) {
+            writeCounter(w, family, ((Meter) metric).getCount());
+        } else if (metric instanceof Gauge) {
+            Object value = ((Gauge) metric).getValue();
+            if (value instanceof Number) {
+                header(w, family, "gauge");
+                sample(w, family, "", ((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                header(w, family, "gauge");
+                sample(w, family, "", (Boolean) value ? 1 : 0);
+            }
+        } else if (metric instanceof Timer) {
+            Timer t = (Timer) metric;
+            writeSummary(w, family + "_seconds", t.getCount(), t.getSnapshot(), SECONDS_PER_NANO);
+        } else if (metric instanceof Histogram) {
+            Histogram h = (Histogram) metric;
+            writeSummary(w, family, h.getCount(), h.getSnapshot(), 1);
+        }
+    }
+
+    private static void writeCounter(Writer w, String family, long count) throws IOException {
+        header(w, family, "counter");
+        w.write(family);
+        w.write("_total ");
+        w.write(Long.toString(count));
+        w.write('\n');
+    }
+
+    private static void writeSummary(Writer w, String family, long count, Snapshot s, double scale)
+            throws IOException {
+        header(w, family, "summary");
+        for (int i = 0; i < QUANTILES.length; i++) {
+            w.write(family);
+            w.write(QUANTILE_LABELS[i]);
+            writeDouble(w, s.getValue(QUANTILES[i]) * scale);
+            w.write('\n');
+        }
+        w.write(family);
+        w.write("_count ");
+        w.write(Long.toString(count));
+        w.write('\n');
+    }
+
+    private static void header(Writer w, String family, String type) throws IOException {
+        w.write("# TYPE ");
+        w.write(family);
+        w.write(' ');
+        w.write(type);
+        w.write('\n');
+    }
+
+    private static void sample(Writer w, String family, String suffix, double value) throws IOException {
+        w.write(family);
+        w.write(suffix);
+        w.write(' ');
+        writeDouble(w, value);
+        w.write('\n');
+    }
+
+    private static void writeDouble(Writer w, double value) throws IOException {
+        if (Double.isNaN(value)) {
+            w.write("NaN");
+        } else if (Double.isInfinite(value)) {
+            w.write(value > 0 ? "+Inf" : "-Inf");
+        } else if (value == (long) value) {
+            w.write(Long.toString((long) value));
+        } else {
+            w.write(Double.toString(value));
+        }
+    }
+
+    static boolean matches(String family, Collection<String> families) {
+        if (families == null || families.isEmpty()) {
+            return true;
+        }
+        for (String f : families) {
+            if (family.startsWith(f)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Replaces characters that are not allowed in family names with underscores. */
+    static String sanitize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c == ':' || i > 0 && c >= '0'
+                    && c <= '9';
+            sb.append(valid ? c : '_');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,108 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.rest;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.StreamingOutput;
+
+import net.maritimecloud.mms.server.tracker.PositionFeed;
+import net.maritimecloud.mms.server.tracker.PositionTracker;
+import net.maritimecloud.mms.server.tracker.Subscription;
+import net.maritimecloud.util.geometry.Area;
+
+/**
+ * Streams the positions of vessels within an area of interest. The stream starts with every vessel currently within
+ * the area, after which only vessels entering, moving within or leaving the area are sent. The stream is a sequence of
+ * binary batches in the format described by {@link PositionFeed}.
+ *
+ * @author Kasper Nielsen
+ */
+@Path("/positions")
+public class PositionResource {
+
+    /** The interval between keep alive batches when nothing changes. */
+    static final long KEEP_ALIVE_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
+    /** The smallest interval between batches. The tracker does not update positions more often than every second. */
+    static final long MIN_INTERVAL_MILLIS = 1000;
+
+    /** The position tracker. */
+    final PositionTracker tracker;
+
+    public PositionResource(PositionTracker tracker) {
+        this.tracker = requireNonNull(tracker);
+    }
+
+    /**
+     * Streams position changes within the specified area.
+     *
+     * @param area
+     *            the area of interest as JSON
+     * @param interval
+     *            the minimum number of milliseconds between batches
+     * @param minDistance
+     *            movements shorter than this number of meters from the last position sent are not reported
+     * @return the stream
+     */
+    @GET
+    @Path("/stream")
+    @Produces("application/octet-stream")
+    public StreamingOutput stream(@QueryParam("area") String area,
+            @DefaultValue("1000") @QueryParam("interval") long interval,
+            @DefaultValue("0") @QueryParam("minDistance") double minDistance) {
+        if (area == null) {
+            throw new BadRequestException("An area must be specified");
+        } else if (minDistance < 0) {
+            throw new BadRequestException("minDistance must be non-negative, was " + minDistance);
+        }
+        Area a;
+        try {
+            a = Area.fromJSON(area);
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Invalid area: " + area, e);
+        }
+        long intervalMillis = Math.max(MIN_INTERVAL_MILLIS, interval);
+        return out -> {
+            PositionFeed feed = new PositionFeed(minDistance);
+            Subscription s = tracker.subscribe(a, feed, 0, true);
+            try {
+                long latestWrite = System.currentTimeMillis();
+                for (;;) {
+                    long now = System.currentTimeMillis();
+                    byte[] batch = feed.nextBatch(now, now - latestWrite >= KEEP_ALIVE_MILLIS);
+                    if (batch != null) {
+                        out.write(batch); // fails if the consumer has gone away
+                        out.flush();
+                        latestWrite = now;
+                    }
+                    Thread.sleep(intervalMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                s.cancel();
+            }
+        };
+    }
+}
@@ -14,37 +14,187 @@
  */
 package net.maritimecloud.mms.server.rest;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.StreamingOutput;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import net.maritimecloud.mms.server.rest.TailTargetLog.Event;
+import net.maritimecloud.util.geometry.Area;
+import net.maritimecloud.util.geometry.PositionTime;
 
 /**
+ * Streams live traffic as <a href="http://www.w3.org/TR/eventsource/">server-sent events</a>. Each message sent or
+ * received by the server becomes an event of type {@code incoming} or {@code outgoing}, whose data is a JSON object
+ * with the time, the client id, the message type and the message itself.
+ * <p>
+ * Traffic can be filtered by client id ({@code client}), by simple message type name ({@code type}) and by the latest
+ * position of the client ({@code area}, a JSON area). The {@code client} and {@code type} parameters may be repeated.
+ * <p>
+ * A tailer that falls more than {@link TailTargetLog#capacity()} events behind receives a {@code lag} event with the
+ * number of events it missed, after which the stream is closed.
+ * <p>
+ * Every tailer holds a request thread while it is connected. At most {@link TailTargetLog#MAX_TAILERS} tailers are
+ * allowed at the same time, further requests are rejected with 503 Service Unavailable.
  *
  * @author Kasper Nielsen
  */
 @Path("/tail")
 public class TailLogger {
 
-    final Cache<String, List<?>> cache;
+    /** The interval between keep alive comments when there is no traffic. */
+    static final long KEEP_ALIVE_NANOS = TimeUnit.SECONDS.toNanos(15);
+
+    /** The time to wait for new events when a tailer has caught up. */
+    static final long POLL_MILLIS = 50;
 
-    public TailLogger() {
-        CacheBuilder<Object, Object> b = CacheBuilder.newBuilder();
-        b.expireAfterAccess(1, TimeUnit.HOURS);
-        cache = b.build();
+    /** The log to tail. */
+    final TailTargetLog log;
+
+    public TailLogger(TailTargetLog log) {
+        this.log = requireNonNull(log);
     }
 
+    @GET
+    @Produces("text/event-stream")
+    public StreamingOutput all(@QueryParam("client") List<String> clients, @QueryParam("type") List<String> types,
+            @QueryParam("area") String area) {
+        return tail(filter(null, clients, types, area));
+    }
+
+    @GET
     @Path("/incoming")
-    public void incoming() {
+    @Produces("text/event-stream")
+    public StreamingOutput incoming(@QueryParam("client") List<String> clients, @QueryParam("type") List<String> types,
+            @QueryParam("area") String area) {
+        return tail(filter(Boolean.TRUE, clients, types, area));
+    }
+
+    @GET
+    @Path("/outgoing")
+    @Produces("text/event-stream")
+    public StreamingOutput outgoing(@QueryParam("client") List<String> clients, @QueryParam("type") List<String> types,
+            @QueryParam("area") String area) {
+        return tail(filter(Boolean.FALSE, clients, types, area));
+    }
 
+    StreamingOutput tail(Predicate<Event> filter) {
+        // Register before returning, so the request can still be rejected with a proper status code
+        if (!log.tailerStarted()) {
+            throw new ServiceUnavailableException("At most " + TailTargetLog.MAX_TAILERS
+                    + " tailers can be active at the same time");
+        }
+        return out -> {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+            try {
+                tail(w, filter, log.nextSequence());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                log.tailerStopped();
+            }
+        };
     }
 
+    /** Writes events starting from the specified sequence number, until the remote end disconnects or falls behind. */
+    void tail(Writer w, Predicate<Event> filter, long cursor) throws IOException, InterruptedException {
+        long latestWrite = System.nanoTime();
+        boolean needsFlush = false;
+        for (;;) {
+            Event e = log.get(cursor);
+            if (e == null) {
+                long behind = log.nextSequence() - cursor;
+                if (behind > log.capacity()) { // the writer of our slot was lapped before it could finish
+                    writeLag(w, behind - log.capacity());
+                    return;
+                }
+                if (needsFlush) {
+                    w.flush();
+                    needsFlush = false;
+                } else if (System.nanoTime() - latestWrite > KEEP_ALIVE_NANOS) {
+                    // Also lets us find out if the remote end has gone away
+                    w.write(": keep-alive\n\n");
+                    w.flush();
+                    latestWrite = System.nanoTime();
+                }
+                Thread.sleep(POLL_MILLIS);
+            } else if (e.sequence != cursor) {
+                writeLag(w, e.sequence - cursor);
+                return;
+            } else {
+                if (filter.test(e)) {
+                    writeEvent(w, e);
+                    latestWrite = System.nanoTime();
+                    needsFlush = true;
+                }
+                cursor++;
+            }
+        }
+    }
 
-    @Path("/outgoing")
-    public void outcoming() {
+    static Predicate<Event> filter(Boolean incoming, List<String> clients, List<String> types, String area) {
+        Predicate<Event> p = e -> true;
+        if (incoming != null) {
+            p = p.and(e -> e.incoming == incoming.booleanValue());
+        }
+        if (clients != null && !clients.isEmpty()) {
+            Set<String> ids = new HashSet<>(clients);
+            p = p.and(e -> e.client != null && ids.contains(e.client.getId()));
+        }
+        if (types != null && !types.isEmpty()) {
+            Set<String> names = new HashSet<>(types);
+            p = p.and(e -> names.contains(e.message.getM().getClass().getSimpleName()));
+        }
+        if (area != null) {
+            Area a;
+            try {
+                a = Area.fromJSON(area);
+            } catch (RuntimeException e) {
+                throw new BadRequestException("Invalid area: " + area, e);
+            }
+            p = p.and(e -> {
+                PositionTime pt = e.client == null ? null : e.client.getLatestPositionAndTime();
+                return pt != null && a.contains(pt);
+            });
+        }
+        return p;
+    }
+
+    private static void writeEvent(Writer w, Event e) throws IOException {
+        w.write("id: ");
+        w.write(Long.toString(e.sequence));
+        w.write(e.incoming ? "\nevent: incoming\ndata: {\"time\":" : "\nevent: outgoing\ndata: {\"time\":");
+        w.write(Long.toString(e.timestamp));
+        w.write(",\"client\":");
+        w.write(e.client == null ? "null" : '"' + e.client.getId().replace("\"", "\\\"") + '"');
+        w.write(",\"type\":\"");
+        w.write(e.message.getM().getClass().getSimpleName());
+        w.write("\",\"message\":");
+        // Events cannot contain raw line breaks, so every line of the message must be prefixed with data:
+        w.write(e.message.getM().toJSON().replace("\n", "\ndata: "));
+        w.write("}\n\n");
+    }
 
+    private static void writeLag(Writer w, long missed) throws IOException {
+        w.write("event: lag\ndata: {\"missed\":");
+        w.write(Long.toString(missed));
+        w.write("}\n\n");
+        w.flush();
     }
 }
@@ -14,10 +14,173 @@
  */
 package net.maritimecloud.mms.server.rest;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.mms.server.ServerEventListener;
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.mms.server.connection.client.DefaultTransportListener;
+import net.maritimecloud.mms.server.connection.transport.ServerTransport;
+
 /**
+ * A fixed size ring buffer of the messages most recently sent and received by the server, read by {@link TailLogger}.
+ * <p>
+ * Messages are only recorded while at least one tailer is active, so the cost on the message path is a single volatile
+ * read when nobody is tailing. Recording a message never blocks: writers claim a slot with an atomic increment and
+ * overwrite whatever was there. Tailers that cannot keep up will find that the events they have not yet read have been
+ * overwritten, and are told how many events they lost.
+ * <p>
+ * Each tailer holds a request thread for as long as it is connected, so at most {@link #MAX_TAILERS} tailers can be
+ * active at the same time.
  *
  * @author Kasper Nielsen
  */
-public class TailTargetLog {
+public class TailTargetLog extends ServerEventListener {
+
+    /** The default number of events kept in the buffer. */
+    static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /** The maximum number of concurrent tailers. */
+    static final int MAX_TAILERS = 8;
+
+    /** The events. */
+    private final AtomicReferenceArray<Event> buffer;
+
+    /** The mask used to find the slot of a sequence number. */
+    private final int mask;
+
+    /** The sequence number of the next event. */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** The number of active tailers. */
+    private final AtomicInteger tailers = new AtomicInteger();
+
+    public TailTargetLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    TailTargetLog(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2, was " + capacity);
+        }
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the number of events kept in the buffer.
+     *
+     * @return the number of events kept in the buffer
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the event with the specified sequence number.
+     *
+     * @param sequence
+     *            the sequence number of the event
+     * @return the event, or null if it has not been written yet. If the event has been overwritten, the returned event
+     *         will have a higher sequence number than the one requested
+     */
+    Event get(long sequence) {
+        Event e = buffer.get((int) (sequence & mask));
+        return e == null || e.sequence < sequence ? null : e;
+    }
+
+    /**
+     * Returns the sequence number of the next event to be written.
+     *
+     * @return the sequence number of the next event to be written
+     */
+    long nextSequence() {
+        return sequence.get();
+    }
+
+    private void record(ServerTransport transport, MmsMessage message, boolean incoming) {
+        if (tailers.get() > 0) { // avoid looking up the client if nobody is tailing
+            Client client = transport.getAttachment(DefaultTransportListener.ATTACHMENT_CLIENT, Client.class);
+            record(client, message, incoming);
+        }
+    }
+
+    /**
+     * Records a message, if at least one tailer is active.
+     *
+     * @param client
+     *            the client the message was sent to or received from, or null if the client is not yet known
+     * @param message
+     *            the message
+     * @param incoming
+     *            whether the message was received or sent
+     */
+    void record(Client client, MmsMessage message, boolean incoming) {
+        if (tailers.get() > 0) {
+            long seq = sequence.getAndIncrement();
+            buffer.set((int) (seq & mask), new Event(seq, System.currentTimeMillis(), incoming, client, message));
+        }
+    }
+
+    /**
+     * Registers a new tailer. Events are recorded until {@link #tailerStopped()} has been called.
+     *
+     * @return true if the tailer was registered, or false if the maximum number of tailers are already active
+     */
+    boolean tailerStarted() {
+        for (;;) {
+            int current = tailers.get();
+            if (current >= MAX_TAILERS) {
+                return false;
+            } else if (tailers.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** Unregisters a tailer. */
+    void tailerStopped() {
+        tailers.decrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void transportMessageReceived(ServerTransport transport, MmsMessage message) {
+        record(transport, message, true);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void transportMessageSend(ServerTransport transport, MmsMessage message) {
+        record(transport, message, false);
+    }
+
+    /** A single message that was sent or received. The message is not serialized until it has been read by a tailer. */
+    static final class Event {
+
+        /** The client, or null if the client has not yet identified itself. */
+        final Client client;
+
+        /** Whether or not the message was received or sent. */
+        final boolean incoming;
+
+        /** The message. */
+        final MmsMessage message;
+
+        /** The sequence number of the event. */
+        final long sequence;
+
+        /** The time (epoch millis) of the event. */
+        final long timestamp;
 
+        Event(long sequence, long timestamp, boolean incoming, Client client, MmsMessage message) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.incoming = incoming;
+            this.client = client;
+            this.message = message;
+        }
+    }
 }
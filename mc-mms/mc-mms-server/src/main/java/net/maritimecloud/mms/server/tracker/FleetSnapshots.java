@@ -0,0 +1,247 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.tracker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.mms.server.connection.client.ClientManager;
+import net.maritimecloud.util.geometry.PositionTime;
+
+/**
+ * Takes snapshots of the latest position of every client and writes them in a compact columnar binary format. A
+ * snapshot only records references to the immutable {@link PositionTime} objects of each client, so taking one never
+ * blocks clients that are updating their position. The most recent snapshots are retained, so a consumer can ask for
+ * only the changes since a snapshot it has already received.
+ * <p>
+ * The format is as follows. All fixed width integers are big endian, varints are as in protobuf, and signed varints
+ * are zig-zag encoded. Positions are in units of 10<sup>-7</sup> degrees.
+ *
+ * <pre>
+ * magic          int32   0x4D434653 ("MCFS")
+ * version        byte    1
+ * snapshotId     int64   the id of this snapshot, to use as since for the next request
+ * baseId         int64   the snapshot the rows are relative to, 0 if this is a full snapshot
+ * timestamp      int64   the time the snapshot was taken (epoch millis)
+ * rows           int32   the number of rows
+ * ids            rows x (varint length, UTF-8 bytes)
+ * latitudes      rows x int32
+ * longitudes     rows x int32
+ * times          rows x signed varint, the first relative to timestamp, the rest relative to the previous row
+ * removed        int32   the number of clients in the base snapshot that are not in this snapshot
+ * removedIds     removed x (varint length, UTF-8 bytes)
+ * </pre>
+ *
+ * A full snapshot contains a row for every client with a position. An incremental snapshot contains a row for every
+ * client whose position or time has changed since the base snapshot, or that is new. If the requested base snapshot is no
+ * longer retained, a full snapshot is returned instead.
+ *
+ * @author Kasper Nielsen
+ */
+public class FleetSnapshots {
+
+    /** The magic number of the format. */
+    static final int MAGIC = 0x4D434653;
+
+    /** The number of snapshots to retain. */
+    static final int RETAINED = 16;
+
+    /** The units per degree. */
+    static final double UNITS_PER_DEGREE = 1e7;
+
+    /** The version of the format. */
+    static final byte VERSION = 1;
+
+    /** The client manager. */
+    private final ClientManager clientManager;
+
+    /** The id of the next snapshot. */
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /** The most recent snapshots. */
+    private final LinkedHashMap<Long, Snapshot> snapshots = new LinkedHashMap<Long, Snapshot>() {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<Long, Snapshot> eldest) {
+            return size() > RETAINED;
+        }
+    };
+
+    public FleetSnapshots(ClientManager clientManager) {
+        this.clientManager = requireNonNull(clientManager);
+    }
+
+    /**
+     * Takes a new snapshot.
+     *
+     * @return the new snapshot
+     */
+    public Snapshot take() {
+        ArrayList<Client> clients = new ArrayList<>();
+        ArrayList<PositionTime> positions = new ArrayList<>();
+        for (Client c : clientManager) {
+            PositionTime pt = c.getLatestPositionAndTime();
+            if (pt != null) {
+                clients.add(c);
+                positions.add(pt);
+            }
+        }
+        Snapshot s = new Snapshot(nextId.getAndIncrement(), System.currentTimeMillis(),
+                clients.toArray(new Client[clients.size()]), positions.toArray(new PositionTime[positions.size()]));
+        synchronized (snapshots) {
+            snapshots.put(s.id, s);
+        }
+        return s;
+    }
+
+    /**
+     * Takes a new snapshot and writes it to the specified stream.
+     *
+     * @param since
+     *            the id of a previous snapshot, if only changes since that snapshot should be written. Or 0 for a full
+     *            snapshot
+     * @param os
+     *            the stream to write to
+     * @throws IOException
+     *             if the snapshot could not be written
+     */
+    public void write(long since, OutputStream os) throws IOException {
+        Snapshot base;
+        synchronized (snapshots) {
+            base = since == 0 ? null : snapshots.get(since);
+        }
+        write(take(), base, os);
+    }
+
+    static void write(Snapshot s, Snapshot base, OutputStream os) throws IOException {
+        int[] rows;
+        List<String> removed = new ArrayList<>();
+        if (base == null) {
+            rows = new int[s.clients.length];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = i;
+            }
+        } else {
+            // Keyed by id, as a client that is reaped and reconnects is replaced by a new client with the same id
+            HashMap<String, PositionTime> previous = new HashMap<>(base.clients.length * 2);
+            for (int i = 0; i < base.clients.length; i++) {
+                previous.put(base.clients[i].getId(), base.positions[i]);
+            }
+            int count = 0;
+            rows = new int[s.clients.length];
+            for (int i = 0; i < s.clients.length; i++) {
+                // A client may be given a new but equal position, for example, when it reconnects
+                PositionTime p = previous.remove(s.clients[i].getId());
+                PositionTime pt = s.positions[i];
+                if (p == null || p != pt && (!p.positionEquals(pt) || p.getTime() != pt.getTime())) {
+                    rows[count++] = i;
+                }
+            }
+            rows = Arrays.copyOf(rows, count);
+            removed.addAll(previous.keySet());
+        }
+
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024));
+        dos.writeInt(MAGIC);
+        dos.writeByte(VERSION);
+        dos.writeLong(s.id);
+        dos.writeLong(base == null ? 0 : base.id);
+        dos.writeLong(s.timestamp);
+        dos.writeInt(rows.length);
+        for (int r : rows) {
+            writeString(dos, s.clients[r].getId());
+        }
+        for (int r : rows) {
+            dos.writeInt((int) Math.round(s.positions[r].getLatitude() * UNITS_PER_DEGREE));
+        }
+        for (int r : rows) {
+            dos.writeInt((int) Math.round(s.positions[r].getLongitude() * UNITS_PER_DEGREE));
+        }
+        long previousTime = s.timestamp;
+        for (int r : rows) {
+            long time = s.positions[r].getTime();
+            writeVarint(dos, zigZag(time - previousTime));
+            previousTime = time;
+        }
+        dos.writeInt(removed.size());
+        for (String id : removed) {
+            writeString(dos, id);
+        }
+        dos.flush();
+    }
+
+    private static void writeString(DataOutputStream dos, String s) throws IOException {
+        byte[] b = s.getBytes(UTF_8);
+        writeVarint(dos, b.length);
+        dos.write(b);
+    }
+
+    private static void writeVarint(DataOutputStream dos, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            dos.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        dos.writeByte((int) value);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /** A snapshot of the latest position of all clients. */
+    public static final class Snapshot {
+
+        /** The clients. */
+        final Client[] clients;
+
+        /** The id of the snapshot. */
+        final long id;
+
+        /** The position of each client. */
+        final PositionTime[] positions;
+
+        /** The time the snapshot was taken. */
+        final long timestamp;
+
+        Snapshot(long id, long timestamp, Client[] clients, PositionTime[] positions) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.clients = clients;
+            this.positions = positions;
+        }
+
+        /**
+         * Returns the id of the snapshot.
+         *
+         * @return the id of the snapshot
+         */
+        public long getId() {
+            return id;
+        }
+    }
+}
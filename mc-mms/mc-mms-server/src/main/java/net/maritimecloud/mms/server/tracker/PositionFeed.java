@@ -0,0 +1,249 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.tracker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.util.geometry.Position;
+import net.maritimecloud.util.geometry.PositionTime;
+
+/**
+ * A position updated handler that collects the changes within an area of interest and turns them into compact,
+ * delta-encoded binary batches. Multiple updates of the same object between two batches are conflated into one, and
+ * movements shorter than a configurable distance from the last position sent are not reported at all.
+ * <p>
+ * Each batch has the following format. All integers are unsigned varints (as in protobuf), unless marked as signed in
+ * which case they are zig-zag encoded varints. Positions are in units of 10<sup>-7</sup> degrees.
+ *
+ * <pre>
+ * batch  := length(bytes following) timestamp(epoch millis) count record*
+ * record := 0 index idLength id(UTF-8) signed:latitude signed:longitude signed:timeOffset   (entered)
+ *         | 1 index signed:deltaLatitude signed:deltaLongitude signed:timeOffset            (moved)
+ *         | 2 index                                                                       (left)
+ * </pre>
+ *
+ * The index is a small number assigned to an object when it enters, and used instead of the id for the rest of the
+ * stream. Indexes of objects that have left may be reused for objects that enter later. Deltas are relative to the
+ * last position sent for the object, and time offsets are relative to the timestamp of the batch. A batch with no
+ * records may be sent as a keep alive.
+ *
+ * @author Kasper Nielsen
+ */
+public class PositionFeed extends PositionUpdatedHandler {
+
+    static final byte ENTERED = 0;
+
+    static final byte LEFT = 2;
+
+    static final byte MOVED = 1;
+
+    /** The number of units per degree. */
+    static final double UNITS_PER_DEGREE = 1e7;
+
+    /** Objects with pending changes. */
+    private final List<Tracked> dirty = new ArrayList<>();
+
+    /** Indexes that can be reused. */
+    private final ArrayDeque<Integer> freeIndexes = new ArrayDeque<>();
+
+    /** Changes shorter than this distance (in meters) from the last position sent are not reported. */
+    private final double minDistance;
+
+    /** The next index to assign if there are no free indexes. */
+    private int nextIndex;
+
+    /** All objects that have been reported as entered but not yet as left, or that have pending changes. */
+    private final HashMap<Client, Tracked> tracked = new HashMap<>();
+
+    /**
+     * Creates a new feed.
+     *
+     * @param minDistance
+     *            movements shorter than this distance (in meters) from the last position sent are not reported
+     */
+    public PositionFeed(double minDistance) {
+        if (minDistance < 0) {
+            throw new IllegalArgumentException("minDistance must be non-negative, was " + minDistance);
+        }
+        this.minDistance = minDistance;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected synchronized void entering(Client t, PositionTime positiontime, EnterReason reasonForEntering) {
+        Tracked tr = tracked.get(t);
+        if (tr == null) {
+            tr = new Tracked(t, freeIndexes.isEmpty() ? nextIndex++ : freeIndexes.poll());
+            tracked.put(t, tr);
+            mark(tr, ENTERED, positiontime);
+        } else {
+            // Left and entered again before the leave was sent
+            mark(tr, tr.sent ? MOVED : ENTERED, positiontime);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected synchronized void exiting(Client t, LeaveReason reasonForEntering) {
+        Tracked tr = tracked.get(t);
+        if (tr != null) {
+            if (tr.sent) {
+                mark(tr, LEFT, null);
+            } else { // never reported, so just forget about it
+                dirty.remove(tr);
+                release(tr);
+            }
+        }
+    }
+
+    private void mark(Tracked tr, byte kind, PositionTime pt) {
+        if (tr.pendingKind < 0) {
+            dirty.add(tr);
+        }
+        tr.pendingKind = kind;
+        tr.pending = pt;
+    }
+
+    /**
+     * Returns a batch with all changes since the last batch.
+     *
+     * @param timestamp
+     *            the timestamp of the batch
+     * @param includeEmpty
+     *            whether or not to return a batch if there are no changes
+     * @return the batch, or null if there are no changes and {@code includeEmpty} is false
+     */
+    public synchronized byte[] nextBatch(long timestamp, boolean includeEmpty) {
+        if (dirty.isEmpty() && !includeEmpty) {
+            return null;
+        }
+        Buffer body = new Buffer();
+        body.writeVarint(timestamp);
+        body.writeVarint(dirty.size());
+        for (Tracked tr : dirty) {
+            body.write(tr.pendingKind);
+            body.writeVarint(tr.index);
+            if (tr.pendingKind == LEFT) {
+                release(tr);
+            } else {
+                int lat = (int) Math.round(tr.pending.getLatitude() * UNITS_PER_DEGREE);
+                int lon = (int) Math.round(tr.pending.getLongitude() * UNITS_PER_DEGREE);
+                if (tr.pendingKind == ENTERED) {
+                    byte[] id = tr.client.getId().getBytes(UTF_8);
+                    body.writeVarint(id.length);
+                    body.write(id, 0, id.length);
+                    body.writeSigned(lat);
+                    body.writeSigned(lon);
+                } else {
+                    body.writeSigned(lat - tr.latitude);
+                    body.writeSigned(lon - tr.longitude);
+                }
+                body.writeSigned(tr.pending.getTime() - timestamp);
+                tr.latitude = lat;
+                tr.longitude = lon;
+                tr.sentPosition = tr.pending;
+                tr.sent = true;
+            }
+            tr.pendingKind = -1;
+            tr.pending = null;
+        }
+        dirty.clear();
+
+        Buffer batch = new Buffer();
+        batch.writeVarint(body.size());
+        body.appendTo(batch);
+        return batch.toByteArray();
+    }
+
+    private void release(Tracked tr) {
+        tracked.remove(tr.client);
+        freeIndexes.add(tr.index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected synchronized void updated(Client t, PositionTime previous, PositionTime current) {
+        Tracked tr = tracked.get(t);
+        if (tr == null) {
+            entering(t, current, EnterReason.ENTERED_AREA);
+        } else if (tr.pendingKind == ENTERED || !tr.sent) {
+            tr.pending = current; // not sent yet, just use the latest position
+        } else if (tr.sentPosition.geodesicDistanceTo(current) >= minDistance) {
+            mark(tr, MOVED, current);
+        } else if (tr.pendingKind == MOVED) {
+            // Moved back within range of the last position sent
+            dirty.remove(tr);
+            tr.pendingKind = -1;
+            tr.pending = null;
+        }
+    }
+
+    /** A byte array output stream with varint support. */
+    static final class Buffer extends ByteArrayOutputStream {
+
+        void appendTo(Buffer other) {
+            other.write(buf, 0, count);
+        }
+
+        void writeSigned(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+    }
+
+    /** The state of a single object. */
+    static final class Tracked {
+
+        /** The tracked client. */
+        final Client client;
+
+        /** The index of the object in the stream. */
+        final int index;
+
+        /** The latitude and longitude last sent in 10^-7 degrees. */
+        int latitude, longitude;
+
+        /** The position to send with the next batch. */
+        PositionTime pending;
+
+        /** The kind of record to send with the next batch, or -1 if there are no pending changes. */
+        byte pendingKind = -1;
+
+        /** Whether or not the object has been reported as entered. */
+        boolean sent;
+
+        /** The position that was last sent. */
+        Position sentPosition;
+
+        Tracked(Client client, int index) {
+            this.client = client;
+            this.index = index;
+        }
+    }
+}
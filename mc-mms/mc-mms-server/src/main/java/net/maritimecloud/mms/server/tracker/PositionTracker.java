@@ -77,9 +77,11 @@ public class PositionTracker {
 
         // We only want to process those that have been updated since last time
         final ConcurrentHashMap<Client, PositionTime> updates = new ConcurrentHashMap<>();
+        // Positions are extrapolated between reports for clients that report their course and speed
+        long now = System.currentTimeMillis();
         clientManager.forEach(pt -> {
             PositionTime p = latest.get(pt);
-            PositionTime currentPt = pt.getLatestPositionAndTime();
+            PositionTime currentPt = pt.getEstimatedPositionAndTime(now);
             if (p == null || !p.positionEquals(currentPt)) {
                 updates.put(pt, currentPt);
             }
@@ -102,8 +104,9 @@ public class PositionTracker {
     public void forEachWithinArea(Area shape, BiConsumer<Client, PositionTime> block) {
         requireNonNull(shape, "shape is null");
         requireNonNull(block, "block is null");
+        long now = System.currentTimeMillis();
         clientManager.forEach(c -> {
-            PositionTime pt = c.getLatestPositionAndTime();
+            PositionTime pt = c.getEstimatedPositionAndTime(now);
             if (shape.contains(pt)) {
                 block.accept(c, pt);
             }
@@ -166,6 +169,26 @@ public class PositionTracker {
      * @return a subscription object
      */
     public Subscription subscribe(Area area, PositionUpdatedHandler handler, double slack) {
+        return subscribe(area, handler, slack, false);
+    }
+
+    /**
+     * Subscribes to changes in the specified area.
+     *
+     * @param area
+     *            the area to monitor
+     * @param handler
+     *            a subscription that can be used to cancel the subscription
+     * @param slack
+     *            is the precision in meters with which we want to report entering/exiting messages. We use it to avoid
+     *            situations where a boat sails on a boundary line and keeps changing from being inside to outside of it
+     * @param includeCurrent
+     *            whether or not objects that are already within the area should be reported as entering (with
+     *            {@link PositionUpdatedHandler.EnterReason#CONNECTED}). Otherwise objects that do not move are never
+     *            reported
+     * @return a subscription object
+     */
+    public Subscription subscribe(Area area, PositionUpdatedHandler handler, double slack, boolean includeCurrent) {
         Area exitShape = requireNonNull(area, "area is null");
         if (slack < 0) {
             throw new IllegalArgumentException("Slack must be non-negative, was " + slack);
@@ -182,6 +205,9 @@ public class PositionTracker {
         if (subscriptions.putIfAbsent(handler, s) != null) {
             throw new IllegalArgumentException("The specified handler has already been registered");
         }
+        if (includeCurrent) {
+            s.addCurrent();
+        }
         return s;
     }
 }
@@ -63,6 +63,15 @@ public class Subscription {
         }
     }
 
+    /** Starts tracking all objects that are currently within the area of interest. */
+    synchronized void addCurrent() {
+        tracker.forEachWithinArea(shapeEntering, (t, pt) -> {
+            if (trackedObjects.putIfAbsent(t, pt) == null) {
+                handler.entering(t, pt, PositionUpdatedHandler.EnterReason.CONNECTED);
+            }
+        });
+    }
+
     /**
      * Performs the given consumer for each tracked object in parallel.
      *
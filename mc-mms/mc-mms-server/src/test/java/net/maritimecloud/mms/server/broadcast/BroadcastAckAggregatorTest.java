@@ -0,0 +1,137 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.broadcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.internal.net.messages.BroadcastAck;
+import net.maritimecloud.internal.net.messages.BroadcastAckBatch;
+import net.maritimecloud.message.Message;
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.mms.server.connection.client.ClientManager;
+import net.maritimecloud.server.AbstractServerConnectionTest;
+import net.maritimecloud.util.Binary;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests {@link BroadcastAckAggregator}.
+ *
+ * @author Kasper Nielsen
+ */
+public class BroadcastAckAggregatorTest extends AbstractServerConnectionTest {
+
+    static final Binary BROADCAST_ID = Binary.copyFromUtf8("broadcast");
+
+    final ScheduledThreadPoolExecutor ses = new ScheduledThreadPoolExecutor(1);
+
+    final BlockingQueue<Message> sent = new LinkedBlockingQueue<>();
+
+    @After
+    public void shutdownScheduler() {
+        ses.shutdownNow();
+    }
+
+    BroadcastAckAggregator aggregator(boolean supportsBatches) {
+        return new BroadcastAckAggregator(ses) {
+            void send(Client client, Message message) {
+                sent.add(message);
+            }
+
+            boolean supportsBatches(Client client) {
+                return supportsBatches;
+            }
+        };
+    }
+
+    Client sender() {
+        return new Client(server.getService(ClientManager.class), null, ID1.toString());
+    }
+
+    static BroadcastAck ack(int i) {
+        return new BroadcastAck().setReceiverId("mmsi:" + i);
+    }
+
+    Message next() throws InterruptedException {
+        return sent.poll(5, TimeUnit.SECONDS);
+    }
+
+    /** A single ack within a window is sent as a plain ack. */
+    @Test
+    public void singleAck() throws Exception {
+        aggregator(true).add(sender(), BROADCAST_ID, ack(1));
+        BroadcastAck a = (BroadcastAck) next();
+        assertEquals(BROADCAST_ID, a.getAckForMessageId());
+        assertEquals("mmsi:1", a.getReceiverId());
+        assertNull(sent.poll(2 * BroadcastAckAggregator.WINDOW_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    /** Acks received within a window are sent together when the window closes. */
+    @Test
+    public void windowFlush() throws Exception {
+        BroadcastAckAggregator a = aggregator(true);
+        Client c = sender();
+        for (int i = 0; i < 3; i++) {
+            a.add(c, BROADCAST_ID, ack(i));
+        }
+        assertTrue(sent.isEmpty()); // not until the window closes
+        BroadcastAckBatch b = (BroadcastAckBatch) next();
+        assertEquals(BROADCAST_ID, b.getAckForMessageId());
+        assertEquals(3, b.getAcks().size());
+        assertEquals("mmsi:2", b.getAcks().get(2).getReceiverId());
+        assertNull(sent.poll(2 * BroadcastAckAggregator.WINDOW_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    /** A full batch is sent immediately, and later acks start a new batch. */
+    @Test
+    public void maxBatchSize() throws Exception {
+        BroadcastAckAggregator a = aggregator(true);
+        Client c = sender();
+        for (int i = 0; i < BroadcastAckAggregator.MAX_BATCH_SIZE; i++) {
+            a.add(c, BROADCAST_ID, ack(i));
+        }
+        BroadcastAckBatch b = (BroadcastAckBatch) sent.poll(); // sent by the thread adding the last ack
+        assertEquals(BroadcastAckAggregator.MAX_BATCH_SIZE, b.getAcks().size());
+
+        a.add(c, BROADCAST_ID, ack(1000));
+        BroadcastAck single = (BroadcastAck) next();
+        assertEquals("mmsi:1000", single.getReceiverId());
+        assertNull(sent.poll(2 * BroadcastAckAggregator.WINDOW_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    /** Clients that do not support batches receive each ack separately. */
+    @Test
+    public void noBatchesForOldClients() throws Exception {
+        BroadcastAckAggregator a = aggregator(false);
+        Client c = sender();
+        for (int i = 0; i < 3; i++) {
+            a.add(c, BROADCAST_ID, ack(i));
+        }
+        for (int i = 0; i < 3; i++) {
+            BroadcastAck ack = (BroadcastAck) next();
+            assertEquals(BROADCAST_ID, ack.getAckForMessageId());
+            assertEquals("mmsi:" + i, ack.getReceiverId());
+        }
+        assertNull(sent.poll(2 * BroadcastAckAggregator.WINDOW_MILLIS, TimeUnit.MILLISECONDS));
+    }
+}
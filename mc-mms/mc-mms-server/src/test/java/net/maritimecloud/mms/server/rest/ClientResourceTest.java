@@ -0,0 +1,145 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.BadRequestException;
+
+import net.maritimecloud.core.id.MaritimeId;
+import net.maritimecloud.mms.server.connection.client.ClientManager;
+import net.maritimecloud.server.AbstractServerConnectionTest;
+
+import org.junit.Test;
+
+/**
+ * Tests the paginated client listing of {@link ClientResource}.
+ *
+ * @author Kasper Nielsen
+ */
+public class ClientResourceTest extends AbstractServerConnectionTest {
+
+    static final Pattern ID = Pattern.compile("\\{\"id\":\"([^\"]*)\"\\}");
+
+    static final Pattern NEXT_CURSOR = Pattern.compile("\"nextCursor\":(?:null|\"([^\"]*)\")\\}$");
+
+    /** Connects clients with ids mmsi:from to mmsi:to (exclusive), stepping by step, and returns their ids. */
+    List<String> connect(int from, int to, int step) throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i += step) {
+            MaritimeId id = MaritimeId.create("mmsi:" + i);
+            newClient(id);
+            ids.add(id.toString());
+        }
+        return ids;
+    }
+
+    Page page(String cursor, int limit) throws Exception {
+        ClientResource r = new ClientResource(server.getService(ClientManager.class));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        r.page(cursor, limit, Arrays.asList("id"), null, null, null).write(bos);
+        return new Page(new String(bos.toByteArray(), UTF_8));
+    }
+
+    /** Pages through all clients, and returns the ids in the order they were returned. */
+    List<String> pageAll(int limit) throws Exception {
+        List<String> result = new ArrayList<>();
+        Page p = page(null, limit);
+        result.addAll(p.ids);
+        while (p.nextCursor != null) {
+            assertEquals(limit, p.ids.size());
+            p = page(p.nextCursor, limit);
+            result.addAll(p.ids);
+        }
+        return result;
+    }
+
+    @Test
+    public void paging() throws Exception {
+        List<String> ids = connect(100, 110, 1);
+        assertEquals(ids, pageAll(3)); // 4 pages, the last one with a single client
+        assertEquals(ids, pageAll(5)); // the second page is full, but there are no more
+        assertEquals(ids, pageAll(10));
+        assertEquals(ids, pageAll(1000));
+
+        Page p = page(ids.get(9), 5);
+        assertEquals(Collections.emptyList(), p.ids);
+        assertNull(p.nextCursor);
+    }
+
+    /** Tests that clients connecting while paging neither cause duplicates nor gaps. */
+    @Test
+    public void interleavedInserts() throws Exception {
+        List<String> expected = new ArrayList<>(connect(100, 120, 2));
+
+        Page p1 = page(null, 4);
+        assertEquals(expected.subList(0, 4), p1.ids);
+        assertEquals("mmsi:106", p1.nextCursor);
+        connect(101, 102, 1); // before the cursor, not on any of the following pages
+        expected.addAll(connect(111, 112, 1)); // after the cursor
+
+        Page p2 = page(p1.nextCursor, 4);
+        assertEquals(Arrays.asList("mmsi:108", "mmsi:110", "mmsi:111", "mmsi:112"), p2.ids);
+        connect(109, 110, 1);
+        expected.addAll(connect(119, 120, 1));
+
+        Page p3 = page(p2.nextCursor, 4);
+        assertEquals(Arrays.asList("mmsi:114", "mmsi:116", "mmsi:118", "mmsi:119"), p3.ids);
+        assertNull(p3.nextCursor);
+
+        List<String> all = new ArrayList<>();
+        all.addAll(p1.ids);
+        all.addAll(p2.ids);
+        all.addAll(p3.ids);
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).compareTo(all.get(i)) < 0);
+        }
+        Collections.sort(expected);
+        assertEquals(expected, all);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void limitTooLarge() throws Exception {
+        page(null, ClientResource.MAX_LIMIT + 1);
+    }
+
+    /** A page parsed from its JSON representation. */
+    static class Page {
+
+        final List<String> ids = new ArrayList<>();
+
+        final String nextCursor;
+
+        Page(String json) {
+            for (Matcher m = ID.matcher(json); m.find();) {
+                ids.add(m.group(1));
+            }
+            Matcher m = NEXT_CURSOR.matcher(json);
+            assertTrue(json, m.find());
+            nextCursor = m.group(1);
+        }
+    }
+}
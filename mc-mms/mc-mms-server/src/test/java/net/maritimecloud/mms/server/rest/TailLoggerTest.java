@@ -0,0 +1,180 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import javax.ws.rs.ServiceUnavailableException;
+
+import net.maritimecloud.internal.mms.messages.PositionReport;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.net.messages.Broadcast;
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.mms.server.connection.client.ClientManager;
+import net.maritimecloud.mms.server.rest.TailTargetLog.Event;
+import net.maritimecloud.server.AbstractServerConnectionTest;
+import net.maritimecloud.util.geometry.Circle;
+import net.maritimecloud.util.geometry.Position;
+import net.maritimecloud.util.geometry.PositionTime;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TailTargetLog} and {@link TailLogger}.
+ *
+ * @author Kasper Nielsen
+ */
+public class TailLoggerTest extends AbstractServerConnectionTest {
+
+    static final MmsMessage BROADCAST = new MmsMessage(new Broadcast().setBroadcastType("foo"));
+
+    static final MmsMessage POSITION_REPORT = new MmsMessage(new PositionReport().setPositionTime(PositionTime
+            .create(1, 1, 1)));
+
+    Client client(double latitude, double longitude) throws Exception {
+        newClient(ID1, latitude, longitude);
+        return server.getService(ClientManager.class).get(ID1);
+    }
+
+    /** Tests that messages are only recorded while at least one tailer is active. */
+    @Test
+    public void recordOnlyWhileTailing() {
+        TailTargetLog log = new TailTargetLog(8);
+        log.record(null, BROADCAST, true);
+        assertEquals(0, log.nextSequence());
+        assertNull(log.get(0));
+
+        assertTrue(log.tailerStarted());
+        log.record(null, BROADCAST, true);
+        log.record(null, POSITION_REPORT, false);
+        assertEquals(2, log.nextSequence());
+        assertEquals(0, log.get(0).sequence);
+        assertTrue(log.get(0).incoming);
+        assertFalse(log.get(1).incoming);
+
+        log.tailerStopped();
+        log.record(null, BROADCAST, true);
+        assertEquals(2, log.nextSequence());
+    }
+
+    @Test
+    public void maxTailers() {
+        TailTargetLog log = new TailTargetLog(8);
+        TailLogger tl = new TailLogger(log);
+        for (int i = 0; i < TailTargetLog.MAX_TAILERS; i++) {
+            assertNotNull(tl.all(null, null, null));
+        }
+        try {
+            tl.all(null, null, null);
+            throw new AssertionError("Expected too many tailers");
+        } catch (ServiceUnavailableException ok) {}
+        log.tailerStopped();
+        assertNotNull(tl.incoming(null, null, null));
+    }
+
+    @Test
+    public void filters() throws Exception {
+        Client c = client(1, 1);
+        Event in = new Event(0, 0, true, c, BROADCAST);
+        Event out = new Event(1, 0, false, c, POSITION_REPORT);
+        Event anonymous = new Event(2, 0, true, null, BROADCAST);
+
+        Predicate<Event> all = TailLogger.filter(null, null, null, null);
+        assertTrue(all.test(in) && all.test(out) && all.test(anonymous));
+
+        Predicate<Event> incoming = TailLogger.filter(true, null, null, null);
+        assertTrue(incoming.test(in));
+        assertFalse(incoming.test(out));
+
+        Predicate<Event> byClient = TailLogger.filter(null, Arrays.asList(ID1.toString()), null, null);
+        assertTrue(byClient.test(in));
+        assertFalse(byClient.test(anonymous));
+        assertFalse(TailLogger.filter(null, Arrays.asList(ID2.toString()), null, null).test(in));
+
+        Predicate<Event> byType = TailLogger.filter(null, null, Arrays.asList("PositionReport", "Hello"), null);
+        assertFalse(byType.test(in));
+        assertTrue(byType.test(out));
+
+        Predicate<Event> inside = TailLogger.filter(null, null, null, Circle.create(Position.create(1, 1), 1000)
+                .toJSON());
+        assertTrue(inside.test(in));
+        assertFalse(inside.test(anonymous)); // no position
+        assertFalse(TailLogger.filter(null, null, null, Circle.create(Position.create(50, 50), 1000).toJSON())
+                .test(in));
+
+        // All filters must match
+        assertFalse(TailLogger.filter(true, Arrays.asList(ID1.toString()), Arrays.asList("PositionReport"), null)
+                .test(out));
+        assertTrue(TailLogger.filter(false, Arrays.asList(ID1.toString()), Arrays.asList("PositionReport"), null)
+                .test(out));
+    }
+
+    /** Tests that a tailer that falls more than the capacity behind gets a lag event, after which tailing stops. */
+    @Test
+    public void lag() throws Exception {
+        TailTargetLog log = new TailTargetLog(8);
+        assertTrue(log.tailerStarted());
+        log.record(null, BROADCAST, true);
+
+        // Blocks while writing the first event, until the log has been lapped
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch lapped = new CountDownLatch(1);
+        StringWriter w = new StringWriter() {
+            public void write(String str) {
+                if (writing.getCount() > 0) {
+                    writing.countDown();
+                    try {
+                        lapped.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                super.write(str);
+            }
+        };
+        Thread t = new Thread(() -> {
+            try {
+                new TailLogger(log).tail(w, e -> true, 0);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        t.start();
+
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 20; i++) {
+            log.record(null, BROADCAST, true);
+        }
+        lapped.countDown();
+        t.join(5000);
+        assertFalse(t.isAlive());
+
+        // Event 0 was written, event 1 has been overwritten by event 17
+        String s = w.toString();
+        assertTrue(s, s.startsWith("id: 0\nevent: incoming\n"));
+        assertTrue(s, s.endsWith("event: lag\ndata: {\"missed\":16}\n\n"));
+        assertEquals(s, 1, s.split("event: incoming").length - 1);
+    }
+}
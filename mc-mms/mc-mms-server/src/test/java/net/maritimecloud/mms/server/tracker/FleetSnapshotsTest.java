@@ -0,0 +1,270 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.tracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import net.maritimecloud.core.id.MaritimeId;
+import net.maritimecloud.internal.mms.messages.Connected;
+import net.maritimecloud.internal.mms.messages.Hello;
+import net.maritimecloud.internal.mms.messages.PositionReport;
+import net.maritimecloud.internal.mms.messages.Welcome;
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.mms.server.connection.client.ClientManager;
+import net.maritimecloud.net.mms.MmsConnectionClosingCode;
+import net.maritimecloud.server.AbstractServerConnectionTest;
+import net.maritimecloud.server.TesstEndpoint;
+import net.maritimecloud.util.geometry.PositionTime;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link FleetSnapshots}.
+ *
+ * @author Kasper Nielsen
+ */
+public class FleetSnapshotsTest extends AbstractServerConnectionTest {
+
+    static final PositionTime PT1 = PositionTime.create(1.5, 2.5, 1_000_000);
+
+    static final PositionTime PT2 = PositionTime.create(-3.25, -4.75, 999_000);
+
+    FleetSnapshots snapshots() {
+        return server.getService(FleetSnapshots.class);
+    }
+
+    TesstEndpoint connect(MaritimeId id, PositionTime pt) throws Exception {
+        TesstEndpoint t = newClient();
+        t.take(Welcome.class);
+        t.send(new Hello().setClientId(id.toString()).setLastReceivedMessageId(0L).setPositionTime(pt));
+        t.take(Connected.class);
+        return t;
+    }
+
+    Decoded write(long since) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        snapshots().write(since, bos);
+        return new Decoded(bos.toByteArray());
+    }
+
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void full() throws Exception {
+        connect(ID1, PT1);
+        connect(ID2, PT2);
+
+        Decoded d = write(0);
+        assertEquals(0, d.baseId);
+        assertEquals(2, d.rows.size());
+        assertEquals(PT1, d.rows.get(ID1.toString()));
+        assertEquals(PT2, d.rows.get(ID2.toString()));
+        assertEquals(Collections.emptyList(), d.removed);
+
+        // A full snapshot is written no matter what has changed
+        Decoded d2 = write(0);
+        assertTrue(d2.snapshotId > d.snapshotId);
+        assertEquals(d.rows, d2.rows);
+    }
+
+    @Test
+    public void incremental() throws Exception {
+        TesstEndpoint c1 = connect(ID1, PT1);
+        connect(ID2, PT2);
+        Decoded d1 = write(0);
+
+        PositionTime pt = PositionTime.create(1.75, 2.5, PT1.getTime() + 1000);
+        c1.send(new PositionReport().setPositionTime(pt));
+        ClientManager cm = server.getService(ClientManager.class);
+        await(() -> pt.equals(cm.get(ID1).getLatestPositionAndTime()));
+
+        Decoded d2 = write(d1.snapshotId);
+        assertEquals(d1.snapshotId, d2.baseId);
+        assertEquals(Collections.singletonMap(ID1.toString(), pt), d2.rows);
+        assertEquals(Collections.emptyList(), d2.removed);
+
+        Decoded d3 = write(d2.snapshotId);
+        assertEquals(d2.snapshotId, d3.baseId);
+        assertEquals(Collections.emptyMap(), d3.rows);
+    }
+
+    /** Tests that a client that reconnects with the same position is not included in an incremental snapshot. */
+    @Test
+    public void reconnectWithSamePosition() throws Exception {
+        TesstEndpoint c1 = connect(ID1, PT1);
+        connect(ID2, PT2);
+        Decoded d1 = write(0);
+
+        ClientManager cm = server.getService(ClientManager.class);
+        c1.close();
+        c1.awaitClosed();
+        await(() -> !cm.get(ID1).isConnected());
+        connect(ID1, PositionTime.create(PT1.getLatitude(), PT1.getLongitude(), PT1.getTime()));
+
+        Decoded d2 = write(d1.snapshotId);
+        assertEquals(d1.snapshotId, d2.baseId);
+        assertEquals(Collections.emptyMap(), d2.rows);
+    }
+
+    /** Tests that a full snapshot is written if the requested base snapshot is no longer retained. */
+    @Test
+    public void baseNoLongerRetained() throws Exception {
+        connect(ID1, PT1);
+        connect(ID2, PT2);
+        Decoded d1 = write(0);
+        for (int i = 0; i < FleetSnapshots.RETAINED - 1; i++) {
+            snapshots().take();
+        }
+        // d1 is the oldest retained snapshot, and is evicted when the new snapshot is taken
+        Decoded d2 = write(d1.snapshotId);
+        assertEquals(d1.snapshotId, d2.baseId);
+        assertEquals(Collections.emptyMap(), d2.rows);
+
+        Decoded d3 = write(d1.snapshotId);
+        assertEquals(0, d3.baseId);
+        assertEquals(d1.rows, d3.rows);
+
+        // Unknown snapshots are treated the same way
+        assertEquals(0, write(d3.snapshotId + 1000).baseId);
+    }
+
+    @Test
+    public void removed() throws Exception {
+        connect(ID1, PT1);
+        TesstEndpoint c2 = connect(ID2, PT2);
+        Decoded d1 = write(0);
+
+        ClientManager cm = server.getService(ClientManager.class);
+        cm.get(ID2).close(MmsConnectionClosingCode.NORMAL);
+        c2.awaitClosed();
+        await(() -> cm.get(ID2) == null);
+
+        Decoded d2 = write(d1.snapshotId);
+        assertEquals(Collections.emptyMap(), d2.rows);
+        assertEquals(Collections.singletonList(ID2.toString()), d2.removed);
+
+        assertEquals(Collections.emptyList(), write(d2.snapshotId).removed);
+        assertEquals(Collections.singleton(ID1.toString()), write(0).rows.keySet());
+    }
+
+    /**
+     * Tests that a client that is removed and connects again with the same id is written as a row, and not as removed.
+     */
+    @Test
+    public void replaced() throws Exception {
+        connect(ID1, PT1);
+        TesstEndpoint c2 = connect(ID2, PT2);
+        Decoded d1 = write(0);
+
+        ClientManager cm = server.getService(ClientManager.class);
+        Client old = cm.get(ID2);
+        old.close(MmsConnectionClosingCode.NORMAL);
+        c2.awaitClosed();
+        await(() -> cm.get(ID2) == null);
+
+        PositionTime pt = PositionTime.create(-3.5, -4.75, PT2.getTime() + 1000);
+        connect(ID2, pt);
+        assertTrue(old != cm.get(ID2));
+
+        Decoded d2 = write(d1.snapshotId);
+        assertEquals(d1.snapshotId, d2.baseId);
+        assertEquals(Collections.singletonMap(ID2.toString(), pt), d2.rows);
+        assertEquals(Collections.emptyList(), d2.removed);
+    }
+
+    /** A decoded snapshot. */
+    static class Decoded {
+
+        final long baseId;
+
+        final List<String> removed = new ArrayList<>();
+
+        final Map<String, PositionTime> rows = new LinkedHashMap<>();
+
+        final long snapshotId;
+
+        final long timestamp;
+
+        Decoded(byte[] bytes) throws IOException {
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
+            assertEquals(FleetSnapshots.MAGIC, dis.readInt());
+            assertEquals(FleetSnapshots.VERSION, dis.readByte());
+            snapshotId = dis.readLong();
+            baseId = dis.readLong();
+            timestamp = dis.readLong();
+            int count = dis.readInt();
+            String[] ids = new String[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = readString(dis);
+            }
+            int[] latitudes = new int[count];
+            for (int i = 0; i < count; i++) {
+                latitudes[i] = dis.readInt();
+            }
+            int[] longitudes = new int[count];
+            for (int i = 0; i < count; i++) {
+                longitudes[i] = dis.readInt();
+            }
+            long time = timestamp;
+            for (int i = 0; i < count; i++) {
+                long v = readVarint(dis);
+                time += (v >>> 1) ^ -(v & 1);
+                rows.put(ids[i], PositionTime.create(latitudes[i] / FleetSnapshots.UNITS_PER_DEGREE, longitudes[i]
+                        / FleetSnapshots.UNITS_PER_DEGREE, time));
+            }
+            for (int i = dis.readInt(); i > 0; i--) {
+                removed.add(readString(dis));
+            }
+            assertEquals(-1, dis.read());
+        }
+
+        static String readString(DataInputStream dis) throws IOException {
+            byte[] b = new byte[(int) readVarint(dis)];
+            dis.readFully(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        static long readVarint(DataInputStream dis) throws IOException {
+            long result = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = dis.readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.server.tracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.mms.server.connection.client.ClientManager;
+import net.maritimecloud.mms.server.tracker.PositionUpdatedHandler.EnterReason;
+import net.maritimecloud.mms.server.tracker.PositionUpdatedHandler.LeaveReason;
+import net.maritimecloud.server.AbstractServerConnectionTest;
+import net.maritimecloud.util.geometry.PositionTime;
+
+import org.junit.Test;
+
+/**
+ * Tests that batches written by {@link PositionFeed} can be decoded into the positions that were reported.
+ *
+ * @author Kasper Nielsen
+ */
+public class PositionFeedTest extends AbstractServerConnectionTest {
+
+    static final long T = 1_000_000;
+
+    final Decoder decoder = new Decoder();
+
+    Client client(String id) {
+        return new Client(server.getService(ClientManager.class), null, id);
+    }
+
+    /** Writes the next batch, and decodes it. */
+    void next(PositionFeed feed, long timestamp) {
+        decoder.decode(feed.nextBatch(timestamp, true));
+    }
+
+    @Test
+    public void roundTrip() {
+        PositionFeed feed = new PositionFeed(0);
+        Client c1 = client("mmsi:1");
+        Client c2 = client("mmsi:2");
+        PositionTime p1 = PositionTime.create(55.5, 12.25, T);
+        PositionTime p2 = PositionTime.create(-33.875, -70.625, T - 500);
+        feed.entering(c1, p1, EnterReason.CONNECTED);
+        feed.entering(c2, p2, EnterReason.ENTERED_AREA);
+
+        next(feed, T);
+        assertEquals(Arrays.asList(PositionFeed.ENTERED, PositionFeed.ENTERED), decoder.kinds);
+        assertEquals(p1, decoder.positions.get("mmsi:1"));
+        assertEquals(p2, decoder.positions.get("mmsi:2")); // negative coordinates and time offset
+
+        // Negative deltas in both latitude and longitude, and a time before the timestamp of the batch
+        PositionTime p1b = PositionTime.create(55.25, 12.0625, T + 1000);
+        PositionTime p2b = PositionTime.create(-34.5, -71.25, T + 1500);
+        feed.updated(c1, p1, p1b);
+        feed.updated(c2, p2, p2b);
+        next(feed, T + 2000);
+        assertEquals(Arrays.asList(PositionFeed.MOVED, PositionFeed.MOVED), decoder.kinds);
+        assertEquals(p1b, decoder.positions.get("mmsi:1"));
+        assertEquals(p2b, decoder.positions.get("mmsi:2"));
+
+        // Positive deltas, crossing the equator and the prime meridian
+        PositionTime p2c = PositionTime.create(0.125, 0.5, T + 3000);
+        feed.updated(c2, p2b, p2c);
+        next(feed, T + 3000);
+        assertEquals(Arrays.asList(PositionFeed.MOVED), decoder.kinds);
+        assertEquals(p2c, decoder.positions.get("mmsi:2"));
+        assertEquals(p1b, decoder.positions.get("mmsi:1"));
+    }
+
+    /** Tests that multiple updates between two batches are conflated into a single record. */
+    @Test
+    public void conflated() {
+        PositionFeed feed = new PositionFeed(0);
+        Client c1 = client("mmsi:1");
+        PositionTime p1 = PositionTime.create(10, 10, T);
+        PositionTime p2 = PositionTime.create(10.5, 10.5, T + 1);
+        PositionTime p3 = PositionTime.create(9.75, 9.75, T + 2);
+        feed.entering(c1, p1, EnterReason.CONNECTED);
+        feed.updated(c1, p1, p2);
+        next(feed, T);
+        assertEquals(Arrays.asList(PositionFeed.ENTERED), decoder.kinds);
+        assertEquals(p2, decoder.positions.get("mmsi:1"));
+
+        feed.updated(c1, p2, p1);
+        feed.updated(c1, p1, p3);
+        next(feed, T + 10);
+        assertEquals(Arrays.asList(PositionFeed.MOVED), decoder.kinds);
+        assertEquals(p3, decoder.positions.get("mmsi:1"));
+    }
+
+    /** Tests that movements shorter than the minimum distance from the last position sent are not reported. */
+    @Test
+    public void minDistance() {
+        PositionFeed feed = new PositionFeed(100);
+        Client c1 = client("mmsi:1");
+        PositionTime p1 = PositionTime.create(55, 12, T);
+        PositionTime near = PositionTime.create(55.0001, 12, T + 1); // ~11 meters
+        PositionTime far = PositionTime.create(55.01, 12, T + 2); // ~1.1 kilometers
+        feed.entering(c1, p1, EnterReason.CONNECTED);
+        next(feed, T);
+
+        feed.updated(c1, p1, near);
+        assertNull(feed.nextBatch(T + 1, false));
+
+        // Moving back within range of the last position sent cancels the pending movement
+        feed.updated(c1, near, far);
+        feed.updated(c1, far, near);
+        assertNull(feed.nextBatch(T + 2, false));
+
+        feed.updated(c1, near, far);
+        next(feed, T + 3);
+        assertEquals(far, decoder.positions.get("mmsi:1"));
+    }
+
+    @Test
+    public void leftAndIndexReused() {
+        PositionFeed feed = new PositionFeed(0);
+        Client c1 = client("mmsi:1");
+        Client c2 = client("mmsi:2");
+        PositionTime p1 = PositionTime.create(1, 2, T);
+        PositionTime p2 = PositionTime.create(-3, -4, T);
+        feed.entering(c1, p1, EnterReason.CONNECTED);
+        next(feed, T);
+        long index = decoder.indexes.get(0);
+
+        feed.exiting(c1, LeaveReason.DISCONNECTED);
+        next(feed, T + 1);
+        assertEquals(Arrays.asList(PositionFeed.LEFT), decoder.kinds);
+        assertEquals(Arrays.asList(index), decoder.indexes);
+        assertEquals(0, decoder.positions.size());
+
+        feed.entering(c2, p2, EnterReason.CONNECTED);
+        next(feed, T + 2);
+        assertEquals(Arrays.asList(index), decoder.indexes); // the index of c1 is reused
+        assertEquals(p2, decoder.positions.get("mmsi:2"));
+    }
+
+    /** Tests that an object that enters and leaves between two batches is never reported. */
+    @Test
+    public void enteredAndLeft() {
+        PositionFeed feed = new PositionFeed(0);
+        Client c1 = client("mmsi:1");
+        feed.entering(c1, PositionTime.create(1, 2, T), EnterReason.CONNECTED);
+        feed.exiting(c1, LeaveReason.LEFT_AREA);
+        assertNull(feed.nextBatch(T, false));
+
+        next(feed, T); // keep alive
+        assertEquals(0, decoder.kinds.size());
+        assertEquals(T, decoder.timestamp);
+    }
+
+    /** Decodes batches, keeping track of the latest position of every object in the stream. */
+    static class Decoder {
+
+        /** The id of each index. */
+        final Map<Long, String> ids = new HashMap<>();
+
+        /** The indexes of the records in the latest batch. */
+        final List<Long> indexes = new ArrayList<>();
+
+        /** The kinds of records in the latest batch. */
+        final List<Byte> kinds = new ArrayList<>();
+
+        /** The latest latitude and longitude of each index in 10^-7 degrees. */
+        final Map<Long, long[]> latest = new HashMap<>();
+
+        /** The latest position of each object, by id. */
+        final Map<String, PositionTime> positions = new HashMap<>();
+
+        /** The timestamp of the latest batch. */
+        long timestamp;
+
+        void decode(byte[] batch) {
+            ByteArrayInputStream in = new ByteArrayInputStream(batch);
+            long length = readVarint(in);
+            assertEquals(length, in.available());
+            timestamp = readVarint(in);
+            kinds.clear();
+            indexes.clear();
+            for (long count = readVarint(in); count > 0; count--) {
+                byte kind = (byte) in.read();
+                kinds.add(kind);
+                long index = readVarint(in);
+                indexes.add(index);
+                if (kind == PositionFeed.LEFT) {
+                    positions.remove(ids.remove(index));
+                    latest.remove(index);
+                    continue;
+                }
+                long[] l;
+                if (kind == PositionFeed.ENTERED) {
+                    byte[] id = new byte[(int) readVarint(in)];
+                    in.read(id, 0, id.length);
+                    ids.put(index, new String(id, StandardCharsets.UTF_8));
+                    l = new long[] { readSigned(in), readSigned(in) };
+                    latest.put(index, l);
+                } else {
+                    l = latest.get(index);
+                    l[0] += readSigned(in);
+                    l[1] += readSigned(in);
+                }
+                long time = timestamp + readSigned(in);
+                positions.put(ids.get(index), PositionTime.create(l[0] / PositionFeed.UNITS_PER_DEGREE, l[1]
+                        / PositionFeed.UNITS_PER_DEGREE, time));
+            }
+            assertEquals(0, in.available());
+        }
+
+        static long readSigned(ByteArrayInputStream in) {
+            long v = readVarint(in);
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        static long readVarint(ByteArrayInputStream in) {
+            long result = 0;
+            for (int shift = 0;; shift += 7) {
+                int b = in.read();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        }
+    }
+}
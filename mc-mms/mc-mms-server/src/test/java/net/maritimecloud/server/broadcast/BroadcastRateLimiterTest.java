@@ -0,0 +1,100 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.server.broadcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.mms.server.MmsServerConfiguration;
+import net.maritimecloud.mms.server.broadcast.BroadcastRateLimiter;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Kasper Nielsen
+ */
+public class BroadcastRateLimiterTest {
+
+    static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void unlimited() {
+        BroadcastRateLimiter l = new BroadcastRateLimiter(new MmsServerConfiguration());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, l.acquire("a", "t", 1000, 0));
+        }
+    }
+
+    @Test
+    public void perSender() {
+        BroadcastRateLimiter l = new BroadcastRateLimiter(new MmsServerConfiguration().setBroadcastRate(2)
+                .setBroadcastBurst(3));
+        long now = System.nanoTime();
+        assertEquals(0, l.acquire("a", "t1", 0, now));
+        assertEquals(0, l.acquire("a", "t2", 0, now));
+        assertEquals(0, l.acquire("a", "t1", 0, now));
+        assertEquals(SECOND / 2, l.acquire("a", "t1", 0, now));
+
+        // Other senders are not affected
+        assertEquals(0, l.acquire("b", "t1", 0, now));
+
+        // A new token every half second
+        assertEquals(0, l.acquire("a", "t1", 0, now + SECOND / 2));
+        assertTrue(l.acquire("a", "t1", 0, now + SECOND / 2) > 0);
+    }
+
+    @Test
+    public void perType() {
+        BroadcastRateLimiter l = new BroadcastRateLimiter(new MmsServerConfiguration().setBroadcastRate(1)
+                .setBroadcastRatePerType(true));
+        assertEquals(0, l.acquire("a", "t1", 0, 0));
+        assertTrue(l.acquire("a", "t1", 0, 0) > 0);
+        assertEquals(0, l.acquire("a", "t2", 0, 0));
+    }
+
+    @Test
+    public void fanout() {
+        BroadcastRateLimiter l = new BroadcastRateLimiter(new MmsServerConfiguration().setBroadcastFanoutBudget(100));
+        long now = System.nanoTime();
+        // A large broadcast is admitted if no budget has been used
+        assertEquals(0, l.acquire("a", "t", 150, now));
+        assertEquals(SECOND / 2, l.acquire("a", "t", 1, now));
+        assertEquals(0, l.acquire("a", "t", 0, now));
+        assertEquals(0, l.acquire("a", "t", 1, now + SECOND / 2));
+        assertEquals(SECOND / 100, l.acquire("a", "t", 1, now + SECOND / 2));
+    }
+
+    /** A broadcast rejected by either limit does not use any of the other. */
+    @Test
+    public void checkBothBeforeCharging() {
+        BroadcastRateLimiter l = new BroadcastRateLimiter(new MmsServerConfiguration().setBroadcastRate(1)
+                .setBroadcastBurst(2).setBroadcastFanoutBudget(100));
+        long now = System.nanoTime();
+        assertEquals(0, l.acquire("a", "t", 200, now));
+        // rejected by the fan-out budget, the sender keeps its token
+        assertEquals(SECOND, l.acquire("a", "t", 1, now));
+        assertEquals(0, l.check("a", "t", now));
+        assertEquals(0, l.acquire("a", "t", 0, now));
+        assertEquals(SECOND, l.check("a", "t", now));
+
+        // rejected by the rate of the sender, the fan-out budget is not used
+        assertEquals(0, l.acquire("a", "t", 0, now + SECOND));
+        assertEquals(SECOND, l.acquire("a", "t", 100, now + SECOND));
+        assertEquals(0, l.acquire("b", "t", 100, now + SECOND));
+    }
+}
@@ -0,0 +1,121 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.server.broadcast;
+
+import static net.maritimecloud.server.broadcast.BroadcastTest.createBroadcast;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.core.id.MaritimeId;
+import net.maritimecloud.internal.mms.messages.PositionReport;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.net.messages.Broadcast;
+import net.maritimecloud.mms.server.broadcast.ServerBroadcastManager;
+import net.maritimecloud.mms.server.connection.client.ClientManager;
+import net.maritimecloud.mms.stubs.BroadcastTestMessage;
+import net.maritimecloud.server.AbstractServerConnectionTest;
+import net.maritimecloud.server.TesstEndpoint;
+import net.maritimecloud.util.geometry.Area;
+import net.maritimecloud.util.geometry.Circle;
+import net.maritimecloud.util.geometry.Position;
+import net.maritimecloud.util.geometry.PositionTime;
+
+import org.junit.Test;
+
+/**
+ * Tests that broadcasts are only routed to sessions that have subscribed to them.
+ *
+ * @author Kasper Nielsen
+ */
+public class BroadcastSubscriptionTest extends AbstractServerConnectionTest {
+
+    /** Tests that a broadcast of a type the session has not subscribed to is not delivered. */
+    @Test
+    public void unsubscribedType() throws Exception {
+        TesstEndpoint c1 = newClient(ID1);
+        TesstEndpoint c3 = newClient(ID3);
+        TesstEndpoint c6 = newClient(ID6);
+        BlockingQueue<MmsMessage> q6 = c6.setQueue(new LinkedBlockingQueue<>());
+        subscribe(ID6, null);
+
+        Broadcast b = createBroadcast(ID1, PositionTime.create(1, 1, 1), new BroadcastTestMessage().setMsg("foo1"),
+                null, 10, null);
+        b.setBroadcastType("net.maritimecloud.mms.stubs.OtherMessage");
+        c1.send(b);
+
+        // c3 never registered any subscriptions
+        assertEquals("net.maritimecloud.mms.stubs.OtherMessage", c3.take(Broadcast.class).getBroadcastType());
+        c1.take(PositionReport.class);
+        assertNull(q6.poll(200, TimeUnit.MILLISECONDS));
+
+        c1.send(createBroadcast(ID1, PositionTime.create(1, 1, 1), new BroadcastTestMessage().setMsg("foo2"), null,
+                10, null));
+        assertEquals("foo2", ((BroadcastTestMessage) MmsMessage.tryRead(c6.take(Broadcast.class))).getMsg());
+        assertEquals("foo2", ((BroadcastTestMessage) MmsMessage.tryRead(c3.take(Broadcast.class))).getMsg());
+        c1.take(PositionReport.class);
+    }
+
+    /** Tests that a broadcast from a sender outside of the subscribed area is not delivered. */
+    @Test
+    public void senderOutsideArea() throws Exception {
+        TesstEndpoint c1 = newClient(ID1);
+        TesstEndpoint c3 = newClient(ID3);
+        TesstEndpoint c6 = newClient(ID6);
+        BlockingQueue<MmsMessage> q6 = c6.setQueue(new LinkedBlockingQueue<>());
+        subscribe(ID6, Circle.create(Position.create(50, 50), 1000));
+
+        c1.send(createBroadcast(ID1, PositionTime.create(1, 1, 1), new BroadcastTestMessage().setMsg("foo1"), null,
+                10, null));
+        assertEquals("foo1", ((BroadcastTestMessage) MmsMessage.tryRead(c3.take(Broadcast.class))).getMsg());
+        c1.take(PositionReport.class);
+        assertNull(q6.poll(200, TimeUnit.MILLISECONDS));
+
+        subscribe(ID6, Circle.create(Position.create(1, 1), 1000));
+        c1.send(createBroadcast(ID1, PositionTime.create(1, 1, 1), new BroadcastTestMessage().setMsg("foo2"), null,
+                10, null));
+        assertEquals("foo2", ((BroadcastTestMessage) MmsMessage.tryRead(c6.take(Broadcast.class))).getMsg());
+        c1.take(PositionReport.class);
+    }
+
+    /** Tests that a session that never registered any subscriptions receives broadcasts of all types. */
+    @Test
+    public void neverRegisteredReceivesEverything() throws Exception {
+        TesstEndpoint c1 = newClient(ID1);
+        TesstEndpoint c6 = newClient(ID6);
+
+        Broadcast b = createBroadcast(ID1, PositionTime.create(1, 1, 1), new BroadcastTestMessage().setMsg("foo1"),
+                null, 10, null);
+        b.setBroadcastType("net.maritimecloud.mms.stubs.OtherMessage");
+        c1.send(b);
+        assertEquals("net.maritimecloud.mms.stubs.OtherMessage", c6.take(Broadcast.class).getBroadcastType());
+        c1.take(PositionReport.class);
+
+        c1.send(createBroadcast(ID1, PositionTime.create(1, 1, 1), new BroadcastTestMessage().setMsg("foo2"), null,
+                10, null));
+        assertEquals("foo2", ((BroadcastTestMessage) MmsMessage.tryRead(c6.take(Broadcast.class))).getMsg());
+        c1.take(PositionReport.class);
+    }
+
+    void subscribe(MaritimeId id, Area area) {
+        server.getService(ServerBroadcastManager.class).subscribe(
+                server.getService(ClientManager.class).get(id).getSession(),
+                Arrays.asList(BroadcastTestMessage.class.getName()), area);
+    }
+}
@@ -23,6 +23,7 @@ import net.maritimecloud.internal.message.MessageHelper;
 import net.maritimecloud.internal.mms.messages.PositionReport;
 import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
 import net.maritimecloud.internal.net.messages.Broadcast;
+import net.maritimecloud.internal.net.util.PayloadFormat;
 import net.maritimecloud.message.MessageSerializer;
 import net.maritimecloud.mms.stubs.BroadcastTestMessage;
 import net.maritimecloud.net.BroadcastMessage;
@@ -108,6 +109,42 @@ public class BroadcastTest extends AbstractServerConnectionTest {
         c1.take(PositionReport.class);
     }
 
+    /** Tests that a broadcast with a time to live is delivered to a client that enters the area later. */
+    @Test
+    public void timeToLive() throws Exception {
+        TesstEndpoint c1 = newClient(ID1, 1, 1);
+        TesstEndpoint c3 = newClient(ID3, 5, 5);
+
+        Broadcast b = createBroadcast(ID1, PositionTime.create(1, 1, 1), new BroadcastTestMessage().setMsg("foo1"),
+                null, 10000, null);
+        b.setTimeToLive(60);
+        c1.send(b);
+        c1.take(PositionReport.class);
+
+        // c3 enters the area
+        c3.send(new PositionReport().setPositionTime(PositionTime.create(1.01, 1.01, System.currentTimeMillis() + 1)));
+        assertEquals("foo1", ((BroadcastTestMessage) MmsMessage.tryRead(c3.take(Broadcast.class))).getMsg());
+    }
+
+
+    /** Tests that a broadcast with a binary payload is relayed with its payload format. */
+    @Test
+    public void binaryPayload() throws Exception {
+        TesstEndpoint c1 = newClient(ID1);
+        TesstEndpoint c6 = newClient(ID6);
+
+        BroadcastTestMessage hw = new BroadcastTestMessage().setMsg("foo1");
+        Broadcast b = createBroadcast(ID1, PositionTime.create(1, 1, 1), hw, null, 10, null);
+        b.setPayload(PayloadFormat.BINARY.write(hw, BroadcastTestMessage.SERIALIZER));
+        b.setPayloadFormat(PayloadFormat.BINARY.toTag());
+        c1.send(b);
+
+        Broadcast bd = c6.take(Broadcast.class);
+        assertEquals(PayloadFormat.BINARY, PayloadFormat.fromTag(bd.getPayloadFormat()));
+        assertEquals("foo1", ((BroadcastTestMessage) MmsMessage.tryRead(bd)).getMsg());
+
+        c1.take(PositionReport.class);
+    }
 
     public static Broadcast createBroadcast(MaritimeId sender, PositionTime position, BroadcastMessage message,
             Area area, int radius, Consumer<?> consumer) {
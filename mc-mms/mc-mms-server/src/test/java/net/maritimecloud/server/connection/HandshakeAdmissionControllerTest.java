@@ -0,0 +1,77 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.server.connection;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.mms.server.MmsServerConfiguration;
+import net.maritimecloud.mms.server.connection.client.HandshakeAdmissionController;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Kasper Nielsen
+ */
+public class HandshakeAdmissionControllerTest {
+
+    static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void unlimited() {
+        HandshakeAdmissionController c = new HandshakeAdmissionController(new MmsServerConfiguration());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, c.admit(0));
+        }
+    }
+
+    @Test
+    public void rejectedClientsAreSpreadOut() {
+        HandshakeAdmissionController c = new HandshakeAdmissionController(new MmsServerConfiguration()
+                .setHandshakeRate(10).setHandshakeBurst(2));
+        long now = System.nanoTime();
+        assertEquals(0, c.admit(now));
+        assertEquals(0, c.admit(now));
+
+        // Each rejected client gets its own slot, a tenth of a second after the previous one
+        assertEquals(SECOND / 10, c.admit(now));
+        assertEquals(2 * SECOND / 10, c.admit(now));
+        assertEquals(3 * SECOND / 10, c.admit(now));
+
+        // The first rejected client is admitted when it comes back
+        assertEquals(0, c.admit(now + SECOND / 10));
+        assertEquals(0, c.admit(now + 2 * SECOND / 10));
+    }
+
+    /** Tests that the retry slots handed out never get further ahead than the maximum wait. */
+    @Test
+    public void retrySlotsAreBounded() {
+        HandshakeAdmissionController c = new HandshakeAdmissionController(new MmsServerConfiguration()
+                .setHandshakeRate(1).setHandshakeBurst(1));
+        long now = System.nanoTime();
+        assertEquals(0, c.admit(now));
+        for (int i = 1; i <= 1000; i++) {
+            assertEquals(Math.min(i, 300) * SECOND, c.admit(now));
+        }
+
+        // Five minutes later the bucket is full again, and a rejected client gets the slot following the last one
+        // handed out, instead of one that is 1000 seconds ahead
+        now += 300 * SECOND;
+        assertEquals(0, c.admit(now));
+        assertEquals(SECOND, c.admit(now));
+    }
+}
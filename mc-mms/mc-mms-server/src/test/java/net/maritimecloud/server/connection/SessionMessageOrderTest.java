@@ -0,0 +1,85 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.server.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.internal.mms.messages.Connected;
+import net.maritimecloud.internal.mms.messages.Hello;
+import net.maritimecloud.internal.mms.messages.Welcome;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessagePriority;
+import net.maritimecloud.internal.net.messages.Broadcast;
+import net.maritimecloud.mms.server.connection.client.Client;
+import net.maritimecloud.mms.server.connection.client.ClientManager;
+import net.maritimecloud.mms.server.connection.client.Session;
+import net.maritimecloud.server.AbstractServerConnectionTest;
+import net.maritimecloud.server.TesstEndpoint;
+import net.maritimecloud.util.Binary;
+import net.maritimecloud.util.geometry.PositionTime;
+
+import org.junit.Test;
+
+/**
+ * Tests that messages sent from a server session are numbered in the order they are written, even when high priority
+ * messages overtake low priority messages. The client acknowledges all messages up to an id at once, so ids going out
+ * of order would acknowledge messages that have not been received.
+ *
+ * @author Kasper Nielsen
+ */
+public class SessionMessageOrderTest extends AbstractServerConnectionTest {
+
+    @Test
+    public void highPriorityOvertakesLowPriority() throws Exception {
+        TesstEndpoint t = newClient();
+        t.take(Welcome.class);
+        t.send(new Hello().setClientId(ID2.toString()).setLastReceivedMessageId(0L)
+                .setPositionTime(PositionTime.create(1, 1, System.currentTimeMillis())));
+        Binary sessionId = t.take(Connected.class).getSessionId();
+
+        // Queue messages while the client is disconnected, so they are all pending when it reconnects
+        t.close();
+        Client c = server.getService(ClientManager.class).get(ID2);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (c.isConnected()) {
+            assertTrue("Client did not disconnect", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+        Session s = c.getSession();
+        for (int i = 0; i < 20; i++) {
+            s.send(new Broadcast().setBroadcastType("low" + i), MmsMessagePriority.LOW);
+        }
+        for (int i = 0; i < 3; i++) {
+            s.send(new Broadcast().setBroadcastType("high" + i), MmsMessagePriority.HIGH);
+        }
+
+        t = newClient();
+        t.take(Welcome.class);
+        t.send(new Hello().setClientId(ID2.toString()).setSessionId(sessionId).setLastReceivedMessageId(0L)
+                .setPositionTime(PositionTime.create(1, 1, System.currentTimeMillis())));
+        t.take(Connected.class);
+
+        for (int i = 1; i <= 23; i++) {
+            MmsMessage m = t.take();
+            assertEquals(i, m.getMessageId());
+            String type = ((Broadcast) m.getM()).getBroadcastType();
+            // The high priority messages are sent first, even though they were sent last
+            assertEquals(i <= 3 ? "high" + (i - 1) : "low" + (i - 4), type);
+        }
+    }
+}
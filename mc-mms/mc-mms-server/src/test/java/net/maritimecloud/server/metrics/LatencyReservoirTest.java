@@ -0,0 +1,73 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.server.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.maritimecloud.mms.server.metrics.LatencyReservoir;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Snapshot;
+
+/**
+ *
+ * @author Kasper Nielsen
+ */
+public class LatencyReservoirTest {
+
+    @Test
+    public void empty() {
+        Snapshot s = new LatencyReservoir().getSnapshot();
+        assertEquals(0, s.size());
+        assertEquals(0, s.getMax());
+        assertEquals(0, s.getMin());
+        assertEquals(0, s.getValue(0.99), 0);
+        assertEquals(0, s.getValues().length);
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyReservoir r = new LatencyReservoir();
+        for (int i = 1; i <= 100000; i++) {
+            r.update(i * 1000L);
+        }
+        Snapshot s = r.getSnapshot();
+        assertEquals(100000, s.size());
+        assertEquals(1000, s.getMin());
+        assertEquals(100000000, s.getMax());
+        assertWithin(50000000, s.getMedian());
+        assertWithin(99000000, s.get99thPercentile());
+        assertWithin(50000500, s.getMean());
+        assertTrue(s.getValues().length <= 1 << 16);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyReservoir r = new LatencyReservoir();
+        for (int i = 0; i < 50; i++) {
+            r.update(i);
+        }
+        Snapshot s = r.getSnapshot();
+        assertEquals(49, s.getMax());
+        assertEquals(24, s.getMedian(), 0);
+        assertEquals(50, s.getValues().length);
+    }
+
+    static void assertWithin(double expected, double actual) {
+        assertTrue("expected " + expected + " was " + actual, Math.abs(expected - actual) <= expected * 0.04);
+    }
+}
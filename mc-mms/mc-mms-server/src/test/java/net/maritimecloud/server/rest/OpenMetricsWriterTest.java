@@ -0,0 +1,76 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.server.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.mms.server.rest.OpenMetricsWriter;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ *
+ * @author Kasper Nielsen
+ */
+public class OpenMetricsWriterTest {
+
+    @Test
+    public void familyName() {
+        OpenMetricsWriter w = new OpenMetricsWriter();
+        assertEquals("mms_messages_Broadcast_serialization", w.familyName("mms.messages.Broadcast.serialization"));
+        assertEquals("_1abc", w.familyName("1abc"));
+    }
+
+    @Test
+    public void write() throws Exception {
+        MetricRegistry r = new MetricRegistry();
+        r.counter("a.counter").inc(3);
+        r.meter("a.meter").mark(2);
+        r.register("a.gauge", (Gauge<Integer>) () -> 7);
+        r.register("a.string", (Gauge<String>) () -> "ignored");
+        r.timer("b.timer").update(2, TimeUnit.SECONDS);
+
+        StringWriter sw = new StringWriter();
+        new OpenMetricsWriter().write(r, null, sw);
+        String s = sw.toString();
+        assertTrue(s, s.contains("# TYPE a_counter counter\na_counter_total 3\n"));
+        assertTrue(s, s.contains("# TYPE a_meter counter\na_meter_total 2\n"));
+        assertTrue(s, s.contains("# TYPE a_gauge gauge\na_gauge 7\n"));
+        assertFalse(s, s.contains("a_string"));
+        assertTrue(s, s.contains("# TYPE b_timer_seconds summary\n"));
+        assertTrue(s, s.contains("b_timer_seconds_count 1\n"));
+        assertTrue(s, s.endsWith("# EOF\n"));
+    }
+
+    @Test
+    public void writeFiltered() throws Exception {
+        MetricRegistry r = new MetricRegistry();
+        r.counter("a.counter").inc();
+        r.counter("b.counter").inc();
+
+        StringWriter sw = new StringWriter();
+        new OpenMetricsWriter().write(r, Arrays.asList("b_"), sw);
+        assertEquals("# TYPE b_counter counter\nb_counter_total 1\n# EOF\n", sw.toString());
+    }
+}
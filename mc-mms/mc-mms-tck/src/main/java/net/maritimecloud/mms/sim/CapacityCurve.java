@@ -0,0 +1,132 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.sim;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import net.maritimecloud.mms.server.MmsServer;
+import net.maritimecloud.mms.server.MmsServerConfiguration;
+
+/**
+ * Produces a capacity curve for a given server configuration. For each fleet size a fresh server is started, the fleet
+ * is connected, and the simulation is run for a fixed amount of virtual time. One line of comma separated values is
+ * printed per fleet size. Since the simulator is deterministic, the offered load for each point of the curve is the
+ * same from run to run, only the server's response to it varies.
+ *
+ * @author Kasper Nielsen
+ */
+public class CapacityCurve {
+
+    /** The CSV header. */
+    static final String HEADER = "vessels,virtualSeconds,wallSeconds,lagTicks,positionReportsPerSec,"
+            + "broadcastsSentPerSec,broadcastsReceivedPerSec,rpcsSentPerSec,rpcsCompletedPerSec,rpcMeanMicros,"
+            + "rpcMaxMicros,rpcsTimedOut,sendFailures";
+
+    private final IntFunction<FleetSimulatorConfiguration> simulatorConfiguration;
+
+    private final IntFunction<MmsServerConfiguration> serverConfiguration;
+
+    private final long virtualSeconds;
+
+    /**
+     * Creates a new capacity curve.
+     *
+     * @param serverConfiguration
+     *            creates a server configuration listening on the specified port
+     * @param simulatorConfiguration
+     *            creates a simulator configuration for the specified number of vessels
+     * @param virtualSeconds
+     *            the number of virtual seconds to simulate per fleet size
+     */
+    public CapacityCurve(IntFunction<MmsServerConfiguration> serverConfiguration,
+            IntFunction<FleetSimulatorConfiguration> simulatorConfiguration, long virtualSeconds) {
+        this.serverConfiguration = serverConfiguration;
+        this.simulatorConfiguration = simulatorConfiguration;
+        this.virtualSeconds = virtualSeconds;
+    }
+
+    /**
+     * Runs a single point of the curve.
+     *
+     * @param vessels
+     *            the number of vessels to simulate
+     * @param out
+     *            the stream to print the result to
+     * @throws Exception
+     *             if the point could not be measured
+     */
+    public void runPoint(int vessels, PrintStream out) throws Exception {
+        MmsServerConfiguration sc = serverConfiguration.apply(MmsServerConfiguration.DEFAULT_PORT);
+        MmsServer server = sc.build();
+        server.start().join();
+        FleetSimulator sim = simulatorConfiguration.apply(vessels).setHost("localhost:" + sc.getServerPort())
+                .build();
+        try {
+            sim.connect(Math.max(30, vessels / 100), TimeUnit.SECONDS);
+            long start = System.nanoTime();
+            sim.run(virtualSeconds, TimeUnit.SECONDS);
+            double wall = (System.nanoTime() - start) / 1e9;
+            FleetStatistics.Snapshot s = sim.getStatistics().snapshot();
+            out.println(String.format(Locale.US, "%d,%d,%.2f,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%d,%d,%d", vessels,
+                    virtualSeconds, wall, s.lagTicks, s.positionReportsSent / wall, s.broadcastsSent / wall,
+                    s.broadcastsReceived / wall, s.rpcsSent / wall, s.rpcsCompleted / wall, s.rpcLatencyMeanMicros(),
+                    s.rpcLatencyMaxNanos / 1000, s.rpcsTimedOut, s.sendFailures));
+        } finally {
+            sim.shutdown();
+            server.shutdown();
+            server.awaitTerminated(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Runs the curve for each of the specified fleet sizes.
+     *
+     * @param out
+     *            the stream to print the result to
+     * @param fleetSizes
+     *            the fleet sizes to measure
+     * @throws Exception
+     *             if a point could not be measured
+     */
+    public void run(PrintStream out, int... fleetSizes) throws Exception {
+        out.println(HEADER);
+        for (int vessels : fleetSizes) {
+            runPoint(vessels, out);
+        }
+    }
+
+    /**
+     * Runs a capacity curve against an in-process server with the default configuration. Fleet sizes can be specified
+     * as arguments, for example {@code 10000 25000 50000 100000}.
+     *
+     * @param args
+     *            the fleet sizes to measure
+     * @throws Exception
+     *             if the curve could not be measured
+     */
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length == 0 ? new int[] { 1000, 2500, 5000, 10000 } : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        CapacityCurve c = new CapacityCurve(port -> new MmsServerConfiguration().setServerPort(port),
+                vessels -> new FleetSimulatorConfiguration().setNumberOfVessels(vessels).setSeed(42)
+                        .setTimeCompression(10), 600);
+        c.run(System.out, sizes);
+    }
+}
@@ -0,0 +1,320 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.sim;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.ContainerProvider;
+import javax.websocket.DeploymentException;
+import javax.websocket.WebSocketContainer;
+
+import net.maritimecloud.util.Binary;
+
+/**
+ * Simulates a large fleet of vessels (tens of thousands) inside a single JVM. Vessels are partitioned over a small,
+ * fixed number of worker threads. At every tick of the shared {@link VirtualClock} each worker moves its vessels and
+ * sends the position reports, broadcasts and remote invocations that are due.
+ * <p>
+ * All randomness is derived from the configured seed, in vessel order. So given the same configuration the simulator
+ * offers exactly the same load in virtual time. If the server (or the simulator itself) cannot keep up, ticks take
+ * longer than their wall clock budget; this is reported as {@link FleetStatistics.Snapshot#lagTicks lag}. Remote
+ * invocations that are not answered within the configured timeout (in virtual time) are counted as
+ * {@link FleetStatistics.Snapshot#rpcsTimedOut timed out}.
+ *
+ * @author Kasper Nielsen
+ */
+public class FleetSimulator {
+
+    /** The MMSI base used for generating vessel ids. */
+    private static final int MMSI_BASE = 900_000_000;
+
+    /** The shared virtual clock. */
+    final VirtualClock clock;
+
+    /** The configuration of the simulator. */
+    final FleetSimulatorConfiguration conf;
+
+    /** The number of vessels that are currently connected. */
+    private final AtomicInteger connectedCount = new AtomicInteger();
+
+    /** The web socket container shared by all vessels. */
+    private final WebSocketContainer container;
+
+    /** Remote invocations that have been sent but not yet answered, mapped by message id. */
+    private final ConcurrentHashMap<Binary, PendingRpc> pendingRpcs = new ConcurrentHashMap<>();
+
+    /**
+     * Every remote invocation sent, in the order they were sent. Invocations are only sent from within a tick, so the
+     * queue is ordered by virtual time and can be expired from the head.
+     */
+    private final ConcurrentLinkedQueue<PendingRpc> rpcTimeouts = new ConcurrentLinkedQueue<>();
+
+    /** The statistics of the simulation. */
+    final FleetStatistics statistics = new FleetStatistics();
+
+    /** The vessels, partitioned by worker. */
+    private final SimulatedVessel[][] partitions;
+
+    /** The worker threads. */
+    private final ExecutorService workers;
+
+    FleetSimulator(FleetSimulatorConfiguration conf) {
+        this.conf = requireNonNull(conf);
+        this.clock = new VirtualClock(conf.getEpoch());
+        this.container = ContainerProvider.getWebSocketContainer();
+        int threads = Math.min(conf.getNumberOfThreads(), conf.getNumberOfVessels());
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "FleetSimulatorWorker");
+            t.setDaemon(true);
+            return t;
+        });
+        SplittableRandom root = new SplittableRandom(conf.getSeed());
+        partitions = new SimulatedVessel[threads][];
+        int n = conf.getNumberOfVessels();
+        for (int p = 0, index = 0; p < threads; p++) {
+            int size = n / threads + (p < n % threads ? 1 : 0);
+            partitions[p] = new SimulatedVessel[size];
+            for (int i = 0; i < size; i++, index++) {
+                partitions[p][i] = new SimulatedVessel(this, index, root.split());
+            }
+        }
+    }
+
+    /**
+     * Connects all vessels to the server. The vessels of each partition are connected sequentially by the worker that
+     * owns the partition.
+     *
+     * @param timeout
+     *            the maximum time to wait for all vessels to be connected
+     * @param unit
+     *            the unit of the timeout
+     * @throws TimeoutException
+     *             if not all vessels were connected within the specified time
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public void connect(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        URI uri = URI.create("ws://" + conf.getHost());
+        ClientEndpointConfig config = ClientEndpointConfig.Builder.create().build();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (SimulatedVessel[] partition : partitions) {
+            tasks.add(() -> {
+                for (SimulatedVessel v : partition) {
+                    try {
+                        container.connectToServer(v, config, uri);
+                    } catch (DeploymentException | IOException e) {
+                        statistics.sendFailures.increment();
+                    }
+                }
+                return null;
+            });
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        invokeAll(tasks);
+        while (connectedCount.get() < conf.getNumberOfVessels()) {
+            if (System.nanoTime() > deadline) {
+                throw new TimeoutException("Only " + connectedCount.get() + " out of " + conf.getNumberOfVessels()
+                        + " vessels connected");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Returns the number of remote invocations that have been sent, but that have neither been answered nor timed out.
+     *
+     * @return the number of remote invocations in flight
+     */
+    public int getPendingRpcCount() {
+        return pendingRpcs.size();
+    }
+
+    /**
+     * Returns the number of vessels that are currently connected.
+     *
+     * @return the number of vessels that are currently connected
+     */
+    public int getConnectedCount() {
+        return connectedCount.get();
+    }
+
+    /**
+     * Returns the shared virtual clock.
+     *
+     * @return the shared virtual clock
+     */
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns the statistics of the simulation.
+     *
+     * @return the statistics of the simulation
+     */
+    public FleetStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Runs the simulation for the specified amount of virtual time.
+     *
+     * @param duration
+     *            the virtual duration to simulate
+     * @param unit
+     *            the unit of the duration
+     * @throws InterruptedException
+     *             if interrupted while running
+     */
+    public void run(long duration, TimeUnit unit) throws InterruptedException {
+        long tickMillis = conf.getTickMillis();
+        long tickWallNanos = (long) (TimeUnit.MILLISECONDS.toNanos(tickMillis) / conf.getTimeCompression());
+        long ticks = Math.max(1, unit.toMillis(duration) / tickMillis);
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (SimulatedVessel[] partition : partitions) {
+            tasks.add(() -> {
+                long now = clock.now();
+                for (SimulatedVessel v : partition) {
+                    v.tick(now);
+                }
+                return null;
+            });
+        }
+
+        long next = System.nanoTime();
+        for (long i = 0; i < ticks; i++) {
+            expireRpcs(clock.advance(tickMillis));
+            invokeAll(tasks);
+            statistics.ticks.increment();
+            next += tickWallNanos;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            } else {
+                statistics.lagTicks.increment();
+            }
+        }
+    }
+
+    /** Closes all vessels and stops the worker threads. */
+    public void shutdown() {
+        for (SimulatedVessel[] partition : partitions) {
+            for (SimulatedVessel v : partition) {
+                v.close();
+            }
+        }
+        workers.shutdown();
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks) throws InterruptedException {
+        for (Future<Void> f : workers.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Simulated vessel failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Counts every invocation that was sent at least the configured timeout before the specified time, and that has
+     * not been answered, as timed out.
+     *
+     * @param now
+     *            the current virtual time
+     */
+    void expireRpcs(long now) {
+        long expiresBefore = now - conf.getRpcTimeoutMillis();
+        for (PendingRpc p; (p = rpcTimeouts.peek()) != null && p.sentAt <= expiresBefore;) {
+            rpcTimeouts.poll();
+            if (pendingRpcs.remove(p.messageId, p)) {
+                statistics.rpcsTimedOut.increment();
+            }
+        }
+    }
+
+    void rpcCompleted(Binary messageId) {
+        PendingRpc p = pendingRpcs.remove(messageId);
+        if (p != null) {
+            long latency = System.nanoTime() - p.sentAtNanos;
+            statistics.rpcsCompleted.increment();
+            statistics.rpcLatencyTotalNanos.add(latency);
+            statistics.rpcLatencyMaxNanos.accumulate(latency);
+        }
+    }
+
+    void rpcStarted(Binary messageId, long now) {
+        PendingRpc p = new PendingRpc(messageId, now, System.nanoTime());
+        pendingRpcs.put(messageId, p);
+        rpcTimeouts.add(p);
+        statistics.rpcsSent.increment();
+    }
+
+    void vesselConnected(SimulatedVessel vessel) {
+        connectedCount.incrementAndGet();
+    }
+
+    void vesselDisconnected(SimulatedVessel vessel) {
+        connectedCount.decrementAndGet();
+    }
+
+    /**
+     * Returns the id of the vessel with the specified index.
+     *
+     * @param index
+     *            the index of the vessel
+     * @return the id of the vessel
+     */
+    static String idOf(int index) {
+        return "mmsi:" + (MMSI_BASE + index);
+    }
+
+    /** A remote invocation that has been sent. */
+    static final class PendingRpc {
+
+        /** The message id of the invocation. */
+        final Binary messageId;
+
+        /** The virtual time the invocation was sent at. */
+        final long sentAt;
+
+        /** The wall clock time the invocation was sent at, as given by {@link System#nanoTime()}. */
+        final long sentAtNanos;
+
+        PendingRpc(Binary messageId, long sentAt, long sentAtNanos) {
+            this.messageId = messageId;
+            this.sentAt = sentAt;
+            this.sentAtNanos = sentAtNanos;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.sim;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.util.geometry.Area;
+import net.maritimecloud.util.geometry.Position;
+import net.maritimecloud.util.geometry.Rectangle;
+
+/**
+ * The configuration of a {@link FleetSimulator}. All rates are expressed per vessel in virtual time. Two simulations
+ * using the same configuration (including the seed) will offer exactly the same load to the server.
+ *
+ * @author Kasper Nielsen
+ */
+public class FleetSimulatorConfiguration {
+
+    /** The default area vessels are sailing in, roughly the inner Danish waters. */
+    public static final Area DEFAULT_AREA = Rectangle.create(Position.create(58, 8), Position.create(54, 13));
+
+    /** The default virtual time the simulation starts at, 2014-01-01T00:00:00Z. */
+    public static final long DEFAULT_EPOCH = 1_388_534_400_000L;
+
+    private Area area = DEFAULT_AREA;
+
+    private int broadcastRadius = 20000;
+
+    private double broadcastsPerHour = 6;
+
+    private long epoch = DEFAULT_EPOCH;
+
+    private String host = "localhost:43234";
+
+    private int numberOfThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    private int numberOfVessels = 1000;
+
+    private long positionReportIntervalMillis = TimeUnit.SECONDS.toMillis(10);
+
+    private boolean respondToRpcs = true;
+
+    private double rpcsPerHour = 12;
+
+    private long rpcTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+
+    private long seed;
+
+    private long tickMillis = 100;
+
+    private double timeCompression = 1;
+
+    private boolean useBinary;
+
+    public Area getArea() {
+        return area;
+    }
+
+    public int getBroadcastRadius() {
+        return broadcastRadius;
+    }
+
+    public double getBroadcastsPerHour() {
+        return broadcastsPerHour;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    public int getNumberOfVessels() {
+        return numberOfVessels;
+    }
+
+    public long getPositionReportIntervalMillis() {
+        return positionReportIntervalMillis;
+    }
+
+    public double getRpcsPerHour() {
+        return rpcsPerHour;
+    }
+
+    public boolean respondToRpcs() {
+        return respondToRpcs;
+    }
+
+    public long getRpcTimeoutMillis() {
+        return rpcTimeoutMillis;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public double getTimeCompression() {
+        return timeCompression;
+    }
+
+    public boolean useBinary() {
+        return useBinary;
+    }
+
+    /**
+     * Sets the area the simulated vessels are sailing in.
+     *
+     * @param area
+     *            the area the simulated vessels are sailing in
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setArea(Area area) {
+        this.area = requireNonNull(area, "area is null");
+        return this;
+    }
+
+    /**
+     * Sets the radius in meters of the circular area around the sender each broadcast is sent to.
+     *
+     * @param broadcastRadius
+     *            the radius in meters
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setBroadcastRadius(int broadcastRadius) {
+        this.broadcastRadius = checkPositive(broadcastRadius, "broadcastRadius");
+        return this;
+    }
+
+    /**
+     * Sets the average number of broadcasts each vessel sends per (virtual) hour.
+     *
+     * @param broadcastsPerHour
+     *            the average number of broadcasts per hour, 0 to disable broadcasts
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setBroadcastsPerHour(double broadcastsPerHour) {
+        this.broadcastsPerHour = checkNonNegative(broadcastsPerHour, "broadcastsPerHour");
+        return this;
+    }
+
+    /**
+     * Sets the virtual time the simulation starts at. Vessels timestamp their messages with virtual time, so the same
+     * epoch must be used for two simulations to send exactly the same messages.
+     *
+     * @param epoch
+     *            the virtual time to start at in milliseconds since Epoch
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setEpoch(long epoch) {
+        this.epoch = epoch;
+        return this;
+    }
+
+    /**
+     * Sets the host (and port) of the MMS server to connect to.
+     *
+     * @param host
+     *            the host to connect to
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setHost(String host) {
+        this.host = requireNonNull(host, "host is null");
+        return this;
+    }
+
+    /**
+     * Sets the number of threads the simulated vessels are multiplexed over.
+     *
+     * @param numberOfThreads
+     *            the number of threads
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = checkPositive(numberOfThreads, "numberOfThreads");
+        return this;
+    }
+
+    /**
+     * Sets the number of simulated vessels.
+     *
+     * @param numberOfVessels
+     *            the number of vessels
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setNumberOfVessels(int numberOfVessels) {
+        this.numberOfVessels = checkPositive(numberOfVessels, "numberOfVessels");
+        return this;
+    }
+
+    /**
+     * Sets the interval between position reports send by each vessel.
+     *
+     * @param interval
+     *            the interval in virtual time
+     * @param unit
+     *            the unit of the interval
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setPositionReportInterval(long interval, TimeUnit unit) {
+        this.positionReportIntervalMillis = checkPositive(unit.toMillis(interval), "interval");
+        return this;
+    }
+
+    /**
+     * Sets whether or not vessels answer the remote method invocations they receive. If not, every invocation ends up
+     * timing out, which can be used for simulating unresponsive receivers.
+     *
+     * @param respondToRpcs
+     *            whether or not to answer invocations
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setRespondToRpcs(boolean respondToRpcs) {
+        this.respondToRpcs = respondToRpcs;
+        return this;
+    }
+
+    /**
+     * Sets the average number of remote method invocations each vessel performs per (virtual) hour. The target of each
+     * invocation is another randomly chosen simulated vessel.
+     *
+     * @param rpcsPerHour
+     *            the average number of invocations per hour, 0 to disable invocations
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setRpcsPerHour(double rpcsPerHour) {
+        this.rpcsPerHour = checkNonNegative(rpcsPerHour, "rpcsPerHour");
+        return this;
+    }
+
+    /**
+     * Sets how long a remote method invocation may remain unanswered before it is counted as timed out. Any result
+     * received after that is ignored.
+     *
+     * @param timeout
+     *            the timeout in virtual time
+     * @param unit
+     *            the unit of the timeout
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setRpcTimeout(long timeout, TimeUnit unit) {
+        this.rpcTimeoutMillis = checkPositive(unit.toMillis(timeout), "timeout");
+        return this;
+    }
+
+    /**
+     * Sets the seed used for deriving the random source of every vessel.
+     *
+     * @param seed
+     *            the seed
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sets the granularity of the virtual clock. Every vessel is visited once per tick.
+     *
+     * @param tickMillis
+     *            the number of virtual milliseconds per tick
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setTickMillis(long tickMillis) {
+        this.tickMillis = checkPositive(tickMillis, "tickMillis");
+        return this;
+    }
+
+    /**
+     * Sets how much faster than wall clock time the virtual clock runs. For example, a value of 10 means that 10
+     * virtual seconds are simulated for each real second.
+     *
+     * @param timeCompression
+     *            the time compression factor
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setTimeCompression(double timeCompression) {
+        if (!(timeCompression > 0)) {
+            throw new IllegalArgumentException("timeCompression must be positive, was " + timeCompression);
+        }
+        this.timeCompression = timeCompression;
+        return this;
+    }
+
+    /**
+     * Sets whether or not the vessels should use the binary wire format.
+     *
+     * @param useBinary
+     *            whether or not to use the binary wire format
+     * @return this configuration
+     */
+    public FleetSimulatorConfiguration setUseBinary(boolean useBinary) {
+        this.useBinary = useBinary;
+        return this;
+    }
+
+    /**
+     * Creates a new simulator from this configuration.
+     *
+     * @return a new simulator
+     */
+    public FleetSimulator build() {
+        return new FleetSimulator(this);
+    }
+
+    static int checkPositive(int value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive, was " + value);
+        }
+        return value;
+    }
+
+    static long checkPositive(long value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive, was " + value);
+        }
+        return value;
+    }
+
+    static double checkNonNegative(double value, String name) {
+        if (!(value >= 0)) {
+            throw new IllegalArgumentException(name + " must be non-negative, was " + value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,112 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.sim;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters maintained by a running {@link FleetSimulator}. The counters are updated concurrently by worker threads and
+ * web socket threads, use {@link #snapshot()} to obtain a consistent-enough view for reporting.
+ *
+ * @author Kasper Nielsen
+ */
+public final class FleetStatistics {
+
+    final LongAdder broadcastsReceived = new LongAdder();
+
+    final LongAdder broadcastsSent = new LongAdder();
+
+    final LongAdder lagTicks = new LongAdder();
+
+    final LongAdder positionReportsSent = new LongAdder();
+
+    final LongAdder receiveFailures = new LongAdder();
+
+    final LongAdder rpcsCompleted = new LongAdder();
+
+    final LongAccumulator rpcLatencyMaxNanos = new LongAccumulator(Math::max, 0);
+
+    final LongAdder rpcLatencyTotalNanos = new LongAdder();
+
+    final LongAdder rpcsSent = new LongAdder();
+
+    final LongAdder rpcsTimedOut = new LongAdder();
+
+    final LongAdder sendFailures = new LongAdder();
+
+    final LongAdder ticks = new LongAdder();
+
+    /**
+     * Returns a snapshot of the current counters.
+     *
+     * @return a snapshot of the current counters
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /** An immutable snapshot of the counters. */
+    public static final class Snapshot {
+
+        public final long broadcastsReceived;
+
+        public final long broadcastsSent;
+
+        public final long lagTicks;
+
+        public final long positionReportsSent;
+
+        public final long receiveFailures;
+
+        public final long rpcsCompleted;
+
+        public final long rpcLatencyMaxNanos;
+
+        public final long rpcLatencyTotalNanos;
+
+        public final long rpcsSent;
+
+        public final long rpcsTimedOut;
+
+        public final long sendFailures;
+
+        public final long ticks;
+
+        Snapshot(FleetStatistics s) {
+            broadcastsReceived = s.broadcastsReceived.sum();
+            broadcastsSent = s.broadcastsSent.sum();
+            lagTicks = s.lagTicks.sum();
+            positionReportsSent = s.positionReportsSent.sum();
+            receiveFailures = s.receiveFailures.sum();
+            rpcsCompleted = s.rpcsCompleted.sum();
+            rpcLatencyMaxNanos = s.rpcLatencyMaxNanos.get();
+            rpcLatencyTotalNanos = s.rpcLatencyTotalNanos.sum();
+            rpcsSent = s.rpcsSent.sum();
+            rpcsTimedOut = s.rpcsTimedOut.sum();
+            sendFailures = s.sendFailures.sum();
+            ticks = s.ticks.sum();
+        }
+
+        /**
+         * Returns the mean latency of completed remote invocations in microseconds.
+         *
+         * @return the mean latency of completed remote invocations in microseconds
+         */
+        public double rpcLatencyMeanMicros() {
+            return rpcsCompleted == 0 ? 0 : rpcLatencyTotalNanos / 1000d / rpcsCompleted;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.sim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+
+import net.maritimecloud.internal.mms.messages.Connected;
+import net.maritimecloud.internal.mms.messages.Hello;
+import net.maritimecloud.internal.mms.messages.PositionReport;
+import net.maritimecloud.internal.mms.messages.Welcome;
+import net.maritimecloud.internal.mms.messages.spi.MmsMessage;
+import net.maritimecloud.internal.net.messages.Broadcast;
+import net.maritimecloud.internal.net.messages.MethodInvoke;
+import net.maritimecloud.internal.net.messages.MethodInvokeResult;
+import net.maritimecloud.message.Message;
+import net.maritimecloud.util.Binary;
+import net.maritimecloud.util.Timestamp;
+import net.maritimecloud.util.geometry.Circle;
+import net.maritimecloud.util.geometry.Position;
+import net.maritimecloud.util.geometry.PositionTime;
+import net.maritimecloud.util.geometry.Rectangle;
+
+/**
+ * A single simulated vessel. Instead of wrapping a full {@code MmsClient} (with its own set of threads) a simulated
+ * vessel speaks the MMS wire protocol directly on top of a web socket session. All outgoing traffic is generated from
+ * {@link #tick(long)} which is invoked by the worker thread that owns the vessel, so the vessel needs no locking.
+ * Incoming traffic is handled by the web socket container.
+ *
+ * @author Kasper Nielsen
+ */
+final class SimulatedVessel extends Endpoint {
+
+    /** The name of the broadcast type sent by simulated vessels. */
+    static final String BROADCAST_TYPE = "net.maritimecloud.mms.sim.SimulatedBroadcast";
+
+    /** The endpoint method invoked by simulated vessels. */
+    static final String ENDPOINT_METHOD = "SimulatedEndpoint.ping";
+
+    /** The approximate number of meters per degree of latitude. */
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    /** The id of the vessel. */
+    final String id;
+
+    /** The index of the vessel in the fleet. */
+    final int index;
+
+    /** Invocations received from other vessels that should be answered at the next tick. */
+    private final ConcurrentLinkedQueue<MethodInvoke> pendingInvocations = new ConcurrentLinkedQueue<>();
+
+    /** The random source of this vessel, only used by the owning worker thread. */
+    private final SplittableRandom random;
+
+    /** The simulator this vessel is part of. */
+    private final FleetSimulator simulator;
+
+    /** The bounds the vessel sails within. */
+    private final Rectangle bounds;
+
+    /** The current course in degrees. */
+    private double course;
+
+    /** The current latitude. */
+    private double latitude;
+
+    /** The current longitude. */
+    private double longitude;
+
+    /** The current speed in meters per second. */
+    private double speed;
+
+    /** The virtual time the vessel was last moved at. */
+    private long lastMoved;
+
+    private long nextBroadcast;
+
+    private long nextPositionReport;
+
+    private long nextRpc;
+
+    /** The id of the next connection message we send. */
+    private long nextMessageIdToSend = 1;
+
+    /** The id of the latest connection message received from the server. */
+    private volatile long latestReceivedId;
+
+    /** Whether or not the server has sent us a connected message. */
+    private volatile boolean connected;
+
+    /** The web socket session, set when the socket has been opened. */
+    private volatile Session wsSession;
+
+    SimulatedVessel(FleetSimulator simulator, int index, SplittableRandom random) {
+        this.simulator = simulator;
+        this.index = index;
+        this.id = FleetSimulator.idOf(index);
+        this.random = random;
+        this.bounds = simulator.conf.getArea().getBoundingBox();
+        Position p = simulator.conf.getArea().getRandomPosition(new java.util.Random(random.nextLong()));
+        this.latitude = p.getLatitude();
+        this.longitude = p.getLongitude();
+        this.course = random.nextDouble(0, 360);
+        this.speed = random.nextDouble(0.5, 10); // 1-20 knots
+        long now = simulator.clock.now();
+        this.lastMoved = now;
+        // Spread the first position report uniformly over the interval, to avoid every vessel reporting at once
+        this.nextPositionReport = now + random.nextLong(simulator.conf.getPositionReportIntervalMillis());
+        this.nextBroadcast = nextEvent(now, simulator.conf.getBroadcastsPerHour());
+        this.nextRpc = nextEvent(now, simulator.conf.getRpcsPerHour());
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Returns the virtual time of the next event of a Poisson process with the specified rate.
+     *
+     * @param now
+     *            the current virtual time
+     * @param perHour
+     *            the average number of events per hour
+     * @return the time of the next event, or {@link Long#MAX_VALUE} if the rate is 0
+     */
+    private long nextEvent(long now, double perHour) {
+        if (perHour <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return now + (long) (-Math.log(1 - random.nextDouble()) * 3_600_000 / perHour);
+    }
+
+    PositionTime position(long now) {
+        return PositionTime.create(latitude, longitude, now);
+    }
+
+    /**
+     * Moves the vessel and sends any messages that are due. Invoked once per tick by the owning worker thread.
+     *
+     * @param now
+     *            the current virtual time
+     */
+    void tick(long now) {
+        move(now);
+        if (!connected) {
+            return;
+        }
+        for (MethodInvoke mi; (mi = pendingInvocations.poll()) != null;) {
+            MethodInvokeResult r = new MethodInvokeResult();
+            r.setMessageId(newMessageId());
+            r.setResultForMessageId(mi.getMessageId());
+            r.setOriginalSenderId(mi.getSenderId());
+            r.setReceiverId(id);
+            r.setReceiverTimestamp(Timestamp.create(now));
+            r.setResult(Binary.copyFromUtf8("{}"));
+            send(r);
+        }
+        if (now >= nextPositionReport) {
+            nextPositionReport += simulator.conf.getPositionReportIntervalMillis();
+            send(new PositionReport().setPositionTime(position(now)));
+            simulator.statistics.positionReportsSent.increment();
+        }
+        if (now >= nextBroadcast) {
+            nextBroadcast = nextEvent(now, simulator.conf.getBroadcastsPerHour());
+            Broadcast b = new Broadcast();
+            b.setMessageId(newMessageId());
+            b.setBroadcastType(BROADCAST_TYPE);
+            b.setSenderId(id);
+            b.setSenderTimestamp(Timestamp.create(now));
+            b.setSenderPosition(position(now));
+            b.setArea(Circle.create(position(now), simulator.conf.getBroadcastRadius()));
+            b.setPayload(Binary.copyFromUtf8("{\"seq\":" + random.nextInt() + "}"));
+            send(b);
+            simulator.statistics.broadcastsSent.increment();
+        }
+        if (now >= nextRpc) {
+            nextRpc = nextEvent(now, simulator.conf.getRpcsPerHour());
+            int target = simulator.conf.getNumberOfVessels() == 1 ? index : random.nextInt(simulator.conf
+                    .getNumberOfVessels());
+            if (target != index) {
+                MethodInvoke mi = new MethodInvoke();
+                mi.setMessageId(newMessageId());
+                mi.setEndpointMethod(ENDPOINT_METHOD);
+                mi.setSenderId(id);
+                mi.setSenderTimestamp(Timestamp.create(now));
+                mi.setSenderPosition(position(now));
+                mi.setReceiverId(FleetSimulator.idOf(target));
+                mi.setParameters("{}");
+                simulator.rpcStarted(mi.getMessageId(), now);
+                send(mi);
+            }
+        }
+    }
+
+    /** Moves the vessel using dead reckoning, turning around when hitting the border of the area. */
+    private void move(long now) {
+        double distance = speed * (now - lastMoved) / 1000d;
+        lastMoved = now;
+        double rad = Math.toRadians(course);
+        double lat = latitude + Math.cos(rad) * distance / METERS_PER_DEGREE;
+        double lon = longitude + Math.sin(rad) * distance
+                / (METERS_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(latitude))));
+        if (lat > bounds.getTopLeftLatitude() || lat < bounds.getBottomRightLatitude()
+                || lon < bounds.getTopLeftLongitude() || lon > bounds.getBottomRightLongitude()) {
+            course = random.nextDouble(0, 360);
+        } else {
+            latitude = lat;
+            longitude = lon;
+        }
+    }
+
+    /** Returns a deterministic message id based on the random source of the vessel. */
+    private Binary newMessageId() {
+        byte[] b = new byte[16];
+        for (int i = 0; i < b.length; i += 8) {
+            long l = random.nextLong();
+            for (int j = 0; j < 8; j++) {
+                b[i + j] = (byte) (l >>> (j * 8));
+            }
+        }
+        return Binary.copyFrom(b);
+    }
+
+    /**
+     * Sends the specified message to the server.
+     *
+     * @param m
+     *            the message to send
+     */
+    void send(Message m) {
+        MmsMessage mm = new MmsMessage(m);
+        if (mm.isConnectionMessage()) {
+            mm.setMessageId(nextMessageIdToSend++);
+            mm.setLatestReceivedId(latestReceivedId);
+        }
+        Session s = wsSession;
+        if (s == null || !s.isOpen()) {
+            return;
+        }
+        try {
+            // Basic (blocking) writes are deliberate. A server that cannot keep up makes the owning worker fall behind
+            // the virtual clock, which is reported as lag by the simulator
+            if (simulator.conf.useBinary()) {
+                s.getBasicRemote().sendBinary(ByteBuffer.wrap(mm.toBinary()));
+            } else {
+                s.getBasicRemote().sendText(mm.toText());
+            }
+        } catch (IOException e) {
+            simulator.statistics.sendFailures.increment();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @SuppressWarnings("all")
+    public void onOpen(Session session, EndpointConfig config) {
+        wsSession = session;
+        session.setMaxTextMessageBufferSize(10 * 1024 * 1024);
+        // NB: Must use anonymous classes, the container cannot infer the message type from a lambda
+        session.addMessageHandler(new MessageHandler.Whole<String>() {
+            public void onMessage(String message) {
+                onMessageReceived(MmsMessage.parseTextMessage(message));
+            }
+        });
+        session.addMessageHandler(new MessageHandler.Whole<ByteBuffer>() {
+            public void onMessage(ByteBuffer message) {
+                try {
+                    onMessageReceived(MmsMessage.parseBinaryMessage(message.array()));
+                } catch (IOException e) {
+                    simulator.statistics.receiveFailures.increment();
+                }
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        wsSession = null;
+        if (connected) {
+            connected = false;
+            simulator.vesselDisconnected(this);
+        }
+    }
+
+    void close() {
+        Session s = wsSession;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException ignore) {}
+        }
+    }
+
+    /** Invoked by the web socket container whenever a message is received from the server. */
+    void onMessageReceived(MmsMessage mm) {
+        if (mm.isConnectionMessage()) {
+            latestReceivedId = Math.max(latestReceivedId, mm.getMessageId());
+        }
+        Message m = mm.getM();
+        if (m instanceof Broadcast) {
+            simulator.statistics.broadcastsReceived.increment();
+        } else if (m instanceof MethodInvoke) {
+            if (simulator.conf.respondToRpcs()) {
+                pendingInvocations.add((MethodInvoke) m);
+            }
+        } else if (m instanceof MethodInvokeResult) {
+            simulator.rpcCompleted(((MethodInvokeResult) m).getResultForMessageId());
+        } else if (m instanceof Welcome) {
+            Hello h = new Hello();
+            h.setClientId(id);
+            h.setPositionTime(position(simulator.clock.now()));
+            send(h);
+        } else if (m instanceof Connected) {
+            connected = true;
+            simulator.vesselConnected(this);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.sim;
+
+/**
+ * A clock that is shared by all simulated vessels. Time only moves forward when the simulator advances it, so every
+ * vessel observes exactly the same sequence of instants no matter how the vessels are scheduled on threads.
+ *
+ * @author Kasper Nielsen
+ */
+public final class VirtualClock {
+
+    /** The virtual time (millis since Epoch) the clock was started at. */
+    private final long startTime;
+
+    /** The current virtual time. Only written by the simulator thread. */
+    private volatile long now;
+
+    /**
+     * Creates a new virtual clock.
+     *
+     * @param startTime
+     *            the virtual time (millis since Epoch) to start at
+     */
+    public VirtualClock(long startTime) {
+        this.startTime = startTime;
+        this.now = startTime;
+    }
+
+    /**
+     * Advances the clock.
+     *
+     * @param millis
+     *            the number of virtual milliseconds to advance the clock with
+     * @return the new virtual time
+     */
+    long advance(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("millis must be positive, was " + millis);
+        }
+        return now += millis;
+    }
+
+    /**
+     * Returns the number of virtual milliseconds elapsed since the clock was started.
+     *
+     * @return the number of virtual milliseconds elapsed since the clock was started
+     */
+    public long elapsed() {
+        return now - startTime;
+    }
+
+    /**
+     * Returns the current virtual time in milliseconds since Epoch.
+     *
+     * @return the current virtual time in milliseconds since Epoch
+     */
+    public long now() {
+        return now;
+    }
+}
@@ -175,10 +175,19 @@ public abstract class AbstractNetworkTest {
         return pnc;
     }
 
+    /**
+     * Invoked before the server is started, can be overridden to change the configuration of the server.
+     *
+     * @param configuration
+     *            the configuration of the server
+     */
+    protected void configureServer(MmsServerConfiguration configuration) {}
+
     @Before
     public void setup() throws Exception {
         clientPort = ThreadLocalRandom.current().nextInt(40000, 50000);
         MmsServerConfiguration sc = new MmsServerConfiguration();
+        configureServer(sc);
         if (useProxy) {
             sc.setServerPort(12222);
             si = sc.build();
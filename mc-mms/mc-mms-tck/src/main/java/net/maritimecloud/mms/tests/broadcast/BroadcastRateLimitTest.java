@@ -0,0 +1,68 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.tests.broadcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.mms.server.MmsServerConfiguration;
+import net.maritimecloud.mms.server.broadcast.BroadcastRateLimiter;
+import net.maritimecloud.mms.stubs.BroadcastTestMessage;
+import net.maritimecloud.mms.tests.AbstractNetworkTest;
+import net.maritimecloud.net.mms.MmsBroadcastOptions;
+import net.maritimecloud.net.mms.MmsClient;
+import net.maritimecloud.net.mms.MmsRequestRejectedException;
+
+import org.junit.Test;
+
+/**
+ * Tests that broadcasts exceeding the broadcast rate of a client are rejected by the server.
+ *
+ * @author Kasper Nielsen
+ */
+public class BroadcastRateLimitTest extends AbstractNetworkTest {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void configureServer(MmsServerConfiguration configuration) {
+        configuration.setBroadcastRate(0.1).setBroadcastBurst(2);
+    }
+
+    @Test
+    public void rejected() throws Exception {
+        MmsClient c1 = newClient(ID1, 1, 1);
+        assertTrue(c1.connection().awaitConnected(1, TimeUnit.SECONDS));
+
+        LinkedBlockingQueue<MmsRequestRejectedException> rejections = new LinkedBlockingQueue<>();
+        MmsBroadcastOptions options = new MmsBroadcastOptions().onRejected(rejections::add);
+        for (int i = 0; i < 3; i++) {
+            c1.broadcast(new BroadcastTestMessage().setMsg("fooo" + i), options);
+        }
+
+        MmsRequestRejectedException e = rejections.poll(5, TimeUnit.SECONDS);
+        assertNotNull(e);
+        assertEquals(BroadcastRateLimiter.RATE_LIMITED, e.getErrorCode());
+        // one token every 10 seconds
+        assertTrue(e.getRetryAfterMillis() > 0);
+        assertTrue(e.getRetryAfterMillis() <= TimeUnit.SECONDS.toMillis(10));
+
+        // only the third broadcast is rejected
+        assertEquals(null, rejections.poll(200, TimeUnit.MILLISECONDS));
+    }
+}
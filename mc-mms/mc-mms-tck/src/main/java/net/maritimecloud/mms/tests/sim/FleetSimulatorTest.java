@@ -0,0 +1,99 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.maritimecloud.mms.tests.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import net.maritimecloud.mms.server.MmsServer;
+import net.maritimecloud.mms.server.MmsServerConfiguration;
+import net.maritimecloud.mms.sim.FleetSimulator;
+import net.maritimecloud.mms.sim.FleetSimulatorConfiguration;
+import net.maritimecloud.mms.sim.FleetStatistics;
+
+import org.junit.Test;
+
+/**
+ * Tests that the load offered by a {@link FleetSimulator} only depends on its configuration.
+ *
+ * @author Kasper Nielsen
+ */
+public class FleetSimulatorTest {
+
+    static FleetSimulatorConfiguration newConfiguration(long seed) {
+        return new FleetSimulatorConfiguration().setNumberOfVessels(20).setNumberOfThreads(2).setSeed(seed)
+                .setBroadcastsPerHour(600).setRpcsPerHour(600).setTimeCompression(20);
+    }
+
+    /** Runs a minute of virtual time against a fresh server, and returns the simulator once it has been shut down. */
+    static FleetSimulator simulate(FleetSimulatorConfiguration conf) throws Exception {
+        int port = ThreadLocalRandom.current().nextInt(40000, 50000);
+        MmsServer server = new MmsServerConfiguration().setServerPort(port).build();
+        server.start().join();
+        FleetSimulator sim = conf.setHost("localhost:" + port).build();
+        try {
+            assertEquals(conf.getEpoch(), sim.getClock().now());
+            sim.connect(10, TimeUnit.SECONDS);
+            sim.run(1, TimeUnit.MINUTES);
+            assertEquals(conf.getEpoch() + TimeUnit.MINUTES.toMillis(1), sim.getClock().now());
+            return sim;
+        } finally {
+            sim.shutdown();
+            server.shutdown();
+            assertTrue(server.awaitTerminated(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /** Tests that two simulations with the same seed send exactly the same number of messages. */
+    @Test
+    public void deterministic() throws Exception {
+        FleetStatistics.Snapshot s1 = simulate(newConfiguration(42)).getStatistics().snapshot();
+        FleetStatistics.Snapshot s2 = simulate(newConfiguration(42)).getStatistics().snapshot();
+        assertEquals(0, s1.sendFailures);
+        assertEquals(0, s2.sendFailures);
+        assertTrue(s1.positionReportsSent > 0);
+        assertTrue(s1.broadcastsSent > 0);
+        assertTrue(s1.rpcsSent > 0);
+
+        assertEquals(s1.ticks, s2.ticks);
+        assertEquals(s1.positionReportsSent, s2.positionReportsSent);
+        assertEquals(s1.broadcastsSent, s2.broadcastsSent);
+        assertEquals(s1.rpcsSent, s2.rpcsSent);
+
+        FleetStatistics.Snapshot s3 = simulate(newConfiguration(43)).getStatistics().snapshot();
+        assertEquals(s1.ticks, s3.ticks);
+        assertTrue(s1.broadcastsSent != s3.broadcastsSent || s1.rpcsSent != s3.rpcsSent);
+    }
+
+    /**
+     * Tests that invocations that are not answered within the timeout are counted as timed out. No vessel answers, so
+     * which invocations time out only depends on the virtual time they were sent at.
+     */
+    @Test
+    public void rpcTimeout() throws Exception {
+        FleetSimulatorConfiguration conf = newConfiguration(42).setRespondToRpcs(false);
+        FleetSimulator sim = simulate(conf.setRpcTimeout(10, TimeUnit.SECONDS));
+        FleetStatistics.Snapshot s = sim.getStatistics().snapshot();
+        assertTrue(s.rpcsSent > 0);
+        assertTrue(s.rpcsTimedOut > 0);
+        assertEquals(0, s.rpcsCompleted);
+        // Invocations sent during the last 10 seconds have not expired yet
+        assertTrue(sim.getPendingRpcCount() > 0);
+        assertEquals(s.rpcsSent, s.rpcsTimedOut + sim.getPendingRpcCount());
+    }
+}